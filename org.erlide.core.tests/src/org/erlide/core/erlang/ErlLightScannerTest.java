@@ -0,0 +1,115 @@
+package org.erlide.core.erlang;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.erlide.jinterface.backend.BackendException;
+import org.junit.Test;
+
+import erlang.ErlideScanner;
+
+/**
+ * Checks that {@link ErlLightScanner} gives the same tokens as
+ * erlide_scanner:light_scan_string/1 on the IDE backend.
+ */
+public class ErlLightScannerTest {
+
+	private static final String[] SAMPLES = new String[] {
+			"",
+			"-module(foo).\n",
+			"-export([f/1, g/0]).\n\n%% a comment\nf(X) ->\n    X + 1.\n",
+			"f(_Unused, Var@node, 'quoted atom', a_b@c) -> ok.",
+			"g() -> case x of a when 1 =:= 1 andalso true -> b; _ -> c end.",
+			"h() -> <<1:8, \"bin\"/binary>> =/= <<>>, [X || X <- L, X >= 2].",
+			"i() -> 1.5, 2.0e10, 3.25E-3, 16#fF, 2#1010, 36#zZ, 0.",
+			"j() -> $a, $\\n, $\\t, $\\123, $\\^A, $ , $\\\\, $\".",
+			"k() -> \"esc \\\" quote\", \"multi\nline\nstring\", \"\".",
+			"-define(M, 1).\nl() -> ?M, ?MODULE, ?m, ?'q', ??M, ? M.\n",
+			"m() -> A = {a, [b | c]}, A#rec.field, #rec{a = 1}.",
+			"n() -> X -- Y ++ Z, X /= Y, X == Y, X =< Y, X :: integer().",
+			"o() -> try f() catch _:_ -> x after ok end, fun f/1, 'receive'.",
+			"p() ->\r\n    ok. % windows\r\n",
+			"q() -> 1.\n.\n  .%\n", };
+
+	@Test
+	public void conformsToBackendScanner() throws BackendException {
+		for (final String s : SAMPLES) {
+			final List<ErlToken> expected = ErlideScanner.lightScanString(s,
+					17);
+			final List<ErlToken> actual = ErlLightScanner.scan(s, 17);
+			assertEquals(s, expected.toString(), actual.toString());
+		}
+	}
+
+	@Test
+	public void lineByLineGivesSameKinds() {
+		for (final String s : SAMPLES) {
+			final List<ErlToken> whole = ErlLightScanner.scan(s, 0);
+			final List<ErlToken> lines = new ArrayList<ErlToken>();
+			int state = ErlLightScanner.STATE_NORMAL;
+			int lineOffset = 0;
+			int line = 0;
+			while (lineOffset < s.length()) {
+				int lineEnd = s.indexOf('\n', lineOffset);
+				lineEnd = lineEnd < 0 ? s.length() : lineEnd + 1;
+				final List<ErlToken> toks = new ArrayList<ErlToken>();
+				state = ErlLightScanner.scanLine(s.substring(lineOffset,
+						lineEnd), state, line, toks);
+				for (final ErlToken tk : toks) {
+					tk.fixOffset(lineOffset);
+					lines.add(tk);
+				}
+				lineOffset = lineEnd;
+				line++;
+			}
+			assertEquals(s, kindsAndRanges(merge(whole)),
+					kindsAndRanges(merge(lines)));
+		}
+	}
+
+	@Test
+	public void openStringCarriesOverLines() {
+		final List<ErlToken> toks = new ArrayList<ErlToken>();
+		assertEquals(ErlLightScanner.STATE_STRING, ErlLightScanner.scanLine(
+				"f() -> \"abc\n", ErlLightScanner.STATE_NORMAL, 0, toks));
+		toks.clear();
+		assertEquals(ErlLightScanner.STATE_NORMAL, ErlLightScanner.scanLine(
+				"def\" ++ x.\n", ErlLightScanner.STATE_STRING, 1, toks));
+		assertEquals(ErlToken.KIND_STRING, toks.get(0).getKind());
+		assertEquals(4, toks.get(0).getLength());
+	}
+
+	// a string split over several lines gives one token per line
+	private static List<ErlToken> merge(final List<ErlToken> toks) {
+		final List<ErlToken> result = new ArrayList<ErlToken>();
+		for (final ErlToken tk : toks) {
+			if (!result.isEmpty()) {
+				final ErlToken last = result.get(result.size() - 1);
+				if (last.getKind() == ErlToken.KIND_STRING
+						&& tk.getKind() == ErlToken.KIND_STRING
+						&& last.getOffset() + last.getLength() == tk
+								.getOffset()) {
+					result.set(result.size() - 1, new ErlToken(
+							ErlToken.KIND_STRING, last.getLine(), last
+									.getOffset(), last.getLength()
+									+ tk.getLength()));
+					continue;
+				}
+			}
+			result.add(tk);
+		}
+		return result;
+	}
+
+	private static String kindsAndRanges(final List<ErlToken> toks) {
+		final StringBuilder b = new StringBuilder();
+		for (final ErlToken tk : toks) {
+			b.append(tk.getKind()).append('@').append(tk.getOffset()).append(
+					'+').append(tk.getLength()).append(' ');
+		}
+		return b.toString();
+	}
+
+}
@@ -0,0 +1,61 @@
+package org.erlide.core.erlang;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class ErlTokenBufferTest {
+
+	@Test
+	public void readsBackendBinary() {
+		final byte[] bytes = new byte[] { ErlToken.KIND_ATOM, 0, 0, 2, 0, 1,
+				0, 0, 0, 5, '(', 0, 0, 2, 0, 1, 5, 0, 0, 1 };
+		final ErlTokenBuffer tokens = new ErlTokenBuffer(bytes, 100);
+		assertEquals(2, tokens.size());
+		assertEquals(ErlToken.KIND_ATOM, tokens.getKind(0));
+		assertEquals(2, tokens.getLine(0));
+		assertEquals(100 + 256, tokens.getOffset(0));
+		assertEquals(5, tokens.getLength(0));
+		assertEquals('(', tokens.getKind(1));
+		assertEquals(new ErlToken(bytes, 10).getLength(), tokens.getLength(1));
+	}
+
+	@Test
+	public void sameAsTokenList() {
+		final String s = "-module(foo).\nf(X) -> ?M, \"s\" ++ [X || X <- Y].\n";
+		final List<ErlToken> list = ErlLightScanner.scan(s, 7);
+		final ErlTokenBuffer tokens = ErlLightScanner.scanBuffer(s, 7);
+		assertEquals(list.toString(), tokens.toString());
+		assertEquals(list.toString(), tokens.toList().toString());
+	}
+
+	@Test
+	public void indexAt() {
+		final String s = "f(Abc) -> ok.";
+		final ErlTokenBuffer tokens = ErlLightScanner.scanBuffer(s, 10);
+		assertEquals(-1, tokens.indexAt(9));
+		assertEquals(0, tokens.indexAt(10));
+		assertEquals(2, tokens.indexAt(12));
+		assertEquals(2, tokens.indexAt(14));
+		assertEquals(ErlToken.KIND_VAR, tokens.getKind(tokens.indexAt(13)));
+		assertEquals(tokens.size() - 1, tokens.indexAt(10 + s.length() - 1));
+		assertEquals(-1, tokens.indexAt(10 + s.length()));
+	}
+
+	@Test
+	public void addAll() {
+		final ErlTokenBuffer line = new ErlTokenBuffer(1);
+		ErlLightScanner.scanLine("a(B).\n", ErlLightScanner.STATE_NORMAL, 0,
+				line);
+		final ErlTokenBuffer all = new ErlTokenBuffer(1);
+		all.addAll(line, 0, 0);
+		all.addAll(line, 6, 1);
+		assertEquals(2 * line.size(), all.size());
+		assertEquals(6, all.getOffset(line.size()));
+		assertEquals(1, all.getLine(line.size()));
+		assertEquals(line.getKind(2), all.getKind(line.size() + 2));
+	}
+
+}
@@ -0,0 +1,78 @@
+package org.erlide.core.erlang.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangBinary;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+
+public class RelativeFormTest {
+
+	@Test
+	public void movedFunctionHasSameKey() {
+		assertEquals(RelativeForm.key(function(3, 40, "a")),
+				RelativeForm.key(function(5, 71, "a")));
+	}
+
+	@Test
+	public void editedFunctionHasOtherKey() {
+		assertFalse(RelativeForm.key(function(3, 40, "a")).equals(
+				RelativeForm.key(function(3, 40, "b"))));
+	}
+
+	@Test
+	public void movedAttributeTokensHaveSameKey() {
+		assertEquals(RelativeForm.key(spec(3, 40)), RelativeForm
+				.key(spec(9, 95)));
+	}
+
+	@Test
+	public void otherFormsAreTheirOwnKey() {
+		final OtpErlangObject error = t(a("error"), t(l(3), a("x")));
+		assertEquals(error, RelativeForm.key(error));
+	}
+
+	// -record(function, {pos, name, arity, args, head, clauses, name_pos,
+	// comment, exported}).
+	private static OtpErlangObject function(final int line, final int ofs,
+			final String body) {
+		final OtpErlangObject clause = t(a("clause"), pos(line + 1, ofs + 10),
+				a("f"), new OtpErlangList(), new OtpErlangBinary(body
+						.getBytes()), t(t(l(line + 1), l(ofs + 10)), l(1)));
+		return t(a("function"), pos(line, ofs), a("f"), l(0),
+				new OtpErlangList(), new OtpErlangBinary(body.getBytes()),
+				new OtpErlangList(clause), t(t(l(line), l(ofs)), l(1)), a("u"),
+				a("false"));
+	}
+
+	// -record(attribute, {pos, name, args, extra}).
+	private static OtpErlangObject spec(final int line, final int ofs) {
+		final OtpErlangObject token = t(a("token"), a("atom"), l(line),
+				l(ofs + 6), l(1), a("f"), a("u"), a("u"));
+		return t(a("attribute"), pos(line, ofs), a("spec"),
+				new OtpErlangList(token), a("u"));
+	}
+
+	private static OtpErlangObject pos(final int line, final int ofs) {
+		return t(t(l(line), l(line + 1), l(ofs)), l(20));
+	}
+
+	private static OtpErlangTuple t(final OtpErlangObject... elems) {
+		return new OtpErlangTuple(elems);
+	}
+
+	private static OtpErlangAtom a(final String s) {
+		return new OtpErlangAtom(s);
+	}
+
+	private static OtpErlangLong l(final int i) {
+		return new OtpErlangLong(i);
+	}
+
+}
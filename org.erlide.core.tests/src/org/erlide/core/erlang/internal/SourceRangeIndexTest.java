@@ -0,0 +1,68 @@
+package org.erlide.core.erlang.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class SourceRangeIndexTest {
+
+	@Test
+	public void findsContainingRange() {
+		final SourceRangeIndex<String> index = new SourceRangeIndex<String>(1);
+		index.add("a", 0, 9);
+		index.add("b", 12, 20);
+		index.add("c", 21, 21);
+		assertEquals("a", index.find(0));
+		assertEquals("a", index.find(9));
+		assertNull(index.find(10));
+		assertEquals("b", index.find(20));
+		assertEquals("c", index.find(21));
+		assertNull(index.find(22));
+		assertNull(index.find(-1));
+	}
+
+	@Test
+	public void firstAddedWins() {
+		final SourceRangeIndex<String> index = new SourceRangeIndex<String>(4);
+		index.add("late", 10, 30);
+		index.add("long", 0, 100);
+		index.add("inner", 15, 16);
+		assertEquals("late", index.find(15));
+		assertEquals("long", index.find(5));
+		assertEquals("long", index.find(50));
+	}
+
+	@Test
+	public void empty() {
+		assertNull(new SourceRangeIndex<String>(0).find(0));
+	}
+
+	@Test
+	public void sameAsLinearScan() {
+		final Random random = new Random(17);
+		final int n = 500;
+		final int[] starts = new int[n];
+		final int[] ends = new int[n];
+		final SourceRangeIndex<Integer> index = new SourceRangeIndex<Integer>(
+				n);
+		for (int i = 0; i < n; i++) {
+			starts[i] = random.nextInt(10000);
+			ends[i] = starts[i] + random.nextInt(i % 50 == 0 ? 2000 : 20);
+			index.add(i, starts[i], ends[i]);
+		}
+		for (int p = -5; p < 12000; p += 3) {
+			Integer expected = null;
+			for (int i = 0; i < n; i++) {
+				if (starts[i] <= p && p <= ends[i]) {
+					expected = i;
+					break;
+				}
+			}
+			assertEquals(expected, index.find(p));
+		}
+	}
+
+}
@@ -47,7 +47,7 @@ public abstract class AbstractErlangTest {
 			return null;
 		}
 		try {
-			return backend.call(m, f, null, (Object[]) args);
+			return backend.call(m, f, (String) null, (Object[]) args);
 		} catch (final Exception e) {
 			e.printStackTrace();
 			fail("RPC failed: " + e.getMessage());
@@ -49,7 +49,7 @@ public class ErlideBuilder {
 	public static OtpErlangList getCodeClashes(final Backend b)
 			throws BackendException {
 		final OtpErlangList res = (OtpErlangList) b.call("erlide_builder",
-				"code_clash", null);
+				"code_clash", "");
 		return res;
 	}
 
@@ -9,6 +9,7 @@ import java.util.TreeSet;
 import org.erlide.jinterface.backend.Backend;
 import org.erlide.jinterface.backend.BackendException;
 import org.erlide.jinterface.backend.util.Util;
+import org.erlide.jinterface.rpc.RpcSignature;
 
 import com.ericsson.otp.erlang.OtpErlangAtom;
 import com.ericsson.otp.erlang.OtpErlangList;
@@ -19,12 +20,16 @@ import com.ericsson.otp.erlang.OtpErlangTuple;
 
 public class ErlideContextAssist {
 
+	private static final RpcSignature SS = RpcSignature.of("ss");
+	private static final RpcSignature S = RpcSignature.of("s");
+	private static final RpcSignature AI = RpcSignature.of("ai");
+
 	public static Collection<String> getVariables(final Backend b,
 			final String src, final String prefix) {
 		final SortedSet<String> result = new TreeSet<String>();
 		try {
 			final OtpErlangObject res = b.call("erlide_content_assist",
-					"get_variables", "ss", src, prefix);
+					"get_variables", SS, src, prefix);
 			if (Util.isOk(res)) {
 				final OtpErlangTuple t = (OtpErlangTuple) res;
 				final OtpErlangList l = (OtpErlangList) t.elementAt(1);
@@ -93,7 +98,7 @@ public class ErlideContextAssist {
 			final String substring) {
 		try {
 			final OtpErlangObject res = b.call("erlide_content_assist",
-					"check_record", "s", substring);
+					"check_record", S, substring);
 			if (Util.isOk(res)) {
 				final OtpErlangTuple t = (OtpErlangTuple) res;
 				final OtpErlangTuple r = (OtpErlangTuple) t.elementAt(1);
@@ -112,7 +117,7 @@ public class ErlideContextAssist {
 			final String name, final int arity) {
 		try {
 			final OtpErlangObject res = b.call("erlide_content_assist",
-					"get_function_head", "ai", name, arity);
+					"get_function_head", AI, name, arity);
 			if (res instanceof OtpErlangList) {
 				return (OtpErlangList) res;
 			}
@@ -1,6 +1,8 @@
 package erlang;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
@@ -10,6 +12,9 @@ import org.erlide.jinterface.backend.Backend;
 import org.erlide.jinterface.backend.BackendException;
 import org.erlide.jinterface.backend.BackendUtil;
 import org.erlide.jinterface.backend.util.Util;
+import org.erlide.jinterface.rpc.RpcBatch;
+import org.erlide.jinterface.rpc.RpcSignature;
+import org.erlide.jinterface.rpc.RpcUtil;
 import org.erlide.jinterface.util.ErlLogger;
 import org.erlide.runtime.debug.ErlDebugConstants;
 
@@ -19,9 +24,12 @@ import com.ericsson.otp.erlang.OtpErlangObject;
 import com.ericsson.otp.erlang.OtpErlangPid;
 import com.ericsson.otp.erlang.OtpErlangString;
 import com.ericsson.otp.erlang.OtpErlangTuple;
+import com.ericsson.otp.erlang.SignatureException;
 
 public class ErlideDebug {
 
+	private static final RpcSignature PROCESS_INFO = RpcSignature.of("pa");
+
 	@SuppressWarnings("boxing")
 	public static OtpErlangList getProcesses(final Backend backend,
 			final boolean showSystemProcesses, final boolean showErlideProcesses) {
@@ -90,7 +98,7 @@ public class ErlideDebug {
 			final OtpErlangPid pid, final String item) {
 		try {
 			final OtpErlangObject res = backend.call("erlide_debug",
-					"process_info", "pa", pid, item);
+					"process_info", PROCESS_INFO, pid, item);
 			if (res instanceof OtpErlangTuple) {
 				final OtpErlangTuple t = (OtpErlangTuple) res;
 				return t.elementAt(1);
@@ -101,6 +109,36 @@ public class ErlideDebug {
 		return null;
 	}
 
+	/**
+	 * Get several process_info items in one round trip.
+	 *
+	 * @return the values of the items that are available
+	 */
+	public static Map<String, OtpErlangObject> getProcessInfo(
+			final Backend backend, final OtpErlangPid pid,
+			final String... items) {
+		final Map<String, OtpErlangObject> result = new HashMap<String, OtpErlangObject>();
+		try {
+			final RpcBatch batch = backend.batch();
+			for (final String item : items) {
+				batch.add("erlide_debug", "process_info", PROCESS_INFO, pid,
+						item);
+			}
+			final OtpErlangObject[] res = backend.call(batch);
+			for (int i = 0; i < res.length; i++) {
+				if (res[i] instanceof OtpErlangTuple
+						&& !RpcUtil.isBadRpc(res[i])) {
+					result.put(items[i], ((OtpErlangTuple) res[i]).elementAt(1));
+				}
+			}
+		} catch (final BackendException e) {
+			ErlLogger.warn(e);
+		} catch (final SignatureException e) {
+			ErlLogger.warn(e);
+		}
+		return result;
+	}
+
 	public static boolean isErlideProcess(final Backend backend,
 			final OtpErlangPid pid) {
 		boolean res = false;
@@ -5,17 +5,27 @@ import java.util.List;
 
 import org.erlide.jinterface.backend.Backend;
 import org.erlide.jinterface.backend.BackendException;
+import org.erlide.jinterface.rpc.RpcBatch;
+import org.erlide.jinterface.rpc.RpcSignature;
+import org.erlide.jinterface.rpc.RpcUtil;
 import org.erlide.jinterface.util.ErlLogger;
 
 import com.ericsson.otp.erlang.OtpErlangList;
 import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.SignatureException;
 
 public class ErlideDoc {
+
+	private static final RpcSignature ASS = RpcSignature.of("ass");
+	private static final RpcSignature SLS = RpcSignature.of("sls");
+	private static final RpcSignature AIX = RpcSignature.of("aix");
+	private static final RpcSignature SXS = RpcSignature.of("sxs");
+
 	public static OtpErlangObject getProposalsWithDoc(final Backend b,
 			final String mod, final String prefix, final String stateDir) {
 		OtpErlangObject res = null;
 		try {
-			res = b.call("erlide_otp_doc", "get_proposals", "ass", mod, prefix,
+			res = b.call("erlide_otp_doc", "get_proposals", ASS, mod, prefix,
 					stateDir);
 		} catch (final BackendException e) {
 			ErlLogger.warn(e);
@@ -23,11 +33,40 @@ public class ErlideDoc {
 		return res;
 	}
 
+	/**
+	 * Get the proposals for several modules in one round trip.
+	 *
+	 * @return the proposals of each module, in the same order; null for a
+	 *         module whose call failed
+	 */
+	public static OtpErlangObject[] getProposalsWithDoc(final Backend b,
+			final List<String> mods, final String prefix, final String stateDir) {
+		final OtpErlangObject[] res = new OtpErlangObject[mods.size()];
+		try {
+			final RpcBatch batch = b.batch();
+			for (final String mod : mods) {
+				batch.add("erlide_otp_doc", "get_proposals", ASS, mod, prefix,
+						stateDir);
+			}
+			final OtpErlangObject[] results = b.call(batch);
+			for (int i = 0; i < results.length; i++) {
+				if (!RpcUtil.isBadRpc(results[i])) {
+					res[i] = results[i];
+				}
+			}
+		} catch (final BackendException e) {
+			ErlLogger.warn(e);
+		} catch (final SignatureException e) {
+			ErlLogger.warn(e);
+		}
+		return res;
+	}
+
 	public static OtpErlangObject getModules(final Backend b,
 			final String prefix, final List<String> projectModules) {
 		OtpErlangObject res = null;
 		try {
-			res = b.call("erlide_otp_doc", "get_modules", "sls", prefix,
+			res = b.call("erlide_otp_doc", "get_modules", SLS, prefix,
 					projectModules);
 		} catch (final BackendException e) {
 			ErlLogger.warn(e);
@@ -44,10 +83,10 @@ public class ErlideDoc {
 		ErlLogger.debug("getDoc:: %s %s %s", module, offset, imports);
 		try {
 			final OtpErlangObject input = ide.call("erlide_open", "open",
-					"aix", module, offset, ErlideOpen.mkContext(
+					AIX, module, offset, ErlideOpen.mkContext(
 							externalModules, null, pathVars, null, imports));
 			ErlLogger.debug("%s", input.toString());
-			res = b.call("erlide_otp_doc", "get_doc", "sxs", module, input,
+			res = b.call("erlide_otp_doc", "get_doc", SXS, module, input,
 					stateDir);
 		} catch (final BackendException e) {
 			ErlLogger.warn(e);
@@ -1,10 +1,10 @@
 package erlang;
 
-import java.util.ArrayList;
 import java.util.List;
 
 import org.erlide.core.ErlangPlugin;
 import org.erlide.core.erlang.ErlToken;
+import org.erlide.core.erlang.ErlTokenBuffer;
 import org.erlide.core.erlang.ErlangCore;
 import org.erlide.jinterface.backend.BackendException;
 import org.erlide.jinterface.backend.util.Assert;
@@ -51,7 +51,7 @@ public class ErlideScanner {
 		OtpErlangObject r1 = null;
 		try {
 			r1 = ErlangCore.getBackendManager().getIdeBackend().call(
-					ERLIDE_SCANNER, "getTokenAt", "ai", module, offset);
+					ERLIDE_SCANNER, "getTokenAtBinary", "ai", module, offset);
 			// ErlLogger.debug("getTokenAt -> " + r1);
 		} catch (final Exception e) {
 			// e.printStackTrace();
@@ -63,7 +63,9 @@ public class ErlideScanner {
 		final OtpErlangTuple t1 = (OtpErlangTuple) r1;
 		if (Util.isOk(t1)) {
 			final OtpErlangObject ot = t1.elementAt(1);
-			if (ot instanceof OtpErlangTuple) {
+			if (ot instanceof OtpErlangBinary) {
+				return new ErlToken(((OtpErlangBinary) ot).binaryValue(), 0);
+			} else if (ot instanceof OtpErlangTuple) {
 				final OtpErlangTuple tt = (OtpErlangTuple) ot;
 				return new ErlToken(tt);
 			}
@@ -99,6 +101,16 @@ public class ErlideScanner {
 	 */
 	public static List<ErlToken> lightScanString(final String string,
 			final int offset) throws BackendException {
+		final ErlTokenBuffer toks = lightScanBuffer(string, offset);
+		return toks == null ? null : toks.toList();
+	}
+
+	/**
+	 * Same as {@link #lightScanString(String, int)}, but the tokens are kept
+	 * in the binary form they arrive in.
+	 */
+	public static ErlTokenBuffer lightScanBuffer(final String string,
+			final int offset) throws BackendException {
 		OtpErlangObject r1 = null;
 		try {
 			r1 = ErlangCore.getBackendManager().getIdeBackend().call(
@@ -117,7 +129,6 @@ public class ErlideScanner {
 		}
 		final OtpErlangTuple t1 = (OtpErlangTuple) r1;
 
-		List<ErlToken> toks = null;
 		if (!(t1.elementAt(0) instanceof OtpErlangAtom)) {
 			throw new BackendException("Could not parse string \"" + string
 					+ "\": funny return value" + t1);
@@ -126,25 +137,18 @@ public class ErlideScanner {
 			if (t1.elementAt(1) instanceof OtpErlangList) {
 				final OtpErlangList l = (OtpErlangList) t1.elementAt(1);
 				if (l != null) {
-					toks = new ArrayList<ErlToken>(l.arity() + 1);
+					final ErlTokenBuffer toks = new ErlTokenBuffer(l.arity());
 					for (final OtpErlangObject o : l) {
 						final OtpErlangTuple t = (OtpErlangTuple) o;
 						final ErlToken tk = new ErlToken(t);
-						tk.fixOffset(offset);
-						toks.add(tk);
+						toks.add(tk.getKind(), tk.getLine(), tk.getOffset()
+								+ offset, tk.getLength());
 					}
 					return toks;
 				}
 			} else if (t1.elementAt(1) instanceof OtpErlangBinary) {
 				final OtpErlangBinary b = (OtpErlangBinary) t1.elementAt(1);
-				final byte[] bytes = b.binaryValue();
-				toks = new ArrayList<ErlToken>(bytes.length / 10);
-				for (int i = 0; i < bytes.length; i += 10) {
-					final ErlToken tk = new ErlToken(bytes, i);
-					tk.fixOffset(offset);
-					toks.add(tk);
-				}
-				return toks;
+				return new ErlTokenBuffer(b.binaryValue(), offset);
 			}
 		}
 		throw new BackendException("Could not parse string \"" + string
@@ -5,11 +5,15 @@ import java.util.Collection;
 import java.util.List;
 
 import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.erlide.core.erlang.IErlModule;
 import org.erlide.core.search.ModuleLineFunctionArityRef;
 import org.erlide.core.text.ErlangToolkit;
 import org.erlide.jinterface.backend.Backend;
 import org.erlide.jinterface.backend.util.Util;
+import org.erlide.jinterface.rpc.RpcFuture;
+import org.erlide.jinterface.rpc.RpcSignature;
 import org.erlide.jinterface.util.ErlLogger;
 
 import com.ericsson.otp.erlang.OtpErlangAtom;
@@ -23,6 +27,7 @@ import com.ericsson.otp.erlang.OtpErlangTuple;
 public class ErlideSearchServer {
 
 	private static final int SEARCH_LONG_TIMEOUT = 50000;
+	private static final RpcSignature FIND_REFS = RpcSignature.of("xxs");
 
 	private static OtpErlangList getModulesFromScope(
 			final Collection<IResource> scope) {
@@ -42,21 +47,64 @@ public class ErlideSearchServer {
 	public static List<ModuleLineFunctionArityRef> findRefs(final Backend b,
 			final ErlangSearchPattern ref, final Collection<IResource> scope,
 			final String stateDir) {
+		return findRefs(b, ref, scope, stateDir, new NullProgressMonitor());
+	}
+
+	/**
+	 * Receives the references found by a search, a batch at a time.
+	 */
+	public interface SearchResultCollector {
+		void addRefs(List<ModuleLineFunctionArityRef> refs);
+	}
+
+	/**
+	 * Find references. The search stops early if the monitor is cancelled;
+	 * what was found so far is returned.
+	 */
+	public static List<ModuleLineFunctionArityRef> findRefs(final Backend b,
+			final ErlangSearchPattern ref, final Collection<IResource> scope,
+			final String stateDir, final IProgressMonitor monitor) {
 		final List<ModuleLineFunctionArityRef> result = new ArrayList<ModuleLineFunctionArityRef>();
+		findRefs(b, ref, scope, stateDir, monitor, new SearchResultCollector() {
+			public void addRefs(final List<ModuleLineFunctionArityRef> refs) {
+				result.addAll(refs);
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Find references. The backend looks up the refs of each key of the
+	 * pattern in turn and streams them back; each batch is converted and
+	 * handed to the collector as soon as it arrives. The search stops early if
+	 * the monitor is cancelled.
+	 */
+	public static void findRefs(final Backend b, final ErlangSearchPattern ref,
+			final Collection<IResource> scope,
+			final String stateDir, final IProgressMonitor monitor,
+			final SearchResultCollector collector) {
+		RpcFuture future = null;
 		try {
 			// ErlLogger.debug("Search for " + ref.getSearchObject() + "    " +
 			// getModulesFromScope(scope));
-			final OtpErlangObject r = b
-					.call(SEARCH_LONG_TIMEOUT, "erlide_search_server",
-							"find_refs", "xxs", ref.getSearchObject(),
-							getModulesFromScope(scope), stateDir);
-			if (Util.isOk(r)) {
-				addSearchResult(result, r);
+			future = b.async_stream("erlide_search_server", "find_refs_stream",
+					FIND_REFS, ref.getSearchObject(),
+					getModulesFromScope(scope), stateDir);
+			List<OtpErlangObject> batch;
+			while (!monitor.isCanceled()
+					&& (batch = future.nextBatch(SEARCH_LONG_TIMEOUT)) != null) {
+				final List<ModuleLineFunctionArityRef> refs = new ArrayList<ModuleLineFunctionArityRef>(
+						batch.size());
+				addSearchResult(refs, batch);
+				collector.addRefs(refs);
 			}
 		} catch (final Exception e) {
 			ErlLogger.error(e); // TODO report error
+		} finally {
+			if (future != null) {
+				future.cancel();
+			}
 		}
-		return result;
 	}
 
 	public static List<ModuleLineFunctionArityRef> findRefs(final Backend b,
@@ -70,9 +118,7 @@ public class ErlideSearchServer {
 
 	private static void addSearchResult(
 			final List<ModuleLineFunctionArityRef> result,
-			final OtpErlangObject r) throws OtpErlangRangeException {
-		final OtpErlangTuple t = (OtpErlangTuple) r;
-		final OtpErlangList l = (OtpErlangList) t.elementAt(1);
+			final List<OtpErlangObject> l) throws OtpErlangRangeException {
 		for (final OtpErlangObject i : l) {
 			/*
 			 * find_data([#ref{function=F, arity=A, clause=C, data=D, offset=O,
@@ -3,12 +3,14 @@ package erlang;
 import org.erlide.core.erlang.IErlFunction;
 import org.erlide.core.erlang.IErlModule;
 import org.erlide.jinterface.util.Bindings;
-import org.erlide.jinterface.util.ErlUtils;
+import org.erlide.jinterface.util.TermPattern;
 
 import com.ericsson.otp.erlang.OtpErlangObject;
 import com.ericsson.otp.erlang.OtpErlangTuple;
 
 public class FunctionRef {
+	private static final TermPattern REF = TermPattern.of("{M:a, F:a, A:i}");
+
 	public final String module;
 	public final String function;
 	public final int arity;
@@ -25,7 +27,7 @@ public class FunctionRef {
 		if (e instanceof OtpErlangTuple) {
 			final OtpErlangTuple t = (OtpErlangTuple) e;
 			try {
-				final Bindings bb = ErlUtils.match("{M:a, F:a, A:i}", t);
+				final Bindings bb = REF.match(t);
 				final String m = bb.getAs("M", String.class);
 				final String f = bb.getAs("F", String.class);
 				final int a = bb.getAs("A", Integer.class);
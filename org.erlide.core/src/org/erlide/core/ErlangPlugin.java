@@ -30,8 +30,11 @@ import org.eclipse.core.runtime.MultiStatus;
 import org.eclipse.core.runtime.Platform;
 import org.eclipse.core.runtime.Plugin;
 import org.eclipse.core.runtime.Status;
+import org.erlide.core.builder.BuildCache;
 import org.erlide.core.erlang.ErlangCore;
+import org.erlide.core.erlang.util.DependencyIndex;
 import org.erlide.core.erlang.util.ErlideUtil;
+import org.erlide.core.erlang.util.ModelCache;
 import org.erlide.core.platform.PlatformChangeListener;
 import org.erlide.jinterface.util.ErlLogger;
 import org.erlide.runtime.backend.BackendManager;
@@ -80,6 +83,12 @@ public class ErlangPlugin extends Plugin {
 
 	private PlatformChangeListener platformListener;
 
+	private DependencyIndex dependencyIndex;
+
+	private BuildCache buildCache;
+
+	private ModelCache modelCache;
+
 	/**
 	 * The constructor.
 	 */
@@ -134,6 +143,27 @@ public class ErlangPlugin extends Plugin {
 		return resourceBundle;
 	}
 
+	/**
+	 * Returns the include dependencies of the workspace files.
+	 */
+	public DependencyIndex getDependencyIndex() {
+		return dependencyIndex;
+	}
+
+	/**
+	 * Returns the cache of compiled beam files.
+	 */
+	public BuildCache getBuildCache() {
+		return buildCache;
+	}
+
+	/**
+	 * Returns the saved parse results of the workspace modules.
+	 */
+	public ModelCache getModelCache() {
+		return modelCache;
+	}
+
 	/*
 	 * (non-Edoc) Shutdown the ErlangCore plug-in. <p> De-registers the
 	 * ErlModelManager as a resource changed listener and save participant. <p>
@@ -146,6 +176,7 @@ public class ErlangPlugin extends Plugin {
 			ResourcesPlugin.getWorkspace().removeSaveParticipant(this);
 			ErlangCore.getModelManager().shutdown();
 			platformListener.dispose();
+			dependencyIndex.dispose();
 		} finally {
 			logger = null;
 			// ensure we call super.stop as the last thing
@@ -170,6 +201,12 @@ public class ErlangPlugin extends Plugin {
 		super.start(context);
 
 		platformListener = new PlatformChangeListener();
+		dependencyIndex = new DependencyIndex(getStateLocation().append(
+				"dependencies").toFile());
+		buildCache = new BuildCache(getStateLocation().append("buildcache")
+				.toFile(), BuildCache.MAX_SIZE);
+		modelCache = new ModelCache(getStateLocation().append("modelcache")
+				.toFile());
 
 		String dev = "";
 		if (ErlideUtil.isDeveloper()) {
@@ -200,6 +237,8 @@ public class ErlangPlugin extends Plugin {
 					public void saving(final ISaveContext context1)
 							throws CoreException {
 						savePluginPreferences();
+						dependencyIndex.save();
+						modelCache.save();
 					}
 				});
 
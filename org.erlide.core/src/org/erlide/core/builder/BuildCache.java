@@ -0,0 +1,526 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Vlad Dumitrescu and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Vlad Dumitrescu
+ *******************************************************************************/
+package org.erlide.core.builder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.IPath;
+import org.erlide.core.erlang.ErlangCore;
+import org.erlide.core.erlang.util.DependencyIndex;
+import org.erlide.core.erlang.util.ErlangIncludeFile;
+import org.erlide.jinterface.backend.Backend;
+import org.erlide.jinterface.backend.util.Util;
+import org.erlide.jinterface.util.ErlLogger;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangDecodeException;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpInputStream;
+import com.ericsson.otp.erlang.OtpOutputStream;
+
+import erlang.ErlideOpen;
+
+/**
+ * Stores the results of successful compilations, keyed by the content of the
+ * source file, of the files it includes, of the parse transforms it uses and
+ * by the compiler options. When the same input is compiled again (for example
+ * after switching branches back and forth) the beam file and the compiler
+ * messages are restored from the cache instead of calling the compiler.
+ * <p>
+ * The cache is kept in a directory of the plugin state location and its size
+ * is bounded; the least recently used entries are removed first. The limit (in
+ * megabytes, 0 disables the cache) can be set with the
+ * <code>erlide.build.cache.size</code> system property.
+ */
+public final class BuildCache {
+
+	public static final long MAX_SIZE = Long.getLong(
+			"erlide.build.cache.size", 64).longValue() * 1024 * 1024;
+
+	private static final String BEAM = ".beam";
+	private static final String RESULT = ".result";
+	// change when the key computation changes
+	private static final String KEY_VERSION = "2";
+	// in the source, its headers or the compiler options; comments aren't
+	// skipped, a transform mentioned there only makes the key stricter
+	private static final Pattern PARSE_TRANSFORM = Pattern
+			.compile("\\{\\s*parse_transform\\s*,\\s*'?([^'\\s}]+)'?\\s*\\}");
+
+	private final File dir;
+	private final long maxSize;
+	// key -> size of the entry, in access order
+	private final LinkedHashMap<String, Long> entries = new LinkedHashMap<String, Long>(
+			16, 0.75f, true);
+	private long size;
+	// backend name and include_lib path -> resolved file
+	private final Map<String, String> includeLibs = new ConcurrentHashMap<String, String>();
+
+	public BuildCache(final File dir, final long maxSize) {
+		this.dir = dir;
+		this.maxSize = maxSize;
+		if (isEnabled()) {
+			dir.mkdirs();
+			load();
+		}
+	}
+
+	public boolean isEnabled() {
+		return maxSize > 0;
+	}
+
+	/**
+	 * Compute the key for compiling a source file with the given options.
+	 * Included files are looked up like the compiler does, in the including
+	 * file's directory and the project's include directories; include_lib
+	 * files also in the application directories of the backend. Parse
+	 * transforms are found among the project's sources, or else where the
+	 * backend loads them from.
+	 *
+	 * @return the key, or null if some input could not be read or found
+	 */
+	public String getKey(final IProject project, final Backend backend,
+			final IResource source, final OtpErlangList compilerOptions) {
+		if (!isEnabled() || !(source instanceof IFile)
+				|| source.getLocation() == null) {
+			return null;
+		}
+		try {
+			final MessageDigest md = MessageDigest.getInstance("SHA-1");
+			update(md, KEY_VERSION);
+			update(md, source.getFullPath().toPortableString());
+			update(md, String.valueOf(ErlangCore.getProjectProperties(project)
+					.getRuntimeVersion()));
+			update(md, compilerOptions.toString());
+			final byte[] data;
+			try {
+				data = readFile(source.getLocation().toFile());
+			} catch (final IOException e) {
+				return null;
+			}
+			md.update(data);
+			md.update((byte) 0);
+			final Set<String> transforms = new TreeSet<String>();
+			findParseTransforms(compilerOptions.toString(), transforms);
+			findParseTransforms(toText(data), transforms);
+			final Collection<IPath> includeDirs = BuilderUtils
+					.getAllIncludeDirs(project);
+			final Collection<ErlangIncludeFile> incs = ErlangCore
+					.getDependencyIndex().getIncludes((IFile) source);
+			if (!addIncludes(md, backend, includeDirs, source.getLocation()
+					.toFile().getParentFile(), incs, new HashSet<String>(),
+					transforms)) {
+				return null;
+			}
+			if (!addParseTransforms(md, project, backend, includeDirs,
+					transforms)) {
+				return null;
+			}
+			return toHex(md.digest());
+		} catch (final NoSuchAlgorithmException e) {
+			ErlLogger.warn(e);
+			return null;
+		}
+	}
+
+	/**
+	 * @return true if there is an entry for the key
+	 */
+	public synchronized boolean contains(final String key) {
+		return key != null && entries.containsKey(key);
+	}
+
+	/**
+	 * If there is an entry for the key, copy its beam file to the given
+	 * location and return the compiler result.
+	 *
+	 * @return the cached compiler result, or null if there is none
+	 */
+	public synchronized OtpErlangObject restore(final String key,
+			final File beam) {
+		if (key == null || entries.get(key) == null) {
+			return null;
+		}
+		final File cachedBeam = new File(dir, key + BEAM);
+		final File cachedResult = new File(dir, key + RESULT);
+		try {
+			final OtpErlangObject result = new OtpInputStream(
+					readFile(cachedResult)).read_any();
+			copy(cachedBeam, beam);
+			final long now = System.currentTimeMillis();
+			cachedBeam.setLastModified(now);
+			cachedResult.setLastModified(now);
+			return result;
+		} catch (final IOException e) {
+			ErlLogger.warn(e);
+		} catch (final OtpErlangDecodeException e) {
+			ErlLogger.warn(e);
+		}
+		remove(key);
+		return null;
+	}
+
+	/**
+	 * Store the beam file and the compiler result for the key.
+	 */
+	public synchronized void store(final String key, final File beam,
+			final OtpErlangObject result) {
+		if (key == null || !beam.exists()) {
+			return;
+		}
+		if (entries.get(key) != null) {
+			return;
+		}
+		final File cachedBeam = new File(dir, key + BEAM);
+		final File cachedResult = new File(dir, key + RESULT);
+		try {
+			copy(beam, cachedBeam);
+			final OutputStream out = new FileOutputStream(cachedResult);
+			try {
+				new OtpOutputStream(result).writeTo(out);
+			} finally {
+				out.close();
+			}
+		} catch (final IOException e) {
+			ErlLogger.warn(e);
+			cachedBeam.delete();
+			cachedResult.delete();
+			return;
+		}
+		final long entrySize = cachedBeam.length() + cachedResult.length();
+		entries.put(key, Long.valueOf(entrySize));
+		size += entrySize;
+		evict();
+	}
+
+	private void evict() {
+		final Iterator<Map.Entry<String, Long>> it = entries.entrySet()
+				.iterator();
+		while (size > maxSize && it.hasNext()) {
+			final Map.Entry<String, Long> e = it.next();
+			it.remove();
+			size -= e.getValue().longValue();
+			new File(dir, e.getKey() + BEAM).delete();
+			new File(dir, e.getKey() + RESULT).delete();
+		}
+	}
+
+	private void remove(final String key) {
+		final Long s = entries.remove(key);
+		if (s != null) {
+			size -= s.longValue();
+		}
+		new File(dir, key + BEAM).delete();
+		new File(dir, key + RESULT).delete();
+	}
+
+	// rebuild the LRU order from the files' modification times
+	private synchronized void load() {
+		final File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		Arrays.sort(files, new Comparator<File>() {
+			public int compare(final File o1, final File o2) {
+				final long d = o1.lastModified() - o2.lastModified();
+				return d < 0 ? -1 : d > 0 ? 1 : 0;
+			}
+		});
+		for (final File f : files) {
+			final String name = f.getName();
+			if (!name.endsWith(BEAM)) {
+				continue;
+			}
+			final String key = name.substring(0, name.length()
+					- BEAM.length());
+			final File result = new File(dir, key + RESULT);
+			if (!result.exists()) {
+				f.delete();
+				continue;
+			}
+			final long entrySize = f.length() + result.length();
+			entries.put(key, Long.valueOf(entrySize));
+			size += entrySize;
+		}
+		evict();
+	}
+
+	// hash the resolved headers, transitively, and collect the parse
+	// transforms they use; false if one isn't found
+	private boolean addIncludes(final MessageDigest md, final Backend backend,
+			final Collection<IPath> includeDirs, final File dir,
+			final Collection<ErlangIncludeFile> incs, final Set<String> seen,
+			final Set<String> transforms) {
+		for (final ErlangIncludeFile inc : incs) {
+			update(md, inc.getFilename());
+			final File f = findInclude(backend, includeDirs, dir, inc);
+			if (f == null) {
+				return false;
+			}
+			update(md, f.getPath());
+			if (!seen.add(f.getPath())) {
+				continue;
+			}
+			final byte[] data;
+			try {
+				data = readFile(f);
+			} catch (final IOException e) {
+				return false;
+			}
+			md.update(data);
+			md.update((byte) 0);
+			final String text = toText(data);
+			findParseTransforms(text, transforms);
+			if (!addIncludes(md, backend, includeDirs, f.getParentFile(),
+					DependencyIndex.readIncludes(text), seen, transforms)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// hash the parse transforms, and the headers of those that are built
+	// from source; false if one isn't found
+	private boolean addParseTransforms(final MessageDigest md,
+			final IProject project, final Backend backend,
+			final Collection<IPath> includeDirs, final Set<String> transforms) {
+		for (final String module : transforms) {
+			update(md, module);
+			final File f = findParseTransform(project, backend, module);
+			if (f == null) {
+				return false;
+			}
+			update(md, f.getPath());
+			final byte[] data;
+			try {
+				data = readFile(f);
+			} catch (final IOException e) {
+				return false;
+			}
+			md.update(data);
+			md.update((byte) 0);
+			if (f.getName().endsWith(".erl")
+					&& !addIncludes(md, backend, includeDirs, f
+							.getParentFile(), DependencyIndex
+							.readIncludes(toText(data)),
+							new HashSet<String>(), new HashSet<String>())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Find a parse transform. One from the project may be rebuilt in the same
+	 * build, so its source is used; any other is the beam file that the
+	 * backend loads.
+	 *
+	 * @return the file, or null if it can't be found
+	 */
+	private File findParseTransform(final IProject project,
+			final Backend backend, final String module) {
+		final IPath location = project.getLocation();
+		if (location != null) {
+			for (final IPath dir : ErlangCore.getProjectProperties(project)
+					.getSourceDirs()) {
+				final File f = location.append(dir).append(module + ".erl")
+						.toFile();
+				if (f.isFile()) {
+					return f;
+				}
+			}
+		}
+		if (backend == null) {
+			return null;
+		}
+		final OtpErlangObject path;
+		try {
+			path = backend.call("code", "which", "a", module);
+		} catch (final Exception e) {
+			ErlLogger.warn(e);
+			return null;
+		}
+		// non_existing, preloaded or cover_compiled
+		if (path instanceof OtpErlangAtom) {
+			return null;
+		}
+		final String name = Util.stringValue(path);
+		if (name == null || !new File(name).isFile()) {
+			return null;
+		}
+		return new File(name);
+	}
+
+	private static void findParseTransforms(final CharSequence text,
+			final Set<String> transforms) {
+		final Matcher m = PARSE_TRANSFORM.matcher(text);
+		while (m.find()) {
+			transforms.add(m.group(1));
+		}
+	}
+
+	/**
+	 * Find an included file the way epp does.
+	 *
+	 * @return the file, or null if it can't be found
+	 */
+	private File findInclude(final Backend backend,
+			final Collection<IPath> includeDirs, final File dir,
+			final ErlangIncludeFile inc) {
+		final String name = expandVariable(inc.getFilename());
+		if (name == null) {
+			return null;
+		}
+		final File file = new File(name);
+		if (file.isAbsolute()) {
+			if (file.isFile()) {
+				return file;
+			}
+		} else {
+			final File local = new File(dir, name);
+			if (local.isFile()) {
+				return local;
+			}
+			for (final IPath includeDir : includeDirs) {
+				if (includeDir == null) {
+					continue;
+				}
+				final File f = new File(includeDir.toFile(), name);
+				if (f.isFile()) {
+					return f;
+				}
+			}
+		}
+		if (inc.isSystemInclude()) {
+			final String lib = findIncludeLib(backend, name);
+			if (lib != null && new File(lib).isFile()) {
+				return new File(lib);
+			}
+		}
+		return null;
+	}
+
+	// app/include/x.hrl -> code:lib_dir(app)/include/x.hrl, per backend
+	private String findIncludeLib(final Backend backend, final String name) {
+		if (backend == null) {
+			return null;
+		}
+		final String key = backend.getName() + ":" + name;
+		String path = includeLibs.get(key);
+		if (path == null) {
+			try {
+				path = ErlideOpen.getIncludeLib(backend, name);
+			} catch (final Exception e) {
+				// unknown application
+				return null;
+			}
+			if (path == null || path.equals(name)) {
+				return null;
+			}
+			includeLibs.put(key, path);
+		}
+		return path;
+	}
+
+	// "$VAR/rest" is expanded from the environment, like epp does
+	private static String expandVariable(final String name) {
+		if (!name.startsWith("$")) {
+			return name;
+		}
+		final int slash = name.indexOf('/');
+		final String var = slash < 0 ? name.substring(1) : name.substring(1,
+				slash);
+		final String value = System.getenv(var);
+		if (value == null) {
+			return null;
+		}
+		return slash < 0 ? value : value + name.substring(slash);
+	}
+
+	private static void update(final MessageDigest md, final String s) {
+		try {
+			md.update(s.getBytes("UTF-8"));
+		} catch (final IOException e) {
+			md.update(s.getBytes());
+		}
+		md.update((byte) 0);
+	}
+
+	private static String toText(final byte[] data) {
+		try {
+			return new String(data, "ISO-8859-1");
+		} catch (final UnsupportedEncodingException e) {
+			return new String(data);
+		}
+	}
+
+	private static byte[] readFile(final File file) throws IOException {
+		final InputStream in = new FileInputStream(file);
+		try {
+			final byte[] buf = new byte[(int) file.length()];
+			int n = 0;
+			while (n < buf.length) {
+				final int r = in.read(buf, n, buf.length - n);
+				if (r < 0) {
+					throw new IOException("unexpected end of file " + file);
+				}
+				n += r;
+			}
+			return buf;
+		} finally {
+			in.close();
+		}
+	}
+
+	private static void copy(final File from, final File to)
+			throws IOException {
+		final byte[] data = readFile(from);
+		final OutputStream out = new FileOutputStream(to);
+		try {
+			out.write(data);
+		} finally {
+			out.close();
+		}
+	}
+
+	private static String toHex(final byte[] bytes) {
+		final StringBuilder b = new StringBuilder(bytes.length * 2);
+		for (final byte x : bytes) {
+			b.append(Character.forDigit((x >> 4) & 0xf, 16));
+			b.append(Character.forDigit(x & 0xf, 16));
+		}
+		return b.toString();
+	}
+
+}
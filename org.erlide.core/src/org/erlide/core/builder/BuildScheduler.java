@@ -0,0 +1,211 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Vlad Dumitrescu and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Vlad Dumitrescu
+ *******************************************************************************/
+package org.erlide.core.builder;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.IPath;
+import org.erlide.core.builder.internal.BuildNotifier;
+import org.erlide.core.erlang.ErlangCore;
+import org.erlide.jinterface.backend.Backend;
+import org.erlide.jinterface.rpc.RpcCompletionQueue;
+import org.erlide.jinterface.rpc.RpcException;
+import org.erlide.jinterface.rpc.RpcFuture;
+import org.erlide.jinterface.util.ErlLogger;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+
+/**
+ * Spreads the compilation of a set of resources over several build backends,
+ * keeping at most a fixed number of compilations running on each of them.
+ * <p>
+ * The number of build nodes and the per-node limit can be set with the
+ * <code>erlide.build.nodes</code> and <code>erlide.build.inflight</code>
+ * system properties.
+ */
+public final class BuildScheduler {
+
+	public static final int NODES = Math.max(1, Integer.getInteger(
+			"erlide.build.nodes", 1).intValue());
+	public static final int MAX_IN_FLIGHT = Math.max(1, Integer.getInteger(
+			"erlide.build.inflight",
+			Math.max(2, Runtime.getRuntime().availableProcessors()))
+			.intValue());
+
+	// how long to wait for a compile reply before checking for cancellation
+	private static final long CANCEL_CHECK_DELAY = 200;
+
+	private static final class Job {
+		final BuildResource resource;
+		final int node;
+		final String cacheKey;
+
+		Job(final BuildResource resource, final int node,
+				final String cacheKey) {
+			this.resource = resource;
+			this.node = node;
+			this.cacheKey = cacheKey;
+		}
+	}
+
+	private final IProject project;
+	private final List<Backend> backends;
+	private final int maxInFlight;
+	private final OtpErlangList compilerOptions;
+	private final int[] inFlight;
+	private final BuildCache cache = ErlangCore.getBuildCache();
+
+	public BuildScheduler(final IProject project, final List<Backend> backends,
+			final int maxInFlight, final OtpErlangList compilerOptions) {
+		if (backends.isEmpty()) {
+			throw new IllegalArgumentException("no build backends");
+		}
+		this.project = project;
+		this.backends = backends;
+		this.maxInFlight = maxInFlight;
+		this.compilerOptions = compilerOptions;
+		inFlight = new int[backends.size()];
+	}
+
+	/**
+	 * Compile the resources and process the results as they arrive. Returns
+	 * when all are done.
+	 *
+	 * @param largestFirst
+	 *            start the biggest source files first, so that they don't end
+	 *            up alone at the end of the build
+	 */
+	public void build(final Collection<BuildResource> resources,
+			final boolean largestFirst, final BuildNotifier notifier)
+			throws InterruptedException {
+		final LinkedList<BuildResource> todo = new LinkedList<BuildResource>(
+				resources);
+		if (largestFirst) {
+			sortBySize(todo);
+		}
+		final Map<RpcFuture, Job> running = new HashMap<RpcFuture, Job>();
+		final RpcCompletionQueue completed = new RpcCompletionQueue();
+		try {
+			while (!todo.isEmpty() || !running.isEmpty()) {
+				notifier.checkCancel();
+				int node;
+				while (!todo.isEmpty() && (node = getFreeNode()) >= 0) {
+					final BuildResource bres = todo.removeFirst();
+					// only erl files are cached; a yrl is compiled to an erl
+					// which is compiled separately
+					final String key = "erl".equals(bres.getResource()
+							.getFileExtension()) ? cache.getKey(project,
+							backends.get(node), bres.getResource(),
+							compilerOptions) : null;
+					// a cached result is restored by startCompile and must
+					// not be stored again
+					final boolean store = key != null && !cache.contains(key);
+					final RpcFuture f = startCompile(bres, backends.get(node),
+							key);
+					if (f != null) {
+						inFlight[node]++;
+						running.put(f, new Job(bres, node, store ? key : null));
+						completed.add(f);
+					}
+				}
+				if (running.isEmpty()) {
+					continue;
+				}
+				final RpcFuture f = completed.take(CANCEL_CHECK_DELAY);
+				if (f == null) {
+					continue;
+				}
+				final Job job = running.remove(f);
+				inFlight[job.node]--;
+				final IResource resource = job.resource.getResource();
+				OtpErlangObject r;
+				try {
+					r = f.get();
+				} catch (final RpcException e) {
+					ErlLogger.warn(e);
+					r = null;
+				}
+				if (job.cacheKey != null && isOk(r)) {
+					cache.store(job.cacheKey, BuilderUtils.getBeamFile(project,
+							job.resource), r);
+				}
+				BuilderUtils.completeCompile(project, resource, r, backends
+						.get(job.node), compilerOptions);
+				notifier.compiled(resource);
+			}
+		} finally {
+			completed.dispose();
+		}
+	}
+
+	private RpcFuture startCompile(final BuildResource bres,
+			final Backend backend, final String cacheKey) {
+		final IResource resource = bres.getResource();
+		if ("erl".equals(resource.getFileExtension())) {
+			return BuilderUtils.startCompileErl(project, bres, backend,
+					compilerOptions, false, cacheKey);
+		} else if ("yrl".equals(resource.getFileExtension())) {
+			return BuilderUtils.startCompileYrl(project, resource, backend,
+					compilerOptions);
+		}
+		ErlLogger.warn("Don't know how to compile: %s", resource.getName());
+		return null;
+	}
+
+	private static boolean isOk(final OtpErlangObject r) {
+		if (!(r instanceof OtpErlangTuple)) {
+			return false;
+		}
+		final OtpErlangTuple t = (OtpErlangTuple) r;
+		return t.arity() > 0 && t.elementAt(0) instanceof OtpErlangAtom
+				&& "ok".equals(((OtpErlangAtom) t.elementAt(0)).atomValue());
+	}
+
+	// the least loaded node that can take more work, or -1
+	private int getFreeNode() {
+		int result = -1;
+		for (int i = 0; i < inFlight.length; i++) {
+			if (inFlight[i] < maxInFlight
+					&& (result < 0 || inFlight[i] < inFlight[result])) {
+				result = i;
+			}
+		}
+		return result;
+	}
+
+	private static void sortBySize(final List<BuildResource> resources) {
+		final Map<BuildResource, Long> sizes = new HashMap<BuildResource, Long>();
+		for (final BuildResource bres : resources) {
+			final IPath location = bres.getResource().getLocation();
+			final long size = location == null ? 0 : new File(location
+					.toOSString()).length();
+			sizes.put(bres, Long.valueOf(size));
+		}
+		Collections.sort(resources, new Comparator<BuildResource>() {
+			public int compare(final BuildResource o1, final BuildResource o2) {
+				return sizes.get(o2).compareTo(sizes.get(o1));
+			}
+		});
+	}
+
+}
@@ -18,6 +18,7 @@ import java.util.Map;
 import java.util.Set;
 
 import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
 import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IPathVariableManager;
@@ -34,11 +35,7 @@ import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.Platform;
 import org.erlide.core.ErlangPlugin;
 import org.erlide.core.builder.internal.MarkerHelper;
-import org.erlide.core.erlang.ErlModelException;
 import org.erlide.core.erlang.ErlangCore;
-import org.erlide.core.erlang.IErlModule;
-import org.erlide.core.erlang.IErlModule.ModuleKind;
-import org.erlide.core.erlang.IErlProject;
 import org.erlide.core.erlang.util.ErlangIncludeFile;
 import org.erlide.core.preferences.OldErlangProjectProperties;
 import org.erlide.jinterface.backend.Backend;
@@ -158,8 +155,7 @@ public final class BuilderUtils {
 		}
 
 		private void handleHrlFile(final IResourceDelta delta,
-				final IResource resource, final IProject my_project)
-				throws ErlModelException {
+				final IResource resource, final IProject my_project) {
 			switch (delta.getKind()) {
 			case IResourceDelta.ADDED:
 			case IResourceDelta.REMOVED:
@@ -424,27 +420,15 @@ public final class BuilderUtils {
 	}
 
 	static void addDependents(final IResource resource,
-			final IProject my_project, final Set<BuildResource> result)
-			throws ErlModelException {
-		final IErlProject eprj = ErlangCore.getModel().findProject(my_project);
-		if (eprj != null) {
-			final Collection<IErlModule> ms = eprj.getModules();
-			for (final IErlModule m : ms) {
-				m.getScanner();
-				final Collection<ErlangIncludeFile> incs = m.getIncludedFiles();
-				for (final ErlangIncludeFile ifile : incs) {
-					if (BuilderUtils.samePath(ifile.getFilename(),
-							resource.getName())) {
-						if (m.getModuleKind() == ModuleKind.ERL) {
-							// FIXME BuildResource
-							final BuildResource bres = new BuildResource(
-									m.getResource());
-							result.add(bres);
-						}
-						break;
-					}
-				}
-				m.disposeScanner();
+			final IProject my_project, final Set<BuildResource> result) {
+		final Set<IFile> deps = ErlangCore.getDependencyIndex()
+				.getAllDependents(my_project, resource.getName());
+		for (final IFile f : deps) {
+			if ("erl".equals(f.getFileExtension())
+					&& isInCodePath(f, my_project)) {
+				// FIXME BuildResource
+				final BuildResource bres = new BuildResource(f);
+				result.add(bres);
 			}
 		}
 	}
@@ -542,30 +526,20 @@ public final class BuilderUtils {
 	}
 
 	public static boolean shouldCompile(final IProject project,
-			final IResource source, final IResource beam)
-			throws ErlModelException {
+			final IResource source, final IResource beam) {
 		boolean shouldCompile = beam == null;
 
-		if (beam != null) {
-			final IErlProject eprj = ErlangCore.getModel().findProject(project);
-			if (eprj != null) {
-				final IErlModule m = eprj.getModule(source.getName());
-				if (m != null) {
-					m.getScanner();
-					final Collection<ErlangIncludeFile> incs = m
-							.getIncludedFiles();
-					for (final ErlangIncludeFile ifile : incs) {
-						final IResource rifile = BuilderUtils
-								.findResourceByName(project,
-										ifile.getFilename());
-						if (rifile != null
-								&& rifile.getLocalTimeStamp() > beam
-										.getLocalTimeStamp()) {
-							shouldCompile = true;
-							break;
-						}
-					}
-					m.disposeScanner();
+		if (beam != null && source instanceof IFile) {
+			final Collection<ErlangIncludeFile> incs = ErlangCore
+					.getDependencyIndex().getIncludes((IFile) source);
+			for (final ErlangIncludeFile ifile : incs) {
+				final IResource rifile = BuilderUtils.findResourceByName(
+						project, ifile.getFilenameLastPart());
+				if (rifile != null
+						&& rifile.getLocalTimeStamp() > beam
+								.getLocalTimeStamp()) {
+					shouldCompile = true;
+					break;
 				}
 			}
 		}
@@ -731,9 +705,20 @@ public final class BuilderUtils {
 	public static RpcFuture startCompileErl(final IProject project,
 			final BuildResource bres, final Backend backend,
 			final OtpErlangList compilerOptions, final boolean force) {
-		final IPath projectPath = project.getLocation();
-		final OldErlangProjectProperties prefs = ErlangCore
-				.getProjectProperties(project);
+		return startCompileErl(project, bres, backend, compilerOptions, force,
+				null);
+	}
+
+	/**
+	 * Like {@link #startCompileErl(IProject, BuildResource, Backend,
+	 * OtpErlangList, boolean)}, but if the build cache has an entry for the
+	 * given key, restore the beam from it and return a future that is already
+	 * done instead of calling the compiler.
+	 */
+	public static RpcFuture startCompileErl(final IProject project,
+			final BuildResource bres, final Backend backend,
+			final OtpErlangList compilerOptions, final boolean force,
+			final String cacheKey) {
 		final IResource res = bres.getResource();
 		final String s = res.getFileExtension();
 		if (!"erl".equals(s)) {
@@ -742,10 +727,7 @@ public final class BuilderUtils {
 
 		MarkerHelper.deleteMarkers(res);
 
-		final String outputDir = bres.getOutput() == null ? projectPath.append(
-				prefs.getOutputDir()).toString() : bres.getOutput().startsWith(
-				"/") ? bres.getOutput() : projectPath.append(bres.getOutput())
-				.toString();
+		final String outputDir = getOutputDir(project, bres);
 		ensureDirExists(outputDir);
 
 		final Collection<IPath> includeDirs = getAllIncludeDirs(project);
@@ -772,6 +754,17 @@ public final class BuilderUtils {
 
 				MarkerHelper.createTaskMarkers(project, res);
 
+				if (cacheKey != null) {
+					final OtpErlangObject cached = ErlangCore.getBuildCache()
+							.restore(cacheKey, getBeamFile(project, bres));
+					if (cached != null) {
+						if (isDebugging()) {
+							ErlLogger.debug("restored %s from build cache",
+									res.getName());
+						}
+						return new RpcFuture(cached);
+					}
+				}
 				return ErlideBuilder.compileErl(backend, res.getLocation(),
 						outputDir, includeDirs, compilerOptions);
 			} else {
@@ -783,6 +776,26 @@ public final class BuilderUtils {
 		}
 	}
 
+	private static String getOutputDir(final IProject project,
+			final BuildResource bres) {
+		final IPath projectPath = project.getLocation();
+		final OldErlangProjectProperties prefs = ErlangCore
+				.getProjectProperties(project);
+		return bres.getOutput() == null ? projectPath.append(
+				prefs.getOutputDir()).toString() : bres.getOutput().startsWith(
+				"/") ? bres.getOutput() : projectPath.append(bres.getOutput())
+				.toString();
+	}
+
+	/**
+	 * @return the beam file that compiling the resource will create
+	 */
+	static File getBeamFile(final IProject project, final BuildResource bres) {
+		final String module = bres.getResource().getFullPath()
+				.removeFileExtension().lastSegment();
+		return new File(getOutputDir(project, bres), module + ".beam");
+	}
+
 	private static IPath getBeamForErl(final IResource source) {
 		final OldErlangProjectProperties prefs = ErlangCore
 				.getProjectProperties(source.getProject());
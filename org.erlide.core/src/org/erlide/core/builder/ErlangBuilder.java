@@ -10,12 +10,9 @@
  *******************************************************************************/
 package org.erlide.core.builder;
 
-import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 
 import org.eclipse.core.resources.IFolder;
@@ -38,11 +35,9 @@ import org.erlide.core.erlang.ErlangCore;
 import org.erlide.core.preferences.OldErlangProjectProperties;
 import org.erlide.jinterface.backend.Backend;
 import org.erlide.jinterface.backend.BackendException;
-import org.erlide.jinterface.rpc.RpcFuture;
 import org.erlide.jinterface.util.ErlLogger;
 
 import com.ericsson.otp.erlang.OtpErlangList;
-import com.ericsson.otp.erlang.OtpErlangObject;
 import com.google.common.collect.Sets;
 
 public class ErlangBuilder extends IncrementalProjectBuilder {
@@ -141,67 +136,21 @@ public class ErlangBuilder extends IncrementalProjectBuilder {
 						.valueOf(n), resourcesToBuild.toString());
 			}
 			if (n > 0) {
-				final Backend backend = ErlangCore.getBackendManager()
-						.getBuildBackend(project);
-				if (backend == null) {
+				final List<Backend> backends = ErlangCore.getBackendManager()
+						.getBuildBackends(project, BuildScheduler.NODES);
+				if (backends.isEmpty()) {
 					final String message = "No backend with the required "
 							+ "version could be found. Can't build.";
 					MarkerHelper.addProblemMarker(project, null, message, 0,
 							IMarker.SEVERITY_ERROR);
 					throw new BackendException(message);
 				}
+				final Backend backend = backends.get(0);
 
 				notifier.setProgressPerCompilationUnit(1.0f / n);
-				Map<RpcFuture, IResource> results = new HashMap<RpcFuture, IResource>();
-				for (final BuildResource bres : resourcesToBuild) {
-					notifier.checkCancel();
-					IResource resource = bres.getResource();
-					// notifier.aboutToCompile(resource);
-					if ("erl".equals(resource.getFileExtension())) {
-						RpcFuture f = BuilderUtils.startCompileErl(project,
-								bres, backend, compilerOptions, false);
-						if (f != null) {
-							results.put(f, resource);
-						}
-					} else if ("yrl".equals(resource.getFileExtension())) {
-						RpcFuture f = BuilderUtils.startCompileYrl(project,
-								resource, backend, compilerOptions);
-						if (f != null) {
-							results.put(f, resource);
-						}
-					} else {
-						ErlLogger.warn("Don't know how to compile: %s",
-								resource.getName());
-					}
-				}
-
-				List<Entry<RpcFuture, IResource>> done = new ArrayList<Entry<RpcFuture, IResource>>();
-				List<Entry<RpcFuture, IResource>> waiting = new ArrayList<Entry<RpcFuture, IResource>>(
-						results.entrySet());
-
-				// TODO should use some kind of notification!
-				while (waiting.size() > 0) {
-					for (Entry<RpcFuture, IResource> result : waiting) {
-						notifier.checkCancel();
-						OtpErlangObject r;
-						try {
-							r = result.getKey().get(100);
-						} catch (Exception e) {
-							r = null;
-						}
-						if (r != null) {
-							IResource resource = result.getValue();
-
-							BuilderUtils.completeCompile(project, resource, r,
-									backend, compilerOptions);
-							notifier.compiled(resource);
-
-							done.add(result);
-						}
-					}
-					waiting.removeAll(done);
-					done.clear();
-				}
+				final BuildScheduler scheduler = new BuildScheduler(project,
+						backends, BuildScheduler.MAX_IN_FLIGHT, compilerOptions);
+				scheduler.build(resourcesToBuild, kind == FULL_BUILD, notifier);
 				BuilderUtils.refreshOutputDir(project);
 
 				try {
@@ -0,0 +1,450 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Vlad Dumitrescu and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Vlad Dumitrescu
+ *******************************************************************************/
+package org.erlide.core.erlang;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Java implementation of erlide_scanner:light_scan_string/1, used for syntax
+ * highlighting. The token kinds are the ones produced by kind_small/1 in
+ * erlide_scanner.erl, so that the result can be used wherever the binary
+ * reply of the backend was used before.
+ * <p>
+ * Differences with the Erlang scanner: offsets are counted in characters, not
+ * in bytes; input that the Erlang scanner rejects (unterminated strings and
+ * quoted atoms, bad number bases) still yields tokens; an unterminated quoted
+ * atom stops before the end of the line instead of swallowing the newline.
+ * <p>
+ * Scanning can also be done one line at a time: {@link #scanLine} takes the
+ * state at the start of the line and returns the state at its end, so that a
+ * client can rescan only the lines affected by an edit.
+ * <p>
+ * The tokens are collected in an {@link ErlTokenBuffer}; the methods
+ * returning lists of {@link ErlToken} are kept for callers that need objects.
+ */
+public final class ErlLightScanner {
+
+	/** Start of line outside any multi-line token */
+	public static final int STATE_NORMAL = 0;
+	/** Start of line inside a string literal */
+	public static final int STATE_STRING = 1;
+
+	// kind_small/1 returns the character code for one-char punctuation
+	private static final int KIND_QUESTION = '?';
+
+	private static final Set<String> RESERVED = new HashSet<String>(Arrays
+			.asList(new String[] { "after", "begin", "case", "try", "cond",
+					"catch", "andalso", "orelse", "end", "fun", "if", "let",
+					"of", "query", "receive", "when", "bnot", "not", "div",
+					"rem", "band", "and", "bor", "bxor", "bsl", "bsr", "or",
+					"xor", "spec" }));
+	private static final int MAX_RESERVED_LENGTH = 7;
+
+	private static final String[] OPERATORS = new String[] { "=:=", "=/=",
+			"<<", "<-", "<=", ">>", ">=", "->", "--", "++", "=<", "==", "/=",
+			"||", ":-", "::" };
+
+	private final CharSequence text;
+	private final int end;
+	private final int base;
+	private int pos;
+	private int line;
+	private final ErlTokenBuffer tokens = new ErlTokenBuffer(256);
+
+	private ErlLightScanner(final CharSequence text, final int base,
+			final int line) {
+		this.text = text;
+		end = text.length();
+		this.base = base;
+		this.line = line;
+		pos = 0;
+	}
+
+	/**
+	 * Scan a piece of text, the same way as
+	 * {@link erlang.ErlideScanner#lightScanString(String, int)} does.
+	 *
+	 * @param string
+	 *            the text to scan
+	 * @param offset
+	 *            added to all token offsets
+	 * @return the tokens, including whitespace and comments
+	 */
+	public static List<ErlToken> scan(final CharSequence string,
+			final int offset) {
+		return scanBuffer(string, offset).toList();
+	}
+
+	/**
+	 * Same as {@link #scan}, without creating token objects.
+	 */
+	public static ErlTokenBuffer scanBuffer(final CharSequence string,
+			final int offset) {
+		final ErlLightScanner scanner = new ErlLightScanner(string, offset, 0);
+		scanner.run(STATE_NORMAL);
+		final ErlTokenBuffer result = new ErlTokenBuffer(scanner.tokens.size());
+		scanner.fixupMacros(result);
+		return result;
+	}
+
+	/**
+	 * Scan a single line, including its delimiter.
+	 *
+	 * @param string
+	 *            the text of the line, with the line delimiter
+	 * @param state
+	 *            the state at the start of the line, one of the STATE_
+	 *            constants
+	 * @param line
+	 *            the line number to use for the tokens
+	 * @param result
+	 *            receives the tokens, with offsets relative to the line start
+	 * @return the state at the end of the line
+	 */
+	public static int scanLine(final CharSequence string, final int state,
+			final int line, final List<ErlToken> result) {
+		final ErlTokenBuffer buffer = new ErlTokenBuffer();
+		final int endState = scanLine(string, state, line, buffer);
+		result.addAll(buffer.toList());
+		return endState;
+	}
+
+	/**
+	 * Same as {@link #scanLine(CharSequence, int, int, List)}, appending to a
+	 * token buffer.
+	 */
+	public static int scanLine(final CharSequence string, final int state,
+			final int line, final ErlTokenBuffer result) {
+		final ErlLightScanner scanner = new ErlLightScanner(string, 0, line);
+		final int endState = scanner.run(state);
+		scanner.fixupMacros(result);
+		return endState;
+	}
+
+	private int run(final int state) {
+		if (state == STATE_STRING && !scanStringBody(pos, line)) {
+			return STATE_STRING;
+		}
+		while (pos < end) {
+			final char c = text.charAt(pos);
+			if (c == '\n') {
+				addToken(ErlToken.KIND_WHITESPACE, pos, 1, line);
+				pos++;
+				line++;
+			} else if (isWhite(c)) {
+				final int start = pos;
+				while (pos < end && text.charAt(pos) != '\n'
+						&& isWhite(text.charAt(pos))) {
+					pos++;
+				}
+				addToken(ErlToken.KIND_WHITESPACE, start, pos - start, line);
+			} else if (isAtomStart(c)) {
+				scanName(true);
+			} else if (isVarStart(c)) {
+				scanName(false);
+			} else if (isDigit(c)) {
+				scanNumber();
+			} else if (c == '$') {
+				scanChar();
+			} else if (c == '\'') {
+				scanQuotedAtom();
+			} else if (c == '"') {
+				final int start = pos;
+				pos++;
+				if (!scanStringBody(start, line)) {
+					return STATE_STRING;
+				}
+			} else if (c == '%') {
+				scanComment();
+			} else if (c == '.') {
+				scanDot();
+			} else {
+				scanPunctuation(c);
+			}
+		}
+		return STATE_NORMAL;
+	}
+
+	private void addToken(final int kind, final int start, final int length,
+			final int tokenLine) {
+		tokens.add(kind, tokenLine, base + start, length);
+	}
+
+	private void scanName(final boolean atom) {
+		final int start = pos;
+		pos++;
+		while (pos < end && isNameChar(text.charAt(pos))) {
+			pos++;
+		}
+		int kind = atom ? ErlToken.KIND_ATOM : ErlToken.KIND_VAR;
+		if (atom && pos - start <= MAX_RESERVED_LENGTH
+				&& RESERVED.contains(text.subSequence(start, pos).toString())) {
+			kind = ErlToken.KIND_KEYWORD;
+		}
+		addToken(kind, start, pos - start, line);
+	}
+
+	private void scanNumber() {
+		final int start = pos;
+		skipDigits();
+		if (pos < end && text.charAt(pos) == '#') {
+			final int radix = parseRadix(start, pos);
+			if (radix >= 2 && radix <= 36) {
+				pos++;
+				while (pos < end && Character.digit(text.charAt(pos), radix) >= 0
+						&& text.charAt(pos) < 128) {
+					pos++;
+				}
+			}
+			addToken(ErlToken.KIND_INTEGER, start, pos - start, line);
+		} else if (pos + 1 < end && text.charAt(pos) == '.'
+				&& isDigit(text.charAt(pos + 1))) {
+			pos++;
+			skipDigits();
+			if (pos < end
+					&& (text.charAt(pos) == 'e' || text.charAt(pos) == 'E')) {
+				pos++;
+				if (pos < end
+						&& (text.charAt(pos) == '+' || text.charAt(pos) == '-')) {
+					pos++;
+				}
+				skipDigits();
+			}
+			addToken(ErlToken.KIND_FLOAT, start, pos - start, line);
+		} else {
+			addToken(ErlToken.KIND_INTEGER, start, pos - start, line);
+		}
+	}
+
+	private void skipDigits() {
+		while (pos < end && isDigit(text.charAt(pos))) {
+			pos++;
+		}
+	}
+
+	private int parseRadix(final int start, final int stop) {
+		int result = 0;
+		for (int i = start; i < stop; i++) {
+			result = result * 10 + text.charAt(i) - '0';
+			if (result > 36) {
+				return -1;
+			}
+		}
+		return result;
+	}
+
+	private void scanChar() {
+		final int start = pos;
+		final int tokenLine = line;
+		pos++;
+		if (pos < end) {
+			if (text.charAt(pos) == '\\') {
+				pos++;
+				if (skipEscape()) {
+					// erlide_scan uses the escape position here
+					line++;
+				}
+			} else {
+				pos++;
+			}
+		}
+		// kind_small(char) is ?TOK_OTHER
+		addToken(ErlToken.KIND_OTHER, start, pos - start, tokenLine);
+	}
+
+	/**
+	 * Skip the escape sequence following a backslash.
+	 *
+	 * @return true if erlide_scan would count it as a new line
+	 */
+	private boolean skipEscape() {
+		if (pos >= end) {
+			return false;
+		}
+		final char c = text.charAt(pos);
+		if (isOctal(c)) {
+			pos++;
+			for (int i = 0; i < 2 && pos < end && isOctal(text.charAt(pos)); i++) {
+				pos++;
+			}
+			return false;
+		}
+		if (c == '^') {
+			pos++;
+			if (pos < end) {
+				pos++;
+			}
+			return false;
+		}
+		pos++;
+		return c == '\n' || c == 'n';
+	}
+
+	private void scanQuotedAtom() {
+		final int start = pos;
+		pos++;
+		while (pos < end) {
+			final char c = text.charAt(pos);
+			if (c == '\'') {
+				pos++;
+				break;
+			} else if (c == '\n') {
+				break;
+			} else if (c == '\\') {
+				pos++;
+				skipEscape();
+			} else {
+				pos++;
+			}
+		}
+		addToken(ErlToken.KIND_ATOM, start, pos - start, line);
+	}
+
+	/**
+	 * Scan the rest of a string literal. Only the line count changes on raw
+	 * newlines, escapes don't count (as in erlide_scan).
+	 *
+	 * @return false if the text ended before the closing quote
+	 */
+	private boolean scanStringBody(final int start, final int tokenLine) {
+		while (pos < end) {
+			final char c = text.charAt(pos);
+			if (c == '"') {
+				pos++;
+				addToken(ErlToken.KIND_STRING, start, pos - start, tokenLine);
+				return true;
+			} else if (c == '\n') {
+				line++;
+				pos++;
+			} else if (c == '\\') {
+				pos++;
+				skipEscape();
+			} else {
+				pos++;
+			}
+		}
+		if (pos > start) {
+			addToken(ErlToken.KIND_STRING, start, pos - start, tokenLine);
+		}
+		return false;
+	}
+
+	private void scanComment() {
+		final int start = pos;
+		while (pos < end && text.charAt(pos) != '\n'
+				&& text.charAt(pos) != '\r') {
+			pos++;
+		}
+		addToken(ErlToken.KIND_COMMENT, start, pos - start, line);
+	}
+
+	private void scanDot() {
+		final int start = pos;
+		pos++;
+		if (pos >= end || text.charAt(pos) == '%' || isWhite(text.charAt(pos))) {
+			// kind_small(dot) is ?TOK_DOT, which has the same value
+			addToken(ErlToken.KIND_ARROW, start, 1, line);
+		} else {
+			addToken('.', start, 1, line);
+		}
+	}
+
+	private void scanPunctuation(final char c) {
+		for (final String op : OPERATORS) {
+			if (lookingAt(op)) {
+				addToken(ErlToken.KIND_OTHER, pos, op.length(), line);
+				pos += op.length();
+				return;
+			}
+		}
+		final int kind = c > ErlToken.KIND_KEYWORD && c < 128 ? c
+				: ErlToken.KIND_OTHER;
+		addToken(kind, pos, 1, line);
+		pos++;
+	}
+
+	private boolean lookingAt(final String s) {
+		if (pos + s.length() > end) {
+			return false;
+		}
+		for (int i = 0; i < s.length(); i++) {
+			if (text.charAt(pos + i) != s.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Merge '?' with the following name into a macro token, like
+	 * erlide_scanner:fixup_tokens/2.
+	 */
+	private void fixupMacros(final ErlTokenBuffer result) {
+		final int n = tokens.size();
+		int i = 0;
+		while (i < n) {
+			if (tokens.getKind(i) == KIND_QUESTION && i + 1 < n) {
+				final int kind2 = tokens.getKind(i + 1);
+				if (kind2 == KIND_QUESTION && i + 2 < n) {
+					copy(i, result);
+					copy(i + 1, result);
+					copy(i + 2, result);
+					i += 3;
+					continue;
+				}
+				if ((kind2 == ErlToken.KIND_VAR || kind2 == ErlToken.KIND_ATOM)
+						&& tokens.getOffset(i + 1) == tokens.getOffset(i) + 1) {
+					result.add(ErlToken.KIND_MACRO, tokens.getLine(i), tokens
+							.getOffset(i), tokens.getLength(i + 1) + 1);
+					i += 2;
+					continue;
+				}
+			}
+			copy(i, result);
+			i++;
+		}
+	}
+
+	private void copy(final int index, final ErlTokenBuffer result) {
+		result.add(tokens.getKind(index), tokens.getLine(index), tokens
+				.getOffset(index), tokens.getLength(index));
+	}
+
+	private static boolean isWhite(final char c) {
+		return c <= ' ' || c >= '\200' && c <= '\240';
+	}
+
+	private static boolean isDigit(final char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	private static boolean isOctal(final char c) {
+		return c >= '0' && c <= '7';
+	}
+
+	private static boolean isAtomStart(final char c) {
+		return c >= 'a' && c <= 'z' || c >= '\u00df' && c <= '\u00ff'
+				&& c != '\u00f7';
+	}
+
+	private static boolean isVarStart(final char c) {
+		return c >= 'A' && c <= 'Z' || c == '_' || c >= '\u00c0'
+				&& c <= '\u00de' && c != '\u00d7';
+	}
+
+	private static boolean isNameChar(final char c) {
+		return isAtomStart(c) || isVarStart(c) || isDigit(c) || c == '@';
+	}
+
+}
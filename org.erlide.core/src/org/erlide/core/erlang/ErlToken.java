@@ -44,6 +44,14 @@ public final class ErlToken {
 
 	public static final ErlToken EOF = new ErlToken(KIND_OTHER);
 
+	public ErlToken(final int kind, final int line, final int offset,
+			final int length) {
+		this.kind = kind;
+		this.line = line;
+		this.offset = offset;
+		this.length = length;
+	}
+
 	// special for lightscanstring
 	// <<(kind_small(Kind)), L:24, O:24, G:24>>
 	public ErlToken(final byte[] bytes, final int index) {
@@ -160,6 +168,10 @@ public final class ErlToken {
 		return offset;
 	}
 
+	public int getLine() {
+		return line;
+	}
+
 	@Override
 	public String toString() {
 		return "{" + kind + ", " + line + "/" + offset + "+" + length + "}";
@@ -0,0 +1,211 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Vlad Dumitrescu and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available
+ * at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Vlad Dumitrescu
+ *******************************************************************************/
+package org.erlide.core.erlang;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A sequence of tokens kept in the packed form returned by
+ * erlide_scanner:light_scan_string/1: 10 bytes per token,
+ * <code>&lt;&lt;Kind:8, Line:24, Offset:24, Length:24&gt;&gt;</code>.
+ * <p>
+ * The accessors read a token's fields by index, so that scanning a large
+ * module doesn't create an {@link ErlToken} per token; {@link #get(int)}
+ * makes one when a client really needs it. Lines, offsets and lengths must
+ * fit in 24 bits. The tokens are expected to be in offset order, as the
+ * scanners produce them.
+ */
+public final class ErlTokenBuffer {
+
+	public static final int TOKEN_SIZE = 10;
+
+	private static final int MAX_VALUE = 0xffffff;
+
+	private byte[] bytes;
+	private int count;
+	// added to the offsets read from bytes
+	private int shift;
+
+	/**
+	 * Create an empty buffer, to be filled with {@link #add}.
+	 */
+	public ErlTokenBuffer(final int capacity) {
+		bytes = new byte[Math.max(1, capacity) * TOKEN_SIZE];
+		count = 0;
+		shift = 0;
+	}
+
+	public ErlTokenBuffer() {
+		this(16);
+	}
+
+	/**
+	 * Wrap the binary returned by the backend, without copying it.
+	 *
+	 * @param offset
+	 *            added to all token offsets
+	 */
+	public ErlTokenBuffer(final byte[] bytes, final int offset) {
+		this.bytes = bytes;
+		count = bytes.length / TOKEN_SIZE;
+		shift = offset;
+	}
+
+	public int size() {
+		return count;
+	}
+
+	public boolean isEmpty() {
+		return count == 0;
+	}
+
+	public int getKind(final int index) {
+		return 0xff & bytes[index * TOKEN_SIZE];
+	}
+
+	public int getLine(final int index) {
+		return int24(index * TOKEN_SIZE + 1);
+	}
+
+	public int getOffset(final int index) {
+		return int24(index * TOKEN_SIZE + 4) + shift;
+	}
+
+	public int getLength(final int index) {
+		return int24(index * TOKEN_SIZE + 7);
+	}
+
+	/**
+	 * @return the offset just after the token
+	 */
+	public int getEnd(final int index) {
+		return getOffset(index) + getLength(index);
+	}
+
+	/**
+	 * Find the token containing the given offset, with a binary search.
+	 *
+	 * @return its index, or -1 if the offset is not inside a token
+	 */
+	public int indexAt(final int offset) {
+		int lo = 0;
+		int hi = count - 1;
+		while (lo <= hi) {
+			final int mid = lo + hi >>> 1;
+			if (getEnd(mid) <= offset) {
+				lo = mid + 1;
+			} else if (getOffset(mid) > offset) {
+				hi = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return a new token object with the fields of the given token
+	 */
+	public ErlToken get(final int index) {
+		if (index < 0 || index >= count) {
+			throw new IndexOutOfBoundsException("token " + index + " of "
+					+ count);
+		}
+		return new ErlToken(getKind(index), getLine(index), getOffset(index),
+				getLength(index));
+	}
+
+	public List<ErlToken> toList() {
+		final List<ErlToken> result = new ArrayList<ErlToken>(count);
+		for (int i = 0; i < count; i++) {
+			result.add(get(i));
+		}
+		return result;
+	}
+
+	public void add(final int kind, final int line, final int offset,
+			final int length) {
+		ensureCapacity(count + 1);
+		put(count, kind, line, offset, length);
+		count++;
+	}
+
+	/**
+	 * Append all the tokens of another buffer.
+	 *
+	 * @param offset
+	 *            added to their offsets
+	 * @param line
+	 *            added to their line numbers
+	 */
+	public void addAll(final ErlTokenBuffer other, final int offset,
+			final int line) {
+		ensureCapacity(count + other.count);
+		for (int i = 0; i < other.count; i++) {
+			put(count++, other.getKind(i), other.getLine(i) + line, other
+					.getOffset(i)
+					+ offset, other.getLength(i));
+		}
+	}
+
+	public void clear() {
+		count = 0;
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder b = new StringBuilder("[");
+		for (int i = 0; i < count; i++) {
+			if (i > 0) {
+				b.append(", ");
+			}
+			b.append('{').append(getKind(i)).append(", ").append(getLine(i))
+					.append('/').append(getOffset(i)).append('+').append(
+							getLength(i)).append('}');
+		}
+		return b.append(']').toString();
+	}
+
+	private void put(final int index, final int kind, final int line,
+			final int offset, final int length) {
+		final int i = index * TOKEN_SIZE;
+		bytes[i] = (byte) kind;
+		putInt24(i + 1, line);
+		putInt24(i + 4, offset - shift);
+		putInt24(i + 7, length);
+	}
+
+	private void ensureCapacity(final int n) {
+		if (n * TOKEN_SIZE > bytes.length) {
+			final byte[] newBytes = new byte[Math.max(n * TOKEN_SIZE,
+					bytes.length * 2)];
+			System.arraycopy(bytes, 0, newBytes, 0, count * TOKEN_SIZE);
+			bytes = newBytes;
+		}
+	}
+
+	private int int24(final int i) {
+		return (0xff & bytes[i]) << 16 | (0xff & bytes[i + 1]) << 8 | 0xff
+				& bytes[i + 2];
+	}
+
+	private void putInt24(final int i, final int value) {
+		if (value < 0 || value > MAX_VALUE) {
+			throw new IllegalArgumentException("token field out of range: "
+					+ value);
+		}
+		bytes[i] = (byte) (value >> 16);
+		bytes[i + 1] = (byte) (value >> 8);
+		bytes[i + 2] = (byte) value;
+	}
+
+}
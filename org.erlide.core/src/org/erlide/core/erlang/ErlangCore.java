@@ -35,7 +35,9 @@ import org.eclipse.core.runtime.jobs.ISchedulingRule;
 import org.eclipse.core.runtime.preferences.DefaultScope;
 import org.eclipse.core.runtime.preferences.IEclipsePreferences;
 import org.erlide.core.ErlangPlugin;
+import org.erlide.core.builder.BuildCache;
 import org.erlide.core.erlang.internal.ErlModelManager;
+import org.erlide.core.erlang.util.DependencyIndex;
 import org.erlide.core.preferences.OldErlangProjectProperties;
 import org.erlide.jinterface.backend.RuntimeInfo;
 import org.erlide.runtime.backend.BackendManager;
@@ -82,6 +84,14 @@ public final class ErlangCore {
 		return BackendManager.getDefault();
 	}
 
+	public static final DependencyIndex getDependencyIndex() {
+		return ErlangPlugin.getDefault().getDependencyIndex();
+	}
+
+	public static final BuildCache getBuildCache() {
+		return ErlangPlugin.getDefault().getBuildCache();
+	}
+
 	public static OldErlangProjectProperties getProjectProperties(
 			final IProject project) {
 		return getModelManager().getErlangModel().getErlangProject(
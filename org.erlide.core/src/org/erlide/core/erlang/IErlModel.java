@@ -304,6 +304,10 @@ public interface IErlModel extends IErlElement, IOpenable, IParent {
 
 	IErlModule findModule(IFile file);
 
+	/**
+	 * Find a module by name, with or without extension. Uses the workspace
+	 * module index, so it doesn't walk the model once it is built.
+	 */
 	IErlModule findModule(String name);
 
 	public IErlElement innermostThat(final IErlElement el,
@@ -317,6 +321,6 @@ public interface IErlModel extends IErlElement, IOpenable, IParent {
 
 	IErlModule getModuleFor(IErlElement elem);
 
-	/** Search a module case_insensitive */
+	/** Search a module case_insensitive, see {@link #findModule(String)} */
 	IErlModule findModuleExt(String module);
 }
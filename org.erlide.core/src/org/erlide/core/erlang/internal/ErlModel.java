@@ -82,6 +82,8 @@ public class ErlModel extends Openable implements IErlModel {
 
 	private final IPathVariableChangeListener fPathVariableChangeListener;
 
+	private final ErlModuleIndex moduleIndex = new ErlModuleIndex();
+
 	/**
 	 * Constructs a new Erlang Model on the given workspace. Note that only one
 	 * instance of ErlModel handle should ever be created. One should only
@@ -508,37 +510,45 @@ public class ErlModel extends Openable implements IErlModel {
 	}
 
 	public IErlModule findModule(final String name) {
-		for (final IErlElement e : getChildren()) {
-			if (e instanceof IErlProject) {
-				final IErlProject p = (IErlProject) e;
-				try {
-					final IErlModule m = p.getModule(name);
-					if (m != null) {
-						return m;
-					}
-				} catch (final ErlModelException e1) {
-					e1.printStackTrace();
-				}
-			}
+		return findModule(name, false);
+	}
+
+	public IErlModule findModuleExt(final String name) {
+		return findModule(name, true);
+	}
+
+	ErlModuleIndex getModuleIndex() {
+		return moduleIndex;
+	}
+
+	private IErlModule findModule(final String name,
+			final boolean caseInsensitive) {
+		final IErlModule m = moduleIndex.find(name, caseInsensitive, null);
+		if (m != null || moduleIndex.isComplete()) {
+			return m;
 		}
-		return null;
+		// some containers haven't been opened yet; opening them all fills
+		// the index, and later misses don't have to walk the model again
+		final int generation = moduleIndex.getGeneration();
+		try {
+			openAll(this);
+			moduleIndex.setComplete(generation);
+		} catch (final ErlModelException e) {
+			ErlLogger.warn(e);
+		}
+		return moduleIndex.find(name, caseInsensitive, null);
 	}
 
-	public IErlModule findModuleExt(String name) {
-		for (final IErlElement e : getChildren()) {
-			if (e instanceof IErlProject) {
-				final IErlProject p = (IErlProject) e;
-				try {
-					final IErlModule m = p.getModuleExt(name);
-					if (m != null) {
-						return m;
-					}
-				} catch (final ErlModelException e1) {
-					e1.printStackTrace();
-				}
+	private static void openAll(final IParent parent)
+			throws ErlModelException {
+		if (parent instanceof IOpenable) {
+			((IOpenable) parent).open(null);
+		}
+		for (final IErlElement e : parent.getChildren()) {
+			if (e instanceof IParent && !(e instanceof IErlModule)) {
+				openAll((IParent) e);
 			}
 		}
-		return null;
 	}
 
 	public IErlProject createOtpProject(final IProject project)
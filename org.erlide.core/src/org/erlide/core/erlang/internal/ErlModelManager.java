@@ -164,6 +164,7 @@ public final class ErlModelManager implements IErlModelManager {
 	}
 
 	void remove(final IResource rsrc) {
+		erlangModel.getModuleIndex().remove(rsrc);
 		final IErlElement e = erlangModel.findElement(rsrc);
 		if (e != null) {
 			final IParent p = (IParent) e.getParent();
@@ -260,6 +261,7 @@ public final class ErlModelManager implements IErlModelManager {
 					file);
 			if (parent != null && parent instanceof IParent) {
 				((IParent) parent).addChild(module);
+				erlangModel.getModuleIndex().add(module);
 			}
 			// elements.put(key, module);
 			return module;
@@ -357,6 +359,9 @@ public final class ErlModelManager implements IErlModelManager {
 	}
 
 	class ResourceChangeListener implements IResourceChangeListener {
+		// containers were added or projects opened
+		boolean opened;
+
 		public void resourceChanged(final IResourceChangeEvent event) {
 			if (event.getType() != IResourceChangeEvent.POST_CHANGE) {
 				return;
@@ -365,6 +370,7 @@ public final class ErlModelManager implements IErlModelManager {
 			final ArrayList<IResource> added = new ArrayList<IResource>();
 			final ArrayList<IResource> changed = new ArrayList<IResource>();
 			final ArrayList<IResource> removed = new ArrayList<IResource>();
+			opened = false;
 			final IResourceDeltaVisitor visitor = new IResourceDeltaVisitor() {
 				public boolean visit(final IResourceDelta delta) {
 					if (verbose) {
@@ -388,6 +394,10 @@ public final class ErlModelManager implements IErlModelManager {
 						}
 						if (delta.getKind() == IResourceDelta.CHANGED) {
 							changed.add(resource);
+							if (erlangProject
+									&& (delta.getFlags() & IResourceDelta.OPEN) != 0) {
+								opened = true;
+							}
 						}
 						if (delta.getKind() == IResourceDelta.REMOVED) {
 							removed.add(resource);
@@ -403,6 +413,13 @@ public final class ErlModelManager implements IErlModelManager {
 			}
 			for (final IResource rsrc : added) {
 				create(rsrc);
+				if (rsrc.getType() != IResource.FILE) {
+					opened = true;
+				}
+			}
+			if (opened) {
+				// the modules in there are indexed when the model opens them
+				erlangModel.getModuleIndex().invalidate();
 			}
 			for (final IResource rsrc : changed) {
 				change(rsrc);
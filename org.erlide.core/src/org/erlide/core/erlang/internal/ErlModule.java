@@ -12,9 +12,12 @@ package org.erlide.core.erlang.internal;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IResource;
@@ -23,6 +26,7 @@ import org.eclipse.core.runtime.IProgressMonitor;
 import org.erlide.core.erlang.ErlModelException;
 import org.erlide.core.erlang.ErlScanner;
 import org.erlide.core.erlang.ErlToken;
+import org.erlide.core.erlang.ErlangCore;
 import org.erlide.core.erlang.IErlAttribute;
 import org.erlide.core.erlang.IErlComment;
 import org.erlide.core.erlang.IErlElement;
@@ -54,9 +58,18 @@ public class ErlModule extends Openable implements IErlModule {
 	private final IFile fFile;
 	private boolean parsed = false;
 	private boolean updateCaches = true;
+	// the text is the file's contents, as read when the module was created
+	private boolean textFromFile = true;
 
 	private final ModuleKind moduleKind;
 
+	// bumped when the members change, see getMemberIndex()
+	private final AtomicInteger membersStamp = new AtomicInteger();
+	private volatile MemberIndex memberIndex = null;
+	// the members by the form they were created from, with relative
+	// positions, see ErlParser.parse()
+	private Map<OtpErlangObject, List<IErlMember>> memberForms = new HashMap<OtpErlangObject, List<IErlMember>>();
+
 	protected ErlModule(final IErlElement parent, final String name,
 			final String initialText, final IFile file) {
 		super(parent, name);
@@ -77,17 +90,23 @@ public class ErlModule extends Openable implements IErlModule {
 			parsed = false;
 		}
 		final boolean initialParse = !parsed;
-		if (scanner == null) {
-			// There are two places that we make the initial scanner... this
-			// is one
-			getScanner();
+		final boolean cached = initialParse && ErlParser.parseCached(this);
+		if (cached) {
+			// no scanner is needed until the module is edited, see
+			// reconcileText
+			parsed = true;
+		} else {
+			if (scanner == null) {
+				// There are two places that we make the initial scanner...
+				// this is one
+				getScanner();
+			}
+			parsed = ErlParser.parse(this, initialParse, path, updateCaches);
 		}
-		parsed = ErlParser.parse(this, initialParse, path, updateCaches);
 		final IErlModel model = getModel();
 		if (model != null) {
 			model.notifyChange(this);
 		}
-		getScanner();
 		// update timestamp (might be IResource.NULL_STAMP if original does not
 		// exist)
 		final IResource r = getResource();
@@ -96,7 +115,10 @@ public class ErlModule extends Openable implements IErlModule {
 		} else {
 			timestamp = IResource.NULL_STAMP;
 		}
-		disposeScanner();
+		if (!cached) {
+			getScanner();
+			disposeScanner();
+		}
 		return parsed;
 	}
 
@@ -140,7 +162,12 @@ public class ErlModule extends Openable implements IErlModule {
 
 	public IErlElement getElementAt(final int position)
 			throws ErlModelException {
-		return getModel().innermostThat(this, new IErlangFirstThat() {
+		final IErlElement member = getMemberIndex().offsets.find(position);
+		if (member == null) {
+			return null;
+		}
+		// members have few children (function clauses), walk them
+		return getModel().innermostThat(member, new IErlangFirstThat() {
 			public boolean firstThat(final IErlElement e) {
 				try {
 					if (e instanceof ISourceReference) {
@@ -160,7 +187,11 @@ public class ErlModule extends Openable implements IErlModule {
 	}
 
 	public IErlElement getElementAtLine(final int lineNumber) {
-		return getModel().innermostThat(this, new IErlangFirstThat() {
+		final IErlElement member = getMemberIndex().lines.find(lineNumber);
+		if (member == null) {
+			return null;
+		}
+		return getModel().innermostThat(member, new IErlangFirstThat() {
 			public boolean firstThat(final IErlElement e) {
 				if (e instanceof ISourceReference) {
 					final ISourceReference sr = (ISourceReference) e;
@@ -174,6 +205,62 @@ public class ErlModule extends Openable implements IErlModule {
 		});
 	}
 
+	/*
+	 * The offset and line ranges of the members, rebuilt after the members
+	 * have changed. The members are changed while holding the module's lock,
+	 * so it is taken to read them; a parse builds the index when it installs
+	 * the new members, so readers seldom have to wait.
+	 */
+	private MemberIndex getMemberIndex() {
+		final MemberIndex index = memberIndex;
+		if (index != null && index.stamp == membersStamp.get()) {
+			return index;
+		}
+		return buildMemberIndex();
+	}
+
+	private synchronized MemberIndex buildMemberIndex() {
+		final int stamp = membersStamp.get();
+		final MemberIndex index = memberIndex;
+		if (index != null && index.stamp == stamp) {
+			return index;
+		}
+		final Object[] members = fChildren.toArray();
+		final MemberIndex newIndex = new MemberIndex(stamp, members.length);
+		for (final Object o : members) {
+			if (o instanceof ISourceReference) {
+				newIndex.add((ISourceReference) o);
+			}
+		}
+		memberIndex = newIndex;
+		return newIndex;
+	}
+
+	private static final class MemberIndex {
+		final int stamp;
+		final SourceRangeIndex<IErlElement> offsets;
+		final SourceRangeIndex<IErlElement> lines;
+
+		MemberIndex(final int stamp, final int size) {
+			this.stamp = stamp;
+			offsets = new SourceRangeIndex<IErlElement>(size);
+			lines = new SourceRangeIndex<IErlElement>(size);
+		}
+
+		void add(final ISourceReference member) {
+			final IErlElement e = (IErlElement) member;
+			try {
+				final ISourceRange r = member.getSourceRange();
+				if (r != null) {
+					offsets.add(e, r.getOffset(), r.getOffset() + r.getLength());
+				}
+			} catch (final ErlModelException x) {
+				ErlLogger.error(x);
+			}
+			lines.add(e, member.getLineStart(), member.getLineEnd());
+		}
+	}
+
 	public ModuleKind getModuleKind() {
 		return moduleKind;
 	}
@@ -227,13 +314,69 @@ public class ErlModule extends Openable implements IErlModule {
 		addChild(elem);
 	}
 
+	@Override
+	public synchronized void addChild(final IErlElement child) {
+		super.addChild(child);
+		membersStamp.incrementAndGet();
+	}
+
+	@Override
+	public synchronized void removeChild(final IErlElement child) {
+		super.removeChild(child);
+		membersStamp.incrementAndGet();
+	}
+
+	@Override
+	public synchronized void setChildren(
+			final Collection<? extends IErlElement> c) {
+		super.setChildren(c);
+		membersStamp.incrementAndGet();
+	}
+
+	@Override
+	public synchronized void setChildren(final IErlElement[] children) {
+		super.setChildren(children);
+		membersStamp.incrementAndGet();
+	}
+
 	public void addComment(final IErlComment c) {
 		comments.add(c);
 	}
 
-	public void removeChildren() {
+	public synchronized void removeChildren() {
 		fChildren.clear();
 		comments.clear();
+		memberForms = new HashMap<OtpErlangObject, List<IErlMember>>();
+		membersStamp.incrementAndGet();
+	}
+
+	/**
+	 * Replace the members after a parse, keeping the forms they were made
+	 * from (see {@link RelativeForm}) so that the next parse can tell which
+	 * ones changed. The comments
+	 * are dropped, the parser adds them again.
+	 */
+	synchronized void setMembers(final List<IErlElement> members,
+			final Map<OtpErlangObject, List<IErlMember>> forms) {
+		setChildren(members);
+		comments.clear();
+		memberForms = forms;
+		buildMemberIndex();
+	}
+
+	/**
+	 * @return true if the module hasn't been edited, so that its structure is
+	 *         that of the file on disk
+	 */
+	boolean isTextFromFile() {
+		return textFromFile;
+	}
+
+	/**
+	 * @return the members of the last parse, by the form they were made from
+	 */
+	Map<OtpErlangObject, List<IErlMember>> getMemberForms() {
+		return memberForms;
 	}
 
 	public synchronized long getTimestamp() {
@@ -368,6 +511,7 @@ public class ErlModule extends Openable implements IErlModule {
 		if (scanner != null) {
 			scanner.replaceText(offset, removeLength, newText);
 		}
+		textFromFile = false;
 		if (mon != null) {
 			mon.worked(1);
 		}
@@ -453,21 +597,12 @@ public class ErlModule extends Openable implements IErlModule {
 	public Set<IErlModule> getDirectDependents() throws ErlModelException {
 		final Set<IErlModule> result = new HashSet<IErlModule>();
 		final IErlProject project = getProject();
-		for (final IErlModule m : project.getModules()) {
-			ErlLogger.debug(m.toString());
-			final boolean wasOpen = m.isOpen();
-			if (!wasOpen) {
-				m.open(null);
-			}
-			final Collection<ErlangIncludeFile> incs = m.getIncludedFiles();
-			for (final ErlangIncludeFile inc : incs) {
-				if (inc.getFilename().equals(getName())) {
-					result.add(m);
-					break;
-				}
-			}
-			if (!wasOpen) {
-				m.close();
+		final Set<IFile> files = ErlangCore.getDependencyIndex()
+				.getDirectDependents(project.getProject(), getName());
+		for (final IFile f : files) {
+			final IErlModule m = ErlangCore.getModel().findModule(f);
+			if (m != null) {
+				result.add(m);
 			}
 		}
 		return result;
@@ -501,6 +636,7 @@ public class ErlModule extends Openable implements IErlModule {
 		initialText = newText;
 		parsed = false;
 		updateCaches = true;
+		textFromFile = false;
 		setStructureKnown(false);
 		try {
 			final boolean built = buildStructure(null);
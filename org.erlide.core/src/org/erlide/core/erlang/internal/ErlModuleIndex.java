@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Vlad Dumitrescu and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available
+ * at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Vlad Dumitrescu
+ *******************************************************************************/
+package org.erlide.core.erlang.internal;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.IPath;
+import org.erlide.core.erlang.IErlModule;
+import org.erlide.core.erlang.IErlProject;
+import org.erlide.core.erlang.util.ErlideUtil;
+
+/**
+ * The modules of the workspace by name, so that finding one doesn't walk the
+ * whole model. Keys are the case-folded module names; an exact lookup filters
+ * the (usually single) module under the key.
+ * <p>
+ * Modules are added when {@link ErlModelManager} creates them and removed
+ * when their resources go away. The model is built lazily, so the index only
+ * knows the modules of opened containers: a miss is only final once the model
+ * has been walked completely, see {@link #isComplete()}.
+ */
+final class ErlModuleIndex {
+
+	private final ConcurrentMap<String, List<IErlModule>> modules = new ConcurrentHashMap<String, List<IErlModule>>();
+	private boolean complete = false;
+	private int generation = 0;
+
+	/**
+	 * @return true if all modules in the workspace are indexed
+	 */
+	synchronized boolean isComplete() {
+		return complete;
+	}
+
+	/**
+	 * @return a stamp to pass to {@link #setComplete(int)} after walking the
+	 *         model
+	 */
+	synchronized int getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * The whole model was opened; unless something was added meanwhile, all
+	 * modules are indexed now.
+	 */
+	synchronized void setComplete(final int walked) {
+		complete = walked == generation;
+	}
+
+	/**
+	 * New containers were added, whose modules aren't known until they are
+	 * opened.
+	 */
+	synchronized void invalidate() {
+		generation++;
+		complete = false;
+	}
+
+	void add(final IErlModule module) {
+		final IResource resource = module.getResource();
+		if (resource == null) {
+			return;
+		}
+		final String key = key(module.getModuleName());
+		List<IErlModule> list = modules.get(key);
+		if (list == null) {
+			final List<IErlModule> newList = new CopyOnWriteArrayList<IErlModule>();
+			list = modules.putIfAbsent(key, newList);
+			if (list == null) {
+				list = newList;
+			}
+		}
+		synchronized (list) {
+			for (final IErlModule m : list) {
+				if (resource.equals(m.getResource())) {
+					list.remove(m);
+				}
+			}
+			list.add(module);
+		}
+	}
+
+	/**
+	 * Forget the modules in a removed resource: a file, or all the modules
+	 * below a folder or project.
+	 */
+	void remove(final IResource resource) {
+		if (resource.getType() == IResource.FILE) {
+			final List<IErlModule> list = modules.get(key(ErlideUtil
+					.withoutExtension(resource.getName())));
+			if (list != null) {
+				removeFrom(list, resource.getFullPath());
+			}
+			return;
+		}
+		for (final List<IErlModule> list : modules.values()) {
+			removeFrom(list, resource.getFullPath());
+		}
+	}
+
+	/**
+	 * Find a module by name, with or without extension.
+	 *
+	 * @param project
+	 *            only look in this project, or everywhere if null
+	 * @return the first matching module, or null if it isn't indexed
+	 */
+	IErlModule find(final String name, final boolean caseInsensitive,
+			final IErlProject project) {
+		final boolean hasExtension = ErlideUtil.hasExtension(name);
+		final List<IErlModule> list = modules.get(key(hasExtension ? ErlideUtil
+				.withoutExtension(name) : name));
+		if (list == null) {
+			return null;
+		}
+		for (final IErlModule m : list) {
+			final String moduleName = hasExtension ? m.getName() : m
+					.getModuleName();
+			final boolean match = caseInsensitive ? moduleName
+					.equalsIgnoreCase(name) : moduleName.equals(name);
+			if (match && (project == null || project.equals(m.getErlProject()))) {
+				final IResource r = m.getResource();
+				if (r != null && r.exists()) {
+					return m;
+				}
+			}
+		}
+		return null;
+	}
+
+	private static void removeFrom(final List<IErlModule> list,
+			final IPath path) {
+		synchronized (list) {
+			for (final IErlModule m : list) {
+				final IResource r = m.getResource();
+				if (r == null || path.isPrefixOf(r.getFullPath())) {
+					list.remove(m);
+				}
+			}
+		}
+	}
+
+	private static String key(final String name) {
+		return name.toLowerCase(Locale.ENGLISH);
+	}
+
+}
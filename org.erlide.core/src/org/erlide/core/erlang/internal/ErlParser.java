@@ -10,19 +10,33 @@
  *******************************************************************************/
 package org.erlide.core.erlang.internal;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
 import org.erlide.core.ErlangPlugin;
+import org.erlide.core.erlang.ErlElementDelta;
 import org.erlide.core.erlang.ErlangCore;
 import org.erlide.core.erlang.IErlComment;
+import org.erlide.core.erlang.IErlElement;
+import org.erlide.core.erlang.IErlElementDelta;
+import org.erlide.core.erlang.IErlFunction;
 import org.erlide.core.erlang.IErlMember;
+import org.erlide.core.erlang.IErlModelManager;
 import org.erlide.core.erlang.IErlModule;
+import org.erlide.core.erlang.util.ElementChangedEvent;
 import org.erlide.core.text.ErlangToolkit;
 import org.erlide.jinterface.backend.Backend;
 import org.erlide.jinterface.backend.ErlBackend;
 import org.erlide.jinterface.backend.util.Util;
 import org.erlide.jinterface.util.Bindings;
 import org.erlide.jinterface.util.ErlLogger;
-import org.erlide.jinterface.util.ErlUtils;
-import org.erlide.jinterface.util.ParserException;
+import org.erlide.jinterface.util.TermPattern;
 
 import com.ericsson.otp.erlang.OtpErlangAtom;
 import com.ericsson.otp.erlang.OtpErlangList;
@@ -36,6 +50,9 @@ import erlang.ErlideNoparse;
 
 public final class ErlParser {
 
+	private static final TermPattern PARSE_RESULT = TermPattern
+			.of("{ok, {_, Forms, Comments}, _}");
+
 	private ErlParser() {
 
 	}
@@ -58,6 +75,7 @@ public final class ErlParser {
 		if (b == null || module == null) {
 			return false;
 		}
+		final ErlModule mm = (ErlModule) module;
 		OtpErlangList forms = null;
 		OtpErlangList comments = null;
 		final String scannerModuleName = ErlangToolkit
@@ -72,12 +90,7 @@ public final class ErlParser {
 			res = ErlideNoparse.reparse(b, scannerModuleName);
 		}
 		if (Util.isOk(res)) {
-			Bindings bindings = null;
-			try {
-				bindings = ErlUtils.match("{ok, {_, Forms, Comments}, _}", res);
-			} catch (final ParserException e) {
-				e.printStackTrace();
-			}
+			final Bindings bindings = PARSE_RESULT.match(res);
 			if (bindings != null) {
 				forms = (OtpErlangList) bindings.get("Forms");
 				comments = (OtpErlangList) bindings.get("Comments");
@@ -88,29 +101,196 @@ public final class ErlParser {
 			ErlLogger.error("rpc error when parsing %s: %s", module.getName(),
 					res);
 		}
+		final IFile file = cachedFile(mm, initialParse);
+		if (file != null && forms != null) {
+			ErlangPlugin.getDefault().getModelCache().put(file, forms,
+					comments);
+		}
+		addMembers(mm, forms, comments, initialParse);
+		return true;
+	}
+
+	/**
+	 * Build an unedited module from the forms saved when its file was last
+	 * parsed, without asking the backend.
+	 * 
+	 * @return false if the file changed since, and has to be parsed
+	 */
+	public static boolean parseCached(final IErlModule module) {
 		final ErlModule mm = (ErlModule) module;
-		mm.removeChildren();
+		final IFile file = cachedFile(mm, true);
+		if (file == null) {
+			return false;
+		}
+		final OtpErlangTuple cached = ErlangPlugin.getDefault()
+				.getModelCache().get(file);
+		if (cached == null) {
+			return false;
+		}
+		addMembers(mm, (OtpErlangList) cached.elementAt(0),
+				(OtpErlangList) cached.elementAt(1), true);
+		return true;
+	}
+
+	private static IFile cachedFile(final ErlModule module,
+			final boolean initialParse) {
+		final IResource r = module.getResource();
+		if (initialParse && module.isTextFromFile() && r instanceof IFile) {
+			return (IFile) r;
+		}
+		return null;
+	}
+
+	private static void addMembers(final ErlModule mm,
+			final OtpErlangList forms, final OtpErlangList comments,
+			final boolean initialParse) {
 		// mm.setParseTree(forms);
 		if (forms == null) {
-			return true;
+			mm.removeChildren();
+			return;
 		}
 
+		// a form that is equal to one of the last parse, positions aside,
+		// gives back the same member (moved to the new position), so only
+		// the members of the edited forms are created anew
+		final Map<OtpErlangObject, LinkedList<IErlMember>> oldForms = new HashMap<OtpErlangObject, LinkedList<IErlMember>>();
+		for (final Map.Entry<OtpErlangObject, List<IErlMember>> e : mm
+				.getMemberForms().entrySet()) {
+			oldForms.put(e.getKey(), new LinkedList<IErlMember>(e.getValue()));
+		}
+		final Map<OtpErlangObject, List<IErlMember>> newForms = new HashMap<OtpErlangObject, List<IErlMember>>(
+				forms.arity() * 2);
+		final List<IErlElement> members = new ArrayList<IErlElement>(
+				forms.arity());
+		final List<IErlMember> added = new ArrayList<IErlMember>();
 		for (final OtpErlangObject form : forms) {
-			final IErlMember elem = create(module, (OtpErlangTuple) form);
+			final OtpErlangObject key = RelativeForm.key(form);
+			final LinkedList<IErlMember> same = oldForms.get(key);
+			IErlMember elem = null;
+			if (same != null && !same.isEmpty()) {
+				elem = same.removeFirst();
+				relocate(elem, (OtpErlangTuple) form);
+			} else {
+				elem = create(mm, (OtpErlangTuple) form);
+				if (elem != null) {
+					added.add(elem);
+				}
+			}
 			if (elem != null) {
-				mm.addMember(elem);
+				members.add(elem);
+				List<IErlMember> l = newForms.get(key);
+				if (l == null) {
+					l = new ArrayList<IErlMember>(1);
+					newForms.put(key, l);
+				}
+				l.add(elem);
 			}
 		}
+		final ErlElementDelta delta = initialParse ? null : diff(mm,
+				oldForms.values(), added);
+		mm.setMembers(members, newForms);
 		if (comments != null) {
 			for (final OtpErlangObject comment : comments) {
-				final IErlComment c = createComment(module,
+				final IErlComment c = createComment(mm,
 						(OtpErlangTuple) comment);
 				if (c != null) {
 					mm.addComment(c);
 				}
 			}
 		}
-		return true;
+		if (delta != null) {
+			final IErlModelManager manager = ErlangCore.getModelManager();
+			manager.registerModelDelta(delta);
+			manager.fire(ElementChangedEvent.POST_CHANGE);
+		}
+	}
+
+	/**
+	 * The delta of a reparse: a created member that has the same kind and
+	 * name as a dropped one is CHANGED, the others are ADDED or REMOVED.
+	 * 
+	 * @return the delta, or null if no member changed
+	 */
+	private static ErlElementDelta diff(final IErlModule module,
+			final Collection<LinkedList<IErlMember>> removed,
+			final List<IErlMember> added) {
+		final Map<String, LinkedList<IErlMember>> byName = new HashMap<String, LinkedList<IErlMember>>();
+		for (final List<IErlMember> l : removed) {
+			for (final IErlMember elem : l) {
+				final String name = memberName(elem);
+				LinkedList<IErlMember> same = byName.get(name);
+				if (same == null) {
+					same = new LinkedList<IErlMember>();
+					byName.put(name, same);
+				}
+				same.add(elem);
+			}
+		}
+		final ArrayList<ErlElementDelta> children = new ArrayList<ErlElementDelta>();
+		for (final IErlMember elem : added) {
+			final LinkedList<IErlMember> same = byName.get(memberName(elem));
+			if (same != null && !same.isEmpty()) {
+				same.removeFirst();
+				children.add(new ErlElementDelta(IErlElementDelta.CHANGED,
+						IErlElementDelta.F_CONTENT, elem));
+			} else {
+				children.add(new ErlElementDelta(IErlElementDelta.ADDED, 0,
+						elem));
+			}
+		}
+		for (final LinkedList<IErlMember> l : byName.values()) {
+			for (final IErlMember elem : l) {
+				children.add(new ErlElementDelta(IErlElementDelta.REMOVED, 0,
+						elem));
+			}
+		}
+		if (children.isEmpty()) {
+			return null;
+		}
+		return new ErlElementDelta(IErlElementDelta.CHANGED,
+				IErlElementDelta.F_CHILDREN, module, children);
+	}
+
+	private static String memberName(final IErlMember elem) {
+		final StringBuilder b = new StringBuilder();
+		b.append(elem.getKind()).append(':').append(elem.getName());
+		if (elem instanceof IErlFunction) {
+			b.append('/').append(((IErlFunction) elem).getArity());
+		}
+		return b.toString();
+	}
+
+	/**
+	 * Move a reused member (and its clauses) to the position of the form it
+	 * matched, which only differs from the old one by the shift of an edit
+	 * above it.
+	 */
+	private static void relocate(final IErlMember elem, final OtpErlangTuple el) {
+		final String type = ((OtpErlangAtom) el.elementAt(0)).atomValue();
+		if ("function".equals(type) && elem instanceof ErlFunction) {
+			final ErlFunction f = (ErlFunction) elem;
+			setPos(f, el.elementAt(1));
+			try {
+				setNamePos(f, (OtpErlangTuple) el.elementAt(7));
+			} catch (final OtpErlangRangeException e) {
+				ErlLogger.warn(e);
+			}
+			final OtpErlangList clauses = (OtpErlangList) el.elementAt(6);
+			final List<IErlElement> cls = f.getChildren();
+			for (int i = 0; i < clauses.arity() && i < cls.size(); i++) {
+				final OtpErlangTuple clause = (OtpErlangTuple) clauses
+						.elementAt(i);
+				final ErlFunctionClause cl = (ErlFunctionClause) cls.get(i);
+				setPos(cl, clause.elementAt(1));
+				try {
+					setNamePos(cl, (OtpErlangTuple) clause.elementAt(5));
+				} catch (final OtpErlangRangeException e) {
+					ErlLogger.warn(e);
+				}
+			}
+		} else if ("attribute".equals(type) && elem instanceof SourceRefElement) {
+			setPos((SourceRefElement) elem, el.elementAt(1));
+		}
 	}
 
 	/**
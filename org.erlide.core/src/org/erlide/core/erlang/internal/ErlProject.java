@@ -692,11 +692,25 @@ public class ErlProject extends Openable implements IErlProject {
 	}
 
 	public IErlModule getModule(final String name) {
-		return ErlFolder.getModule(this, name, false);
+		return getModule(name, false);
 	}
 
 	public IErlModule getModuleExt(final String name) {
-		return ErlFolder.getModule(this, name, true);
+		return getModule(name, true);
+	}
+
+	private IErlModule getModule(final String name,
+			final boolean caseInsensitive) {
+		final ErlModel model = getModel();
+		if (model == null) {
+			return ErlFolder.getModule(this, name, caseInsensitive);
+		}
+		final ErlModuleIndex index = model.getModuleIndex();
+		final IErlModule m = index.find(name, caseInsensitive, this);
+		if (m != null || index.isComplete()) {
+			return m;
+		}
+		return ErlFolder.getModule(this, name, caseInsensitive);
 	}
 
 	public boolean isSourcePathParent() {
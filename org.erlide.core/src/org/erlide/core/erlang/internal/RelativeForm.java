@@ -0,0 +1,174 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Vlad Dumitrescu and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available
+ * at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Vlad Dumitrescu
+ *******************************************************************************/
+package org.erlide.core.erlang.internal;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangException;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+
+/**
+ * A form from noparse with its positions made relative to the start of the
+ * form, so that a form that only moved (because of an edit above it) gives
+ * an equal key. Used by {@link ErlParser} to reuse the members of unchanged
+ * forms.
+ * <p>
+ * The positions are in the <code>pos</code> and <code>name_pos</code> fields
+ * of functions, clauses and attributes, and in the tokens kept in the
+ * arguments of some attributes. Other forms are their own key.
+ */
+final class RelativeForm {
+
+	private static final String TOKEN = "token";
+
+	private RelativeForm() {
+	}
+
+	static OtpErlangObject key(final OtpErlangObject form) {
+		if (!(form instanceof OtpErlangTuple)) {
+			return form;
+		}
+		final OtpErlangTuple t = (OtpErlangTuple) form;
+		if (t.arity() < 2 || !(t.elementAt(0) instanceof OtpErlangAtom)) {
+			return form;
+		}
+		final String type = ((OtpErlangAtom) t.elementAt(0)).atomValue();
+		final long[] base = base(t.elementAt(1));
+		if (base == null) {
+			return form;
+		}
+		final OtpErlangObject[] elems = t.elements();
+		if ("function".equals(type) && elems.length > 7) {
+			// -record(function, {pos, name, arity, args, head, clauses,
+			// name_pos, comment, exported}).
+			elems[1] = pos(elems[1], base);
+			elems[7] = pos(elems[7], base);
+			if (elems[6] instanceof OtpErlangList) {
+				final OtpErlangObject[] cls = ((OtpErlangList) elems[6])
+						.elements();
+				for (int i = 0; i < cls.length; i++) {
+					cls[i] = clause(cls[i], base);
+				}
+				elems[6] = new OtpErlangList(cls);
+			}
+		} else if ("attribute".equals(type) && elems.length > 3) {
+			// -record(attribute, {pos, name, args, extra}).
+			elems[1] = pos(elems[1], base);
+			elems[3] = tokens(elems[3], base);
+		} else {
+			return form;
+		}
+		return new OtpErlangTuple(elems);
+	}
+
+	/**
+	 * @return {line, offset} of a position, or null if it isn't one
+	 */
+	static long[] base(final OtpErlangObject pos) {
+		if (!(pos instanceof OtpErlangTuple)) {
+			return null;
+		}
+		final OtpErlangTuple p = (OtpErlangTuple) pos;
+		if (p.arity() != 2 || !(p.elementAt(0) instanceof OtpErlangTuple)) {
+			return null;
+		}
+		final OtpErlangTuple lo = (OtpErlangTuple) p.elementAt(0);
+		final int n = lo.arity();
+		if (n < 2 || !isLong(lo.elementAt(0)) || !isLong(lo.elementAt(n - 1))) {
+			return null;
+		}
+		return new long[] { longValue(lo.elementAt(0)),
+				longValue(lo.elementAt(n - 1)) };
+	}
+
+	// {{Line, LastLine, Offset}, Length} or {{Line, Offset}, Length}
+	private static OtpErlangObject pos(final OtpErlangObject pos,
+			final long[] base) {
+		if (base(pos) == null) {
+			return pos;
+		}
+		final OtpErlangTuple p = (OtpErlangTuple) pos;
+		final OtpErlangObject[] lo = ((OtpErlangTuple) p.elementAt(0))
+				.elements();
+		for (int i = 0; i < lo.length; i++) {
+			lo[i] = minus(lo[i], i == lo.length - 1 ? base[1] : base[0]);
+		}
+		return new OtpErlangTuple(new OtpErlangObject[] {
+				new OtpErlangTuple(lo), p.elementAt(1) });
+	}
+
+	// -record(clause, {pos, name, args, head, name_pos}).
+	private static OtpErlangObject clause(final OtpErlangObject clause,
+			final long[] base) {
+		if (!(clause instanceof OtpErlangTuple)
+				|| ((OtpErlangTuple) clause).arity() < 6) {
+			return clause;
+		}
+		final OtpErlangObject[] elems = ((OtpErlangTuple) clause).elements();
+		elems[1] = pos(elems[1], base);
+		elems[5] = pos(elems[5], base);
+		return new OtpErlangTuple(elems);
+	}
+
+	// -record(token, {kind, line, offset, length, value, text, last_line}).
+	private static OtpErlangObject tokens(final OtpErlangObject term,
+			final long[] base) {
+		if (term instanceof OtpErlangList) {
+			final OtpErlangObject[] elems = ((OtpErlangList) term).elements();
+			if (elems.length == 0) {
+				return term;
+			}
+			for (int i = 0; i < elems.length; i++) {
+				elems[i] = tokens(elems[i], base);
+			}
+			try {
+				return new OtpErlangList(elems, tokens(((OtpErlangList) term)
+						.getLastTail(), base));
+			} catch (final OtpErlangException e) {
+				return term;
+			}
+		}
+		if (!(term instanceof OtpErlangTuple)) {
+			return term;
+		}
+		final OtpErlangObject[] elems = ((OtpErlangTuple) term).elements();
+		if (elems.length == 8 && elems[0] instanceof OtpErlangAtom
+				&& TOKEN.equals(((OtpErlangAtom) elems[0]).atomValue())) {
+			elems[2] = minus(elems[2], base[0]);
+			elems[3] = minus(elems[3], base[1]);
+			elems[7] = minus(elems[7], base[0]);
+		} else {
+			for (int i = 0; i < elems.length; i++) {
+				elems[i] = tokens(elems[i], base);
+			}
+		}
+		return new OtpErlangTuple(elems);
+	}
+
+	private static OtpErlangObject minus(final OtpErlangObject o,
+			final long base) {
+		if (!isLong(o)) {
+			return o;
+		}
+		return new OtpErlangLong(longValue(o) - base);
+	}
+
+	private static boolean isLong(final OtpErlangObject o) {
+		return o instanceof OtpErlangLong && ((OtpErlangLong) o).isLong();
+	}
+
+	private static long longValue(final OtpErlangObject o) {
+		return ((OtpErlangLong) o).longValue();
+	}
+
+}
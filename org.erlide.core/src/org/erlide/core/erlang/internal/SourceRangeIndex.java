@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Vlad Dumitrescu and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available
+ * at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Vlad Dumitrescu
+ *******************************************************************************/
+package org.erlide.core.erlang.internal;
+
+/**
+ * Closed ranges <code>[start, end]</code> with an element each, answering
+ * "which element contains this position" with a binary search. Used by
+ * {@link ErlModule} for offsets and lines of its members.
+ * <p>
+ * The ranges are kept sorted by start, with the largest end seen so far, so a
+ * query looks at the ranges starting before the position and stops as soon as
+ * none of the earlier ones reaches it. When several ranges contain the
+ * position, the one added first wins, like a walk over the children would
+ * find. Elements are added in a batch; the index is not changed after the
+ * first query.
+ */
+final class SourceRangeIndex<T> {
+
+	private Object[] elements;
+	private int[] starts;
+	private int[] ends;
+	private int size = 0;
+
+	// sorted view, built on first query
+	private int[] order;
+	private int[] sortedStarts;
+	private int[] maxEnds;
+
+	SourceRangeIndex(final int capacity) {
+		final int n = Math.max(1, capacity);
+		elements = new Object[n];
+		starts = new int[n];
+		ends = new int[n];
+	}
+
+	void add(final T element, final int start, final int end) {
+		if (order != null) {
+			throw new IllegalStateException("index already in use");
+		}
+		if (size == elements.length) {
+			final int n = size * 2;
+			final Object[] e = new Object[n];
+			final int[] s = new int[n];
+			final int[] en = new int[n];
+			System.arraycopy(elements, 0, e, 0, size);
+			System.arraycopy(starts, 0, s, 0, size);
+			System.arraycopy(ends, 0, en, 0, size);
+			elements = e;
+			starts = s;
+			ends = en;
+		}
+		elements[size] = element;
+		starts[size] = start;
+		ends[size] = end;
+		size++;
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return the first added element whose range contains the position, or
+	 *         null
+	 */
+	@SuppressWarnings("unchecked")
+	T find(final int position) {
+		build();
+		// last range starting at or before the position
+		int lo = 0;
+		int hi = size - 1;
+		while (lo <= hi) {
+			final int mid = lo + hi >>> 1;
+			if (sortedStarts[mid] <= position) {
+				lo = mid + 1;
+			} else {
+				hi = mid - 1;
+			}
+		}
+		int found = -1;
+		for (int i = hi; i >= 0 && maxEnds[i] >= position; i--) {
+			final int k = order[i];
+			if (ends[k] >= position && (found < 0 || k < found)) {
+				found = k;
+			}
+		}
+		return found < 0 ? null : (T) elements[found];
+	}
+
+	private synchronized void build() {
+		if (order != null) {
+			return;
+		}
+		final int[] o = new int[size];
+		boolean sorted = true;
+		for (int i = 0; i < size; i++) {
+			o[i] = i;
+			if (i > 0 && starts[i] < starts[i - 1]) {
+				sorted = false;
+			}
+		}
+		if (!sorted) {
+			sort(o);
+		}
+		final int[] s = new int[size];
+		final int[] m = new int[size];
+		int max = Integer.MIN_VALUE;
+		for (int i = 0; i < size; i++) {
+			s[i] = starts[o[i]];
+			max = Math.max(max, ends[o[i]]);
+			m[i] = max;
+		}
+		sortedStarts = s;
+		maxEnds = m;
+		order = o;
+	}
+
+	// stable insertion sort by start; members come almost sorted
+	private void sort(final int[] o) {
+		for (int i = 1; i < o.length; i++) {
+			final int k = o[i];
+			int j = i - 1;
+			while (j >= 0 && starts[o[j]] > starts[k]) {
+				o[j + 1] = o[j];
+				j--;
+			}
+			o[j + 1] = k;
+		}
+	}
+
+}
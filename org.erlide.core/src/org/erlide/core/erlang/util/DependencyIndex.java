@@ -0,0 +1,439 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Vlad Dumitrescu and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Vlad Dumitrescu
+ *******************************************************************************/
+package org.erlide.core.erlang.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.IResourceVisitor;
+import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.erlide.jinterface.util.ErlLogger;
+
+/**
+ * Keeps track of which files include which headers, so that the modules
+ * affected by a change in a header can be found without opening every module
+ * in the project.
+ * <p>
+ * The index is kept up to date by resource deltas and saved in the plugin
+ * state location. Entries are checked against the resources' modification
+ * stamps when a project is first used after a restart, so only the files that
+ * changed meanwhile are read again.
+ */
+public final class DependencyIndex implements IResourceChangeListener {
+
+	private static final int VERSION = 1;
+
+	private static final Pattern INCLUDE = Pattern.compile(
+			"^\\s*-\\s*include(_lib)?\\s*\\(\\s*\"([^\"]*)\"\\s*\\)",
+			Pattern.MULTILINE);
+
+	private static final class Entry {
+		final long stamp;
+		final List<ErlangIncludeFile> includes;
+
+		Entry(final long stamp, final List<ErlangIncludeFile> includes) {
+			this.stamp = stamp;
+			this.includes = includes;
+		}
+	}
+
+	private final File stateFile;
+	// file full path -> its includes
+	private final Map<IPath, Entry> entries = new HashMap<IPath, Entry>();
+	// header name -> files including it
+	private final Map<String, Set<IPath>> includers = new HashMap<String, Set<IPath>>();
+	// projects whose entries have been checked against the workspace
+	private final Set<String> syncedProjects = new HashSet<String>();
+	// files changed since they were last read
+	private final Set<IPath> dirty = new HashSet<IPath>();
+
+	public DependencyIndex(final File stateFile) {
+		this.stateFile = stateFile;
+		load();
+		ResourcesPlugin.getWorkspace().addResourceChangeListener(
+				this,
+				IResourceChangeEvent.POST_CHANGE
+						| IResourceChangeEvent.PRE_CLOSE
+						| IResourceChangeEvent.PRE_DELETE);
+	}
+
+	public void dispose() {
+		ResourcesPlugin.getWorkspace().removeResourceChangeListener(this);
+	}
+
+	/**
+	 * @return the files included by an erl or hrl file
+	 */
+	public synchronized Collection<ErlangIncludeFile> getIncludes(
+			final IFile file) {
+		final IPath path = file.getFullPath();
+		Entry entry = entries.get(path);
+		if (entry == null || entry.stamp != file.getModificationStamp()
+				|| dirty.contains(path)) {
+			entry = update(file);
+		}
+		if (entry == null) {
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(entry.includes);
+	}
+
+	/**
+	 * @return the files in the project that include a header with the given
+	 *         name
+	 */
+	public synchronized Set<IFile> getDirectDependents(final IProject project,
+			final String headerName) {
+		sync(project);
+		final Set<IFile> result = new HashSet<IFile>();
+		addIncluders(project, headerName, result);
+		return result;
+	}
+
+	/**
+	 * @return the files in the project that include a header with the given
+	 *         name, directly or through other headers
+	 */
+	public synchronized Set<IFile> getAllDependents(final IProject project,
+			final String headerName) {
+		sync(project);
+		final Set<IFile> result = new HashSet<IFile>();
+		final Set<String> seen = new HashSet<String>();
+		final LinkedList<String> todo = new LinkedList<String>();
+		todo.add(headerName);
+		while (!todo.isEmpty()) {
+			final String name = todo.removeFirst();
+			if (!seen.add(key(name))) {
+				continue;
+			}
+			final Set<IFile> files = new HashSet<IFile>();
+			addIncluders(project, name, files);
+			for (final IFile f : files) {
+				if (result.add(f) && "hrl".equals(f.getFileExtension())) {
+					todo.add(f.getName());
+				}
+			}
+		}
+		return result;
+	}
+
+	private void addIncluders(final IProject project, final String headerName,
+			final Set<IFile> result) {
+		final Set<IPath> paths = includers.get(key(headerName));
+		if (paths == null) {
+			return;
+		}
+		final IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
+		for (final IPath p : paths) {
+			if (project.getFullPath().isPrefixOf(p)) {
+				result.add(root.getFile(p));
+			}
+		}
+	}
+
+	public void resourceChanged(final IResourceChangeEvent event) {
+		if (event.getType() != IResourceChangeEvent.POST_CHANGE) {
+			final IResource resource = event.getResource();
+			if (resource instanceof IProject) {
+				removeProject((IProject) resource);
+			}
+			return;
+		}
+		final IResourceDelta delta = event.getDelta();
+		if (delta == null) {
+			return;
+		}
+		try {
+			delta.accept(new IResourceDeltaVisitor() {
+				public boolean visit(final IResourceDelta d) {
+					final IResource resource = d.getResource();
+					if (resource.getType() != IResource.FILE) {
+						return true;
+					}
+					if (!isSource(resource)) {
+						return false;
+					}
+					switch (d.getKind()) {
+					case IResourceDelta.ADDED:
+						markDirty(resource.getFullPath());
+						break;
+					case IResourceDelta.CHANGED:
+						// markers and sync info don't change the includes
+						if ((d.getFlags() & (IResourceDelta.CONTENT
+								| IResourceDelta.REPLACED)) != 0) {
+							markDirty(resource.getFullPath());
+						}
+						break;
+					case IResourceDelta.REMOVED:
+						remove(resource.getFullPath());
+						break;
+					}
+					return false;
+				}
+			});
+		} catch (final CoreException e) {
+			ErlLogger.warn(e);
+		}
+	}
+
+	/**
+	 * Write the index to the state location.
+	 */
+	public synchronized void save() {
+		try {
+			final DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(stateFile)));
+			try {
+				out.writeInt(VERSION);
+				out.writeInt(entries.size());
+				for (final Map.Entry<IPath, Entry> e : entries.entrySet()) {
+					out.writeUTF(e.getKey().toPortableString());
+					out.writeLong(e.getValue().stamp);
+					out.writeInt(e.getValue().includes.size());
+					for (final ErlangIncludeFile inc : e.getValue().includes) {
+						out.writeBoolean(inc.isSystemInclude());
+						out.writeUTF(inc.getFilename());
+					}
+				}
+			} finally {
+				out.close();
+			}
+		} catch (final IOException e) {
+			ErlLogger.warn(e);
+		}
+	}
+
+	private synchronized void load() {
+		if (!stateFile.exists()) {
+			return;
+		}
+		try {
+			final DataInputStream in = new DataInputStream(
+					new BufferedInputStream(new FileInputStream(stateFile)));
+			try {
+				if (in.readInt() != VERSION) {
+					return;
+				}
+				final int n = in.readInt();
+				for (int i = 0; i < n; i++) {
+					final IPath path = Path.fromPortableString(in.readUTF());
+					final long stamp = in.readLong();
+					final int m = in.readInt();
+					final List<ErlangIncludeFile> includes = new ArrayList<ErlangIncludeFile>(
+							m);
+					for (int j = 0; j < m; j++) {
+						final boolean system = in.readBoolean();
+						includes.add(new ErlangIncludeFile(system, in
+								.readUTF()));
+					}
+					put(path, new Entry(stamp, includes));
+				}
+			} finally {
+				in.close();
+			}
+		} catch (final IOException e) {
+			ErlLogger.warn(e);
+			entries.clear();
+			includers.clear();
+		}
+	}
+
+	// check the entries of a project against the workspace, the first time it
+	// is used, and read the files that changed since
+	private void sync(final IProject project) {
+		if (!syncedProjects.contains(project.getName())) {
+			final Set<IPath> found = new HashSet<IPath>();
+			try {
+				project.accept(new IResourceVisitor() {
+					public boolean visit(final IResource resource) {
+						if (resource.getType() == IResource.FILE
+								&& isSource(resource)) {
+							final IPath path = resource.getFullPath();
+							found.add(path);
+							final Entry entry = entries.get(path);
+							if (entry == null
+									|| entry.stamp != resource
+											.getModificationStamp()) {
+								dirty.add(path);
+							}
+						}
+						return true;
+					}
+				});
+			} catch (final CoreException e) {
+				ErlLogger.warn(e);
+				return;
+			}
+			final List<IPath> gone = new ArrayList<IPath>();
+			for (final IPath path : entries.keySet()) {
+				if (project.getFullPath().isPrefixOf(path)
+						&& !found.contains(path)) {
+					gone.add(path);
+				}
+			}
+			for (final IPath path : gone) {
+				remove(path);
+			}
+			syncedProjects.add(project.getName());
+		}
+		final IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
+		final List<IPath> todo = new ArrayList<IPath>();
+		for (final IPath path : dirty) {
+			if (project.getFullPath().isPrefixOf(path)) {
+				todo.add(path);
+			}
+		}
+		for (final IPath path : todo) {
+			update(root.getFile(path));
+		}
+	}
+
+	private Entry update(final IFile file) {
+		final IPath path = file.getFullPath();
+		remove(path);
+		if (!file.isAccessible()) {
+			return null;
+		}
+		final long stamp = file.getModificationStamp();
+		List<ErlangIncludeFile> includes;
+		try {
+			includes = readIncludes(file);
+		} catch (final Exception e) {
+			ErlLogger.warn(e);
+			includes = new ArrayList<ErlangIncludeFile>(0);
+		}
+		final Entry entry = new Entry(stamp, includes);
+		put(path, entry);
+		return entry;
+	}
+
+	private synchronized void markDirty(final IPath path) {
+		dirty.add(path);
+	}
+
+	private void put(final IPath path, final Entry entry) {
+		entries.put(path, entry);
+		for (final ErlangIncludeFile inc : entry.includes) {
+			final String k = key(inc.getFilenameLastPart());
+			Set<IPath> s = includers.get(k);
+			if (s == null) {
+				s = new HashSet<IPath>();
+				includers.put(k, s);
+			}
+			s.add(path);
+		}
+	}
+
+	private synchronized void remove(final IPath path) {
+		dirty.remove(path);
+		final Entry entry = entries.remove(path);
+		if (entry == null) {
+			return;
+		}
+		for (final ErlangIncludeFile inc : entry.includes) {
+			final String k = key(inc.getFilenameLastPart());
+			final Set<IPath> s = includers.get(k);
+			if (s != null) {
+				s.remove(path);
+				if (s.isEmpty()) {
+					includers.remove(k);
+				}
+			}
+		}
+	}
+
+	private synchronized void removeProject(final IProject project) {
+		final List<IPath> paths = new ArrayList<IPath>();
+		for (final IPath path : entries.keySet()) {
+			if (project.getFullPath().isPrefixOf(path)) {
+				paths.add(path);
+			}
+		}
+		for (final IPath path : paths) {
+			remove(path);
+		}
+		syncedProjects.remove(project.getName());
+	}
+
+	private static boolean isSource(final IResource resource) {
+		final String ext = resource.getFileExtension();
+		return "erl".equals(ext) || "hrl".equals(ext);
+	}
+
+	private static String key(final String name) {
+		if (File.separatorChar == '\\') {
+			return name.toLowerCase();
+		}
+		return name;
+	}
+
+	private static List<ErlangIncludeFile> readIncludes(final IFile file)
+			throws CoreException, IOException {
+		final InputStream is = file.getContents(true);
+		final StringBuilder text = new StringBuilder();
+		try {
+			final BufferedReader reader = new BufferedReader(
+					new InputStreamReader(is, file.getCharset()));
+			final char[] buf = new char[4096];
+			int n;
+			while ((n = reader.read(buf)) > 0) {
+				text.append(buf, 0, n);
+			}
+		} finally {
+			is.close();
+		}
+		return readIncludes(text);
+	}
+
+	/**
+	 * @return the files included in a source text
+	 */
+	public static List<ErlangIncludeFile> readIncludes(final CharSequence text) {
+		final List<ErlangIncludeFile> result = new ArrayList<ErlangIncludeFile>();
+		final Matcher m = INCLUDE.matcher(text);
+		while (m.find()) {
+			result.add(new ErlangIncludeFile(m.group(1) != null, m.group(2)));
+		}
+		return result;
+	}
+
+}
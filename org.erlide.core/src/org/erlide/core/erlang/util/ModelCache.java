@@ -0,0 +1,317 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Vlad Dumitrescu and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Vlad Dumitrescu
+ *******************************************************************************/
+package org.erlide.core.erlang.util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.Path;
+import org.erlide.jinterface.util.ErlLogger;
+
+import com.ericsson.otp.erlang.OtpErlangDecodeException;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+import com.ericsson.otp.erlang.OtpExternal;
+import com.ericsson.otp.erlang.OtpInputStream;
+import com.ericsson.otp.erlang.OtpOutputStream;
+
+/**
+ * The parse results (forms and comments) of the workspace modules, kept in
+ * the plugin state location so that the model can be built after a restart
+ * without parsing every module again.
+ * <p>
+ * Entries are checked against the file's modification and local time stamps,
+ * a stale entry is ignored and replaced by the next parse. The file is mapped
+ * when loaded and only the index is read; an entry is decoded when its module
+ * is opened.
+ * <p>
+ * The cache is written alternately to two files, each with a generation
+ * number, and the newest complete one is loaded. The file in use stays mapped
+ * and is never written to, which some platforms don't allow. Entries added in
+ * a session are kept in memory up to {@link #MAX_PENDING} bytes, then the
+ * cache is saved.
+ */
+public final class ModelCache {
+
+	private static final int MAGIC = 0x45524d43; // ERMC
+	private static final int VERSION = 2;
+
+	public static final int MAX_PENDING = Integer.getInteger(
+			"org.erlide.modelcache.pending", 8 * 1024 * 1024);
+
+	private static final class Entry {
+		final long stamp;
+		final long localStamp;
+		// either in the mapped file, at offset...
+		final int offset;
+		final int length;
+		// ... or added in this session
+		final byte[] data;
+
+		Entry(final long stamp, final long localStamp, final int offset,
+				final int length, final byte[] data) {
+			this.stamp = stamp;
+			this.localStamp = localStamp;
+			this.offset = offset;
+			this.length = length;
+			this.data = data;
+		}
+	}
+
+	private static final class Snapshot {
+		final long generation;
+		final ByteBuffer buffer;
+		final Map<String, Entry> entries;
+
+		Snapshot(final long generation, final ByteBuffer buffer,
+				final Map<String, Entry> entries) {
+			this.generation = generation;
+			this.buffer = buffer;
+			this.entries = entries;
+		}
+	}
+
+	private final File[] files;
+	// file full path -> its forms
+	private Map<String, Entry> entries = new HashMap<String, Entry>();
+	private ByteBuffer mapped = null;
+	// index of the mapped file, or -1
+	private int current = -1;
+	private long generation = 0;
+	private int pending = 0;
+	private boolean changed = false;
+
+	public ModelCache(final File stateFile) {
+		files = new File[] { stateFile,
+				new File(stateFile.getPath() + ".alt") };
+		load();
+	}
+
+	/**
+	 * @return <code>{Forms, Comments}</code> as parsed when the file was last
+	 *         saved, or null if the file changed since
+	 */
+	public synchronized OtpErlangTuple get(final IFile file) {
+		final String key = file.getFullPath().toPortableString();
+		final Entry entry = entries.get(key);
+		if (entry == null || entry.stamp != file.getModificationStamp()
+				|| entry.localStamp != file.getLocalTimeStamp()) {
+			return null;
+		}
+		try {
+			final OtpInputStream in;
+			if (entry.data != null) {
+				in = new OtpInputStream(entry.data);
+			} else {
+				final ByteBuffer b = mapped.duplicate();
+				b.position(entry.offset);
+				b.limit(entry.offset + entry.length);
+				in = new OtpInputStream(b.slice(), 0);
+			}
+			return (OtpErlangTuple) in.read_any();
+		} catch (final OtpErlangDecodeException e) {
+			ErlLogger.warn(e);
+		} catch (final ClassCastException e) {
+			ErlLogger.warn(e);
+		}
+		remove(key);
+		return null;
+	}
+
+	/**
+	 * Remember the parse result of a file, as it is on disk now.
+	 */
+	public synchronized void put(final IFile file, final OtpErlangList forms,
+			final OtpErlangList comments) {
+		final long stamp = file.getModificationStamp();
+		if (stamp == IResource.NULL_STAMP) {
+			return;
+		}
+		final OtpOutputStream out = new OtpOutputStream();
+		out.write1(OtpExternal.versionTag);
+		out.write_compressed(new OtpErlangTuple(new OtpErlangObject[] {
+				forms, comments != null ? comments : new OtpErlangList() }));
+		final byte[] data = out.toByteArray();
+		final String key = file.getFullPath().toPortableString();
+		remove(key);
+		if (pending + data.length > MAX_PENDING) {
+			save();
+			if (pending + data.length > MAX_PENDING) {
+				// couldn't save, don't grow any further
+				return;
+			}
+		}
+		entries.put(key, new Entry(stamp, file.getLocalTimeStamp(), 0,
+				data.length, data));
+		pending += data.length;
+		changed = true;
+	}
+
+	/**
+	 * Write the cache to the state location, leaving out the files that don't
+	 * exist anymore, and map the written file.
+	 */
+	public synchronized void save() {
+		if (!changed) {
+			return;
+		}
+		final int target = current == 0 ? 1 : 0;
+		final IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
+		try {
+			final DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(
+							files[target])));
+			try {
+				final Map<String, Entry> live = new HashMap<String, Entry>();
+				for (final Map.Entry<String, Entry> e : entries.entrySet()) {
+					if (root.getFile(Path.fromPortableString(e.getKey()))
+							.exists()) {
+						live.put(e.getKey(), e.getValue());
+					}
+				}
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeLong(generation + 1);
+				out.writeInt(live.size());
+				final byte[] buf = new byte[8192];
+				for (final Map.Entry<String, Entry> e : live.entrySet()) {
+					final Entry entry = e.getValue();
+					final byte[] path = e.getKey().getBytes("UTF-8");
+					out.writeInt(path.length);
+					out.write(path);
+					out.writeLong(entry.stamp);
+					out.writeLong(entry.localStamp);
+					out.writeInt(entry.length);
+					if (entry.data != null) {
+						out.write(entry.data);
+					} else {
+						final ByteBuffer b = mapped.duplicate();
+						b.position(entry.offset);
+						int left = entry.length;
+						while (left > 0) {
+							final int n = Math.min(left, buf.length);
+							b.get(buf, 0, n);
+							out.write(buf, 0, n);
+							left -= n;
+						}
+					}
+				}
+			} finally {
+				out.close();
+			}
+		} catch (final IOException e) {
+			// the other file may still be mapped from an earlier save, where
+			// that prevents writing it; the entries are kept for next time
+			ErlLogger.warn(e);
+			return;
+		}
+		final Snapshot s = read(files[target]);
+		if (s == null) {
+			return;
+		}
+		use(target, s);
+	}
+
+	private synchronized void load() {
+		Snapshot best = null;
+		int index = -1;
+		for (int i = 0; i < files.length; i++) {
+			final Snapshot s = read(files[i]);
+			if (s != null && (best == null || s.generation > best.generation)) {
+				best = s;
+				index = i;
+			}
+		}
+		if (best != null) {
+			use(index, best);
+		}
+	}
+
+	private void use(final int index, final Snapshot s) {
+		entries = s.entries;
+		mapped = s.buffer;
+		generation = s.generation;
+		current = index;
+		pending = 0;
+		changed = false;
+	}
+
+	private void remove(final String key) {
+		final Entry old = entries.remove(key);
+		if (old != null) {
+			if (old.data != null) {
+				pending -= old.length;
+			}
+			changed = true;
+		}
+	}
+
+	/**
+	 * Map a cache file and read its index.
+	 *
+	 * @return null if the file doesn't exist or isn't complete
+	 */
+	private static Snapshot read(final File file) {
+		if (!file.exists()) {
+			return null;
+		}
+		try {
+			final RandomAccessFile f = new RandomAccessFile(file, "r");
+			try {
+				final FileChannel channel = f.getChannel();
+				final ByteBuffer b = channel.map(FileChannel.MapMode.READ_ONLY,
+						0, channel.size());
+				if (b.getInt() != MAGIC || b.getInt() != VERSION) {
+					return null;
+				}
+				final long generation = b.getLong();
+				final int n = b.getInt();
+				final Map<String, Entry> entries = new HashMap<String, Entry>(
+						n * 2);
+				for (int i = 0; i < n; i++) {
+					final byte[] path = new byte[b.getInt()];
+					b.get(path);
+					final long stamp = b.getLong();
+					final long localStamp = b.getLong();
+					final int length = b.getInt();
+					final int offset = b.position();
+					b.position(offset + length);
+					entries.put(new String(path, "UTF-8"), new Entry(stamp,
+							localStamp, offset, length, null));
+				}
+				return new Snapshot(generation, b, entries);
+			} finally {
+				// the mapping stays valid after the file is closed
+				f.close();
+			}
+		} catch (final IOException e) {
+			ErlLogger.warn(e);
+		} catch (final RuntimeException e) {
+			// truncated file
+			ErlLogger.warn(e);
+		}
+		return null;
+	}
+
+}
@@ -203,9 +203,53 @@ public final class BackendManager extends OtpNodeStatus implements
 			return ideBackend;
 		}
 		final String version = info.getVersion().asMajor().toString();
-		ErlideBackend b = buildBackends.get(version);
+		final ErlideBackend b = getBuildBackend(info, version);
 		if (b == null) {
-			info.setNodeName(version);
+			return null;
+		}
+		b.addProjectPath(project);
+
+		ErlLogger.info("BUILD project %s on %s", project.getName(), info);
+		return b;
+	}
+
+	/**
+	 * Return up to <code>count</code> build backends for the project's
+	 * runtime version, starting the missing ones. The first one is the same as
+	 * returned by {@link #getBuildBackend(IProject)}. Projects built on the IDE
+	 * backend get only that one.
+	 */
+	public List<Backend> getBuildBackends(final IProject project,
+			final int count) throws BackendException {
+		final List<Backend> result = Lists.newArrayList();
+		final Backend first = getBuildBackend(project);
+		if (first == null) {
+			return result;
+		}
+		result.add(first);
+		if (first == ideBackend) {
+			return result;
+		}
+		final RuntimeInfo info = ErlangCore.getProjectProperties(project)
+				.getRuntimeInfo();
+		final String version = info.getVersion().asMajor().toString();
+		for (int i = 1; i < count; i++) {
+			final ErlideBackend b = getBuildBackend(RuntimeInfo.copy(info,
+					false), version + "_" + i);
+			if (b == null) {
+				break;
+			}
+			b.addProjectPath(project);
+			result.add(b);
+		}
+		return result;
+	}
+
+	private ErlideBackend getBuildBackend(final RuntimeInfo info,
+			final String nodeName) throws BackendException {
+		ErlideBackend b = buildBackends.get(nodeName);
+		if (b == null) {
+			info.setNodeName(nodeName);
 			info.setNodeNameSuffix("_" + BackendUtils.getErlideNameTag());
 			info.setCookie("erlide");
 			info.hasConsole(false);
@@ -214,11 +258,10 @@ public final class BackendManager extends OtpNodeStatus implements
 					BackendOptions.AUTOSTART, BackendOptions.NO_CONSOLE,
 					BackendOptions.INTERNAL);
 			b = createBackend(info, options, null);
-			buildBackends.put(version, b);
+			if (b != null) {
+				buildBackends.put(nodeName, b);
+			}
 		}
-		b.addProjectPath(project);
-
-		ErlLogger.info("BUILD project %s on %s", project.getName(), info);
 		return b;
 	}
 
@@ -12,6 +12,7 @@ package org.erlide.runtime.debug;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IStatus;
@@ -50,6 +51,18 @@ public class ErlangProcess extends ErlangDebugElement implements IThread {
 	public static final String STATUS_BREAK = "break";
 	public static final String STATUS_IDLE = "idle";
 
+	/*
+	 * The process_info items are fetched together, in one round trip, and
+	 * reused for a short while, since they are usually asked for all at once.
+	 * Messages and dictionary can be large and are only fetched on request.
+	 */
+	private static final String[] INFO_ITEMS = { "registered_name",
+			"current_function", "reductions", "error_handler", "group_leader",
+			"heap_size", "links", "message_queue_len", "priority",
+			"stack_size", "last_calls", "memory", "monitored_by", "monitors",
+			"trap_exit" };
+	private static final long INFO_MAX_AGE = 500;
+
 	private final OtpErlangPid fPid;
 
 	private OtpErlangPid fCachedMetaPid = null;
@@ -66,6 +79,9 @@ public class ErlangProcess extends ErlangDebugElement implements IThread {
 	private ErlangFunctionCall fInitialCall;
 	private boolean fTracing;
 
+	private Map<String, OtpErlangObject> fInfo = null;
+	private long fInfoTime;
+
 	public ErlangProcess(final IDebugTarget target, final Backend backend,
 			final OtpErlangPid pid) {
 		super(target);
@@ -78,9 +94,17 @@ public class ErlangProcess extends ErlangDebugElement implements IThread {
 		fTracing = false;
 	}
 
+	private synchronized OtpErlangObject getInfo(final String item) {
+		final long now = System.currentTimeMillis();
+		if (fInfo == null || now - fInfoTime > INFO_MAX_AGE) {
+			fInfo = ErlideDebug.getProcessInfo(fBackend, fPid, INFO_ITEMS);
+			fInfoTime = now;
+		}
+		return fInfo.get(item);
+	}
+
 	public String getRegisteredName() {
-		final OtpErlangObject res = ErlideDebug.getProcessInfo(fBackend, fPid,
-				"registered_name");
+		final OtpErlangObject res = getInfo("registered_name");
 		if (res != null) {
 			return res.toString();
 		}
@@ -88,8 +112,7 @@ public class ErlangProcess extends ErlangDebugElement implements IThread {
 	}
 
 	public OtpErlangTuple getCurrentFunction() {
-		final OtpErlangObject res = ErlideDebug.getProcessInfo(fBackend, fPid,
-				"current_function");
+		final OtpErlangObject res = getInfo("current_function");
 		return (OtpErlangTuple) res;
 	}
 
@@ -101,8 +124,7 @@ public class ErlangProcess extends ErlangDebugElement implements IThread {
 	}
 
 	public long getReductions() {
-		final OtpErlangObject res = ErlideDebug.getProcessInfo(fBackend, fPid,
-				"reductions");
+		final OtpErlangObject res = getInfo("reductions");
 		if (res != null) {
 			return ((OtpErlangLong) res).longValue();
 		}
@@ -116,20 +138,17 @@ public class ErlangProcess extends ErlangDebugElement implements IThread {
 	}
 
 	public OtpErlangObject getErrorHandler() {
-		final OtpErlangObject res = ErlideDebug.getProcessInfo(fBackend, fPid,
-				"error_handler");
+		final OtpErlangObject res = getInfo("error_handler");
 		return res;
 	}
 
 	public OtpErlangObject getGroupLeader() {
-		final OtpErlangObject res = ErlideDebug.getProcessInfo(fBackend, fPid,
-				"group_leader");
+		final OtpErlangObject res = getInfo("group_leader");
 		return res;
 	}
 
 	public OtpErlangObject getHeapSize() {
-		final OtpErlangObject res = ErlideDebug.getProcessInfo(fBackend, fPid,
-				"heap_size");
+		final OtpErlangObject res = getInfo("heap_size");
 		return res;
 	}
 
@@ -142,14 +161,12 @@ public class ErlangProcess extends ErlangDebugElement implements IThread {
 	}
 
 	public OtpErlangObject getLinks() {
-		final OtpErlangObject res = ErlideDebug.getProcessInfo(fBackend, fPid,
-				"links");
+		final OtpErlangObject res = getInfo("links");
 		return res;
 	}
 
 	public OtpErlangObject getMessageQueueLen() {
-		final OtpErlangObject res = ErlideDebug.getProcessInfo(fBackend, fPid,
-				"message_queue_len");
+		final OtpErlangObject res = getInfo("message_queue_len");
 		return res;
 	}
 
@@ -160,14 +177,12 @@ public class ErlangProcess extends ErlangDebugElement implements IThread {
 	}
 
 	public OtpErlangObject getErlPriority() {
-		final OtpErlangObject res = ErlideDebug.getProcessInfo(fBackend, fPid,
-				"priority");
+		final OtpErlangObject res = getInfo("priority");
 		return res;
 	}
 
 	public OtpErlangObject getStackSize() {
-		final OtpErlangObject res = ErlideDebug.getProcessInfo(fBackend, fPid,
-				"stack_size");
+		final OtpErlangObject res = getInfo("stack_size");
 		return res;
 	}
 
@@ -186,11 +201,13 @@ public class ErlangProcess extends ErlangDebugElement implements IThread {
 
 	public void setStatus(final String status) {
 		fStatus = status;
+		synchronized (this) {
+			fInfo = null;
+		}
 	}
 
 	public boolean getTrapExit() {
-		final OtpErlangAtom res = (OtpErlangAtom) ErlideDebug.getProcessInfo(
-				fBackend, fPid, "trap_exit");
+		final OtpErlangAtom res = (OtpErlangAtom) getInfo("trap_exit");
 		return "true".equals(res.atomValue());
 	}
 
@@ -271,26 +288,22 @@ public class ErlangProcess extends ErlangDebugElement implements IThread {
 	}
 
 	public OtpErlangObject getLastCalls() {
-		final OtpErlangObject res = ErlideDebug.getProcessInfo(fBackend, fPid,
-				"last_calls");
+		final OtpErlangObject res = getInfo("last_calls");
 		return res;
 	}
 
 	public OtpErlangObject getMemory() {
-		final OtpErlangObject res = ErlideDebug.getProcessInfo(fBackend, fPid,
-				"memory");
+		final OtpErlangObject res = getInfo("memory");
 		return res;
 	}
 
 	public OtpErlangObject getMonitoredBy() {
-		final OtpErlangObject res = ErlideDebug.getProcessInfo(fBackend, fPid,
-				"monitored_by");
+		final OtpErlangObject res = getInfo("monitored_by");
 		return res;
 	}
 
 	public OtpErlangObject getMonitors() {
-		final OtpErlangObject res = ErlideDebug.getProcessInfo(fBackend, fPid,
-				"monitors");
+		final OtpErlangObject res = getInfo("monitors");
 		return res;
 	}
 
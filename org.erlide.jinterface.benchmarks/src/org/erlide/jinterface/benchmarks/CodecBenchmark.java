@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Vlad Dumitrescu and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available
+ * at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Vlad Dumitrescu
+ *******************************************************************************/
+package org.erlide.jinterface.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ericsson.otp.erlang.OtpErlangDecodeException;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpInputStream;
+import com.ericsson.otp.erlang.OtpOutputStream;
+
+/**
+ * Encoding and decoding of the terms erlide exchanges most with the backend.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+	@Param( { "tokens", "forms", "search" })
+	public String payload;
+
+	@Param( { "100", "2000" })
+	public int size;
+
+	private OtpErlangObject term;
+	private byte[] encoded;
+	private final OtpOutputStream out = new OtpOutputStream();
+
+	@Setup
+	public void setup() {
+		term = Payloads.get(payload, size);
+		encoded = new OtpOutputStream(term).toByteArray();
+	}
+
+	@Benchmark
+	public byte[] encode() {
+		return new OtpOutputStream(term).toByteArray();
+	}
+
+	/**
+	 * Encoding into a reused buffer, as the connections do.
+	 */
+	@Benchmark
+	public int encodeReused() {
+		out.reset();
+		out.write_any(term);
+		return out.size();
+	}
+
+	@Benchmark
+	public OtpErlangObject decode() throws OtpErlangDecodeException {
+		return new OtpInputStream(encoded).read_any();
+	}
+
+	@Benchmark
+	public OtpErlangObject decodeStrings() throws OtpErlangDecodeException {
+		return new OtpInputStream(encoded,
+				OtpInputStream.DECODE_INT_LISTS_AS_STRINGS).read_any();
+	}
+
+}
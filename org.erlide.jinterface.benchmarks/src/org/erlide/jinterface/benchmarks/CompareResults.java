@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Vlad Dumitrescu and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available
+ * at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Vlad Dumitrescu
+ *******************************************************************************/
+package org.erlide.jinterface.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares two JMH result files in CSV format (<code>-rf csv</code>) and
+ * reports the benchmarks that got worse by more than a threshold, taking the
+ * direction of each mode into account. Exits with 1 if there was any
+ * regression.
+ * 
+ * <pre>
+ * CompareResults base.csv current.csv [threshold percent, default 10]
+ * </pre>
+ */
+public final class CompareResults {
+
+	static final class Result {
+		final String mode;
+		final double score;
+		final String unit;
+
+		Result(final String mode, final double score, final String unit) {
+			this.mode = mode;
+			this.score = score;
+			this.unit = unit;
+		}
+
+		// throughput modes are better when higher
+		boolean higherIsBetter() {
+			return "thrpt".equals(mode);
+		}
+	}
+
+	public static void main(final String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("usage: CompareResults base.csv current.csv"
+					+ " [threshold%]");
+			System.exit(2);
+		}
+		final double threshold = args.length > 2 ? Double
+				.parseDouble(args[2]) : 10;
+		final Map<String, Result> base = read(args[0]);
+		final Map<String, Result> current = read(args[1]);
+		int regressions = 0;
+		for (final Map.Entry<String, Result> e : current.entrySet()) {
+			final Result now = e.getValue();
+			final Result before = base.get(e.getKey());
+			if (before == null || before.score == 0) {
+				System.out.printf("  new    %-60s %12.3f %s%n", e.getKey(),
+						now.score, now.unit);
+				continue;
+			}
+			double change = (now.score - before.score) / before.score * 100;
+			if (now.higherIsBetter()) {
+				change = -change;
+			}
+			final boolean worse = change > threshold;
+			if (worse) {
+				regressions++;
+			}
+			System.out.printf("%s %+6.1f%% %-60s %12.3f -> %12.3f %s%n",
+					worse ? "!" : " ", change, e.getKey(), before.score,
+					now.score, now.unit);
+		}
+		System.out.printf("%d regression(s) over %.1f%%%n", regressions,
+				threshold);
+		System.exit(regressions == 0 ? 0 : 1);
+	}
+
+	static Map<String, Result> read(final String file) throws IOException {
+		final Map<String, Result> result = new LinkedHashMap<String, Result>();
+		final BufferedReader in = new BufferedReader(new FileReader(file));
+		try {
+			final List<String> header = split(in.readLine());
+			final int mode = header.indexOf("Mode");
+			final int threads = header.indexOf("Threads");
+			final int score = header.indexOf("Score");
+			final int unit = header.indexOf("Unit");
+			String line;
+			while ((line = in.readLine()) != null) {
+				final List<String> row = split(line);
+				if (row.size() < header.size()) {
+					continue;
+				}
+				final StringBuilder key = new StringBuilder(row.get(0));
+				for (int i = 0; i < header.size(); i++) {
+					if (header.get(i).startsWith("Param: ")
+							&& row.get(i).length() > 0) {
+						key.append(' ').append(header.get(i).substring(7))
+								.append('=').append(row.get(i));
+					}
+				}
+				key.append(" (").append(row.get(mode)).append(", ").append(
+						row.get(threads)).append(")");
+				result.put(key.toString(), new Result(row.get(mode), Double
+						.parseDouble(row.get(score).replace(',', '.')), row
+						.get(unit)));
+			}
+		} finally {
+			in.close();
+		}
+		return result;
+	}
+
+	// a CSV line, fields may be quoted
+	static List<String> split(final String line) {
+		final List<String> result = new ArrayList<String>();
+		if (line == null) {
+			return result;
+		}
+		final StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < line.length(); i++) {
+			final char c = line.charAt(i);
+			if (c == '"') {
+				if (quoted && i + 1 < line.length()
+						&& line.charAt(i + 1) == '"') {
+					field.append(c);
+					i++;
+				} else {
+					quoted = !quoted;
+				}
+			} else if (c == ',' && !quoted) {
+				result.add(field.toString());
+				field.setLength(0);
+			} else {
+				field.append(c);
+			}
+		}
+		result.add(field.toString());
+		return result;
+	}
+
+	private CompareResults() {
+	}
+}
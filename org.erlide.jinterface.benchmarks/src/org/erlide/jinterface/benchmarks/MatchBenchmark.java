@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Vlad Dumitrescu and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available
+ * at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Vlad Dumitrescu
+ *******************************************************************************/
+package org.erlide.jinterface.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.erlide.jinterface.util.Bindings;
+import org.erlide.jinterface.util.ErlUtils;
+import org.erlide.jinterface.util.ParserException;
+import org.erlide.jinterface.util.TermPattern;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangObject;
+
+/**
+ * Matching parse results, as ErlParser does: the whole result once, then
+ * every form.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatchBenchmark {
+
+	private static final String RESULT = "{ok, {_, Forms, Comments}, _}";
+	private static final String FUNCTION = "{function, _, Name:a, Arity:i, _, _, Clauses:l, _, _, Exported:a}";
+	private static final TermPattern RESULT_PATTERN = TermPattern.of(RESULT);
+	private static final TermPattern FUNCTION_PATTERN = TermPattern
+			.of(FUNCTION);
+
+	@Param( { "50", "500" })
+	public int functions;
+
+	private OtpErlangObject result;
+	private OtpErlangList forms;
+	private OtpErlangObject[] slots;
+
+	@Setup
+	public void setup() {
+		result = Payloads.parseResult(functions);
+		forms = Payloads.forms(result);
+		slots = new OtpErlangObject[FUNCTION_PATTERN.getSlotCount()];
+	}
+
+	@Benchmark
+	public Bindings result() throws ParserException {
+		return ErlUtils.match(RESULT, result);
+	}
+
+	@Benchmark
+	public Bindings resultPrecompiled() {
+		return RESULT_PATTERN.match(result);
+	}
+
+	@Benchmark
+	public void forms(final Blackhole bh) throws ParserException {
+		for (final OtpErlangObject form : forms) {
+			bh.consume(ErlUtils.match(FUNCTION, form));
+		}
+	}
+
+	@Benchmark
+	public void formsPrecompiled(final Blackhole bh) {
+		for (final OtpErlangObject form : forms) {
+			bh.consume(FUNCTION_PATTERN.match(form, slots));
+		}
+	}
+
+}
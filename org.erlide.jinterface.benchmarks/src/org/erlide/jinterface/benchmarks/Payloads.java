@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Vlad Dumitrescu and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available
+ * at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Vlad Dumitrescu
+ *******************************************************************************/
+package org.erlide.jinterface.benchmarks;
+
+import java.util.Random;
+
+import com.ericsson.otp.erlang.OtpErlang;
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangBinary;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangString;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+
+/**
+ * Terms shaped like what the backend sends erlide, built with a fixed seed so
+ * that every run sees the same data.
+ */
+public final class Payloads {
+
+	private static final String[] WORDS = { "handle_call", "init", "state",
+			"reply", "noreply", "ok", "error", "undefined", "lists", "proplists",
+			"get_value", "format", "io_lib", "module", "export", "record" };
+
+	/**
+	 * <code>{ok, Binary}</code> from erlide_scanner, 10 bytes per token.
+	 */
+	public static OtpErlangObject tokens(final int count) {
+		final Random r = new Random(count);
+		final byte[] bytes = new byte[count * 10];
+		r.nextBytes(bytes);
+		return OtpErlang.mkTuple(new OtpErlangAtom("ok"), new OtpErlangBinary(
+				bytes));
+	}
+
+	/**
+	 * <code>{ok, {Model, Forms, Comments}, Refs}</code> from erlide_noparse,
+	 * with function forms as in
+	 * <code>-record(function, {pos, name, arity, args, head, clauses, name_pos, comment, exported})</code>
+	 * .
+	 */
+	public static OtpErlangObject parseResult(final int functions) {
+		final Random r = new Random(functions);
+		final OtpErlangObject[] forms = new OtpErlangObject[functions];
+		final OtpErlangObject[] comments = new OtpErlangObject[functions / 4];
+		int line = 1;
+		int offset = 0;
+		for (int i = 0; i < functions; i++) {
+			final int nclauses = 1 + r.nextInt(3);
+			final OtpErlangObject[] clauses = new OtpErlangObject[nclauses];
+			for (int c = 0; c < nclauses; c++) {
+				clauses[c] = OtpErlang.mkTuple(new OtpErlangAtom("clause"),
+						pos(line + c, offset, 40), new OtpErlangAtom(word(r)),
+						new OtpErlangList(new OtpErlangObject[] {
+								new OtpErlangString(word(r)),
+								new OtpErlangString(word(r)) }),
+						new OtpErlangString("(" + word(r) + ", " + word(r)
+								+ ")"), pos(line + c, offset, 10));
+			}
+			final String name = word(r) + "_" + i;
+			forms[i] = OtpErlang.mkTuple(new OtpErlangAtom("function"), pos(
+					line, offset, 40 * nclauses), new OtpErlangAtom(name),
+					new OtpErlangLong(2), new OtpErlangList(
+							new OtpErlangObject[] {
+									new OtpErlangString("Request"),
+									new OtpErlangString("State") }),
+					new OtpErlangString("(Request, State)"), new OtpErlangList(
+							clauses), pos(line, offset, name.length()),
+					new OtpErlangAtom("u"), new OtpErlangAtom(r.nextBoolean()
+							? "true" : "false"));
+			if (i % 4 == 0 && i / 4 < comments.length) {
+				comments[i / 4] = OtpErlang.mkTuple(new OtpErlangAtom("token"),
+						new OtpErlangAtom("comment"), new OtpErlangLong(line),
+						new OtpErlangLong(offset), new OtpErlangLong(30),
+						new OtpErlangString("%% " + word(r) + " " + word(r)));
+			}
+			line += 3 * nclauses;
+			offset += 120 * nclauses;
+		}
+		return OtpErlang.mkTuple(new OtpErlangAtom("ok"), OtpErlang.mkTuple(
+				new OtpErlangAtom("model"), new OtpErlangList(forms),
+				new OtpErlangList(comments)), new OtpErlangAtom("refs"));
+	}
+
+	/**
+	 * The forms of a parse result.
+	 */
+	public static OtpErlangList forms(final OtpErlangObject parseResult) {
+		final OtpErlangTuple model = (OtpErlangTuple) ((OtpErlangTuple) parseResult)
+				.elementAt(1);
+		return (OtpErlangList) model.elementAt(1);
+	}
+
+	/**
+	 * A list of <code>{M, F, A, Clause, SubClause, Offset, Length, IsDef}</code>
+	 * from erlide_search_server:find_refs.
+	 */
+	public static OtpErlangObject searchResults(final int count) {
+		final Random r = new Random(count);
+		final OtpErlangObject[] refs = new OtpErlangObject[count];
+		for (int i = 0; i < count; i++) {
+			refs[i] = OtpErlang.mkTuple(new OtpErlangString("mod_" + r.nextInt(50)
+					+ ".erl"), new OtpErlangAtom(word(r)), new OtpErlangLong(r
+					.nextInt(5)), new OtpErlangString(word(r) + "(X, Y)"),
+					new OtpErlangAtom(r.nextBoolean() ? "true" : "false"),
+					new OtpErlangLong(r.nextInt(100000)), new OtpErlangLong(r
+							.nextInt(40)), new OtpErlangAtom(
+							r.nextInt(10) == 0 ? "true" : "false"));
+		}
+		return new OtpErlangList(refs);
+	}
+
+	public static OtpErlangObject get(final String kind, final int size) {
+		if ("tokens".equals(kind)) {
+			return tokens(size);
+		} else if ("forms".equals(kind)) {
+			return parseResult(size);
+		} else if ("search".equals(kind)) {
+			return searchResults(size);
+		}
+		throw new IllegalArgumentException(kind);
+	}
+
+	private static OtpErlangObject pos(final int line, final int offset,
+			final int length) {
+		return OtpErlang.mkTuple(OtpErlang.mkTuple(new OtpErlangLong(line),
+				new OtpErlangLong(line)), new OtpErlangLong(offset),
+				new OtpErlangLong(length));
+	}
+
+	private static String word(final Random r) {
+		return WORDS[r.nextInt(WORDS.length)];
+	}
+
+	private Payloads() {
+	}
+}
@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Vlad Dumitrescu and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available
+ * at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Vlad Dumitrescu
+ *******************************************************************************/
+package org.erlide.jinterface.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ericsson.otp.erlang.GenericQueue;
+import com.ericsson.otp.erlang.MpscQueue;
+
+/**
+ * Mailbox queues with several threads delivering and one reading, as when
+ * many connections deliver to one mailbox: the lock-free {@link MpscQueue}
+ * against the old synchronized {@link GenericQueue}.
+ * <p>
+ * Producers back off when the reader is far behind, so the queue doesn't grow
+ * without bounds; the back-off is the same for both queues. The put scores are
+ * the ones to compare: the reader's score also counts polls of an empty queue.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueueBenchmark {
+
+	private static final int MAX_BACKLOG = 8192;
+	private static final Object ITEM = new Object();
+
+	@State(Scope.Group)
+	public static class Mpsc {
+		MpscQueue queue;
+		final AtomicInteger backlog = new AtomicInteger();
+
+		@Setup(Level.Iteration)
+		public void setup() {
+			queue = new MpscQueue();
+			backlog.set(0);
+		}
+	}
+
+	@State(Scope.Group)
+	public static class Generic {
+		GenericQueue queue;
+		final AtomicInteger backlog = new AtomicInteger();
+
+		@Setup(Level.Iteration)
+		public void setup() {
+			queue = new GenericQueue();
+			backlog.set(0);
+		}
+	}
+
+	@Benchmark
+	@Group("mpsc")
+	@GroupThreads(3)
+	public boolean mpscPut(final Mpsc s) {
+		if (s.backlog.get() >= MAX_BACKLOG) {
+			Thread.yield();
+			return false;
+		}
+		s.backlog.incrementAndGet();
+		s.queue.put(ITEM);
+		return true;
+	}
+
+	@Benchmark
+	@Group("mpsc")
+	@GroupThreads(1)
+	public Object mpscGet(final Mpsc s) {
+		final Object o = s.queue.tryGet();
+		if (o != null) {
+			s.backlog.decrementAndGet();
+		}
+		return o;
+	}
+
+	@Benchmark
+	@Group("generic")
+	@GroupThreads(3)
+	public boolean genericPut(final Generic s) {
+		if (s.backlog.get() >= MAX_BACKLOG) {
+			Thread.yield();
+			return false;
+		}
+		s.backlog.incrementAndGet();
+		s.queue.put(ITEM);
+		return true;
+	}
+
+	@Benchmark
+	@Group("generic")
+	@GroupThreads(1)
+	public Object genericGet(final Generic s) {
+		final Object o = s.queue.tryGet();
+		if (o != null) {
+			s.backlog.decrementAndGet();
+		}
+		return o;
+	}
+
+}
@@ -0,0 +1,158 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Vlad Dumitrescu and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available
+ * at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Vlad Dumitrescu
+ *******************************************************************************/
+package org.erlide.jinterface.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.erlide.jinterface.rpc.RpcChannel;
+import org.erlide.jinterface.rpc.RpcException;
+import org.erlide.jinterface.rpc.RpcFuture;
+import org.erlide.jinterface.rpc.RpcSignature;
+import org.erlide.jinterface.rpc.RpcUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpNode;
+import com.ericsson.otp.erlang.SignatureException;
+
+/**
+ * RPC round trips through {@link RpcUtil} to an <code>erl</code> node started
+ * on this machine (the <code>erlide.bench.erl</code> system property, default
+ * "erl").
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RpcBenchmark {
+
+	private static final String COOKIE = "erlide_bench";
+	private static final int TIMEOUT = 10000;
+	private static final OtpErlangAtom USER = new OtpErlangAtom("user");
+	private static final RpcSignature NO_ARGS = RpcSignature.of("");
+	private static final RpcSignature SEQ = RpcSignature.of("ii");
+
+	@Param( { "10000" })
+	public int resultSize;
+
+	private Process erl;
+	private OtpNode node;
+	private String peer;
+
+	@Setup(Level.Trial)
+	public void start() throws Exception {
+		final String id = Long.toString(System.currentTimeMillis() % 100000);
+		peer = "jmh_erl_" + id + "@127.0.0.1";
+		erl = new ProcessBuilder(System.getProperty("erlide.bench.erl", "erl"),
+				"-name", peer, "-setcookie", COOKIE, "-noshell", "-noinput")
+				.redirectErrorStream(true).start();
+		drain(erl.getInputStream());
+		node = new OtpNode("jmh_java_" + id + "@127.0.0.1", COOKIE);
+		final long stop = System.currentTimeMillis() + 20000;
+		while (!node.ping(peer, 500)) {
+			if (System.currentTimeMillis() > stop) {
+				stop();
+				throw new IllegalStateException("could not reach " + peer);
+			}
+			Thread.sleep(100);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void stop() throws Exception {
+		if (node != null) {
+			RpcChannel.release(node);
+			node.close();
+		}
+		if (erl != null) {
+			erl.destroy();
+			erl.waitFor();
+		}
+	}
+
+	@Benchmark
+	public OtpErlangObject smallCall() throws RpcException,
+			SignatureException {
+		return RpcUtil.rpcCall(node, peer, USER, "erlang", "node", TIMEOUT,
+				NO_ARGS);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public OtpErlangObject smallCallShared() throws RpcException,
+			SignatureException {
+		return RpcUtil.rpcCall(node, peer, USER, "erlang", "node", TIMEOUT,
+				NO_ARGS);
+	}
+
+	@Benchmark
+	public OtpErlangObject largeResult() throws RpcException,
+			SignatureException {
+		return RpcUtil.rpcCall(node, peer, USER, "lists", "seq", TIMEOUT, SEQ,
+				Integer.valueOf(1), Integer.valueOf(resultSize));
+	}
+
+	/**
+	 * Ten calls sent before waiting for any of the replies.
+	 */
+	@Benchmark
+	public OtpErlangObject pipelined() throws RpcException,
+			SignatureException {
+		final RpcFuture[] futures = new RpcFuture[10];
+		for (int i = 0; i < futures.length; i++) {
+			futures[i] = RpcUtil.sendRpcCall(node, peer, USER, "erlang",
+					"node", NO_ARGS);
+		}
+		OtpErlangObject result = null;
+		for (final RpcFuture f : futures) {
+			result = f.get(TIMEOUT);
+		}
+		return result;
+	}
+
+	// keep erl from blocking on a full pipe
+	private static void drain(final InputStream in) {
+		final Thread t = new Thread("erl output") {
+			@Override
+			public void run() {
+				final byte[] buf = new byte[1024];
+				try {
+					while (in.read(buf) >= 0) {
+						// ignore
+					}
+				} catch (final IOException e) {
+					// erl is gone
+				}
+			}
+		};
+		t.setDaemon(true);
+		t.start();
+	}
+
+}
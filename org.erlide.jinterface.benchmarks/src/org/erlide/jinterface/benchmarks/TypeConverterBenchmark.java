@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Vlad Dumitrescu and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available
+ * at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Vlad Dumitrescu
+ *******************************************************************************/
+package org.erlide.jinterface.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.erlide.jinterface.rpc.RpcSignature;
+import org.erlide.jinterface.util.TypeConverter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.Signature;
+import com.ericsson.otp.erlang.SignatureException;
+
+/**
+ * Converting RPC arguments: {@link TypeConverter#java2erlang} by itself, and a
+ * whole argument list the old way (parsing the signature on each call) and
+ * with a precompiled {@link RpcSignature}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TypeConverterBenchmark {
+
+	private static final String SIGNATURE = "alssix";
+	private static final RpcSignature COMPILED = RpcSignature.of(SIGNATURE);
+
+	private String text;
+	private List<String> modules;
+	private Object[] args;
+
+	@Setup
+	public void setup() {
+		final StringBuilder b = new StringBuilder();
+		for (int i = 0; i < 50; i++) {
+			b.append("handle_call(Request, From, State) ->\n");
+		}
+		text = b.toString();
+		modules = new ArrayList<String>();
+		for (int i = 0; i < 40; i++) {
+			modules.add("module_" + i);
+		}
+		args = new Object[] { "erlide_scanner", modules, text,
+				Integer.valueOf(42), "x" };
+	}
+
+	@Benchmark
+	public OtpErlangObject string() throws SignatureException {
+		return TypeConverter.java2erlang(text, "s");
+	}
+
+	@Benchmark
+	public OtpErlangObject stringList() throws SignatureException {
+		return TypeConverter.java2erlang(modules, "ls");
+	}
+
+	@Benchmark
+	public OtpErlangObject untyped() throws SignatureException {
+		return TypeConverter.java2erlang(modules, "x");
+	}
+
+	@Benchmark
+	public void argsParsedEachCall(final Blackhole bh)
+			throws SignatureException {
+		final Signature[] types = Signature.parse(SIGNATURE);
+		for (int i = 0; i < args.length; i++) {
+			bh.consume(TypeConverter.java2erlang(args[i], types[i]));
+		}
+	}
+
+	@Benchmark
+	public OtpErlangObject[] argsPrecompiled() throws SignatureException {
+		return COMPILED.encode(args);
+	}
+
+}
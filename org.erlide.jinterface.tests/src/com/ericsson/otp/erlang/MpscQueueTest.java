@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Vlad Dumitrescu and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available
+ * at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Vlad Dumitrescu
+ *******************************************************************************/
+package com.ericsson.otp.erlang;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class MpscQueueTest {
+
+	@Test
+	public void interruptedGetKeepsWaiting() throws Exception {
+		final MpscQueue queue = new MpscQueue();
+		final Reader reader = new Reader(queue, -1);
+		reader.start();
+		checkWaitsAfterInterrupt(reader, Thread.State.WAITING);
+		queue.put("x");
+		reader.join(1000);
+		assertEquals("x", reader.result);
+		assertTrue(reader.interrupted);
+	}
+
+	@Test
+	public void interruptedTimedGetKeepsWaiting() throws Exception {
+		final MpscQueue queue = new MpscQueue();
+		final Reader reader = new Reader(queue, 10000);
+		reader.start();
+		checkWaitsAfterInterrupt(reader, Thread.State.TIMED_WAITING);
+		queue.put("x");
+		reader.join(1000);
+		assertEquals("x", reader.result);
+		assertTrue(reader.interrupted);
+	}
+
+	private static void checkWaitsAfterInterrupt(final Thread reader,
+			final Thread.State state) throws InterruptedException {
+		waitForState(reader, state);
+		reader.interrupt();
+		Thread.sleep(50);
+		// a reader spinning on park() would be RUNNABLE most of the time
+		for (int i = 0; i < 10; i++) {
+			assertEquals(state, reader.getState());
+			Thread.sleep(5);
+		}
+	}
+
+	private static void waitForState(final Thread t, final Thread.State state)
+			throws InterruptedException {
+		final long stop = System.currentTimeMillis() + 1000;
+		while (t.getState() != state && System.currentTimeMillis() < stop) {
+			Thread.sleep(1);
+		}
+		assertEquals(state, t.getState());
+	}
+
+	private static final class Reader extends Thread {
+		private final MpscQueue queue;
+		private final long timeout;
+		volatile Object result;
+		volatile boolean interrupted;
+
+		Reader(final MpscQueue queue, final long timeout) {
+			this.queue = queue;
+			this.timeout = timeout;
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			try {
+				result = timeout < 0 ? queue.get() : queue.get(timeout);
+			} catch (final InterruptedException e) {
+				result = e;
+			}
+			interrupted = isInterrupted();
+		}
+	}
+
+}
@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Vlad Dumitrescu and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available
+ * at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Vlad Dumitrescu
+ *******************************************************************************/
+package com.ericsson.otp.erlang;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.erlide.jinterface.util.Bindings;
+import org.erlide.jinterface.util.ErlUtils;
+import org.junit.Test;
+
+public class OtpAtomCacheTest {
+
+	private static OtpErlangObject roundTrip(final OtpErlangObject term)
+			throws OtpErlangDecodeException {
+		final OtpOutputStream out = new OtpOutputStream(term);
+		return new OtpInputStream(out.toByteArray()).read_any();
+	}
+
+	@Test
+	public void decodedAtomsAreShared() throws Exception {
+		final OtpErlangTuple t = (OtpErlangTuple) roundTrip(OtpErlang.mkTuple(
+				new OtpErlangAtom("clause"), new OtpErlangAtom("clause")));
+		assertSame(t.elementAt(0), t.elementAt(1));
+		assertSame(OtpAtomCache.atom("clause"), t.elementAt(0));
+		assertEquals("clause".hashCode(), t.elementAt(0).hashCode());
+	}
+
+	@Test
+	public void nameCollisionsDecodeCorrectly() throws Exception {
+		for (int i = 0; i < 10000; i++) {
+			final OtpErlangAtom a = new OtpErlangAtom("a" + i);
+			assertEquals(a, roundTrip(a));
+		}
+		final byte[] latin1 = new byte[] { (byte) 131, 100, 0, 3, (byte) 0xe5,
+				(byte) 0xe4, (byte) 0xf6 };
+		assertEquals("\u00e5\u00e4\u00f6", ((OtpErlangAtom) new OtpInputStream(
+				latin1).read_any()).atomValue());
+		assertEquals("", ((OtpErlangAtom) roundTrip(new OtpErlangAtom("")))
+				.atomValue());
+	}
+
+	@Test
+	public void matchUsesCanonicalAtoms() throws Exception {
+		final Bindings b = ErlUtils.match("{call, M}", roundTrip(OtpErlang
+				.mkTuple(new OtpErlangAtom("call"), new OtpErlangAtom("m"))));
+		assertEquals(new OtpErlangAtom("m"), b.get("M"));
+	}
+
+}
@@ -0,0 +1,136 @@
+package org.erlide.jinterface.backend.events;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.erlide.jinterface.util.ErlUtils;
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.OtpErlangObject;
+
+public class EventDaemonTest {
+
+	// runs the drain tasks only when asked to
+	static class ManualExecutor implements Executor {
+		final LinkedList<Runnable> tasks = new LinkedList<Runnable>();
+
+		public void execute(final Runnable command) {
+			tasks.add(command);
+		}
+
+		void runAll() {
+			while (!tasks.isEmpty()) {
+				tasks.removeFirst().run();
+			}
+		}
+	}
+
+	static class Recorder extends EventHandler {
+		final List<OtpErlangObject> msgs = new ArrayList<OtpErlangObject>();
+		private final Collection<String> events;
+
+		Recorder(final String... events) {
+			this.events = events.length == 0 ? null : Arrays.asList(events);
+		}
+
+		@Override
+		public Collection<String> getEvents() {
+			return events;
+		}
+
+		@Override
+		protected void doHandleMsg(final OtpErlangObject msg) {
+			msgs.add(msg);
+		}
+	}
+
+	private static List<OtpErlangObject> msgs(final String... terms)
+			throws Exception {
+		final List<OtpErlangObject> result = new ArrayList<OtpErlangObject>();
+		for (final String s : terms) {
+			result.add(ErlUtils.parse(s));
+		}
+		return result;
+	}
+
+	@Test
+	public void inOrder() throws Exception {
+		final ManualExecutor ex = new ManualExecutor();
+		final Recorder h = new Recorder();
+		final HandlerQueue q = new HandlerQueue(h, 10, OverflowPolicy.BLOCK,
+				ex);
+		final List<OtpErlangObject> in = msgs("a", "b", "c");
+		for (final OtpErlangObject m : in) {
+			q.offer(m);
+		}
+		assertEquals(3, q.getDepth());
+		assertEquals(1, ex.tasks.size());
+		ex.runAll();
+		assertEquals(in, h.msgs);
+		assertEquals(0, q.getDepth());
+	}
+
+	@Test
+	public void dropNewest() throws Exception {
+		final ManualExecutor ex = new ManualExecutor();
+		final Recorder h = new Recorder();
+		final HandlerQueue q = new HandlerQueue(h, 2,
+				OverflowPolicy.DROP_NEWEST, ex);
+		for (final OtpErlangObject m : msgs("a", "b", "c")) {
+			q.offer(m);
+		}
+		ex.runAll();
+		assertEquals(msgs("a", "b"), h.msgs);
+		assertEquals(1, q.getDropped());
+	}
+
+	@Test
+	public void dropOldest() throws Exception {
+		final ManualExecutor ex = new ManualExecutor();
+		final Recorder h = new Recorder();
+		final HandlerQueue q = new HandlerQueue(h, 2,
+				OverflowPolicy.DROP_OLDEST, ex);
+		for (final OtpErlangObject m : msgs("a", "b", "c")) {
+			q.offer(m);
+		}
+		assertEquals(2, q.getDepth());
+		ex.runAll();
+		assertEquals(msgs("b", "c"), h.msgs);
+		assertEquals(1, q.getDropped());
+	}
+
+	@Test
+	public void routedByEvent() throws Exception {
+		final ManualExecutor ex = new ManualExecutor();
+		final EventDaemon daemon = new EventDaemon(null);
+		final Recorder all = new Recorder();
+		final Recorder log = new Recorder("log");
+		final Recorder io = new Recorder("io_server", "log");
+		daemon.addQueue(new HandlerQueue(all, 10, OverflowPolicy.BLOCK, ex));
+		daemon.addQueue(new HandlerQueue(log, 10, OverflowPolicy.BLOCK, ex));
+		daemon.addQueue(new HandlerQueue(io, 10, OverflowPolicy.BLOCK, ex));
+		daemon.dispatch(msgs("{event, log, 1}", "{call, a, b, [], c}",
+				"{event, io_server, 2}"));
+		assertEquals(Integer.valueOf(1), daemon.getQueueDepths().get(log));
+		ex.runAll();
+		assertEquals(3, all.msgs.size());
+		assertEquals(msgs("{event, log, 1}"), log.msgs);
+		assertEquals(msgs("{event, log, 1}", "{event, io_server, 2}"),
+				io.msgs);
+
+		daemon.removeHandler(io);
+		daemon.dispatch(msgs("{event, io_server, 3}"));
+		ex.runAll();
+		assertEquals(2, io.msgs.size());
+		assertEquals(Collections.singletonList(all), new ArrayList<EventHandler>(
+				daemon.getHandlers().subList(0, 1)));
+	}
+
+}
@@ -9,12 +9,15 @@
  *******************************************************************************/
 package org.erlide.jinterface.java;
 
+import java.util.Arrays;
+
 import junit.framework.Assert;
 
 import org.erlide.jinterface.util.Bindings;
 import org.erlide.jinterface.util.ErlUtils;
 import org.erlide.jinterface.util.ParserException;
 import org.erlide.jinterface.util.TermParser;
+import org.erlide.jinterface.util.TermPattern;
 import org.junit.Test;
 
 import com.ericsson.otp.erlang.OtpErlangAtom;
@@ -173,4 +176,23 @@ public class PatternMatchTest {
 		Assert.assertEquals(r.getAs("V", Integer.class), Integer.valueOf(1));
 	}
 
+	@Test
+	public void testMatch_compiled_slots() throws Exception {
+		final TermPattern p = TermPattern.compile("{ok, {_, Forms, C}, C}");
+		Assert.assertEquals(2, p.getSlotCount());
+		final OtpErlangObject[] slots = new OtpErlangObject[p.getSlotCount()];
+		Assert.assertTrue(p.match(ErlUtils.parse("{ok, {x, [a], 1}, 1}"), slots));
+		Assert.assertEquals(ErlUtils.parse("[a]"), slots[p.getSlot("Forms")]);
+		Assert.assertEquals(new OtpErlangLong(1), slots[p.getSlot("C")]);
+		Arrays.fill(slots, null);
+		Assert.assertFalse(p.match(ErlUtils.parse("{ok, {x, [a], 1}, 2}"), slots));
+		Assert.assertEquals(-1, p.getSlot("X"));
+	}
+
+	@Test
+	public void testMatch_compiled_cached() throws Exception {
+		Assert.assertSame(TermPattern.compile("{ok, L}"), TermPattern
+				.of("{ok, L}"));
+	}
+
 }
@@ -0,0 +1,70 @@
+package org.erlide.jinterface.rpc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.OtpErlang;
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangString;
+
+public class FragmentAssemblerTest {
+
+	private static final OtpErlangObject VALUE = new OtpErlangString(
+			"some reply");
+	private static final OtpErlangObject FRAGMENTED = OtpErlang.mkTuple(
+			new OtpErlangAtom("$erlide_fragments"), new OtpErlangLong(2));
+
+	@Test
+	public void plainReply() {
+		final FragmentAssembler a = new FragmentAssembler(Collections
+				.<byte[]> emptyList());
+		assertEquals(VALUE, a.reply(VALUE));
+	}
+
+	@Test
+	public void replyAfterFragments() {
+		final byte[][] parts = split(RpcCompression.compress(VALUE));
+		final FragmentAssembler a = new FragmentAssembler(Collections
+				.<byte[]> emptyList());
+		assertNull(a.fragment(parts[0]));
+		assertNull(a.fragment(parts[1]));
+		assertEquals(VALUE, a.reply(FRAGMENTED));
+	}
+
+	@Test
+	public void replyBeforeFragments() {
+		final byte[][] parts = split(RpcCompression.compress(VALUE));
+		final FragmentAssembler a = new FragmentAssembler(Collections
+				.<byte[]> emptyList());
+		assertNull(a.reply(FRAGMENTED));
+		assertNull(a.fragment(parts[0]));
+		assertEquals(VALUE, a.fragment(parts[1]));
+	}
+
+	@Test
+	public void uploadIsTakenOnce() {
+		final List<byte[]> upload = new ArrayList<byte[]>();
+		upload.add(new byte[] { 1 });
+		final FragmentAssembler a = new FragmentAssembler(upload);
+		assertEquals(upload, a.takeUpload());
+		assertNull(a.takeUpload());
+	}
+
+	private static byte[][] split(final byte[] bytes) {
+		final int n = bytes.length / 2;
+		final byte[][] result = new byte[][] { new byte[n],
+				new byte[bytes.length - n] };
+		System.arraycopy(bytes, 0, result[0], 0, n);
+		System.arraycopy(bytes, n, result[1], 0, bytes.length - n);
+		return result;
+	}
+
+}
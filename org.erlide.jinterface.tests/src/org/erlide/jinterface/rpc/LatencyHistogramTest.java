@@ -0,0 +1,48 @@
+package org.erlide.jinterface.rpc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void bucketsCoverValues() {
+		int last = -1;
+		for (long v = 0; v < 1 << 20; v++) {
+			final int b = LatencyHistogram.bucket(v);
+			assertTrue(b == last || b == last + 1);
+			assertTrue(v <= LatencyHistogram.upperBound(b));
+			assertTrue(v <= 8 || LatencyHistogram.upperBound(b) < v * 1.125);
+			last = b;
+		}
+	}
+
+	@Test
+	public void percentiles() {
+		final LatencyHistogram h = new LatencyHistogram();
+		for (int i = 1; i <= 100; i++) {
+			h.record(i * 100);
+		}
+		assertEquals(100, h.getCount());
+		assertEquals(10000, h.getMax());
+		assertEquals(5050, h.getMean());
+		final long p50 = h.getPercentile(50);
+		assertTrue(p50 >= 5000 && p50 < 5000 * 1.125);
+		final long p99 = h.getPercentile(99);
+		assertTrue(p99 >= 9900 && p99 <= 10000);
+		assertEquals(10000, h.getPercentile(100));
+	}
+
+	@Test
+	public void empty() {
+		final LatencyHistogram h = new LatencyHistogram();
+		assertEquals(0, h.getPercentile(99));
+		h.record(7);
+		h.reset();
+		assertEquals(0, h.getCount());
+		assertEquals(0, h.getMax());
+	}
+
+}
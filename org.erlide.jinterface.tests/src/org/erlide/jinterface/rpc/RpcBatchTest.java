@@ -0,0 +1,53 @@
+package org.erlide.jinterface.rpc;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.erlide.jinterface.util.ErlUtils;
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangString;
+
+public class RpcBatchTest {
+
+	@Test
+	public void callsInOrder() throws Exception {
+		final RpcBatch batch = new RpcBatch();
+		assertEquals(0, batch.add("m", "f", "sa", "x", "y"));
+		assertEquals(1, batch.add("m", "g", ""));
+		assertEquals(ErlUtils.parse("[{m, f, [\"x\", y]}, {m, g, []}]"), batch
+				.getCalls());
+	}
+
+	@Test
+	public void results() throws Exception {
+		final RpcBatch batch = new RpcBatch();
+		batch.add("m", "f", "");
+		batch.add("m", "g", "");
+		final OtpErlangObject[] res = batch.getResults(ErlUtils
+				.parse("[{ok, 1}, {badrpc, x}]"));
+		assertEquals(2, res.length);
+		assertEquals(false, RpcUtil.isBadRpc(res[0]));
+		assertEquals(true, RpcUtil.isBadRpc(res[1]));
+	}
+
+	@Test
+	public void smallIntegerResults() throws Exception {
+		final RpcBatch batch = new RpcBatch();
+		batch.add("m", "f", "");
+		batch.add("m", "g", "");
+		assertArrayEquals(new OtpErlangObject[] { new OtpErlangLong(1),
+				new OtpErlangLong(2) }, batch.getResults(new OtpErlangString(
+				"\001\002")));
+	}
+
+	@Test(expected = RpcException.class)
+	public void wrongReply() throws Exception {
+		final RpcBatch batch = new RpcBatch();
+		batch.add("m", "f", "");
+		batch.getResults(ErlUtils.parse("[a, b]"));
+	}
+
+}
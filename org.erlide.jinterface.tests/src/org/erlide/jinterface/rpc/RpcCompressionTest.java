@@ -0,0 +1,112 @@
+package org.erlide.jinterface.rpc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.OtpErlang;
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangBinary;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangString;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+
+public class RpcCompressionTest {
+
+	private static final OtpErlangAtom M = new OtpErlangAtom("m");
+	private static final OtpErlangAtom F = new OtpErlangAtom("f");
+
+	@Test
+	public void sizeEstimate() {
+		final OtpErlangObject[] small = new OtpErlangObject[] {
+				new OtpErlangString("abc"), new OtpErlangLong(1) };
+		assertFalse(RpcCompression.isLarge(small, 100));
+		final OtpErlangObject[] big = new OtpErlangObject[] { new OtpErlangList(
+				new OtpErlangObject[] { new OtpErlangString(text(200)) }) };
+		assertTrue(RpcCompression.isLarge(big, 100));
+		assertFalse(RpcCompression.isLarge(big, 0));
+	}
+
+	@Test
+	public void smallCallsAreNotCompressed() {
+		final List<byte[]> upload = new ArrayList<byte[]>();
+		final OtpErlangList args = new OtpErlangList(new OtpErlangString("x"));
+		assertEquals(OtpErlang.mkTuple(M, F, args), RpcCompression.wrap(M, F,
+				args, upload));
+		assertTrue(upload.isEmpty());
+	}
+
+	@Test
+	public void largeCallsAreCompressed() throws Exception {
+		final List<byte[]> upload = new ArrayList<byte[]>();
+		// strings longer than 65535 are encoded as lists
+		final OtpErlangObject[] strings = new OtpErlangObject[RpcCompression
+				.getThreshold() / 60000 + 1];
+		for (int i = 0; i < strings.length; i++) {
+			strings[i] = new OtpErlangString(text(60000));
+		}
+		final OtpErlangList args = new OtpErlangList(strings);
+		final OtpErlangObject request = RpcCompression.wrap(M, F, args, upload);
+		assertTrue(upload.isEmpty());
+		final byte[] bytes = ((OtpErlangBinary) request).binaryValue();
+		assertTrue(bytes.length < RpcCompression.FRAGMENT_SIZE);
+		assertEquals(OtpErlang.mkTuple(M, F, args), RpcCompression
+				.decompress(bytes));
+	}
+
+	@Test
+	public void hugeCallsAreFragmented() throws Exception {
+		final byte[] data = new byte[RpcCompression.getThreshold() + 1];
+		new Random(42).nextBytes(data);
+		final List<byte[]> upload = new ArrayList<byte[]>();
+		final OtpErlangList args = new OtpErlangList(new OtpErlangBinary(data));
+		final OtpErlangTuple request = (OtpErlangTuple) RpcCompression.wrap(M,
+				F, args, upload);
+		assertEquals(new OtpErlangAtom("fragments"), request.elementAt(0));
+		assertEquals(upload.size(), ((OtpErlangLong) request.elementAt(1))
+				.intValue());
+		assertTrue(upload.size() > 1);
+		final ByteArrayOutputStream all = new ByteArrayOutputStream();
+		for (final byte[] part : upload) {
+			assertTrue(part.length <= RpcCompression.FRAGMENT_SIZE);
+			all.write(part);
+		}
+		assertEquals(OtpErlang.mkTuple(M, F, args), RpcCompression
+				.decompress(all.toByteArray()));
+	}
+
+	@Test
+	public void unwrapReplies() {
+		final OtpErlangObject value = new OtpErlangString(text(1000));
+		final byte[] bytes = RpcCompression.compress(value);
+		assertEquals(value, RpcCompression.unwrap(OtpErlang.mkTuple(
+				new OtpErlangAtom("$erlide_compressed"), new OtpErlangBinary(
+						bytes)), null));
+		final OtpErlangTuple fragmented = OtpErlang.mkTuple(new OtpErlangAtom(
+				"$erlide_fragments"), new OtpErlangLong(2));
+		assertEquals(2, RpcCompression.getFragmentCount(fragmented));
+		assertEquals(value, RpcCompression.unwrap(fragmented, bytes));
+		assertEquals(value, RpcCompression.unwrap(value, null));
+		assertEquals(0, RpcCompression.getFragmentCount(value));
+		assertTrue(RpcUtil.isBadRpc(RpcCompression.unwrap(fragmented,
+				new byte[] { 1, 2, 3 })));
+	}
+
+	private static String text(final int n) {
+		final StringBuilder b = new StringBuilder(n);
+		for (int i = 0; i < n; i++) {
+			b.append((char) ('a' + i % 26));
+		}
+		return b.toString();
+	}
+
+}
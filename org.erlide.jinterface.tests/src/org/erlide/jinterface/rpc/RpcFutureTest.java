@@ -0,0 +1,84 @@
+package org.erlide.jinterface.rpc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.OtpErlang;
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangPid;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+import com.ericsson.otp.erlang.OtpMbox;
+import com.ericsson.otp.erlang.OtpNode;
+
+public class RpcFutureTest {
+
+	private static final OtpErlangObject VALUE = new OtpErlangAtom("ok");
+
+	private OtpNode node;
+	private RpcChannel channel;
+	// stands in for rex, the calls are made to our own node
+	private OtpMbox rex;
+
+	@Before
+	public void setUp() throws Exception {
+		node = new OtpNode("rpc_future_test");
+		channel = RpcChannel.get(node);
+		rex = node.createMbox("rex");
+	}
+
+	@After
+	public void tearDown() {
+		RpcChannel.release(node);
+		node.close();
+	}
+
+	@Test
+	public void getAfterTimeout() throws Exception {
+		final RpcFuture future = call();
+		final OtpErlangTuple from = receiveCall();
+		try {
+			future.get(10);
+			fail("expected a timeout");
+		} catch (final RpcTimeoutException e) {
+		}
+		assertEquals(1, channel.getPendingCount());
+		reply(from);
+		assertEquals(VALUE, future.get(5000));
+		assertEquals(VALUE, future.get());
+	}
+
+	@Test
+	public void cancelAfterTimeout() throws Exception {
+		final RpcFuture future = call();
+		receiveCall();
+		try {
+			future.get(10);
+			fail("expected a timeout");
+		} catch (final RpcTimeoutException e) {
+		}
+		future.cancel();
+		assertEquals(0, channel.getPendingCount());
+	}
+
+	private RpcFuture call() {
+		return channel.call(node.node(), rex.self(), "m", "f",
+				new OtpErlangObject[0], "m:f/0");
+	}
+
+	// {'$gen_call', {Pid, Ref}, Request} -> {Pid, Ref}
+	private OtpErlangTuple receiveCall() throws Exception {
+		final OtpErlangTuple msg = (OtpErlangTuple) rex.receive(5000);
+		return (OtpErlangTuple) msg.elementAt(1);
+	}
+
+	private void reply(final OtpErlangTuple from) {
+		rex.send((OtpErlangPid) from.elementAt(0), OtpErlang.mkTuple(from
+				.elementAt(1), VALUE));
+	}
+
+}
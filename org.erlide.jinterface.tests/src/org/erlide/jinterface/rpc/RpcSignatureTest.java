@@ -0,0 +1,69 @@
+package org.erlide.jinterface.rpc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+
+import org.erlide.jinterface.util.TypeConverter;
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.Signature;
+import com.ericsson.otp.erlang.SignatureException;
+
+public class RpcSignatureTest {
+
+	@SuppressWarnings("boxing")
+	private static final Object[][] SAMPLES = new Object[][] {
+			{ "s", "abc" },
+			{ "a", "abc" },
+			{ "i", 42 },
+			{ "i", 42L },
+			{ "i", 'c' },
+			{ "ls", Arrays.asList("a", "b") },
+			{ "la", new String[] { "a", "b" } },
+			{ "lli", Arrays.asList(Arrays.asList(1, 2), Arrays.asList(3)) },
+			{ "x", "abc" },
+			{ "x", Arrays.asList(1, "b") },
+			{ "s", new OtpErlangAtom("a") },
+			{ "o", true },
+			{ "2ai", new Object[] { "a", 1 } }, };
+
+	@Test
+	public void encodesLikeTypeConverter() throws SignatureException {
+		for (final Object[] sample : SAMPLES) {
+			final String sig = (String) sample[0];
+			final OtpErlangObject expected = TypeConverter.java2erlang(
+					sample[1], Signature.parse(sig)[0]);
+			final OtpErlangObject[] actual = RpcSignature.compile(sig).encode(
+					sample[1]);
+			assertEquals(sig, expected, actual[0]);
+		}
+	}
+
+	@Test
+	public void nullSignatureTakesAnyArity() throws SignatureException {
+		final RpcSignature sig = RpcSignature.compile(null);
+		assertEquals(-1, sig.arity());
+		assertEquals(3, sig.encode("a", "b", "c").length);
+		assertEquals(0, sig.encode().length);
+	}
+
+	@Test(expected = SignatureException.class)
+	public void arityMismatch() throws SignatureException {
+		RpcSignature.compile("ss").encode("a");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void badConstant() {
+		RpcSignature.of("q");
+	}
+
+	@Test
+	public void compiledOnce() throws SignatureException {
+		assertSame(RpcSignature.compile("lsa"), RpcSignature.of("lsa"));
+	}
+
+}
@@ -11,12 +11,12 @@
 package com.ericsson.otp.erlang;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Signature {
-	private static final Map<String, Signature[]> CACHE = new HashMap<String, Signature[]>();
+	private static final Map<String, Signature[]> CACHE = new ConcurrentHashMap<String, Signature[]>();
 	private static boolean useCache = true;
 
 	public char kind = 'x';
@@ -51,7 +51,7 @@ public class Signature {
 		return this.kind + res.toString();
 	}
 
-	public static synchronized Signature[] parse(final String signature)
+	public static Signature[] parse(final String signature)
 			throws SignatureException {
 		if (signature == null) {
 			return null;
@@ -12,14 +12,20 @@ package org.erlide.jinterface.backend;
 
 import java.io.IOException;
 import java.net.Socket;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 
 import org.erlide.jinterface.backend.events.EventDaemon;
 import org.erlide.jinterface.backend.events.LogEventHandler;
+import org.erlide.jinterface.rpc.RpcBatch;
+import org.erlide.jinterface.rpc.RpcChannel;
 import org.erlide.jinterface.rpc.RpcException;
 import org.erlide.jinterface.rpc.RpcFuture;
+import org.erlide.jinterface.rpc.RpcMonitor;
 import org.erlide.jinterface.rpc.RpcResult;
+import org.erlide.jinterface.rpc.RpcSignature;
 import org.erlide.jinterface.rpc.RpcUtil;
 import org.erlide.jinterface.util.ErlLogger;
 
@@ -31,6 +37,7 @@ import com.ericsson.otp.erlang.OtpErlangPid;
 import com.ericsson.otp.erlang.OtpErlangString;
 import com.ericsson.otp.erlang.OtpErlangTuple;
 import com.ericsson.otp.erlang.OtpMbox;
+import com.ericsson.otp.erlang.OtpMsg;
 import com.ericsson.otp.erlang.OtpNode;
 import com.ericsson.otp.erlang.OtpNodeStatus;
 import com.ericsson.otp.erlang.SignatureException;
@@ -41,6 +48,7 @@ public class Backend extends OtpNodeStatus {
 	private static final int RETRY_DELAY = Integer.parseInt(System.getProperty(
 			"erlide.connect.delay", "300"));
 	private static int DEFAULT_TIMEOUT;
+	private static final RpcSignature BATCH_SIGNATURE = RpcSignature.of("x");
 	{
 		final String t = System.getProperty("erlide.rpc.timeout", "9000");
 		if ("infinity".equals(t)) {
@@ -112,6 +120,30 @@ public class Backend extends OtpNodeStatus {
 		}
 	}
 
+	/**
+	 * Start a call whose result is streamed back in chunks, see
+	 * {@link RpcFuture#nextBatch(long)}.
+	 */
+	public RpcFuture async_stream(final String m, final String f,
+			final RpcSignature signature, final Object... args)
+			throws BackendException {
+		return async_stream(RpcUtil.STREAM_CHUNK_SIZE, m, f, signature, args);
+	}
+
+	public RpcFuture async_stream(final int chunkSize, final String m,
+			final String f, final RpcSignature signature, final Object... args)
+			throws BackendException {
+		try {
+			checkAvailability();
+			return RpcUtil.sendStreamingCall(getNode(), getPeer(),
+					new OtpErlangAtom("user"), m, f, chunkSize, signature, args);
+		} catch (final RpcException e) {
+			throw new BackendException(e);
+		} catch (SignatureException e) {
+			throw new BackendException(e);
+		}
+	}
+
 	public void async_call_cb(final RpcCallback cb, final String m,
 			final String f, final String signature, final Object... args)
 			throws BackendException {
@@ -163,6 +195,64 @@ public class Backend extends OtpNodeStatus {
 		}
 	}
 
+	/**
+	 * typed RPC with a precompiled signature, throws Exception
+	 */
+	public OtpErlangObject call(final String m, final String f,
+			final RpcSignature signature, final Object... a)
+			throws BackendException {
+		return call(DEFAULT_TIMEOUT, m, f, signature, a);
+	}
+
+	/**
+	 * typed RPC with timeout and a precompiled signature, throws Exception
+	 */
+	public OtpErlangObject call(final int timeout, final String m,
+			final String f, final RpcSignature signature, final Object... a)
+			throws BackendException {
+		try {
+			checkAvailability();
+			return RpcUtil.rpcCall(getNode(), getPeer(), new OtpErlangAtom(
+					"user"), m, f, timeout, signature, a);
+		} catch (final RpcException e) {
+			throw new BackendException(e);
+		} catch (SignatureException e) {
+			throw new BackendException(e);
+		}
+	}
+
+	/**
+	 * Start collecting calls to be made in one round trip, see
+	 * {@link #call(RpcBatch)}.
+	 */
+	public RpcBatch batch() {
+		return new RpcBatch();
+	}
+
+	/**
+	 * Make all the calls of a batch at once.
+	 *
+	 * @return the results, in the order the calls were added
+	 */
+	public OtpErlangObject[] call(final RpcBatch batch)
+			throws BackendException {
+		return call(DEFAULT_TIMEOUT, batch);
+	}
+
+	public OtpErlangObject[] call(final int timeout, final RpcBatch batch)
+			throws BackendException {
+		if (batch.isEmpty()) {
+			return new OtpErlangObject[0];
+		}
+		final OtpErlangObject reply = call(timeout, RpcBatch.MODULE,
+				RpcBatch.FUNCTION, BATCH_SIGNATURE, batch.getCalls());
+		try {
+			return batch.getResults(reply);
+		} catch (final RpcException e) {
+			throw new BackendException(e);
+		}
+	}
+
 	public void send(final OtpErlangPid pid, final Object msg) {
 		if (!available) {
 			return;
@@ -195,6 +285,26 @@ public class Backend extends OtpNodeStatus {
 		return eventBox.receive(timeout);
 	}
 
+	/**
+	 * Wait at most timeout ms for an event, then return it together with the
+	 * ones queued behind it, up to max events.
+	 */
+	public List<OtpErlangObject> receiveEvents(final int max,
+			final long timeout) throws OtpErlangExit {
+		final List<OtpErlangObject> result = new ArrayList<OtpErlangObject>();
+		if (eventBox == null) {
+			return result;
+		}
+		for (final OtpMsg m : eventBox.receiveMsgs(max, timeout)) {
+			try {
+				result.add(m.getMsg());
+			} catch (final OtpErlangDecodeException e) {
+				ErlLogger.warn(e);
+			}
+		}
+		return result;
+	}
+
 	private synchronized void checkAvailability() throws RpcException {
 		if (!available) {
 			if (exitStatus >= 0 && restarted < 3) {
@@ -222,6 +332,7 @@ public class Backend extends OtpNodeStatus {
 		}
 
 		if (getNode() != null) {
+			RpcChannel.release(getNode());
 			getNode().close();
 		}
 		if (eventDaemon != null) {
@@ -364,6 +475,7 @@ public class Backend extends OtpNodeStatus {
 		eventDaemon = new EventDaemon(this);
 		eventDaemon.start();
 		eventDaemon.addHandler(new LogEventHandler());
+		RpcMonitor.install();
 	}
 
 	public void initializeRuntime() {
@@ -482,6 +594,7 @@ public class Backend extends OtpNodeStatus {
 		restarted++;
 		ErlLogger.info("restarting runtime for %s", toString());
 		if (getNode() != null) {
+			RpcChannel.release(getNode());
 			getNode().close();
 			fNode = null;
 		}
@@ -12,6 +12,8 @@ package org.erlide.jinterface.backend;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import org.erlide.jinterface.backend.console.IoRequest;
@@ -80,6 +82,11 @@ public class BackendShell {
 
 	public class ConsoleEventHandler extends EventHandler {
 
+		@Override
+		public Collection<String> getEvents() {
+			return Collections.singleton("io_server");
+		}
+
 		@Override
 		protected void doHandleMsg(final OtpErlangObject msg) throws Exception {
 			final OtpErlangObject event = getStandardEvent(msg, "io_server");
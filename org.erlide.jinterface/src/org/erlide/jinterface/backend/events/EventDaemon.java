@@ -1,7 +1,12 @@
 package org.erlide.jinterface.backend.events;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.erlide.jinterface.backend.Backend;
 import org.erlide.jinterface.backend.BackendListener;
@@ -10,12 +15,22 @@ import org.erlide.jinterface.util.ErlLogger;
 import com.ericsson.otp.erlang.OtpErlangExit;
 import com.ericsson.otp.erlang.OtpErlangObject;
 
+/**
+ * Reads the messages sent to a backend's event mailbox and passes them to the
+ * handlers. Each handler has its own queue (see {@link HandlerQueue}) and is
+ * only sent the standard events it asked for with
+ * {@link EventHandler#getEvents()}.
+ */
 public class EventDaemon implements BackendListener {
 
+	private static final HandlerQueue[] NO_QUEUES = new HandlerQueue[0];
+
 	private Backend runtime;
 	volatile boolean stopped = false;
-	List<EventHandler> handlers = new ArrayList<EventHandler>();
+	final List<HandlerQueue> queues = new ArrayList<HandlerQueue>();
 	final Object handlersLock = new Object();
+	// rebuilt when handlers are added or removed, read without locking
+	private volatile Routes routes = new Routes(queues);
 
 	final static boolean DEBUG = "true".equals(System
 			.getProperty("erlide.event.daemon"));
@@ -29,33 +44,19 @@ public class EventDaemon implements BackendListener {
 
 		public void run() {
 			try {
-				OtpErlangObject msg = null;
 				final List<OtpErlangObject> msgs = new ArrayList<OtpErlangObject>();
 				do {
 					try {
-						msg = backend.receiveEvent(200);
-						if (msg != null) {
-							msgs.add(msg);
-							// if there are more queued events, retrieve not
-							// more than 10 of them
-							int count = 0;
-							do {
-								msg = backend.receiveEvent(0);
-								if (msg != null) {
-									msgs.add(msg);
-									count++;
-								}
-							} while (count < 10 && msg != null && !stopped);
-						}
+						// if there are more queued events, retrieve not
+						// more than 10 of them
+						msgs.addAll(backend.receiveEvents(11, 200));
 						if (msgs.size() != 0) {
 							if (DEBUG) {
 								for (OtpErlangObject m : msgs) {
 									ErlLogger.debug("MSG: %s", m);
 								}
 							}
-							for (final EventHandler handler : getHandlers()) {
-								handler.handleMsgs(msgs);
-							}
+							dispatch(msgs);
 							msgs.clear();
 						}
 					} catch (final OtpErlangExit e) {
@@ -69,9 +70,47 @@ public class EventDaemon implements BackendListener {
 				} while (!stopped);
 			} finally {
 				synchronized (handlersLock) {
-					handlers.clear();
+					for (final HandlerQueue q : queues) {
+						q.close();
+					}
+					queues.clear();
+					routes = new Routes(queues);
+				}
+			}
+		}
+	}
+
+	/*
+	 * Which queues get which messages.
+	 */
+	private static final class Routes {
+		final HandlerQueue[] all;
+		final Map<String, HandlerQueue[]> byEvent;
+
+		Routes(final List<HandlerQueue> queues) {
+			final List<HandlerQueue> allList = new ArrayList<HandlerQueue>();
+			final Map<String, List<HandlerQueue>> map = new HashMap<String, List<HandlerQueue>>();
+			for (final HandlerQueue q : queues) {
+				final Collection<String> events = q.getHandler().getEvents();
+				if (events == null) {
+					allList.add(q);
+					continue;
+				}
+				for (final String event : events) {
+					List<HandlerQueue> l = map.get(event);
+					if (l == null) {
+						l = new ArrayList<HandlerQueue>();
+						map.put(event, l);
+					}
+					l.add(q);
 				}
 			}
+			all = allList.toArray(NO_QUEUES);
+			byEvent = new HashMap<String, HandlerQueue[]>();
+			for (final Map.Entry<String, List<HandlerQueue>> e : map
+					.entrySet()) {
+				byEvent.put(e.getKey(), e.getValue().toArray(NO_QUEUES));
+			}
 		}
 	}
 
@@ -99,23 +138,104 @@ public class EventDaemon implements BackendListener {
 		}
 	}
 
+	void dispatch(final List<OtpErlangObject> msgs) {
+		final Routes r = routes;
+		for (final OtpErlangObject msg : msgs) {
+			for (final HandlerQueue q : r.all) {
+				offer(q, msg);
+			}
+			final String event = EventHandler.getEventId(msg);
+			if (event != null) {
+				final HandlerQueue[] qs = r.byEvent.get(event);
+				if (qs != null) {
+					for (final HandlerQueue q : qs) {
+						offer(q, msg);
+					}
+				}
+			}
+		}
+	}
+
+	private void offer(final HandlerQueue q, final OtpErlangObject msg) {
+		if (!q.offer(msg) && DEBUG) {
+			ErlLogger.debug("dropped MSG for %s: %s", q.getHandler(), msg);
+		}
+	}
+
 	public List<EventHandler> getHandlers() {
 		synchronized (handlersLock) {
-			return new ArrayList<EventHandler>(handlers);
+			final List<EventHandler> result = new ArrayList<EventHandler>();
+			for (final HandlerQueue q : queues) {
+				result.add(q.getHandler());
+			}
+			return result;
 		}
 	}
 
 	public void addHandler(final EventHandler l) {
+		addQueue(new HandlerQueue(l));
+	}
+
+	/**
+	 * Add a handler, overriding its own queue settings.
+	 */
+	public void addHandler(final EventHandler l, final int capacity,
+			final OverflowPolicy policy) {
+		addQueue(new HandlerQueue(l, capacity, policy));
+	}
+
+	void addQueue(final HandlerQueue queue) {
 		synchronized (handlersLock) {
-			if (!handlers.contains(l)) {
-				handlers.add(l);
+			if (find(queue.getHandler()) == null) {
+				queues.add(queue);
+				routes = new Routes(queues);
 			}
 		}
 	}
 
 	public void removeHandler(final EventHandler l) {
 		synchronized (handlersLock) {
-			handlers.remove(l);
+			final HandlerQueue q = find(l);
+			if (q != null) {
+				q.close();
+				queues.remove(q);
+				routes = new Routes(queues);
+			}
+		}
+	}
+
+	/**
+	 * The number of messages waiting for each handler.
+	 */
+	public Map<EventHandler, Integer> getQueueDepths() {
+		synchronized (handlersLock) {
+			final Map<EventHandler, Integer> result = new LinkedHashMap<EventHandler, Integer>();
+			for (final HandlerQueue q : queues) {
+				result.put(q.getHandler(), Integer.valueOf(q.getDepth()));
+			}
+			return Collections.unmodifiableMap(result);
+		}
+	}
+
+	/**
+	 * The number of messages each handler lost because its queue was full.
+	 */
+	public Map<EventHandler, Long> getDroppedCounts() {
+		synchronized (handlersLock) {
+			final Map<EventHandler, Long> result = new LinkedHashMap<EventHandler, Long>();
+			for (final HandlerQueue q : queues) {
+				result.put(q.getHandler(), Long.valueOf(q.getDropped()));
+			}
+			return Collections.unmodifiableMap(result);
+		}
+	}
+
+	private HandlerQueue find(final EventHandler l) {
+		for (final HandlerQueue q : queues) {
+			if (q.getHandler().equals(l)) {
+				return q;
+			}
 		}
+		return null;
 	}
 }
@@ -4,12 +4,21 @@ import java.util.Collection;
 
 import org.erlide.jinterface.util.ErlLogger;
 
+import com.ericsson.otp.erlang.OtpAtomCache;
 import com.ericsson.otp.erlang.OtpErlangAtom;
 import com.ericsson.otp.erlang.OtpErlangObject;
 import com.ericsson.otp.erlang.OtpErlangTuple;
 
 public abstract class EventHandler {
 
+	/**
+	 * Default length of a handler's queue in the {@link EventDaemon}.
+	 */
+	public static final int DEFAULT_QUEUE_CAPACITY = Integer.getInteger(
+			"erlide.event.queue", 5000).intValue();
+
+	private static final OtpErlangAtom EVENT = OtpAtomCache.atom("event");
+
 	public final void handleMsgs(final Collection<OtpErlangObject> msgs) {
 		for (final OtpErlangObject msg : msgs) {
 			handleMsg(msg);
@@ -30,42 +39,62 @@ public abstract class EventHandler {
 
 	protected abstract void doHandleMsg(OtpErlangObject msg) throws Exception;
 
-	public static OtpErlangObject getStandardEvent(final OtpErlangObject msg,
-			final String id) {
-		try {
-			final OtpErlangTuple t = (OtpErlangTuple) msg;
-			OtpErlangObject el0 = t.elementAt(0);
-			if (el0 instanceof OtpErlangAtom) {
-				if (!((OtpErlangAtom) el0).atomValue().equals("event")) {
-					return null;
-				}
-			}
-			el0 = t.elementAt(1);
-			if (el0 instanceof OtpErlangAtom) {
-				final OtpErlangAtom a = (OtpErlangAtom) el0;
-				final String event = a.atomValue();
-				if (id.equals(event)) {
-					return t.elementAt(2);
-				}
-			}
-		} catch (final Exception e) {
+	/**
+	 * The ids of the standard events (see {@link #getStandardEvent}) this
+	 * handler is interested in; it will only be sent those. The default, null,
+	 * means all messages.
+	 */
+	public Collection<String> getEvents() {
+		return null;
+	}
+
+	public int getQueueCapacity() {
+		return DEFAULT_QUEUE_CAPACITY;
+	}
+
+	public OverflowPolicy getOverflowPolicy() {
+		return OverflowPolicy.BLOCK;
+	}
+
+	/**
+	 * @return the id of a standard event, or null if msg isn't one
+	 */
+	public static String getEventId(final OtpErlangObject msg) {
+		if (!(msg instanceof OtpErlangTuple)) {
+			return null;
+		}
+		final OtpErlangTuple t = (OtpErlangTuple) msg;
+		if (t.arity() < 3) {
+			return null;
+		}
+		final OtpErlangObject el0 = t.elementAt(0);
+		if (el0 instanceof OtpErlangAtom && !EVENT.equals(el0)) {
+			return null;
+		}
+		final OtpErlangObject el1 = t.elementAt(1);
+		if (el1 instanceof OtpErlangAtom) {
+			return ((OtpErlangAtom) el1).atomValue();
 		}
 		return null;
 	}
 
+	public static OtpErlangObject getStandardEvent(final OtpErlangObject msg,
+			final String id) {
+		// decoded atoms are canonical, so this is usually an identity check
+		return getStandardEvent(msg, OtpAtomCache.atom(id));
+	}
+
 	public static OtpErlangObject getStandardEvent(final OtpErlangObject msg,
 			final OtpErlangObject id) {
 		try {
 			final OtpErlangTuple t = (OtpErlangTuple) msg;
 			OtpErlangObject el0 = t.elementAt(0);
-			if (el0 instanceof OtpErlangAtom) {
-				if (!((OtpErlangAtom) el0).atomValue().equals("event")) {
-					return null;
-				}
+			if (el0 instanceof OtpErlangAtom && !EVENT.equals(el0)) {
+				return null;
 			}
 			el0 = t.elementAt(1);
 			if (el0 instanceof OtpErlangAtom) {
-				if (id.equals(el0)) {
+				if (el0 == id || id.equals(el0)) {
 					return t.elementAt(2);
 				}
 			}
@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Vlad Dumitrescu and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available
+ * at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Vlad Dumitrescu
+ *******************************************************************************/
+package org.erlide.jinterface.backend.events;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.ericsson.otp.erlang.OtpErlangObject;
+
+/**
+ * The messages waiting for one handler. The queue is drained by a task on a
+ * shared pool, so each handler sees its messages in order, but a slow one
+ * doesn't hold up the others.
+ */
+final class HandlerQueue implements Runnable {
+
+	private static final Executor POOL = Executors
+			.newCachedThreadPool(new ThreadFactory() {
+				private final AtomicInteger count = new AtomicInteger();
+
+				public Thread newThread(final Runnable r) {
+					final Thread t = new Thread(r, "erlide event handler "
+							+ count.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}
+			});
+
+	private final EventHandler handler;
+	private final int capacity;
+	private final OverflowPolicy policy;
+	private final Executor executor;
+
+	private final Queue<OtpErlangObject> queue = new ConcurrentLinkedQueue<OtpErlangObject>();
+	private final AtomicInteger depth = new AtomicInteger();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+	private volatile boolean closed = false;
+
+	HandlerQueue(final EventHandler handler) {
+		this(handler, handler.getQueueCapacity(), handler.getOverflowPolicy());
+	}
+
+	HandlerQueue(final EventHandler handler, final int capacity,
+			final OverflowPolicy policy) {
+		this(handler, capacity, policy, POOL);
+	}
+
+	HandlerQueue(final EventHandler handler, final int capacity,
+			final OverflowPolicy policy, final Executor executor) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity: " + capacity);
+		}
+		this.handler = handler;
+		this.capacity = capacity;
+		this.policy = policy;
+		this.executor = executor;
+	}
+
+	EventHandler getHandler() {
+		return handler;
+	}
+
+	/**
+	 * Queue a message; only called from the daemon thread.
+	 *
+	 * @return false if the message was dropped
+	 */
+	boolean offer(final OtpErlangObject msg) {
+		if (closed) {
+			return false;
+		}
+		if (depth.get() >= capacity) {
+			switch (policy) {
+			case DROP_NEWEST:
+				dropped.incrementAndGet();
+				return false;
+			case DROP_OLDEST:
+				if (queue.poll() != null) {
+					depth.decrementAndGet();
+					dropped.incrementAndGet();
+				}
+				break;
+			default:
+				if (!awaitRoom()) {
+					return false;
+				}
+			}
+		}
+		queue.add(msg);
+		depth.incrementAndGet();
+		if (scheduled.compareAndSet(false, true)) {
+			executor.execute(this);
+		}
+		return true;
+	}
+
+	public void run() {
+		try {
+			OtpErlangObject msg;
+			while (!closed && (msg = queue.poll()) != null) {
+				if (depth.getAndDecrement() >= capacity
+						&& policy == OverflowPolicy.BLOCK) {
+					synchronized (this) {
+						notifyAll();
+					}
+				}
+				handler.handleMsg(msg);
+			}
+		} finally {
+			scheduled.set(false);
+			// a message may have come after the last poll
+			if (!closed && !queue.isEmpty()
+					&& scheduled.compareAndSet(false, true)) {
+				executor.execute(this);
+			}
+		}
+	}
+
+	void close() {
+		closed = true;
+		queue.clear();
+		depth.set(0);
+		synchronized (this) {
+			notifyAll();
+		}
+	}
+
+	/**
+	 * @return the number of messages waiting to be handled
+	 */
+	int getDepth() {
+		return depth.get();
+	}
+
+	/**
+	 * @return the number of messages dropped because the queue was full
+	 */
+	long getDropped() {
+		return dropped.get();
+	}
+
+	private boolean awaitRoom() {
+		synchronized (this) {
+			while (depth.get() >= capacity && !closed) {
+				try {
+					wait(100);
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			}
+		}
+		return !closed;
+	}
+
+}
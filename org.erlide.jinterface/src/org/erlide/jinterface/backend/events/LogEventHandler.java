@@ -1,5 +1,9 @@
 package org.erlide.jinterface.backend.events;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
 import org.erlide.jinterface.util.Bindings;
 import org.erlide.jinterface.util.ErlLogger;
 import org.erlide.jinterface.util.ErlUtils;
@@ -12,6 +16,14 @@ import com.ericsson.otp.erlang.OtpErlangTuple;
 
 public class LogEventHandler extends EventHandler {
 
+	private static final Collection<String> EVENTS = Collections
+			.unmodifiableList(Arrays.asList("log", "erlang_log"));
+
+	@Override
+	public Collection<String> getEvents() {
+		return EVENTS;
+	}
+
 	@Override
 	protected void doHandleMsg(final OtpErlangObject msg) throws Exception {
 		OtpErlangObject log = getStandardEvent(msg, "log");
@@ -0,0 +1,27 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Vlad Dumitrescu and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available
+ * at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Vlad Dumitrescu
+ *******************************************************************************/
+package org.erlide.jinterface.backend.events;
+
+/**
+ * What the {@link EventDaemon} does with a message for a handler whose queue
+ * is full.
+ */
+public enum OverflowPolicy {
+	/**
+	 * Wait until the handler catches up. Nothing is lost, but all the other
+	 * handlers wait too.
+	 */
+	BLOCK,
+	/** Drop the new message. */
+	DROP_NEWEST,
+	/** Drop the oldest queued message to make room for the new one. */
+	DROP_OLDEST
+}
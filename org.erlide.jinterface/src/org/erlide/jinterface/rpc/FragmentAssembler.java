@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Vlad Dumitrescu and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available
+ * at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Vlad Dumitrescu
+ *******************************************************************************/
+package org.erlide.jinterface.rpc;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import com.ericsson.otp.erlang.OtpErlangObject;
+
+/**
+ * The transfer of a call made through erlide_compress, see
+ * {@link RpcCompression}: the fragments of the request still to be uploaded,
+ * and those of the reply as they arrive. The reply and its fragments can come
+ * in any order; the result is unwrapped when all are here.
+ */
+final class FragmentAssembler {
+
+	private List<byte[]> upload;
+	private final ByteArrayOutputStream fragments = new ByteArrayOutputStream();
+	private int received = 0;
+	// the reply, once it arrived, and the number of fragments it announced
+	private OtpErlangObject reply = null;
+	private int fragmentCount = 0;
+
+	FragmentAssembler(final List<byte[]> upload) {
+		this.upload = upload.isEmpty() ? null : upload;
+	}
+
+	/**
+	 * @return the fragments of the request, the first time the backend asks
+	 *         for them, otherwise null
+	 */
+	synchronized List<byte[]> takeUpload() {
+		final List<byte[]> result = upload;
+		upload = null;
+		return result;
+	}
+
+	/**
+	 * @return the result, or null if some fragments are still missing
+	 */
+	OtpErlangObject reply(final OtpErlangObject value) {
+		final byte[] data;
+		synchronized (this) {
+			reply = value;
+			fragmentCount = RpcCompression.getFragmentCount(value);
+			if (fragmentCount > received) {
+				return null;
+			}
+			data = fragments.toByteArray();
+		}
+		return RpcCompression.unwrap(value, data);
+	}
+
+	/**
+	 * @return the result if this was the last piece missing, otherwise null
+	 */
+	OtpErlangObject fragment(final byte[] part) {
+		final OtpErlangObject value;
+		final byte[] data;
+		synchronized (this) {
+			fragments.write(part, 0, part.length);
+			received++;
+			if (reply == null || received < fragmentCount) {
+				return null;
+			}
+			value = reply;
+			data = fragments.toByteArray();
+		}
+		return RpcCompression.unwrap(value, data);
+	}
+
+}
@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Vlad Dumitrescu and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available
+ * at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Vlad Dumitrescu
+ *******************************************************************************/
+package org.erlide.jinterface.rpc;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts durations in buckets whose width grows with the value: each power of
+ * two is split in 8, so any percentile is off by at most 12.5%. Recording is a
+ * couple of atomic increments, no locks and no allocation.
+ */
+public final class LatencyHistogram {
+
+	private static final int SUB_BITS = 3;
+	private static final int SUB = 1 << SUB_BITS;
+	// enough for 2^40 microseconds, about 12 days
+	private static final int MAX_EXP = 40;
+	private static final int BUCKETS = (MAX_EXP - SUB_BITS + 2) * SUB;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * @param micros
+	 *            the duration, in microseconds
+	 */
+	public void record(final long micros) {
+		final long value = Math.max(0, micros);
+		counts.incrementAndGet(bucket(value));
+		count.incrementAndGet();
+		total.addAndGet(value);
+		long m;
+		while (value > (m = max.get())) {
+			if (max.compareAndSet(m, value)) {
+				break;
+			}
+		}
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * @return the sum of all durations, in microseconds
+	 */
+	public long getTotal() {
+		return total.get();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	public long getMean() {
+		final long n = count.get();
+		return n == 0 ? 0 : total.get() / n;
+	}
+
+	/**
+	 * @param p
+	 *            between 0 and 100
+	 * @return the duration that p percent of the calls didn't exceed, in
+	 *         microseconds
+	 */
+	public long getPercentile(final double p) {
+		long n = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			n += counts.get(i);
+		}
+		if (n == 0) {
+			return 0;
+		}
+		final long rank = Math.max(1, (long) Math.ceil(n * p / 100));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= rank) {
+				return Math.min(upperBound(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+		count.set(0);
+		total.set(0);
+		max.set(0);
+	}
+
+	static int bucket(final long value) {
+		if (value < SUB) {
+			return (int) value;
+		}
+		final int exp = 63 - Long.numberOfLeadingZeros(value);
+		if (exp > MAX_EXP) {
+			return BUCKETS - 1;
+		}
+		final int sub = (int) (value >>> (exp - SUB_BITS)) & (SUB - 1);
+		return (exp - SUB_BITS + 1) * SUB + sub;
+	}
+
+	static long upperBound(final int bucket) {
+		if (bucket < SUB) {
+			return bucket;
+		}
+		final int exp = bucket / SUB + SUB_BITS - 1;
+		final long sub = bucket % SUB;
+		final int shift = exp - SUB_BITS;
+		return ((SUB + sub + 1) << shift) - 1;
+	}
+
+}
@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Vlad Dumitrescu and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available
+ * at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Vlad Dumitrescu
+ *******************************************************************************/
+package org.erlide.jinterface.rpc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.ericsson.otp.erlang.OtpErlang;
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangString;
+import com.ericsson.otp.erlang.SignatureException;
+
+/**
+ * A list of independent calls to be made in a single round trip; the backend
+ * runs them one after the other with erlide_batch:apply_all/1. Use it for
+ * bursts of small calls whose results are all needed together:
+ *
+ * <pre>
+ * final RpcBatch batch = backend.batch();
+ * for (...) {
+ *     batch.add(&quot;mod&quot;, &quot;fun&quot;, SIG, arg);
+ * }
+ * final OtpErlangObject[] results = backend.call(batch);
+ * </pre>
+ *
+ * A call that fails doesn't affect the others; its result is a
+ * <code>{badrpc, Reason}</code> tuple, see {@link RpcUtil#isBadRpc}.
+ */
+public final class RpcBatch {
+
+	public static final String MODULE = "erlide_batch";
+	public static final String FUNCTION = "apply_all";
+
+	private final List<OtpErlangObject> calls = new ArrayList<OtpErlangObject>();
+
+	/**
+	 * Add a call to the batch.
+	 *
+	 * @return the index of its result
+	 */
+	public int add(final String module, final String fun,
+			final RpcSignature signature, final Object... args)
+			throws SignatureException {
+		calls.add(OtpErlang.mkTuple(new OtpErlangAtom(module),
+				new OtpErlangAtom(fun), new OtpErlangList(signature
+						.encode(args))));
+		return calls.size() - 1;
+	}
+
+	public int add(final String module, final String fun,
+			final String signature, final Object... args)
+			throws SignatureException {
+		return add(module, fun, RpcSignature.compile(signature), args);
+	}
+
+	public int size() {
+		return calls.size();
+	}
+
+	public boolean isEmpty() {
+		return calls.isEmpty();
+	}
+
+	/**
+	 * @return the argument for erlide_batch:apply_all/1
+	 */
+	public OtpErlangList getCalls() {
+		return new OtpErlangList(calls
+				.toArray(new OtpErlangObject[calls.size()]));
+	}
+
+	/**
+	 * Split the reply of erlide_batch:apply_all/1 into the results of the
+	 * calls, in the order they were added.
+	 */
+	public OtpErlangObject[] getResults(final OtpErlangObject reply)
+			throws RpcException {
+		if (reply instanceof OtpErlangString
+				&& ((OtpErlangString) reply).stringValue().length() == calls
+						.size()) {
+			// all the results were small integers
+			final String s = ((OtpErlangString) reply).stringValue();
+			final OtpErlangObject[] result = new OtpErlangObject[s.length()];
+			for (int i = 0; i < result.length; i++) {
+				result[i] = new OtpErlangLong(s.charAt(i));
+			}
+			return result;
+		}
+		if (!(reply instanceof OtpErlangList)
+				|| ((OtpErlangList) reply).arity() != calls.size()) {
+			throw new RpcException("bad batch reply: " + reply);
+		}
+		return ((OtpErlangList) reply).elements();
+	}
+
+}
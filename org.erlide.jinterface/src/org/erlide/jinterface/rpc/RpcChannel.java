@@ -0,0 +1,320 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Vlad Dumitrescu and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available
+ * at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Vlad Dumitrescu
+ *******************************************************************************/
+package org.erlide.jinterface.rpc;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.erlide.jinterface.util.ErlLogger;
+
+import com.ericsson.otp.erlang.OtpErlang;
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangBinary;
+import com.ericsson.otp.erlang.OtpErlangDecodeException;
+import com.ericsson.otp.erlang.OtpErlangExit;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangPid;
+import com.ericsson.otp.erlang.OtpErlangRef;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+import com.ericsson.otp.erlang.OtpMbox;
+import com.ericsson.otp.erlang.OtpMboxListener;
+import com.ericsson.otp.erlang.OtpMsg;
+import com.ericsson.otp.erlang.OtpNode;
+
+/**
+ * One long-lived mailbox per node, used by all the RPCs made from it. Calls
+ * are sent to rex as gen_server calls tagged with a new reference, so rex
+ * replies with <code>{Ref, Result}</code> and the result can be handed to the
+ * right {@link RpcFuture}. Streamed results arrive as <code>{Ref, Tag,
+ * Value}</code> messages on the same mailbox.
+ * <p>
+ * The thread that delivers a message to the mailbox is the connection's
+ * reader, so it only schedules the channel's dispatcher. The dispatcher runs
+ * on a shared pool and decodes, reassembles and acknowledges the messages, in
+ * the order they arrived.
+ * <p>
+ * Large calls go through erlide_compress, see {@link RpcCompression}; their
+ * fragments are <code>{Ref, fragment, Part}</code> messages too, and are
+ * uploaded from a separate thread when the backend asks for them.
+ */
+public final class RpcChannel implements OtpMboxListener, Runnable {
+
+	private static final OtpErlangAtom GEN_CALL = new OtpErlangAtom(
+			"$gen_call");
+	private static final OtpErlangAtom CALL = new OtpErlangAtom("call");
+	private static final OtpErlangAtom STREAM = new OtpErlangAtom(
+			"erlide_stream");
+	private static final OtpErlangAtom START = new OtpErlangAtom("start");
+	private static final OtpErlangAtom COMPRESS = new OtpErlangAtom(
+			RpcCompression.MODULE);
+	private static final OtpErlangAtom COMPRESS_CALL = new OtpErlangAtom(
+			RpcCompression.FUNCTION);
+	private static final OtpErlangAtom FRAGMENT = new OtpErlangAtom(
+			"fragment");
+	private static final int BATCH = 64;
+
+	private static final Executor UPLOADS = Executors
+			.newCachedThreadPool(new ThreadFactory() {
+				public Thread newThread(final Runnable r) {
+					final Thread t = new Thread(r, "erlide rpc upload");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+
+	private static final Executor DISPATCH = Executors
+			.newCachedThreadPool(new ThreadFactory() {
+				private final AtomicInteger count = new AtomicInteger();
+
+				public Thread newThread(final Runnable r) {
+					final Thread t = new Thread(r, "erlide rpc dispatch "
+							+ count.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}
+			});
+
+	private static final Map<OtpNode, RpcChannel> channels = new HashMap<OtpNode, RpcChannel>();
+
+	private final OtpNode node;
+	private final OtpMbox mbox;
+	private final Map<OtpErlangRef, RpcFuture> pending = new HashMap<OtpErlangRef, RpcFuture>();
+	// the dispatcher is scheduled or running
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+
+	/**
+	 * Get the channel of a node, creating it on first use.
+	 */
+	public static RpcChannel get(final OtpNode node) {
+		synchronized (channels) {
+			RpcChannel channel = channels.get(node);
+			if (channel == null) {
+				channel = new RpcChannel(node);
+				channels.put(node, channel);
+			}
+			return channel;
+		}
+	}
+
+	/**
+	 * Close the channel of a node that is going away. Calls still waiting for
+	 * a reply will time out.
+	 */
+	public static void release(final OtpNode node) {
+		final RpcChannel channel;
+		synchronized (channels) {
+			channel = channels.remove(node);
+		}
+		if (channel != null) {
+			channel.mbox.setListener(null);
+			channel.mbox.close();
+		}
+	}
+
+	private RpcChannel(final OtpNode node) {
+		this.node = node;
+		mbox = node.createMbox();
+		mbox.setListener(this);
+	}
+
+	public OtpErlangPid self() {
+		return mbox.self();
+	}
+
+	/**
+	 * Send a call request to rex on the peer node.
+	 */
+	public RpcFuture call(final String peer, final OtpErlangObject gleader,
+			final String module, final String fun,
+			final OtpErlangObject[] args, final String env) {
+		final OtpErlangRef ref = node.createRef();
+		final RpcFuture future = new RpcFuture(this, ref, env, false);
+		if (RpcCompression.isWrapped(args)) {
+			final List<byte[]> upload = new ArrayList<byte[]>();
+			final OtpErlangObject wrapped = RpcCompression.wrap(
+					new OtpErlangAtom(module), new OtpErlangAtom(fun),
+					new OtpErlangList(args), upload);
+			future.setUpload(upload);
+			request(peer, gleader, ref, future, COMPRESS, COMPRESS_CALL,
+					new OtpErlangList(new OtpErlangObject[] { mbox.self(),
+							ref, wrapped,
+							new OtpErlangLong(RpcCompression.getThreshold()) }));
+		} else {
+			request(peer, gleader, ref, future, new OtpErlangAtom(module),
+					new OtpErlangAtom(fun), new OtpErlangList(args));
+		}
+		return future;
+	}
+
+	/**
+	 * Start a call whose result is sent back in chunks of at most
+	 * <code>chunkSize</code> items, see erlide_stream. The function must
+	 * return a list, <code>{ok, List}</code> or <code>{stream,
+	 * Producer}</code>; only a producer lets the first items be sent before
+	 * the whole result is computed.
+	 */
+	public RpcFuture stream(final String peer, final OtpErlangObject gleader,
+			final String module, final String fun,
+			final OtpErlangObject[] args, final int chunkSize, final String env) {
+		final OtpErlangRef ref = node.createRef();
+		final RpcFuture future = new RpcFuture(this, ref, env, true);
+		request(peer, gleader, ref, future, STREAM, START, new OtpErlangList(
+				new OtpErlangObject[] { mbox.self(), ref,
+						new OtpErlangAtom(module), new OtpErlangAtom(fun),
+						new OtpErlangList(args), new OtpErlangLong(chunkSize) }));
+		return future;
+	}
+
+	private void request(final String peer, final OtpErlangObject gleader,
+			final OtpErlangRef ref, final RpcFuture future,
+			final OtpErlangAtom module, final OtpErlangAtom fun,
+			final OtpErlangList args) {
+		synchronized (pending) {
+			pending.put(ref, future);
+		}
+		final OtpErlangObject request = OtpErlang.mkTuple(CALL, module, fun,
+				args, gleader);
+		future.sent(mbox.sendCounted("rex", peer, OtpErlang.mkTuple(GEN_CALL,
+				OtpErlang.mkTuple(mbox.self(), ref), request)));
+	}
+
+	public void send(final OtpErlangPid pid, final OtpErlangObject msg) {
+		mbox.send(pid, msg);
+	}
+
+	/*
+	 * Send the fragments of a large request, one message each, so that the
+	 * connection is free for other messages in between.
+	 */
+	void upload(final OtpErlangPid pid, final OtpErlangRef ref,
+			final List<byte[]> parts) {
+		UPLOADS.execute(new Runnable() {
+			public void run() {
+				for (final byte[] part : parts) {
+					mbox.send(pid, OtpErlang.mkTuple(ref, FRAGMENT,
+							new OtpErlangBinary(part)));
+				}
+			}
+		});
+	}
+
+	public void send(final String peer, final String name,
+			final OtpErlangObject msg) {
+		mbox.send(name, peer, msg);
+	}
+
+	/**
+	 * Forget a call that is not waited for any more; a late reply is dropped.
+	 */
+	void cancel(final OtpErlangRef ref) {
+		synchronized (pending) {
+			pending.remove(ref);
+		}
+	}
+
+	/**
+	 * @return the number of calls waiting for a reply
+	 */
+	public int getPendingCount() {
+		synchronized (pending) {
+			return pending.size();
+		}
+	}
+
+	public void messageDelivered(final OtpMbox box) {
+		if (scheduled.compareAndSet(false, true)) {
+			DISPATCH.execute(this);
+		}
+	}
+
+	public void run() {
+		try {
+			OtpMsg[] msgs;
+			while ((msgs = mbox.receiveMsgs(BATCH, 0)).length > 0) {
+				for (final OtpMsg msg : msgs) {
+					dispatch(msg);
+				}
+			}
+		} catch (final OtpErlangExit e) {
+			ErlLogger.warn(e);
+		} finally {
+			scheduled.set(false);
+			// a message may have come after the last receive
+			if (!mbox.isEmpty() && scheduled.compareAndSet(false, true)) {
+				DISPATCH.execute(this);
+			}
+		}
+	}
+
+	private void dispatch(final OtpMsg msg) {
+		OtpErlangObject reply;
+		try {
+			reply = msg.getMsg();
+		} catch (final OtpErlangDecodeException e) {
+			ErlLogger.warn(e);
+			return;
+		}
+		final int bytes = msg.getPayloadSize();
+		if (reply instanceof OtpErlangTuple) {
+			final OtpErlangTuple t = (OtpErlangTuple) reply;
+			if (t.arity() == 2 && t.elementAt(0) instanceof OtpErlangRef) {
+				final RpcFuture future;
+				synchronized (pending) {
+					future = pending.get(t.elementAt(0));
+				}
+				if (future == null) {
+					return;
+				}
+				final boolean over;
+				if (!future.isStreaming()) {
+					over = future.complete(t.elementAt(1), bytes);
+				} else {
+					over = future.started(t.elementAt(1), bytes);
+				}
+				if (over) {
+					cancel((OtpErlangRef) t.elementAt(0));
+				}
+				return;
+			}
+			if (t.arity() == 3 && t.elementAt(0) instanceof OtpErlangRef
+					&& t.elementAt(1) instanceof OtpErlangAtom) {
+				final RpcFuture future;
+				synchronized (pending) {
+					future = pending.get(t.elementAt(0));
+				}
+				if (future == null) {
+					return;
+				}
+				final boolean over;
+				if (!future.isStreaming()) {
+					over = future.transferred(t, bytes);
+				} else {
+					over = future.streamed(t, bytes);
+				}
+				if (over) {
+					cancel((OtpErlangRef) t.elementAt(0));
+				}
+				return;
+			}
+		}
+		ErlLogger.debug("RpcChannel: unexpected message %s", reply);
+	}
+
+}
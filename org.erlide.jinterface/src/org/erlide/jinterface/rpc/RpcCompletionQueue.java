@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Vlad Dumitrescu and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available
+ * at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Vlad Dumitrescu
+ *******************************************************************************/
+package org.erlide.jinterface.rpc;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.ericsson.otp.erlang.OtpMbox;
+import com.ericsson.otp.erlang.OtpMboxListener;
+
+/**
+ * Collects the futures of outstanding RPCs and hands them back in the order
+ * their replies arrive, so that a single consumer can process results as soon
+ * as they are available instead of polling each future in turn.
+ */
+public class RpcCompletionQueue implements OtpMboxListener {
+
+	private final Map<OtpMbox, RpcFuture> pending = new HashMap<OtpMbox, RpcFuture>();
+	// futures of calls made through an RpcChannel
+	private final Set<RpcFuture> pendingCalls = new HashSet<RpcFuture>();
+	private final BlockingQueue<RpcFuture> completed = new LinkedBlockingQueue<RpcFuture>();
+
+	/**
+	 * Start watching a future. It will be returned by {@link #take(long)} when
+	 * its reply has arrived.
+	 */
+	public synchronized void add(final RpcFuture future) {
+		if (future.isDone()) {
+			completed.add(future);
+			return;
+		}
+		final OtpMbox mbox = future.getMbox();
+		if (mbox == null) {
+			pendingCalls.add(future);
+			future.setCompletionQueue(this);
+			return;
+		}
+		pending.put(mbox, future);
+		mbox.setListener(this);
+	}
+
+	synchronized void completed(final RpcFuture future) {
+		if (pendingCalls.remove(future)) {
+			completed.add(future);
+		}
+	}
+
+	public synchronized void messageDelivered(final OtpMbox mbox) {
+		final RpcFuture future = pending.remove(mbox);
+		if (future != null) {
+			mbox.setListener(null);
+			completed.add(future);
+		}
+	}
+
+	/**
+	 * Retrieve the next future whose reply has arrived, waiting if necessary.
+	 * Calling {@link RpcFuture#get()} on it will not block.
+	 * 
+	 * @param timeout
+	 *            in milliseconds, or {@link RpcUtil#INFINITY}
+	 * @return the future, or null if none completed in time
+	 */
+	public RpcFuture take(final long timeout) throws InterruptedException {
+		if (timeout == RpcUtil.INFINITY) {
+			return completed.take();
+		}
+		return completed.poll(timeout, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @return the number of futures that were added but not taken yet
+	 */
+	public synchronized int size() {
+		return pending.size() + pendingCalls.size() + completed.size();
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * Stop waiting for the outstanding replies and release their mailboxes.
+	 */
+	public synchronized void dispose() {
+		for (final OtpMbox mbox : pending.keySet()) {
+			mbox.setListener(null);
+			mbox.close();
+		}
+		pending.clear();
+		for (final RpcFuture future : pendingCalls) {
+			future.cancel();
+		}
+		pendingCalls.clear();
+		RpcFuture future;
+		while ((future = completed.poll()) != null) {
+			if (!future.isDone()) {
+				future.cancel();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,219 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Vlad Dumitrescu and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available
+ * at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Vlad Dumitrescu
+ *******************************************************************************/
+package org.erlide.jinterface.rpc;
+
+import java.util.List;
+
+import com.ericsson.otp.erlang.OtpErlang;
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangBinary;
+import com.ericsson.otp.erlang.OtpErlangBitstr;
+import com.ericsson.otp.erlang.OtpErlangDecodeException;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangRangeException;
+import com.ericsson.otp.erlang.OtpErlangString;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+import com.ericsson.otp.erlang.OtpExternal;
+import com.ericsson.otp.erlang.OtpInputStream;
+import com.ericsson.otp.erlang.OtpOutputStream;
+
+/**
+ * Compression of large calls, see erlide_compress.erl. A call whose arguments
+ * are larger than the threshold is sent compressed, and if the compressed
+ * request is still larger than {@link #FRAGMENT_SIZE} it is uploaded in
+ * fragments, one message each, so that small calls on the same connection
+ * are not stuck behind it. The reply is compressed (and fragmented) by the
+ * backend when it is larger than the threshold.
+ * <p>
+ * Set with system properties: <code>org.erlide.rpc.compress</code> is the
+ * threshold in bytes (0 turns compression off), and
+ * <code>org.erlide.rpc.compress.replies</code> has all calls go through
+ * erlide_compress so that large replies are compressed too (useful for
+ * remote backends; the erlide kernel must be loaded before the first call).
+ */
+public final class RpcCompression {
+
+	public static final String MODULE = "erlide_compress";
+	public static final String FUNCTION = "call";
+
+	public static final int FRAGMENT_SIZE = 65536;
+
+	private static final int THRESHOLD = Integer.getInteger(
+			"org.erlide.rpc.compress", 256 * 1024).intValue();
+	private static final boolean REPLIES = THRESHOLD > 0
+			&& Boolean.getBoolean("org.erlide.rpc.compress.replies");
+
+	private static final OtpErlangAtom COMPRESSED = new OtpErlangAtom(
+			"$erlide_compressed");
+	private static final OtpErlangAtom FRAGMENTS = new OtpErlangAtom(
+			"$erlide_fragments");
+	private static final OtpErlangAtom BADRPC = new OtpErlangAtom("badrpc");
+	private static final OtpErlangAtom FRAGMENTS_REQUEST = new OtpErlangAtom(
+			"fragments");
+
+	private RpcCompression() {
+	}
+
+	/**
+	 * @return the size above which calls are compressed, 0 if they never are
+	 */
+	public static int getThreshold() {
+		return THRESHOLD;
+	}
+
+	/**
+	 * @return true if a call with these arguments goes through erlide_compress
+	 */
+	public static boolean isWrapped(final OtpErlangObject[] args) {
+		return REPLIES || isLarge(args, THRESHOLD);
+	}
+
+	/**
+	 * @return true if the encoded arguments are probably larger than limit
+	 *         bytes; stops looking as soon as they are
+	 */
+	public static boolean isLarge(final OtpErlangObject[] args,
+			final int limit) {
+		if (limit <= 0) {
+			return false;
+		}
+		long size = 0;
+		for (final OtpErlangObject arg : args) {
+			size += estimate(arg, limit - size);
+			if (size > limit) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * A rough encoded size, enough to tell small terms from large ones.
+	 */
+	private static long estimate(final OtpErlangObject term, final long left) {
+		if (term instanceof OtpErlangString) {
+			return ((OtpErlangString) term).stringValue().length() + 3;
+		} else if (term instanceof OtpErlangBitstr) {
+			return ((OtpErlangBitstr) term).size() + 5;
+		} else if (term instanceof OtpErlangAtom) {
+			return ((OtpErlangAtom) term).atomValue().length() + 3;
+		} else if (term instanceof OtpErlangList) {
+			return estimate(((OtpErlangList) term).elements(), left) + 6;
+		} else if (term instanceof OtpErlangTuple) {
+			return estimate(((OtpErlangTuple) term).elements(), left) + 5;
+		}
+		return 9;
+	}
+
+	private static long estimate(final OtpErlangObject[] terms, final long left) {
+		long size = 0;
+		for (final OtpErlangObject term : terms) {
+			size += estimate(term, left - size);
+			if (size > left) {
+				break;
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Encode a term the way term_to_binary(Term, [compressed]) does.
+	 */
+	public static byte[] compress(final OtpErlangObject term) {
+		final OtpOutputStream out = new OtpOutputStream();
+		out.write1(OtpExternal.versionTag);
+		out.write_compressed(term);
+		return out.toByteArray();
+	}
+
+	public static OtpErlangObject decompress(final byte[] bytes)
+			throws OtpErlangDecodeException {
+		return new OtpInputStream(bytes).read_any();
+	}
+
+	/**
+	 * Build the request for erlide_compress:call/4. The call is compressed if
+	 * it is large; if it is still larger than a fragment, the fragments are
+	 * added to <code>upload</code> and must be sent when the backend asks for
+	 * them.
+	 */
+	static OtpErlangObject wrap(final OtpErlangAtom module,
+			final OtpErlangAtom fun, final OtpErlangList args,
+			final List<byte[]> upload) {
+		final OtpErlangTuple mfa = OtpErlang.mkTuple(module, fun, args);
+		if (!isLarge(args.elements(), THRESHOLD)) {
+			return mfa;
+		}
+		final byte[] bytes = compress(mfa);
+		if (bytes.length <= FRAGMENT_SIZE) {
+			return new OtpErlangBinary(bytes);
+		}
+		for (int i = 0; i < bytes.length; i += FRAGMENT_SIZE) {
+			final int n = Math.min(FRAGMENT_SIZE, bytes.length - i);
+			final byte[] part = new byte[n];
+			System.arraycopy(bytes, i, part, 0, n);
+			upload.add(part);
+		}
+		return OtpErlang.mkTuple(FRAGMENTS_REQUEST, new OtpErlangLong(upload
+				.size()));
+	}
+
+	/**
+	 * @return the number of fragments a reply is sent in, or 0 if it isn't
+	 */
+	static int getFragmentCount(final OtpErlangObject reply) {
+		if (!isTagged(reply, FRAGMENTS)) {
+			return 0;
+		}
+		try {
+			return ((OtpErlangLong) ((OtpErlangTuple) reply).elementAt(1))
+					.intValue();
+		} catch (final OtpErlangRangeException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Decode a reply of erlide_compress:call/4. A reply that can't be decoded
+	 * becomes <code>{badrpc, Reason}</code>.
+	 *
+	 * @param fragments
+	 *            the concatenated fragments, if the reply was fragmented
+	 */
+	static OtpErlangObject unwrap(final OtpErlangObject reply,
+			final byte[] fragments) {
+		try {
+			if (isTagged(reply, COMPRESSED)) {
+				return decompress(((OtpErlangBinary) ((OtpErlangTuple) reply)
+						.elementAt(1)).binaryValue());
+			} else if (isTagged(reply, FRAGMENTS)) {
+				return decompress(fragments);
+			}
+		} catch (final OtpErlangDecodeException e) {
+			return OtpErlang.mkTuple(BADRPC, new OtpErlangString(
+					"bad compressed reply: " + e.getMessage()));
+		} catch (final ClassCastException e) {
+			return OtpErlang.mkTuple(BADRPC, new OtpErlangString(
+					"bad compressed reply: " + reply));
+		}
+		return reply;
+	}
+
+	private static boolean isTagged(final OtpErlangObject reply,
+			final OtpErlangAtom tag) {
+		return reply instanceof OtpErlangTuple
+				&& ((OtpErlangTuple) reply).arity() == 2
+				&& tag.equals(((OtpErlangTuple) reply).elementAt(0));
+	}
+
+}
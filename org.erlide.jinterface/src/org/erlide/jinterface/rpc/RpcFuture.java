@@ -10,38 +10,362 @@
  *******************************************************************************/
 package org.erlide.jinterface.rpc;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangBinary;
+import com.ericsson.otp.erlang.OtpErlangList;
 import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangPid;
+import com.ericsson.otp.erlang.OtpErlangRef;
+import com.ericsson.otp.erlang.OtpErlangTuple;
 import com.ericsson.otp.erlang.OtpMbox;
 
+/**
+ * The result of an RPC, to be retrieved when needed.
+ * <p>
+ * Results can also be read in batches with {@link #nextBatch(long)}. For a
+ * streaming call (see {@link RpcUtil#sendStreamingCall}) each batch is decoded
+ * as it arrives, so the first items can be used before the backend has sent
+ * everything, and the rest can be dropped with {@link #cancel()}. The stream
+ * itself is handled by a {@link StreamConsumer}, and the fragments of a call
+ * made through erlide_compress by a {@link FragmentAssembler}.
+ */
 public class RpcFuture {
 
+	private static final RpcStats.Call NO_STATS = new RpcStats.Call(null);
+
 	private final OtpMbox mbox;
+	private final RpcChannel channel;
+	private final OtpErlangRef ref;
 	private OtpErlangObject result = null;
 	private String env;
+	private RpcCompletionQueue completionQueue = null;
+	private final RpcStats.Call stats;
+
+	// streaming calls only
+	private final StreamConsumer stream;
+	// non-streaming calls: the result was returned by nextBatch already
+	private boolean taken = false;
+	// calls made through erlide_compress only, see RpcCompression
+	private FragmentAssembler fragments = null;
 
 	public RpcFuture(final OtpMbox mbox, String env) {
 		this.mbox = mbox;
 		this.env = env;
+		channel = null;
+		ref = null;
+		stream = null;
+		stats = NO_STATS;
+	}
+
+	/**
+	 * Create a future for a call made through a shared channel; the channel
+	 * completes it when the reply arrives.
+	 */
+	RpcFuture(final RpcChannel channel, final OtpErlangRef ref,
+			final String env, final boolean streaming) {
+		mbox = null;
+		this.channel = channel;
+		this.ref = ref;
+		this.env = env;
+		stream = streaming ? new StreamConsumer(channel, ref, env) : null;
+		stats = RpcStats.start(env);
+	}
+
+	/**
+	 * Create a future that already has its result.
+	 */
+	public RpcFuture(final OtpErlangObject result) {
+		mbox = null;
+		channel = null;
+		ref = null;
+		stream = null;
+		this.result = result;
+		stats = NO_STATS;
 	}
 
 	public OtpErlangObject get() throws RpcException {
-		if (isDone()) {
+		if (isDone() && stream == null) {
 			return result;
 		}
 		return get(RpcUtil.INFINITY);
 	}
 
+	/**
+	 * Wait for the result. For a streaming call, this collects all the
+	 * remaining batches into one list.
+	 *
+	 * @throws RpcTimeoutException
+	 *             if the result didn't arrive in time; any other call is still
+	 *             pending and can be waited for again, or dropped with
+	 *             {@link #cancel()}
+	 */
 	public OtpErlangObject get(final long timeout) throws RpcException {
-		if (isDone()) {
+		if (stream != null) {
+			return collect(timeout);
+		}
+		if (mbox != null) {
+			if (isDone()) {
+				return result;
+			}
+			result = RpcUtil.getRpcResult(mbox, timeout, env);
+			return result;
+		}
+		synchronized (this) {
+			final long stop = System.currentTimeMillis() + timeout;
+			while (result == null) {
+				waitUntil(stop, timeout);
+			}
 			return result;
 		}
-		result = RpcUtil.getRpcResult(mbox, timeout, env);
-		return result;
 	}
 
-	public boolean isDone() {
+	/**
+	 * Retrieve the next batch of results, waiting for it if necessary. A
+	 * streaming call returns the items in the order the backend sent them; any
+	 * other call returns its result once, as one batch (the elements if it is
+	 * a list).
+	 *
+	 * @param timeout
+	 *            in milliseconds, or {@link RpcUtil#INFINITY}
+	 * @return the items, or null when there are no more
+	 * @throws RpcTimeoutException
+	 *             if no batch arrived in time; a streaming call is still
+	 *             active and can be read again or cancelled
+	 */
+	public List<OtpErlangObject> nextBatch(final long timeout)
+			throws RpcException {
+		if (stream == null) {
+			synchronized (this) {
+				if (taken) {
+					return null;
+				}
+			}
+			final OtpErlangObject value = get(timeout);
+			synchronized (this) {
+				taken = true;
+			}
+			if (value instanceof OtpErlangList) {
+				return Arrays.asList(((OtpErlangList) value).elements());
+			}
+			return Collections.singletonList(value);
+		}
+		try {
+			return stream.next(timeout);
+		} catch (final RpcTimeoutException e) {
+			stats.timedOut();
+			throw e;
+		}
+	}
+
+	public synchronized boolean isDone() {
+		if (stream != null) {
+			return stream.isOver();
+		}
 		return result != null;
 	}
 
+	public boolean isStreaming() {
+		return stream != null;
+	}
+
+	/**
+	 * Stop waiting for the result; a reply arriving later is dropped. A
+	 * streaming call is told to stop sending. Batches that were already
+	 * received can still be read.
+	 */
+	public void cancel() {
+		if (stream != null) {
+			// if the stream hasn't started yet, the call is forgotten when the
+			// sender has been told to stop, see started()
+			if (stream.cancel()) {
+				channel.cancel(ref);
+			}
+			finished();
+		} else if (channel != null) {
+			channel.cancel(ref);
+		} else if (mbox != null && !isDone()) {
+			mbox.close();
+		}
+	}
+
+	/*
+	 * The request was sent, encoded in the given number of bytes.
+	 */
+	void sent(final int bytes) {
+		stats.sent(bytes);
+	}
+
+	/*
+	 * The call goes through erlide_compress; the parts are the fragments to
+	 * send when the backend asks for them, if any.
+	 */
+	void setUpload(final List<byte[]> parts) {
+		fragments = new FragmentAssembler(parts);
+	}
+
+	/*
+	 * The reply to a call. Returns false if the call is not over yet, because
+	 * some fragments of a large reply haven't arrived.
+	 */
+	boolean complete(final OtpErlangObject value, final int bytes) {
+		stats.received(bytes);
+		OtpErlangObject reply = value;
+		if (fragments != null) {
+			reply = fragments.reply(value);
+			if (reply == null) {
+				return false;
+			}
+		}
+		done(reply);
+		return true;
+	}
+
+	/*
+	 * A fragment of a call made through erlide_compress, {Ref, fragment,
+	 * Part}, or the request for our own fragments, {Ref, upload, Pid}. Returns
+	 * true if the call is over.
+	 */
+	boolean transferred(final OtpErlangTuple msg, final int bytes) {
+		if (fragments == null) {
+			return false;
+		}
+		final String tag = ((OtpErlangAtom) msg.elementAt(1)).atomValue();
+		final OtpErlangObject value = msg.elementAt(2);
+		if ("upload".equals(tag) && value instanceof OtpErlangPid) {
+			final List<byte[]> parts = fragments.takeUpload();
+			if (parts != null) {
+				for (final byte[] part : parts) {
+					stats.sent(part.length);
+				}
+				channel.upload((OtpErlangPid) value, ref, parts);
+			}
+			return false;
+		}
+		if (!"fragment".equals(tag) || !(value instanceof OtpErlangBinary)) {
+			return false;
+		}
+		stats.received(bytes);
+		final OtpErlangObject reply = fragments
+				.fragment(((OtpErlangBinary) value).binaryValue());
+		if (reply == null) {
+			return false;
+		}
+		done(reply);
+		return true;
+	}
+
+	private void done(final OtpErlangObject value) {
+		synchronized (this) {
+			result = value;
+			notifyAll();
+		}
+		stats.completed(RpcUtil.isBadRpc(value));
+		finished();
+	}
+
+	/*
+	 * The reply to the call that started a stream: the pid of the process
+	 * sending it, or an error. Returns true if the stream is over.
+	 */
+	boolean started(final OtpErlangObject value, final int bytes) {
+		stats.received(bytes);
+		final boolean over = stream.started(value);
+		if (!(value instanceof OtpErlangPid)) {
+			stats.completed(true);
+			finished();
+		}
+		return over;
+	}
+
+	/*
+	 * A message from the process sending a stream: {Ref, chunk, Items}, {Ref,
+	 * done, Count} or {Ref, error, Reason}. Returns true if the stream is
+	 * over.
+	 */
+	boolean streamed(final OtpErlangTuple msg, final int bytes) {
+		final String tag = ((OtpErlangAtom) msg.elementAt(1)).atomValue();
+		stats.received(bytes);
+		if (!"chunk".equals(tag)) {
+			stats.completed(!"done".equals(tag));
+		}
+		final boolean over = stream.streamed(tag, msg.elementAt(2));
+		if (over) {
+			finished();
+		}
+		return over;
+	}
+
+	/*
+	 * Have the queue notified when the reply arrives, or right away if it's
+	 * already here.
+	 */
+	void setCompletionQueue(final RpcCompletionQueue queue) {
+		synchronized (this) {
+			if (!isDone()) {
+				completionQueue = queue;
+				return;
+			}
+		}
+		queue.completed(this);
+	}
+
+	OtpMbox getMbox() {
+		return mbox;
+	}
+
+	private void finished() {
+		final RpcCompletionQueue queue;
+		synchronized (this) {
+			queue = completionQueue;
+			completionQueue = null;
+		}
+		if (queue != null) {
+			queue.completed(this);
+		}
+	}
+
+	private OtpErlangObject collect(final long timeout) throws RpcException {
+		final List<OtpErlangObject> all = new ArrayList<OtpErlangObject>();
+		final long stop = System.currentTimeMillis() + timeout;
+		List<OtpErlangObject> batch;
+		try {
+			do {
+				long left = RpcUtil.INFINITY;
+				if (timeout != RpcUtil.INFINITY) {
+					left = Math.max(1, stop - System.currentTimeMillis());
+				}
+				batch = nextBatch(left);
+				if (batch != null) {
+					all.addAll(batch);
+				}
+			} while (batch != null);
+		} catch (final RpcException e) {
+			cancel();
+			throw e;
+		}
+		return new OtpErlangList(all.toArray(new OtpErlangObject[all.size()]));
+	}
+
+	// must hold the monitor; the call stays pending when this gives up, so a
+	// later get() still receives the reply, see cancel() to drop it
+	private void waitUntil(final long stop, final long timeout)
+			throws RpcException {
+		final long left = timeout == RpcUtil.INFINITY ? 0 : stop
+				- System.currentTimeMillis();
+		if (timeout != RpcUtil.INFINITY && left <= 0) {
+			stats.timedOut();
+			throw new RpcTimeoutException(env != null ? env : "??");
+		}
+		try {
+			wait(left);
+		} catch (final InterruptedException e) {
+			throw new RpcException(e);
+		}
+	}
+
 }
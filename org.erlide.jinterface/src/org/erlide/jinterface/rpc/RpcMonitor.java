@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Vlad Dumitrescu and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available
+ * at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Vlad Dumitrescu
+ *******************************************************************************/
+package org.erlide.jinterface.rpc;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.erlide.jinterface.util.ErlLogger;
+
+/**
+ * Publishes {@link RpcStats}: as the JMX bean <code>org.erlide:type=Rpc</code>,
+ * and, if the system property <code>org.erlide.rpcstats.dump</code> names a
+ * file, by rewriting that file every <code>org.erlide.rpcstats.period</code>
+ * seconds (default 60).
+ */
+public final class RpcMonitor implements RpcMonitorMBean {
+
+	private static final String OBJECT_NAME = "org.erlide:type=Rpc";
+
+	private static boolean installed = false;
+
+	/**
+	 * Start publishing; calling it more than once does nothing.
+	 */
+	public static synchronized void install() {
+		if (installed || !RpcStats.isEnabled()) {
+			return;
+		}
+		installed = true;
+		try {
+			final MBeanServer server = ManagementFactory
+					.getPlatformMBeanServer();
+			final ObjectName name = new ObjectName(OBJECT_NAME);
+			if (!server.isRegistered(name)) {
+				server.registerMBean(new RpcMonitor(), name);
+			}
+		} catch (final Exception e) {
+			ErlLogger.warn(e);
+		}
+		final String file = System.getProperty("org.erlide.rpcstats.dump");
+		if (file != null) {
+			final long period = Long.getLong("org.erlide.rpcstats.period", 60)
+					.longValue() * 1000;
+			final Timer timer = new Timer("erlide rpc stats", true);
+			timer.schedule(new TimerTask() {
+				@Override
+				public void run() {
+					try {
+						dumpTo(file);
+					} catch (final IOException e) {
+						ErlLogger.warn(e);
+					}
+				}
+			}, period, period);
+		}
+	}
+
+	static void dumpTo(final String fileName) throws IOException {
+		final PrintWriter out = new PrintWriter(new FileWriter(fileName));
+		try {
+			RpcStats.dump(out);
+		} finally {
+			out.close();
+		}
+	}
+
+	public long getCalls() {
+		long n = 0;
+		for (final RpcStats s : RpcStats.getAll()) {
+			n += s.getCalls();
+		}
+		return n;
+	}
+
+	public long getErrors() {
+		long n = 0;
+		for (final RpcStats s : RpcStats.getAll()) {
+			n += s.getErrors();
+		}
+		return n;
+	}
+
+	public long getTimeouts() {
+		long n = 0;
+		for (final RpcStats s : RpcStats.getAll()) {
+			n += s.getTimeouts();
+		}
+		return n;
+	}
+
+	public String[] getTable() {
+		final List<RpcStats> all = RpcStats.getAll();
+		final String[] result = new String[all.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = all.get(i).toString();
+		}
+		return result;
+	}
+
+	public void reset() {
+		RpcStats.resetAll();
+	}
+
+	public void dump(final String fileName) throws IOException {
+		dumpTo(fileName);
+	}
+
+}
@@ -0,0 +1,36 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Vlad Dumitrescu and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available
+ * at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Vlad Dumitrescu
+ *******************************************************************************/
+package org.erlide.jinterface.rpc;
+
+import java.io.IOException;
+
+/**
+ * The RPC statistics, as seen from JMX.
+ */
+public interface RpcMonitorMBean {
+
+	long getCalls();
+
+	long getErrors();
+
+	long getTimeouts();
+
+	/**
+	 * @return one line per function, the most expensive first; see
+	 *         {@link RpcStats#dump}
+	 */
+	String[] getTable();
+
+	void reset();
+
+	void dump(String fileName) throws IOException;
+
+}
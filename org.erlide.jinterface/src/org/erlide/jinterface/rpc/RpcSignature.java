@@ -0,0 +1,235 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Vlad Dumitrescu and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available
+ * at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Vlad Dumitrescu
+ *******************************************************************************/
+package org.erlide.jinterface.rpc;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.erlide.jinterface.util.TypeConverter;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangString;
+import com.ericsson.otp.erlang.Signature;
+import com.ericsson.otp.erlang.SignatureException;
+
+/**
+ * A signature string (like "lsslsxp") compiled into one encoder per argument.
+ * Instances are immutable and can be shared by any number of threads, so a
+ * call site can compile its signature once and keep it in a constant:
+ *
+ * <pre>
+ * private static final RpcSignature SIG = RpcSignature.of(&quot;sa&quot;);
+ * ...
+ * backend.call(&quot;mod&quot;, &quot;fun&quot;, SIG, name, kind);
+ * </pre>
+ *
+ * The common cases (strings, atoms, integers, lists of those) are encoded
+ * directly; everything else goes through
+ * {@link TypeConverter#java2erlang(Object, Signature)}, so the result is the
+ * same as with the signature string.
+ */
+public final class RpcSignature {
+
+	private static final ConcurrentMap<String, RpcSignature> CACHE = new ConcurrentHashMap<String, RpcSignature>();
+	private static final Signature ANY = new Signature('x');
+	private static final Encoder ANY_ENCODER = new Encoder(ANY);
+	// for a null signature: any number of arguments, converted as 'x'
+	private static final RpcSignature UNTYPED = new RpcSignature();
+
+	private final String signature;
+	private final Encoder[] encoders;
+
+	/**
+	 * Compile a signature. Compiled signatures are cached, so this is also
+	 * cheap to call with a literal.
+	 *
+	 * @param signature
+	 *            the signature, or null to convert all arguments as 'x'
+	 */
+	public static RpcSignature compile(final String signature)
+			throws SignatureException {
+		if (signature == null) {
+			return UNTYPED;
+		}
+		RpcSignature result = CACHE.get(signature);
+		if (result == null) {
+			result = new RpcSignature(signature);
+			CACHE.putIfAbsent(signature, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Compile a constant signature. A malformed signature is a programming
+	 * error here, so it is reported with an unchecked exception.
+	 */
+	public static RpcSignature of(final String signature) {
+		try {
+			return compile(signature);
+		} catch (final SignatureException e) {
+			throw new IllegalArgumentException(e.getMessage());
+		}
+	}
+
+	private RpcSignature() {
+		signature = null;
+		encoders = null;
+	}
+
+	private RpcSignature(final String signature) throws SignatureException {
+		this.signature = signature;
+		final Signature[] types = Signature.parse(signature);
+		encoders = new Encoder[types.length];
+		for (int i = 0; i < types.length; i++) {
+			encoders[i] = encoder(types[i]);
+		}
+	}
+
+	/**
+	 * @return the number of arguments, or -1 if any number is accepted
+	 */
+	public int arity() {
+		return encoders == null ? -1 : encoders.length;
+	}
+
+	/**
+	 * Convert the arguments of a call to Erlang terms.
+	 */
+	public OtpErlangObject[] encode(final Object... args)
+			throws SignatureException {
+		final Object[] a = args == null ? new Object[0] : args;
+		if (encoders != null && encoders.length != a.length) {
+			throw new SignatureException(
+					"Signature doesn't match parameter number: "
+							+ encoders.length + "/" + a.length);
+		}
+		final OtpErlangObject[] result = new OtpErlangObject[a.length];
+		for (int i = 0; i < a.length; i++) {
+			final Encoder e = encoders == null ? ANY_ENCODER : encoders[i];
+			result[i] = e.encode(a[i]);
+		}
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return String.valueOf(signature);
+	}
+
+	private static Encoder encoder(final Signature type) {
+		switch (type.kind) {
+		case 's':
+			return new StringEncoder(type);
+		case 'a':
+			return new AtomEncoder(type);
+		case 'i':
+			return new IntegerEncoder(type);
+		case 'l':
+			return new ListEncoder(type, encoder(type.content[0]));
+		default:
+			return new Encoder(type);
+		}
+	}
+
+	/*
+	 * Converts one argument; the subclasses handle the usual argument types
+	 * without going through TypeConverter.
+	 */
+	private static class Encoder {
+		final Signature type;
+
+		Encoder(final Signature type) {
+			this.type = type;
+		}
+
+		OtpErlangObject encode(final Object obj) throws SignatureException {
+			return TypeConverter.java2erlang(obj, type);
+		}
+	}
+
+	private static final class StringEncoder extends Encoder {
+		StringEncoder(final Signature type) {
+			super(type);
+		}
+
+		@Override
+		OtpErlangObject encode(final Object obj) throws SignatureException {
+			if (obj instanceof String) {
+				return new OtpErlangString((String) obj);
+			}
+			return super.encode(obj);
+		}
+	}
+
+	private static final class AtomEncoder extends Encoder {
+		AtomEncoder(final Signature type) {
+			super(type);
+		}
+
+		@Override
+		OtpErlangObject encode(final Object obj) throws SignatureException {
+			if (obj instanceof String) {
+				return new OtpErlangAtom((String) obj);
+			}
+			return super.encode(obj);
+		}
+	}
+
+	private static final class IntegerEncoder extends Encoder {
+		IntegerEncoder(final Signature type) {
+			super(type);
+		}
+
+		@Override
+		OtpErlangObject encode(final Object obj) throws SignatureException {
+			if (obj instanceof Integer || obj instanceof Long) {
+				return new OtpErlangLong(((Number) obj).longValue());
+			}
+			return super.encode(obj);
+		}
+	}
+
+	private static final class ListEncoder extends Encoder {
+		private final Encoder element;
+
+		ListEncoder(final Signature type, final Encoder element) {
+			super(type);
+			this.element = element;
+		}
+
+		@Override
+		OtpErlangObject encode(final Object obj) throws SignatureException {
+			if (obj instanceof Collection<?>) {
+				final Collection<?> c = (Collection<?>) obj;
+				final OtpErlangObject[] items = new OtpErlangObject[c.size()];
+				int i = 0;
+				for (final Object o : c) {
+					items[i++] = element.encode(o);
+				}
+				return new OtpErlangList(items);
+			}
+			if (obj instanceof Object[]) {
+				final Object[] a = (Object[]) obj;
+				final OtpErlangObject[] items = new OtpErlangObject[a.length];
+				for (int i = 0; i < a.length; i++) {
+					items[i] = element.encode(a[i]);
+				}
+				return new OtpErlangList(items);
+			}
+			return super.encode(obj);
+		}
+	}
+
+}
@@ -0,0 +1,227 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Vlad Dumitrescu and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available
+ * at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Vlad Dumitrescu
+ *******************************************************************************/
+package org.erlide.jinterface.rpc;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters for the RPCs made to one function (<code>module:fun/arity</code>):
+ * calls, errors, timeouts, bytes sent and received, and a latency histogram.
+ * They are updated by {@link RpcFuture} as calls are sent and answered, and
+ * are cheap enough to be always on; set the system property
+ * <code>org.erlide.rpcstats</code> to false to turn them off.
+ * <p>
+ * See {@link RpcMonitor} for publishing them.
+ */
+public final class RpcStats {
+
+	private static final boolean ENABLED = !"false".equals(System
+			.getProperty("org.erlide.rpcstats"));
+
+	private static final ConcurrentMap<String, RpcStats> ALL = new ConcurrentHashMap<String, RpcStats>();
+
+	/**
+	 * Orders by total time spent, largest first.
+	 */
+	public static final Comparator<RpcStats> BY_TOTAL_TIME = new Comparator<RpcStats>() {
+		public int compare(final RpcStats o1, final RpcStats o2) {
+			final long t1 = o1.latency.getTotal();
+			final long t2 = o2.latency.getTotal();
+			return t1 < t2 ? 1 : t1 == t2 ? o1.name.compareTo(o2.name) : -1;
+		}
+	};
+
+	private final String name;
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private final AtomicLong sent = new AtomicLong();
+	private final AtomicLong errors = new AtomicLong();
+	private final AtomicLong timeouts = new AtomicLong();
+	private final AtomicLong bytesSent = new AtomicLong();
+	private final AtomicLong bytesReceived = new AtomicLong();
+
+	/**
+	 * @return the counters for a function, or null if statistics are off
+	 */
+	public static RpcStats get(final String mfa) {
+		if (!ENABLED || mfa == null) {
+			return null;
+		}
+		RpcStats result = ALL.get(mfa);
+		if (result == null) {
+			final RpcStats stats = new RpcStats(mfa);
+			result = ALL.putIfAbsent(mfa, stats);
+			if (result == null) {
+				result = stats;
+			}
+		}
+		return result;
+	}
+
+	public static boolean isEnabled() {
+		return ENABLED;
+	}
+
+	/**
+	 * @return the counters of all the functions called so far, the most
+	 *         expensive first
+	 */
+	public static List<RpcStats> getAll() {
+		final List<RpcStats> result = new ArrayList<RpcStats>(ALL.values());
+		Collections.sort(result, BY_TOTAL_TIME);
+		return result;
+	}
+
+	public static void resetAll() {
+		ALL.clear();
+	}
+
+	/**
+	 * Write a table of all the counters, one function per line; times are in
+	 * microseconds.
+	 */
+	public static void dump(final PrintWriter out) {
+		out.println("# mfa\tcalls\terrors\ttimeouts\tp50\tp99\tmax\ttotal"
+				+ "\tbytes_out\tbytes_in");
+		for (final RpcStats s : getAll()) {
+			out.println(s.toString());
+		}
+		out.flush();
+	}
+
+	/**
+	 * Start timing a call to a function.
+	 *
+	 * @return the counters of the call, which do nothing if statistics are
+	 *         off
+	 */
+	static Call start(final String mfa) {
+		return new Call(get(mfa));
+	}
+
+	/**
+	 * The counters of one call, see {@link RpcStats#start(String)}.
+	 */
+	static final class Call {
+		private final RpcStats stats;
+		private final long start;
+
+		Call(final RpcStats stats) {
+			this.stats = stats;
+			start = stats == null ? 0 : System.nanoTime();
+		}
+
+		void sent(final int bytes) {
+			if (stats != null) {
+				stats.sent(bytes);
+			}
+		}
+
+		void received(final int bytes) {
+			if (stats != null) {
+				stats.received(bytes);
+			}
+		}
+
+		void completed(final boolean error) {
+			if (stats != null) {
+				stats.completed(System.nanoTime() - start, error);
+			}
+		}
+
+		void timedOut() {
+			if (stats != null) {
+				stats.timedOut();
+			}
+		}
+	}
+
+	private RpcStats(final String name) {
+		this.name = name;
+	}
+
+	void sent(final int bytes) {
+		sent.incrementAndGet();
+		bytesSent.addAndGet(bytes);
+	}
+
+	void received(final int bytes) {
+		bytesReceived.addAndGet(bytes);
+	}
+
+	/**
+	 * The call was answered (or a stream finished) after the given time.
+	 */
+	void completed(final long nanos, final boolean error) {
+		latency.record(nanos / 1000);
+		if (error) {
+			errors.incrementAndGet();
+		}
+	}
+
+	void timedOut() {
+		timeouts.incrementAndGet();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the number of calls sent
+	 */
+	public long getCalls() {
+		return sent.get();
+	}
+
+	/**
+	 * @return the number of calls answered with <code>{badrpc, _}</code> or
+	 *         an error
+	 */
+	public long getErrors() {
+		return errors.get();
+	}
+
+	public long getTimeouts() {
+		return timeouts.get();
+	}
+
+	public long getBytesSent() {
+		return bytesSent.get();
+	}
+
+	public long getBytesReceived() {
+		return bytesReceived.get();
+	}
+
+	/**
+	 * @return the times of the answered calls, in microseconds
+	 */
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	@Override
+	public String toString() {
+		return name + "\t" + getCalls() + "\t" + getErrors() + "\t"
+				+ getTimeouts() + "\t" + latency.getPercentile(50) + "\t"
+				+ latency.getPercentile(99) + "\t" + latency.getMax() + "\t"
+				+ latency.getTotal() + "\t" + getBytesSent() + "\t"
+				+ getBytesReceived();
+	}
+
+}
@@ -23,11 +23,14 @@ import com.ericsson.otp.erlang.OtpErlangPid;
 import com.ericsson.otp.erlang.OtpErlangTuple;
 import com.ericsson.otp.erlang.OtpMbox;
 import com.ericsson.otp.erlang.OtpNode;
-import com.ericsson.otp.erlang.Signature;
 import com.ericsson.otp.erlang.SignatureException;
 
 public final class RpcUtil {
 	public static final int INFINITY = -1;
+	/**
+	 * Number of items per chunk for streaming calls, unless specified.
+	 */
+	public static final int STREAM_CHUNK_SIZE = 256;
 
 	// use this for debugging
 	private static final boolean CHECK_RPC = Boolean
@@ -43,17 +46,10 @@ public final class RpcUtil {
 	 */
 	public static void send(final OtpNode node, final OtpErlangPid pid,
 			final Object msg) throws SignatureException {
-		final OtpMbox mbox = node.createMbox();
-		try {
-			if (mbox != null) {
-				if (CHECK_RPC) {
-					debug("SEND " + pid + "-> " + msg);
-				}
-				mbox.send(pid, TypeConverter.java2erlang(msg, "x"));
-			}
-		} finally {
-			node.closeMbox(mbox);
+		if (CHECK_RPC) {
+			debug("SEND " + pid + "-> " + msg);
 		}
+		RpcChannel.get(node).send(pid, TypeConverter.java2erlang(msg, "x"));
 	}
 
 	/**
@@ -67,17 +63,11 @@ public final class RpcUtil {
 	 */
 	public static void send(final OtpNode node, final String peer,
 			final String name, final Object msg) throws SignatureException {
-		final OtpMbox mbox = node.createMbox();
-		try {
-			if (mbox != null) {
-				if (CHECK_RPC) {
-					debug("SEND " + name + "-> " + msg);
-				}
-				mbox.send(name, peer, TypeConverter.java2erlang(msg, "x"));
-			}
-		} finally {
-			node.closeMbox(mbox);
+		if (CHECK_RPC) {
+			debug("SEND " + name + "-> " + msg);
 		}
+		RpcChannel.get(node).send(peer, name,
+				TypeConverter.java2erlang(msg, "x"));
 	}
 
 	/**
@@ -98,10 +88,28 @@ public final class RpcUtil {
 			final String module, final String fun, final int timeout,
 			final String signature, final Object... args0) throws RpcException,
 			SignatureException {
+		return rpcCall(node, peer, gleader, module, fun, timeout, RpcSignature
+				.compile(signature), args0);
+	}
+
+	/**
+	 * Make a regular RPC, with a precompiled signature.
+	 */
+	public static OtpErlangObject rpcCall(final OtpNode node,
+			final String peer, final OtpErlangObject gleader,
+			final String module, final String fun, final int timeout,
+			final RpcSignature signature, final Object... args0)
+			throws RpcException, SignatureException {
 		final RpcFuture future = sendRpcCall(node, peer, gleader, module, fun,
 				signature, args0);
 		OtpErlangObject result;
-		result = future.get(timeout);
+		try {
+			result = future.get(timeout);
+		} catch (final RpcTimeoutException e) {
+			// nobody else waits for this one
+			future.cancel();
+			throw e;
+		}
 		if (CHECK_RPC) {
 			debug("RPC result:: " + result);
 		}
@@ -140,8 +148,9 @@ public final class RpcUtil {
 	}
 
 	/**
-	 * Send a RPC request and return the mailbox that will receive the result
-	 * once it's delivered.
+	 * Send a RPC request and return the future that will receive the result
+	 * once it's delivered. All calls from a node share one mailbox, see
+	 * {@link RpcChannel}.
 	 * 
 	 * @param node
 	 * @param peer
@@ -152,20 +161,55 @@ public final class RpcUtil {
 	 * @return
 	 * @throws RpcException
 	 */
-	public static synchronized RpcFuture sendRpcCall(final OtpNode node,
+	public static RpcFuture sendRpcCall(final OtpNode node,
 			final String peer, final OtpErlangObject gleader,
 			final String module, final String fun, final String signature,
 			final Object... args0) throws SignatureException {
-		final OtpErlangObject[] args = convertArgs(signature, args0);
+		return sendRpcCall(node, peer, gleader, module, fun, RpcSignature
+				.compile(signature), args0);
+	}
 
-		OtpErlangObject res = null;
-		final OtpMbox mbox = node.createMbox();
-		res = RpcUtil.buildRpcCall(mbox.self(), gleader, module, fun, args);
-		mbox.send("rex", peer, res);
+	/**
+	 * Send a RPC request, with a precompiled signature.
+	 */
+	public static RpcFuture sendRpcCall(final OtpNode node,
+			final String peer, final OtpErlangObject gleader,
+			final String module, final String fun,
+			final RpcSignature signature, final Object... args0)
+			throws SignatureException {
+		final OtpErlangObject[] args = signature.encode(args0);
+
+		final RpcFuture future = RpcChannel.get(node).call(peer, gleader,
+				module, fun, args, module + ":" + fun + "/" + args.length);
+		if (CHECK_RPC) {
+			debug("RPC " + future.hashCode() + "=> " + module + ":" + fun
+					+ " " + new OtpErlangList(args));
+		}
+		return future;
+	}
+
+	/**
+	 * Send a RPC request whose result (a list, <code>{ok, List}</code> or a
+	 * producer, see erlide_stream) is sent back in chunks, to be read with
+	 * {@link RpcFuture#nextBatch(long)}.
+	 * The backend doesn't send more than a few chunks ahead of the reader, and
+	 * stops when the future is cancelled.
+	 */
+	public static RpcFuture sendStreamingCall(final OtpNode node,
+			final String peer, final OtpErlangObject gleader,
+			final String module, final String fun, final int chunkSize,
+			final RpcSignature signature, final Object... args0)
+			throws SignatureException {
+		final OtpErlangObject[] args = signature.encode(args0);
+
+		final RpcFuture future = RpcChannel.get(node).stream(peer, gleader,
+				module, fun, args, chunkSize,
+				module + ":" + fun + "/" + args.length);
 		if (CHECK_RPC) {
-			debug("RPC " + mbox.hashCode() + "=> " + res);
+			debug("RPC " + future.hashCode() + "=>> " + module + ":" + fun
+					+ " " + new OtpErlangList(args));
 		}
-		return new RpcFuture(mbox, module + ":" + fun + "/" + args0.length);
+		return future;
 	}
 
 	/**
@@ -210,6 +254,10 @@ public final class RpcUtil {
 				}
 			}
 			if (res == null) {
+				final RpcStats stats = RpcStats.get(env);
+				if (stats != null) {
+					stats.timedOut();
+				}
 				String msg = env != null ? env : "??";
 				throw new RpcTimeoutException(msg);
 			}
@@ -230,16 +278,6 @@ public final class RpcUtil {
 		return res;
 	}
 
-	private static OtpErlangObject buildRpcCall(final OtpErlangPid pid,
-			final OtpErlangObject gleader, final String module,
-			final String fun, final OtpErlangObject[] args) {
-		final OtpErlangObject m = new OtpErlangAtom(module);
-		final OtpErlangObject f = new OtpErlangAtom(fun);
-		final OtpErlangObject a = new OtpErlangList(args);
-		return OtpErlang.mkTuple(pid, OtpErlang.mkTuple(new OtpErlangAtom(
-				"call"), m, f, a, gleader));
-	}
-
 	/**
 	 * Make a RPC but don't wait for any result.
 	 * 
@@ -266,29 +304,8 @@ public final class RpcUtil {
 	}
 
 	private static OtpErlangObject[] convertArgs(final String signature,
-			Object... args0) throws SignatureException {
-		if (args0 == null) {
-			args0 = new OtpErlangObject[] {};
-		}
-
-		Signature[] type;
-		type = Signature.parse(signature);
-		if (type == null) {
-			type = new Signature[args0.length];
-			for (int i = 0; i < args0.length; i++) {
-				type[i] = new Signature('x');
-			}
-		}
-		if (type.length != args0.length) {
-			throw new SignatureException(
-					"Signature doesn't match parameter number: " + type.length
-							+ "/" + args0.length);
-		}
-		final OtpErlangObject[] args = new OtpErlangObject[args0.length];
-		for (int i = 0; i < args.length; i++) {
-			args[i] = TypeConverter.java2erlang(args0[i], type[i]);
-		}
-		return args;
+			final Object... args0) throws SignatureException {
+		return RpcSignature.compile(signature).encode(args0);
 	}
 
 	private static OtpErlangObject buildRpcCastMsg(
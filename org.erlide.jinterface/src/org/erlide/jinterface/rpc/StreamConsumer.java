@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Vlad Dumitrescu and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available
+ * at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Vlad Dumitrescu
+ *******************************************************************************/
+package org.erlide.jinterface.rpc;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import com.ericsson.otp.erlang.OtpErlang;
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangPid;
+import com.ericsson.otp.erlang.OtpErlangRef;
+
+/**
+ * The receiving end of a stream sent by erlide_stream: the batches not read
+ * yet, and the acknowledgements that let the sender go on. A batch is
+ * acknowledged when it is read, not when it arrives, so a slow reader holds
+ * the sender back.
+ */
+final class StreamConsumer {
+
+	private static final OtpErlangAtom MORE = new OtpErlangAtom("more");
+	private static final OtpErlangAtom CANCEL = new OtpErlangAtom("cancel");
+
+	private final RpcChannel channel;
+	private final OtpErlangRef ref;
+	private final String env;
+	private final LinkedList<List<OtpErlangObject>> batches = new LinkedList<List<OtpErlangObject>>();
+	// the sender, once the call that started it has returned
+	private OtpErlangPid sender = null;
+	// batches read before the sender was known
+	private int unacked = 0;
+	private boolean ended = false;
+	private boolean cancelled = false;
+	private OtpErlangObject error = null;
+
+	StreamConsumer(final RpcChannel channel, final OtpErlangRef ref,
+			final String env) {
+		this.channel = channel;
+		this.ref = ref;
+		this.env = env;
+	}
+
+	/**
+	 * @return the next batch, or null at the end of the stream
+	 * @throws RpcTimeoutException
+	 *             if no batch arrived in time; the stream is still active
+	 */
+	List<OtpErlangObject> next(final long timeout) throws RpcException {
+		final List<OtpErlangObject> batch;
+		final OtpErlangPid ack;
+		synchronized (this) {
+			final long stop = System.currentTimeMillis() + timeout;
+			while (batches.isEmpty() && !isOver()) {
+				final long left = timeout == RpcUtil.INFINITY ? 0 : stop
+						- System.currentTimeMillis();
+				if (timeout != RpcUtil.INFINITY && left <= 0) {
+					throw new RpcTimeoutException(env != null ? env : "??");
+				}
+				try {
+					wait(left);
+				} catch (final InterruptedException e) {
+					throw new RpcException(e);
+				}
+			}
+			if (batches.isEmpty()) {
+				if (error != null) {
+					throw new RpcException(env + ": " + error);
+				}
+				return null;
+			}
+			batch = batches.removeFirst();
+			if (ended || cancelled) {
+				ack = null;
+			} else if (sender == null) {
+				unacked++;
+				ack = null;
+			} else {
+				ack = sender;
+			}
+		}
+		if (ack != null) {
+			channel.send(ack, OtpErlang.mkTuple(ref, MORE));
+		}
+		return batch;
+	}
+
+	synchronized boolean isOver() {
+		return ended || cancelled || error != null;
+	}
+
+	/**
+	 * Tell the sender to stop; if it isn't known yet, it is told as soon as
+	 * it is, see {@link #started(OtpErlangObject)}.
+	 *
+	 * @return true if the sender was told, so nothing more is expected from
+	 *         it
+	 */
+	boolean cancel() {
+		final OtpErlangPid pid;
+		synchronized (this) {
+			if (isOver()) {
+				return false;
+			}
+			cancelled = true;
+			pid = sender;
+			notifyAll();
+		}
+		if (pid == null) {
+			return false;
+		}
+		channel.send(pid, OtpErlang.mkTuple(ref, CANCEL));
+		return true;
+	}
+
+	/**
+	 * The reply to the call that started the stream: the sender's pid, or an
+	 * error.
+	 *
+	 * @return true if the stream is over
+	 */
+	boolean started(final OtpErlangObject value) {
+		if (!(value instanceof OtpErlangPid)) {
+			synchronized (this) {
+				if (!isOver()) {
+					error = value;
+					notifyAll();
+				}
+			}
+			return true;
+		}
+		final OtpErlangPid pid = (OtpErlangPid) value;
+		final boolean cancel;
+		final int acks;
+		synchronized (this) {
+			sender = pid;
+			cancel = cancelled;
+			acks = unacked;
+			unacked = 0;
+		}
+		if (cancel) {
+			channel.send(pid, OtpErlang.mkTuple(ref, CANCEL));
+			return true;
+		}
+		for (int i = 0; i < acks; i++) {
+			channel.send(pid, OtpErlang.mkTuple(ref, MORE));
+		}
+		return false;
+	}
+
+	/**
+	 * A message from the sender: <code>chunk</code> with a list of items,
+	 * <code>done</code> with their count, or <code>error</code> with a
+	 * reason.
+	 *
+	 * @return true if the stream is over
+	 */
+	boolean streamed(final String tag, final OtpErlangObject value) {
+		synchronized (this) {
+			if ("chunk".equals(tag)) {
+				if (!cancelled && value instanceof OtpErlangList) {
+					batches.add(Arrays.asList(((OtpErlangList) value)
+							.elements()));
+					notifyAll();
+				}
+				return false;
+			}
+			if ("done".equals(tag)) {
+				ended = true;
+			} else if (!cancelled) {
+				error = value;
+			}
+			notifyAll();
+		}
+		return true;
+	}
+
+}
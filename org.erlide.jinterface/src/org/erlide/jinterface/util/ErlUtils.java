@@ -60,23 +60,23 @@ public final class ErlUtils {
 
 	public static Bindings match(final String pattern, final String term)
 			throws ParserException {
-		return match(parse(pattern), parse(term), new Bindings());
+		return TermPattern.compile(pattern).match(parse(term));
 	}
 
 	public static Bindings match(final String pattern,
 			final OtpErlangObject term) throws ParserException {
-		return match(parse(pattern), term, new Bindings());
+		return TermPattern.compile(pattern).match(term);
 	}
 
 	public static Bindings match(final String pattern,
 			final OtpErlangObject term, final Bindings bindings)
 			throws ParserException {
-		return match(parse(pattern), term, bindings);
+		return TermPattern.compile(pattern).match(term, bindings);
 	}
 
 	public static Bindings match(final String pattern, final String term,
 			final Bindings bindings) throws ParserException {
-		return match(parse(pattern), parse(term), bindings);
+		return TermPattern.compile(pattern).match(parse(term), bindings);
 	}
 
 	public static Bindings match(final OtpErlangObject pattern,
@@ -103,81 +103,13 @@ public final class ErlUtils {
 	 * The returned value is null if there was any mismatch, otherwise it is a
 	 * map of variable names to matched values. <br>
 	 * TODO should we throw an exception instead?
-	 * 
+	 * <p>
+	 * Patterns given as text are compiled once and cached; code matching the
+	 * same pattern often can keep a {@link TermPattern} instead.
 	 */
 	public static Bindings match(final OtpErlangObject pattern,
 			final OtpErlangObject term, final Bindings bindings) {
-		if (pattern == null && term == null) {
-			return bindings;
-		}
-		if (pattern == null || term == null) {
-			return null;
-		}
-		if (pattern instanceof OtpPatternVariable) {
-			final OtpPatternVariable var = (OtpPatternVariable) pattern;
-			if (!TypeConverter.matchSignature(term, var.getSignature())) {
-				return null;
-			}
-			if (var.getName().equals("_")) {
-				return bindings;
-			}
-			final Bindings result = new Bindings(bindings);
-			final OtpErlangObject old = bindings.get(var.getName());
-			if (old == null) {
-				// no previous binding
-				result.put(var.getName(), term);
-				return result;
-			} else {
-				return old.equals(term) ? result : null;
-			}
-		}
-		if (!pattern.getClass().equals(term.getClass())) {
-			return null;
-		}
-
-		if (pattern.equals(term)) {
-			return bindings;
-		} else if (pattern instanceof OtpErlangList) {
-			return matchList(pattern, term, bindings);
-		} else if (pattern instanceof OtpErlangTuple) {
-			return matchTuple(((OtpErlangTuple) pattern).elements(),
-					((OtpErlangTuple) term).elements(), bindings, false);
-		}
-		return null;
-	}
-
-	private static Bindings matchList(final OtpErlangObject pattern,
-			final OtpErlangObject term, final Bindings bindings) {
-		final OtpErlangList lpattern = (OtpErlangList) pattern;
-		final OtpErlangList lterm = (OtpErlangList) term;
-		final int patternArity = lpattern.arity();
-		final int termArity = lterm.arity();
-		if (patternArity > termArity) {
-			return null;
-		}
-		if (patternArity < termArity && lpattern.isProper()) {
-			return null;
-		}
-		if (patternArity == termArity
-				&& lpattern.isProper() != lterm.isProper()) {
-			return null;
-		}
-		Bindings rez = bindings;
-		for (int i = 0; i < patternArity; i++) {
-			rez = match(lpattern.elementAt(i), lterm.elementAt(i), rez);
-			if (rez == null) {
-				return null;
-			}
-		}
-		if (patternArity == termArity) {
-			rez = match(lpattern.getLastTail(), lterm.getLastTail(), rez);
-			return rez;
-		}
-		if (lpattern.getLastTail() instanceof OtpPatternVariable) {
-			return match(lpattern.getLastTail(),
-					lterm.getNthTail(patternArity), rez);
-		}
-		return match(lpattern.getLastTail(), lterm.getLastTail(), rez);
+		return TermPattern.compile(pattern).match(term, bindings);
 	}
 
 	private static OtpErlangObject fill(final OtpErlangObject template,
@@ -219,22 +151,6 @@ public final class ErlUtils {
 		}
 	}
 
-	private static Bindings matchTuple(final OtpErlangObject[] patterns,
-			final OtpErlangObject[] terms, final Bindings bindings,
-			final boolean list) {
-		if (patterns.length != terms.length) {
-			return null;
-		}
-		Bindings result = new Bindings(bindings);
-		for (int i = 0; i < patterns.length; i++) {
-			result = match(patterns[i], terms[i], result);
-			if (result == null) {
-				return null;
-			}
-		}
-		return result;
-	}
-
 	/**
 	 * This is useful if a value can be anything, but we need to see it as a
 	 * string (but without any quotes if it really is a string).
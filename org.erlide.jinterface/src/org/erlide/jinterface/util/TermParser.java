@@ -10,12 +10,13 @@
 package org.erlide.jinterface.util;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.Stack;
 
-import com.ericsson.otp.erlang.OtpErlangAtom;
+import org.erlide.jinterface.backend.util.LRUCache;
+
+import com.ericsson.otp.erlang.OtpAtomCache;
 import com.ericsson.otp.erlang.OtpErlangException;
 import com.ericsson.otp.erlang.OtpErlangList;
 import com.ericsson.otp.erlang.OtpErlangLong;
@@ -30,27 +31,31 @@ public class TermParser {
 	private TermParser() {
 	}
 
-	private static Map<String, OtpErlangObject> cache = new HashMap<String, OtpErlangObject>();
+	// parsed terms are immutable and can be shared; the cache is bounded so
+	// that callers building patterns on the fly don't make it grow forever
+	private static final int CACHE_SIZE = 512;
+	private static final Map<String, OtpErlangObject> cache = Collections
+			.synchronizedMap(new LRUCache<String, OtpErlangObject>(CACHE_SIZE));
 
 	public static OtpErlangObject parse(final String s) throws ParserException {
 		OtpErlangObject value = cache.get(s);
 		if (value == null) {
-			value = parse(scan(s));
+			value = parse(new Tokens(scan(s)));
 			cache.put(s, value);
 		}
 		return value;
 	}
 
-	private static OtpErlangObject parse(final List<Token> tokens)
+	private static OtpErlangObject parse(final Tokens tokens)
 			throws ParserException {
-		if (tokens.size() == 0) {
+		final Token t = tokens.next();
+		if (t == null) {
 			return null;
 		}
 		OtpErlangObject result = null;
-		final Token t = tokens.remove(0);
 		switch (t.kind) {
 		case ATOM:
-			result = new OtpErlangAtom(t.text);
+			result = OtpAtomCache.atom(t.text);
 			break;
 		case VARIABLE:
 			result = new OtpPatternVariable(t.text);
@@ -65,12 +70,12 @@ public class TermParser {
 			result = new OtpFormatPlaceholder(t.text);
 			break;
 		case TUPLESTART:
-			result = parseTuple(tokens, new Stack<OtpErlangObject>());
+			result = parseTuple(tokens);
 			break;
 		case TUPLEEND:
 			throw new ParserException("unexpected " + t.toString());
 		case LISTSTART:
-			result = parseList(tokens, new Stack<OtpErlangObject>(), null);
+			result = parseList(tokens);
 			break;
 		case LISTEND:
 			throw new ParserException("unexpected " + t.toString());
@@ -82,57 +87,78 @@ public class TermParser {
 		return result;
 	}
 
-	private static OtpErlangObject parseList(final List<Token> tokens,
-			final Stack<OtpErlangObject> stack, OtpErlangObject tail)
+	private static OtpErlangObject parseList(final Tokens tokens)
 			throws ParserException {
-		if (tokens.size() == 0) {
-			return null;
-		}
-		final Token t = tokens.get(0);
-		if (t.kind == TokenKind.LISTEND) {
-			tokens.remove(0);
-			try {
-				return new OtpErlangList(stack.toArray(new OtpErlangObject[0]),
-						tail);
-			} catch (final OtpErlangException e) {
-				e.printStackTrace();
-				// can't happen
-				return null;
+		final List<OtpErlangObject> elements = new ArrayList<OtpErlangObject>();
+		OtpErlangObject tail = null;
+		Token t;
+		while ((t = tokens.peek()) != null) {
+			if (t.kind == TokenKind.LISTEND) {
+				tokens.next();
+				try {
+					return new OtpErlangList(elements
+							.toArray(new OtpErlangObject[elements.size()]), tail);
+				} catch (final OtpErlangException e) {
+					e.printStackTrace();
+					// can't happen
+					return null;
+				}
 			}
-		} else {
-			OtpErlangObject atail = tail;
 			if (t.kind == TokenKind.CONS) {
-				tokens.remove(0);
-				atail = parse(tokens);
+				tokens.next();
+				tail = parse(tokens);
 			} else {
-				stack.push(parse(tokens));
-				if (tokens.get(0).kind == TokenKind.COMMA) {
-					tokens.remove(0);
-				}
+				elements.add(parse(tokens));
+				tokens.skip(TokenKind.COMMA);
 			}
-			return parseList(tokens, stack, atail);
 		}
+		return null;
 	}
 
-	private static OtpErlangObject parseTuple(final List<Token> tokens,
-			final Stack<OtpErlangObject> stack) throws ParserException {
-		if (tokens.size() == 0) {
-			return null;
-		}
-		final Token t = tokens.get(0);
-		if (t.kind == TokenKind.TUPLEEND) {
-			tokens.remove(0);
-			return new OtpErlangTuple(stack.toArray(new OtpErlangObject[0]));
-		} else {
+	private static OtpErlangObject parseTuple(final Tokens tokens)
+			throws ParserException {
+		final List<OtpErlangObject> elements = new ArrayList<OtpErlangObject>();
+		Token t;
+		while ((t = tokens.peek()) != null) {
+			if (t.kind == TokenKind.TUPLEEND) {
+				tokens.next();
+				return new OtpErlangTuple(elements
+						.toArray(new OtpErlangObject[elements.size()]));
+			}
 			if (t.kind == TokenKind.CONS) {
 				throw new ParserException("cons is invalid in tuple");
-			} else {
-				stack.push(parse(tokens));
-				if (tokens.get(0).kind == TokenKind.COMMA) {
-					tokens.remove(0);
-				}
 			}
-			return parseTuple(tokens, stack);
+			elements.add(parse(tokens));
+			tokens.skip(TokenKind.COMMA);
+		}
+		return null;
+	}
+
+	/*
+	 * Reads the scanned tokens in order; keeps a position instead of removing
+	 * them from the front of the list.
+	 */
+	private static final class Tokens {
+		private final List<Token> tokens;
+		private int pos = 0;
+
+		Tokens(final List<Token> tokens) {
+			this.tokens = tokens;
+		}
+
+		Token peek() {
+			return pos < tokens.size() ? tokens.get(pos) : null;
+		}
+
+		Token next() {
+			return pos < tokens.size() ? tokens.get(pos++) : null;
+		}
+
+		void skip(final TokenKind kind) {
+			final Token t = peek();
+			if (t != null && t.kind == kind) {
+				pos++;
+			}
 		}
 	}
 
@@ -152,13 +178,13 @@ public class TermParser {
 			return "<" + this.kind.toString() + ": !" + this.text + "!>";
 		}
 
-		public static Token nextToken(final String s) {
-			if (s == null || s.length() == 0) {
+		public static Token nextToken(final String s, final int from) {
+			if (s == null || s.length() <= from) {
 				return null;
 			}
 			final Token result = new Token();
 			char c;
-			int i = 0;
+			int i = from;
 			do {
 				c = s.charAt(i++);
 				if (i >= s.length()) {
@@ -280,14 +306,13 @@ public class TermParser {
 		}
 	}
 
-	private static List<Token> scan(String s) {
-		String ss = s + " ";
+	private static List<Token> scan(final String s) {
+		final String ss = s + " ";
 		final List<Token> result = new ArrayList<Token>();
-		Token t = Token.nextToken(ss);
+		Token t = Token.nextToken(ss, 0);
 		while (t != null) {
 			result.add(t);
-			ss = ss.substring(t.end);
-			t = Token.nextToken(ss);
+			t = Token.nextToken(ss, t.end);
 		}
 		return result;
 	}
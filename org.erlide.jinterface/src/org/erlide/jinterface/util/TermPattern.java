@@ -0,0 +1,347 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Vlad Dumitrescu and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Vlad Dumitrescu
+ *******************************************************************************/
+package org.erlide.jinterface.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.erlide.jinterface.backend.util.LRUCache;
+
+import com.ericsson.otp.erlang.OtpAtomCache;
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+import com.ericsson.otp.erlang.OtpPatternVariable;
+import com.ericsson.otp.erlang.Signature;
+
+/**
+ * A pattern for {@link ErlUtils#match(OtpErlangObject, OtpErlangObject)},
+ * compiled once into a tree of matchers. Each variable gets a slot number and
+ * matching binds values into an array of slots, so a failed match allocates
+ * nothing and a successful one allocates only the returned {@link Bindings}.
+ * Callers that match in a loop can reuse their own slot array with
+ * {@link #match(OtpErlangObject, OtpErlangObject[])}.
+ * <p>
+ * Compiled patterns are immutable and can be shared between threads, for
+ * example in a constant:
+ *
+ * <pre>
+ * private static final TermPattern OK_LIST = TermPattern.of(&quot;{ok, L}&quot;);
+ * ...
+ * final Bindings b = OK_LIST.match(result);
+ * </pre>
+ */
+public final class TermPattern {
+
+	private static final int CACHE_SIZE = 256;
+	private static final Map<String, TermPattern> cache = Collections
+			.synchronizedMap(new LRUCache<String, TermPattern>(CACHE_SIZE));
+
+	private final Matcher root;
+	private final String[] names;
+
+	/**
+	 * Compile a pattern given as text. Patterns are cached, so this is cheap to
+	 * call with a literal.
+	 */
+	public static TermPattern compile(final String pattern)
+			throws ParserException {
+		TermPattern result = cache.get(pattern);
+		if (result == null) {
+			result = compile(TermParser.parse(pattern));
+			cache.put(pattern, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Compile a constant pattern. A malformed pattern is a programming error
+	 * here, so it is reported with an unchecked exception.
+	 */
+	public static TermPattern of(final String pattern) {
+		try {
+			return compile(pattern);
+		} catch (final ParserException e) {
+			throw new IllegalArgumentException(e.getMessage());
+		}
+	}
+
+	/**
+	 * Compile a pattern that is already a term. These are not cached.
+	 */
+	public static TermPattern compile(final OtpErlangObject pattern) {
+		final List<String> vars = new ArrayList<String>();
+		final Matcher root = pattern == null ? null : compile(pattern, vars);
+		return new TermPattern(root, vars.toArray(new String[vars.size()]));
+	}
+
+	private TermPattern(final Matcher root, final String[] names) {
+		this.root = root;
+		this.names = names;
+	}
+
+	/**
+	 * @return the size of the slot array needed for matching
+	 */
+	public int getSlotCount() {
+		return names.length;
+	}
+
+	/**
+	 * @return the slot of the named variable, or -1 if there is no such
+	 *         variable in the pattern
+	 */
+	public int getSlot(final String name) {
+		for (int i = 0; i < names.length; i++) {
+			if (names[i].equals(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Match a term, binding variables into <code>slots</code>. Slots that are
+	 * not null on entry are taken as already bound. The slots are left in an
+	 * undefined state if the match fails.
+	 *
+	 * @return true if the term matches
+	 */
+	public boolean match(final OtpErlangObject term,
+			final OtpErlangObject[] slots) {
+		if (root == null) {
+			return term == null;
+		}
+		return term != null && root.match(term, slots);
+	}
+
+	/**
+	 * @return the bindings of the pattern's variables, or null if the term
+	 *         doesn't match
+	 */
+	public Bindings match(final OtpErlangObject term) {
+		return match(term, new Bindings());
+	}
+
+	/**
+	 * Match a term, given some variables already bound.
+	 *
+	 * @return the given bindings plus the new ones, or null if the term
+	 *         doesn't match
+	 */
+	public Bindings match(final OtpErlangObject term, final Bindings bindings) {
+		final OtpErlangObject[] slots = new OtpErlangObject[names.length];
+		for (int i = 0; i < names.length; i++) {
+			slots[i] = bindings.get(names[i]);
+		}
+		if (!match(term, slots)) {
+			return null;
+		}
+		final Bindings result = new Bindings(bindings);
+		for (int i = 0; i < names.length; i++) {
+			if (slots[i] != null) {
+				result.put(names[i], slots[i]);
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return String.valueOf(root);
+	}
+
+	private static Matcher compile(final OtpErlangObject pattern,
+			final List<String> vars) {
+		if (pattern instanceof OtpPatternVariable) {
+			final OtpPatternVariable var = (OtpPatternVariable) pattern;
+			final Signature sign = var.getSignature().kind == 'x' ? null : var
+					.getSignature();
+			if (var.getName().equals("_")) {
+				return new Var(pattern, -1, sign);
+			}
+			int slot = vars.indexOf(var.getName());
+			if (slot < 0) {
+				slot = vars.size();
+				vars.add(var.getName());
+			}
+			return new Var(pattern, slot, sign);
+		}
+		if (pattern instanceof OtpErlangList) {
+			final OtpErlangList list = (OtpErlangList) pattern;
+			final OtpErlangObject tail = list.getLastTail();
+			return new ListMatcher(list, compile(list.elements(), vars),
+					tail == null ? null : compile(tail, vars));
+		}
+		if (pattern instanceof OtpErlangTuple) {
+			final OtpErlangTuple tuple = (OtpErlangTuple) pattern;
+			return new TupleMatcher(tuple, compile(tuple.elements(), vars));
+		}
+		if (pattern.getClass() == OtpErlangAtom.class) {
+			return new AtomMatcher(OtpAtomCache
+					.atom(((OtpErlangAtom) pattern).atomValue()));
+		}
+		return new Matcher(pattern);
+	}
+
+	private static Matcher[] compile(final OtpErlangObject[] patterns,
+			final List<String> vars) {
+		final Matcher[] result = new Matcher[patterns.length];
+		for (int i = 0; i < patterns.length; i++) {
+			result[i] = compile(patterns[i], vars);
+		}
+		return result;
+	}
+
+	/*
+	 * Matches a constant: same class and equal. The subclasses keep the
+	 * pattern they were compiled from for toString().
+	 */
+	private static class Matcher {
+		final OtpErlangObject pattern;
+
+		Matcher(final OtpErlangObject pattern) {
+			this.pattern = pattern;
+		}
+
+		boolean match(final OtpErlangObject term, final OtpErlangObject[] slots) {
+			return pattern.getClass() == term.getClass()
+					&& pattern.equals(term);
+		}
+
+		@Override
+		public String toString() {
+			return pattern.toString();
+		}
+	}
+
+	/*
+	 * Decoded atoms are canonical (see OtpAtomCache), so a match is usually
+	 * the same instance.
+	 */
+	private static final class AtomMatcher extends Matcher {
+
+		AtomMatcher(final OtpErlangAtom pattern) {
+			super(pattern);
+		}
+
+		@Override
+		boolean match(final OtpErlangObject term, final OtpErlangObject[] slots) {
+			return term == pattern || term.getClass() == OtpErlangAtom.class
+					&& pattern.equals(term);
+		}
+	}
+
+	private static final class Var extends Matcher {
+		private final int slot;
+		private final Signature sign;
+
+		Var(final OtpErlangObject pattern, final int slot, final Signature sign) {
+			super(pattern);
+			this.slot = slot;
+			this.sign = sign;
+		}
+
+		@Override
+		boolean match(final OtpErlangObject term, final OtpErlangObject[] slots) {
+			if (sign != null && !TypeConverter.matchSignature(term, sign)) {
+				return false;
+			}
+			if (slot < 0) {
+				return true;
+			}
+			final OtpErlangObject old = slots[slot];
+			if (old == null) {
+				slots[slot] = term;
+				return true;
+			}
+			return old.equals(term);
+		}
+	}
+
+	private static final class TupleMatcher extends Matcher {
+		private final Matcher[] elements;
+
+		TupleMatcher(final OtpErlangTuple pattern, final Matcher[] elements) {
+			super(pattern);
+			this.elements = elements;
+		}
+
+		@Override
+		boolean match(final OtpErlangObject term, final OtpErlangObject[] slots) {
+			if (pattern.getClass() != term.getClass()) {
+				return false;
+			}
+			final OtpErlangTuple t = (OtpErlangTuple) term;
+			if (t.arity() != elements.length) {
+				return false;
+			}
+			for (int i = 0; i < elements.length; i++) {
+				if (!elements[i].match(t.elementAt(i), slots)) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/*
+	 * A proper pattern matches lists of the same length; an improper one
+	 * matches the rest of a longer list with its tail variable.
+	 */
+	private static final class ListMatcher extends Matcher {
+		private final Matcher[] elements;
+		private final Matcher tail;
+
+		ListMatcher(final OtpErlangList pattern, final Matcher[] elements,
+				final Matcher tail) {
+			super(pattern);
+			this.elements = elements;
+			this.tail = tail;
+		}
+
+		@Override
+		boolean match(final OtpErlangObject term, final OtpErlangObject[] slots) {
+			if (pattern.getClass() != term.getClass()) {
+				return false;
+			}
+			final OtpErlangList l = (OtpErlangList) term;
+			final int n = elements.length;
+			final int arity = l.arity();
+			if (n > arity) {
+				return false;
+			}
+			if (n < arity && tail == null) {
+				return false;
+			}
+			if (n == arity && (tail == null) != l.isProper()) {
+				return false;
+			}
+			for (int i = 0; i < n; i++) {
+				if (!elements[i].match(l.elementAt(i), slots)) {
+					return false;
+				}
+			}
+			if (n < arity && tail instanceof Var) {
+				return tail.match(l.getNthTail(n), slots);
+			}
+			final OtpErlangObject lastTail = l.getLastTail();
+			if (tail == null || lastTail == null) {
+				return tail == null && lastTail == null;
+			}
+			return tail.match(lastTail, slots);
+		}
+	}
+
+}
@@ -28,7 +28,8 @@
 %%
 -export([
 		 start/1, 
-		 call/3
+		 call/3,
+		 apply_all/1
 		]).
 
 -record(state, {queue = queue:new(), max=1, crt=0}).
@@ -51,6 +52,21 @@ call(Name, Fun, Args) when is_atom(Name) ->
 			Result
 	end.
 
+%% Run a list of {Module, Function, Args} calls in one go and return their
+%% results in the same order. A failing call gives {badrpc, {'EXIT', Reason}}
+%% like rpc:call/4 does, without stopping the others.
+apply_all(Calls) when is_list(Calls) ->
+	[apply_one(Call) || Call <- Calls].
+
+apply_one({M, F, A}) when is_atom(M), is_atom(F), is_list(A) ->
+	case catch apply(M, F, A) of
+		{'EXIT', _}=Error ->
+			{badrpc, Error};
+		Result ->
+			Result
+	end;
+apply_one(Other) ->
+	{badrpc, {'EXIT', {badarg, Other}}}.
 
 %%
 %% Local Functions
@@ -0,0 +1,125 @@
+%%% ******************************************************************************
+%%%  Copyright (c) 2009 Vlad Dumitrescu and others.
+%%%  All rights reserved. This program and the accompanying materials
+%%%  are made available under the terms of the Eclipse Public License v1.0
+%%%  which accompanies this distribution, and is available at
+%%%  http://www.eclipse.org/legal/epl-v10.html
+%%%
+%%%  Contributors:
+%%%      Vlad Dumitrescu
+%%% ******************************************************************************/
+%% Description: Runs calls whose request or reply is too large to be sent
+%%   as one plain message. Large terms are compressed and sent in fragments,
+%%   so that other messages on the same connection can go in between.
+%%
+%% Request (the argument of call/4):
+%%   {Mod, Fun, Args}
+%%   Binary                 term_to_binary({Mod, Fun, Args}, [compressed])
+%%   {fragments, Count}     the binary comes in Count fragments:
+%%     -> JPid  {Ref, upload, Pid}
+%%     <- Pid   {Ref, fragment, Part}   Count times, in order
+%% Reply, if Limit > 0 and the result is larger than Limit bytes:
+%%   {'$erlide_compressed', Binary}
+%%   {'$erlide_fragments', Count}, after
+%%     -> JPid  {Ref, fragment, Part}   Count times, in order
+
+-module(erlide_compress).
+
+%%
+%% Include files
+%%
+
+%%-define(DEBUG, 1).
+
+-include("erlide.hrl").
+
+%%
+%% Exported Functions
+%%
+-export([
+		 call/4
+		]).
+
+-define(FRAGMENT_SIZE, 65536).
+-define(UPLOAD_TIMEOUT, 60000).
+
+call(JPid, Ref, Request, Limit) when is_pid(JPid), is_integer(Limit) ->
+	case request(JPid, Ref, Request) of
+		{ok, {M, F, A}} when is_atom(M), is_atom(F), is_list(A) ->
+			reply(JPid, Ref, apply_one(M, F, A), Limit);
+		{ok, Other} ->
+			{badrpc, {'EXIT', {badarg, Other}}};
+		{error, Reason} ->
+			{badrpc, {'EXIT', Reason}}
+	end.
+
+%%
+%% Local Functions
+%%
+
+request(_JPid, _Ref, {M, F, A}) ->
+	{ok, {M, F, A}};
+request(JPid, Ref, {fragments, Count}) when is_integer(Count), Count > 0 ->
+	JPid ! {Ref, upload, self()},
+	case receive_fragments(Ref, Count, []) of
+		{ok, Bin} ->
+			decode(Bin);
+		Error ->
+			Error
+	end;
+request(_JPid, _Ref, Bin) when is_binary(Bin) ->
+	decode(Bin).
+
+decode(Bin) ->
+	case catch binary_to_term(Bin) of
+		{'EXIT', Reason} ->
+			{error, Reason};
+		Term ->
+			{ok, Term}
+	end.
+
+receive_fragments(_Ref, 0, Acc) ->
+	{ok, list_to_binary(lists:reverse(Acc))};
+receive_fragments(Ref, N, Acc) ->
+	receive
+		{Ref, fragment, Part} when is_binary(Part) ->
+			receive_fragments(Ref, N-1, [Part | Acc])
+	after ?UPLOAD_TIMEOUT ->
+			?D({upload_timeout, Ref}),
+			{error, upload_timeout}
+	end.
+
+apply_one(M, F, A) ->
+	case catch apply(M, F, A) of
+		{'EXIT', _}=Error ->
+			{badrpc, Error};
+		Result ->
+			Result
+	end.
+
+reply(_JPid, _Ref, Result, Limit) when Limit =< 0 ->
+	Result;
+reply(JPid, Ref, Result, Limit) ->
+	case erlang:external_size(Result) > Limit of
+		false ->
+			Result;
+		true ->
+			Bin = term_to_binary(Result, [compressed]),
+			case size(Bin) > ?FRAGMENT_SIZE of
+				false ->
+					{'$erlide_compressed', Bin};
+				true ->
+					Count = send_fragments(JPid, Ref, Bin, 0),
+					{'$erlide_fragments', Count}
+			end
+	end.
+
+send_fragments(_JPid, _Ref, <<>>, Count) ->
+	Count;
+send_fragments(JPid, Ref, Bin, Count) when size(Bin) =< ?FRAGMENT_SIZE ->
+	JPid ! {Ref, fragment, Bin},
+	Count+1;
+send_fragments(JPid, Ref, Bin, Count) ->
+	<<Part:?FRAGMENT_SIZE/binary, Rest/binary>> = Bin,
+	JPid ! {Ref, fragment, Part},
+	send_fragments(JPid, Ref, Rest, Count+1).
@@ -0,0 +1,128 @@
+%%% ******************************************************************************
+%%%  Copyright (c) 2009 Vlad Dumitrescu and others.
+%%%  All rights reserved. This program and the accompanying materials
+%%%  are made available under the terms of the Eclipse Public License v1.0
+%%%  which accompanies this distribution, and is available at
+%%%  http://www.eclipse.org/legal/epl-v10.html
+%%%
+%%%  Contributors:
+%%%      Vlad Dumitrescu
+%%% ******************************************************************************/
+%% Description: Sends the result of a call to Java in chunks, instead of
+%%   as one big term that has to be decoded in one go.
+%%
+%% Protocol (Ref is the reference of the rpc that started the stream):
+%%   -> JPid  {Ref, chunk, Items}   a list of at most ChunkSize items
+%%   -> JPid  {Ref, done, Count}    all items were sent
+%%   -> JPid  {Ref, error, Reason}  the call failed or didn't return a list
+%%   <- JPid  {Ref, more}           a chunk was consumed
+%%   <- JPid  {Ref, cancel}         stop sending
+%% At most ?WINDOW chunks are in flight, so a slow reader doesn't get its
+%% mailbox flooded.
+%%
+%% The called function returns a list, {ok, List} or {stream, Producer}. A
+%% producer is a fun() -> {Items, NextProducer} | done | {error, Reason};
+%% it is only called when the reader has room for another chunk, and what
+%% it returns is sent right away, so the first items reach Java before the
+%% rest are computed.
+
+-module(erlide_stream).
+
+%%
+%% Include files
+%%
+
+%%-define(DEBUG, 1).
+
+-include("erlide.hrl").
+
+%%
+%% Exported Functions
+%%
+-export([
+		 start/6
+		]).
+
+-define(WINDOW, 4).
+-define(IDLE_TIMEOUT, 60000).
+
+%% Returns the pid of the process that sends the chunks, so that the
+%% caller can acknowledge or cancel them.
+start(JPid, Ref, Mod, Fun, Args, ChunkSize)
+  when is_pid(JPid), is_atom(Mod), is_atom(Fun), is_list(Args),
+	   is_integer(ChunkSize), ChunkSize > 0 ->
+	spawn(fun() ->
+				  run(JPid, Ref, Mod, Fun, Args, ChunkSize)
+		  end).
+
+%%
+%% Local Functions
+%%
+
+run(JPid, Ref, Mod, Fun, Args, ChunkSize) ->
+	case catch apply(Mod, Fun, Args) of
+		{stream, P} when is_function(P, 0) ->
+			send(JPid, Ref, {[], P}, ChunkSize, ?WINDOW, 0);
+		{ok, L} when is_list(L) ->
+			send(JPid, Ref, {L, done}, ChunkSize, ?WINDOW, 0);
+		L when is_list(L) ->
+			send(JPid, Ref, {L, done}, ChunkSize, ?WINDOW, 0);
+		Other ->
+			JPid ! {Ref, error, Other}
+	end.
+
+send(JPid, Ref, Source, ChunkSize, 0, Count) ->
+	receive
+		{Ref, more} ->
+			send(JPid, Ref, Source, ChunkSize, 1, Count);
+		{Ref, cancel} ->
+			ok
+	after ?IDLE_TIMEOUT ->
+			?D({stream_abandoned, Ref}),
+			ok
+	end;
+send(JPid, Ref, Source, ChunkSize, Credit, Count) ->
+	receive
+		{Ref, more} ->
+			send(JPid, Ref, Source, ChunkSize, Credit+1, Count);
+		{Ref, cancel} ->
+			ok
+	after 0 ->
+			case next(Source) of
+				{[], done} ->
+					JPid ! {Ref, done, Count};
+				{error, Reason} ->
+					JPid ! {Ref, error, Reason};
+				{L, P} ->
+					{Chunk, Rest} = split(ChunkSize, L, []),
+					JPid ! {Ref, chunk, Chunk},
+					send(JPid, Ref, {Rest, P}, ChunkSize, Credit-1,
+						 Count+length(Chunk))
+			end
+	end.
+
+%% items are left over from the last call, or the producer is asked for more
+next({[], done}) ->
+	{[], done};
+next({[], P}) when is_function(P, 0) ->
+	case catch P() of
+		{Items, Next} when is_list(Items) ->
+			next({Items, Next});
+		done ->
+			{[], done};
+		{error, Reason} ->
+			{error, Reason};
+		Other ->
+			{error, Other}
+	end;
+next({[], Other}) ->
+	{error, {bad_producer, Other}};
+next({L, P}) ->
+	{L, P}.
+
+split(0, L, Acc) ->
+	{lists:reverse(Acc), L};
+split(_N, [], Acc) ->
+	{lists:reverse(Acc), []};
+split(N, [H|T], Acc) ->
+	split(N-1, T, [H|Acc]).
@@ -25,11 +25,13 @@
 %% called from Java
 -export([start/0, 
          stop/0,
-         find_refs/3]).
+         find_refs/3,
+         find_refs_stream/3]).
 
 %% called from Erlang
 -export([remove_module/1,
          add_module_refs/2,
+         update_module_refs/2,
 		 check_pattern/6]).
 
 
@@ -49,8 +51,11 @@
 
 -define(SERVER, erlide_search_server).
 
--record(state, {modules=[], dummy}). %% FIXME still too simple data mode
--record(module, {scanner_name, module_name, refs}).
+%% The refs of the modules we know are kept in an inverted index, so that a
+%% search only looks at the refs that can match:
+%%   postings  {Key, ScannerName, #ref{}}, Key is index_key(Ref#ref.data)
+%%   modules   {ScannerName, Keys}
+-record(state, {postings, modules}).
 
 %%
 %% API Functions
@@ -84,12 +89,47 @@ find_refs(Pattern, Modules, StateDir)
     ?D(R),
     R.
 
+%% for erlide_stream: the scope is indexed first, then the refs of each
+%% key of the pattern are looked up once and sent while the next key is
+%% being searched
+find_refs_stream(Pattern, Modules, StateDir) when is_tuple(Pattern) ->
+    find_refs_stream([Pattern], Modules, StateDir);
+find_refs_stream(Pattern, Modules, StateDir)
+  when is_list(Pattern), is_list(Modules), is_list(StateDir) ->
+    case server_cmd(find_refs_scope, {Pattern, Modules, StateDir}) of
+        {ok, Scope, Keys} ->
+            {stream, fun() -> find_refs_step(Pattern, Keys, Scope) end};
+        Error ->
+            Error
+    end.
+
+find_refs_step(_Pattern, [], _Scope) ->
+    done;
+find_refs_step(Pattern, [Key | Keys], Scope) ->
+    case server_cmd(find_key_refs, {Key, Pattern, Scope}) of
+        {ok, Refs} ->
+            {Refs, fun() -> find_refs_step(Pattern, Keys, Scope) end};
+        Error ->
+            {error, Error}
+    end.
+
 remove_module(ScannerName) ->
     server_cmd(remove_module, ScannerName).
 
 add_module_refs(ScannerName, Refs) ->
     server_cmd(add_module_refs, {ScannerName, Refs}).
 
+%% new refs were written for a module; reindex it if we know it, without
+%% waiting (this is also called from the server itself)
+update_module_refs(ScannerName, Refs) ->
+    case whereis(?SERVER) of
+        undefined ->
+            ok;
+        Pid ->
+            Pid ! {update_module_refs, {ScannerName, Refs}},
+            ok
+    end.
+
 %%
 %% Local Functions
 %%
@@ -101,7 +141,8 @@ start(undefined) ->
                   erlang:yield(),
                   erlang:register(?SERVER, self()),
                   Self ! started,
-                  loop(#state{})
+                  loop(#state{postings=ets:new(?MODULE, [duplicate_bag]),
+                              modules=ets:new(?MODULE, [set])})
           end),
     receive
         started ->
@@ -134,6 +175,14 @@ loop(State) ->
     receive
         {stop, From, []} ->
             reply(stop, From, stopped);
+        {update_module_refs, {ScannerName, Refs}} ->
+            case ets:member(State#state.modules, ScannerName) of
+                true ->
+                    do_add_module_refs(ScannerName, Refs, State);
+                false ->
+                    ok
+            end,
+            ?MODULE:loop(State);
         {Cmd, From, Args} ->
             ?D(Cmd),
             NewState = cmd(Cmd, From, Args, State),
@@ -178,44 +227,95 @@ do_cmd(find_refs, {Ref, Modules, StateDir}, State) ->
     ?D(Ref),
     ?D(Modules),
     ?D(State),
-    R = do_find_refs(Modules, Ref, StateDir, State, []),
+    R = do_find_refs(Modules, Ref, StateDir, State),
     ?D(R),
     R;
-do_cmd(remove_module, Module, #state{modules=Modules0} = State) ->
-    Modules1 = lists:keydelete(Module, #module.scanner_name, Modules0),
-    State#state{modules=Modules1};
+do_cmd(find_refs_scope, {Pattern, Modules, StateDir}, State) ->
+    {Scope, Keys} = find_scope(Modules, Pattern, StateDir, State),
+    {{ok, Scope, Keys}, State};
+do_cmd(find_key_refs, {Key, Pattern, Scope}, State) ->
+    {{ok, find_key_refs(Key, Pattern, Scope, State, [])}, State};
+do_cmd(remove_module, Module, State) ->
+    do_remove_module(Module, State),
+    ok;
 do_cmd(state, _, State) ->
     {State, State};
 do_cmd(modules, _, #state{modules=Modules} = State) ->
-    Names = [M || #module{scanner_name=M} <- Modules],
+    Names = [M || {M, _} <- ets:tab2list(Modules)],
     {Names, State}.
 
-do_find_refs([], _, _, State, Acc) ->
-    {{ok, Acc}, State};
-do_find_refs([{ScannerName, ModulePath} | Rest], Pattern, StateDir, 
-             #state{modules=Modules} = State, Acc0) ->
-    ?D(ScannerName),
-    Refs = get_module_refs(ScannerName, ModulePath, StateDir, Modules),
-    Mod = get_module_name(ModulePath),
-    Acc1 = find_data(Refs, Pattern, Mod, ModulePath, Acc0),
-    ?D(Acc1),
-    do_find_refs(Rest, Pattern, StateDir, State, Acc1).
+%% look up the index keys of the pattern, and check the refs found there
+%% against it; refs of modules not in the scope are skipped
+do_find_refs(Modules, Pattern, StateDir, State) ->
+    {Scope, Keys} = find_scope(Modules, Pattern, StateDir, State),
+    Acc = lists:foldl(fun(Key, Acc0) ->
+                              find_key_refs(Key, Pattern, Scope, State, Acc0)
+                      end, [], Keys),
+    {{ok, Acc}, State}.
+
+%% the modules to search, indexed, and the keys of the pattern
+find_scope(Modules, Pattern, StateDir, State) ->
+    Scope = lists:foldl(fun({ScannerName, ModulePath}, D) ->
+                                ensure_indexed(ScannerName, ModulePath,
+                                               StateDir, State),
+                                dict:store(ScannerName, ModulePath, D)
+                        end, dict:new(), Modules),
+    Keys = lists:usort(lists:flatmap(fun pattern_keys/1, Pattern)),
+    {Scope, Keys}.
+
+find_key_refs(Key, Pattern, Scope, State, Acc) ->
+    Postings = ets:lookup(State#state.postings, Key),
+    find_data(Postings, Pattern, Scope, Acc).
+
+ensure_indexed(ScannerName, ModulePath, StateDir, State) ->
+    case ets:member(State#state.modules, ScannerName) of
+        true ->
+            ok;
+        false ->
+            ?D({index, ScannerName}),
+            Refs = read_module_refs(ScannerName, ModulePath, StateDir),
+            do_add_module_refs(ScannerName, Refs, State)
+    end.
 
 get_module_name(ModulePath) ->
     L = filename:rootname(filename:basename(ModulePath)),
     list_to_atom(L).
 
-find_data([], _, _, _, Acc) ->
+find_data([], _, _, Acc) ->
     Acc;
-find_data([#ref{function=F, arity=A, clause=C, data=D, offset=O, length=L, sub_clause=S} | Rest],
-          Pattern, Mod, M, Acc) ->
-    NewAcc = case check_pattern(Pattern, Mod, D, F, A, C) of
-                 true ->
-                     [{M, F, A, C, S, O, L, is_def(D)} | Acc];
-                 false ->
+find_data([{_Key, ScannerName, #ref{function=F, arity=A, clause=C, data=D,
+                                    offset=O, length=L, sub_clause=S}} | Rest],
+          Pattern, Scope, Acc) ->
+    NewAcc = case dict:find(ScannerName, Scope) of
+                 {ok, M} ->
+                     Mod = get_module_name(M),
+                     case check_pattern(Pattern, Mod, D, F, A, C) of
+                         true ->
+                             [{M, F, A, C, S, O, L, is_def(D)} | Acc];
+                         false ->
+                             Acc
+                     end;
+                 error ->
                      Acc
              end,
-    find_data(Rest, Pattern, Mod, M, NewAcc).
+    find_data(Rest, Pattern, Scope, NewAcc).
+
+%% refs that may match the same patterns have the same key; check_pattern
+%% decides
+index_key(#local_call{function=F, arity=A}) -> {call, F, A};
+index_key(#external_call{function=F, arity=A}) -> {call, F, A};
+index_key(#function_def{function=F, arity=A}) -> {call, F, A};
+index_key(#function_def_mod{function=F, arity=A}) -> {call, F, A};
+index_key(#type_ref{type=T}) -> {type, T};
+index_key(#type_def{type=T}) -> {type, T};
+index_key(#var_ref{variable=V}) -> {var, V};
+index_key(#var_def{variable=V}) -> {var, V};
+index_key(D) -> D.
+
+pattern_keys(#var_pattern{vardefref=VL}) ->
+    [index_key(V) || V <- VL];
+pattern_keys(P) ->
+    [index_key(P)].
 
 is_def(#function_def{}) -> true;
 is_def(#macro_def{}) -> true;
@@ -248,24 +348,24 @@ check_var_pattern([#var_pattern{vardefref=VL, function=F, arity=A, clause=C} | R
 check_var_pattern([_ | Rest], V, F, A, C) ->
 	check_var_pattern(Rest, V, F, A, C).
 
-get_module_refs(ScannerName, ModulePath, StateDir, Modules) ->
-    ?D(Modules),
-    case lists:keysearch(ScannerName, #module.scanner_name, Modules) of
-        {value, #module{refs=Refs}} ->
-            ?D(ye),
-            Refs;
-        false ->
-            ?D(ok),
-            read_module_refs(ScannerName, ModulePath, StateDir)
-    end.
-
 read_module_refs(ScannerName, ModulePath, StateDir) ->
     erlide_noparse:read_module_refs(ScannerName, ModulePath, StateDir).
 
-do_add_module_refs(ScannerName, Refs, #state{modules=Modules0} = State) ->
+do_add_module_refs(ScannerName, Refs, #state{postings=Postings,
+                                              modules=Modules} = State) ->
     ?D(ScannerName),
-    Modules1 = lists:keydelete(ScannerName, #module.scanner_name, Modules0),
-    Modules2 = [#module{scanner_name=ScannerName, refs=Refs} | Modules1],
-    ?D(Modules1),
-    ?D(Modules2),
-    State#state{modules=Modules2}.
+    do_remove_module(ScannerName, State),
+    Entries = [{index_key(D), ScannerName, Ref} || #ref{data=D}=Ref <- Refs],
+    ets:insert(Postings, Entries),
+    Keys = lists:usort([K || {K, _, _} <- Entries]),
+    ets:insert(Modules, {ScannerName, Keys}),
+    State.
+
+do_remove_module(ScannerName, #state{postings=Postings, modules=Modules}) ->
+    case ets:lookup(Modules, ScannerName) of
+        [{_, Keys}] ->
+            [ets:match_delete(Postings, {K, ScannerName, '_'}) || K <- Keys],
+            ets:delete(Modules, ScannerName);
+        [] ->
+            ok
+    end.
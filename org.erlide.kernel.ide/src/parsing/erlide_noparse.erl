@@ -142,8 +142,9 @@ do_parse2(ScannerName, RefsFileName, Toks, StateDir, UpdateSearchServer) ->
 
 update_search_server(true, ScannerName, Refs) ->
     erlide_search_server:add_module_refs(ScannerName, Refs);
-update_search_server(_, _, _) ->
-    ok.
+update_search_server(_, ScannerName, Refs) ->
+    %% keep the search index in step if it has this module
+    erlide_search_server:update_module_refs(ScannerName, Refs).
 
 fixup_model(#model{forms=Forms, comments=Comments}) ->
     FixedComments = fixup_tokens(Comments),
@@ -18,7 +18,8 @@
 
 -export([light_scan_string/1, scan_string/1, convert_tokens/1,
          tokens_to_string/1, do_scan/2, get_all_tokens/1, initial_scan/5,
-         get_token_at/2, replace_text/4, lines_to_text/1, get_token_window/4]).
+         get_token_at/2, replace_text/4, lines_to_text/1, get_token_window/4,
+         token_to_binary/1]).
 
 %%
 %% API Functions
@@ -412,6 +413,10 @@ kind_small(Kind) when is_atom(Kind) ->
             end
     end.
 
+%% The 10-byte form used by light_scan_string/1, read by ErlTokenBuffer
+token_to_binary(#token{kind=Kind, line=L, offset=O, length=G}) ->
+    <<(kind_small(Kind)), L:24, O:24, G:24>>.
+
 fixup_macro(L, O, G) ->
     ?D({macro, L, O, G}),
     %%     V = [$? | atom_to_list(V0)],
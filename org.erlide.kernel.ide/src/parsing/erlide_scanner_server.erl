@@ -17,8 +17,8 @@
 %% Exported Functions
 %%
 
--export([create/1, destroy/1, initialScan/5, getTokenAt/2, getTokenWindow/4, 
-         getTokens/1, replaceText/4, check_all/2]).
+-export([create/1, destroy/1, initialScan/5, getTokenAt/2, getTokenAtBinary/2,
+         getTokenWindow/4, getTokens/1, replaceText/4, check_all/2]).
 
 %% stop/0
 
@@ -59,6 +59,15 @@ getTokenWindow(ScannerName, Offset, Before, After)
 getTokenAt(ScannerName, Offset) when is_atom(ScannerName), is_integer(Offset) ->
     server_cmd(ScannerName, get_token_at, Offset).
 
+%% Same as getTokenAt/2, with the token in the form of light_scan_string/1
+getTokenAtBinary(ScannerName, Offset) when is_atom(ScannerName), is_integer(Offset) ->
+    case getTokenAt(ScannerName, Offset) of
+        {ok, T} ->
+            {ok, erlide_scanner:token_to_binary(T)};
+        Other ->
+            Other
+    end.
+
 initialScan(ScannerName, ModuleFileName, InitialText, StateDir, UpdateCache) 
   when is_atom(ScannerName), is_list(ModuleFileName), is_list(InitialText), is_list(StateDir) ->
 	spawn_server(ScannerName),
@@ -0,0 +1,52 @@
+-module(erlide_compress_tests).
+
+-include_lib("eunit/include/eunit.hrl").
+
+plain_test() ->
+	?assertEqual([1,2,3], erlide_compress:call(self(), make_ref(),
+											   {lists, seq, [1, 3]}, 0)).
+
+compressed_request_test() ->
+	Bin = term_to_binary({lists, seq, [1, 3]}, [compressed]),
+	?assertEqual([1,2,3], erlide_compress:call(self(), make_ref(), Bin, 0)).
+
+crash_test() ->
+	?assertMatch({badrpc, {'EXIT', _}},
+				 erlide_compress:call(self(), make_ref(),
+									  {erlang, list_to_tuple, [a]}, 0)).
+
+compressed_reply_test() ->
+	Ref = make_ref(),
+	{'$erlide_compressed', Bin} =
+		erlide_compress:call(self(), Ref, {lists, seq, [1, 1000]}, 100),
+	?assertEqual(lists:seq(1, 1000), binary_to_term(Bin)).
+
+fragmented_request_test() ->
+	Ref = make_ref(),
+	Data = noise(200000),
+	Bin = term_to_binary({erlang, size, [Data]}, [compressed]),
+	<<A:100000/binary, B/binary>> = Bin,
+	Self = self(),
+	spawn(fun() ->
+				  Self ! {result, erlide_compress:call(Self, Ref,
+													   {fragments, 2}, 0)}
+		  end),
+	Pid = receive {Ref, upload, P} -> P after 1000 -> timeout end,
+	Pid ! {Ref, fragment, A},
+	Pid ! {Ref, fragment, B},
+	?assertEqual({result, 200000}, receive R -> R after 1000 -> timeout end).
+
+fragmented_reply_test() ->
+	Ref = make_ref(),
+	Data = noise(200000),
+	{'$erlide_fragments', Count} =
+		erlide_compress:call(self(), Ref, {erlang, list_to_binary, [[Data]]},
+							 1000),
+	Parts = [receive {Ref, fragment, P} -> P after 0 -> timeout end
+			|| _ <- lists:seq(1, Count)],
+	?assert(Count > 1),
+	?assertEqual(Data, binary_to_term(list_to_binary(Parts))).
+
+noise(N) ->
+	random:seed(1, 2, 3),
+	list_to_binary([random:uniform(256) - 1 || _ <- lists:seq(1, N)]).
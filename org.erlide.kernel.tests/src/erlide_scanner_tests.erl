@@ -43,6 +43,18 @@ scanner_light_scan_string_test_() ->
                           ?TOK_DOT, 0:24, 8:24, 1:24>>},
                        erlide_scanner:light_scan_string(<<"a() -> b.">>))].
 
+scanner_token_to_binary_test_() ->
+	[?_assertEqual(<<?TOK_ATOM, 3:24, 17:24, 5:24>>,
+				   erlide_scanner:token_to_binary(#token{kind = atom, line = 3,
+														 offset = 17, length = 5,
+														 value = hello})),
+	 ?_assertEqual(<<$(, 0:24, 1:24, 1:24>>,
+				   erlide_scanner:token_to_binary(#token{kind = '(', line = 0,
+														 offset = 1, length = 1})),
+	 ?_assertEqual(<<?TOK_KEYWORD, 1:24, 2:24, 3:24>>,
+				   erlide_scanner:token_to_binary(#token{kind = 'end', line = 1,
+														 offset = 2, length = 3}))].
+
 scanner_test_() ->
 	[?_assertEqual([#token{kind = atom, line = 0, offset = 0,length = 1, value = a},
 					#token{kind = '(', line = 0, offset = 1, length = 1},
@@ -0,0 +1,68 @@
+-module(erlide_search_server_tests).
+
+-include_lib("eunit/include/eunit.hrl").
+-include("erlide_search_server.hrl").
+
+-define(DEF, #function_def_mod{module=a, function=f, arity=0}).
+-define(CALL, #external_call{module=a, function=f, arity=0}).
+
+index_test_() ->
+	{setup,
+	 fun() ->
+			 erlide_search_server:add_module_refs(
+			   sa, [ref(#function_def{function=f, arity=0}, 1),
+					ref(#local_call{function=f, arity=0}, 20),
+					ref(#local_call{function=g, arity=0}, 30)]),
+			 erlide_search_server:add_module_refs(
+			   sb, [ref(?CALL, 5),
+					ref(#external_call{module=c, function=f, arity=0}, 15)])
+	 end,
+	 fun(_) ->
+			 [erlide_search_server:remove_module(M) || M <- [sa, sb, sc]]
+	 end,
+	 [?_assertEqual([1, 5, 20], offsets(find([?DEF, ?CALL], all()))),
+	  ?_assertEqual([5], offsets(find([?CALL], [{sb, "/x/b.erl"}]))),
+	  ?_assertEqual([], offsets(find([#external_call{module=a, function=h,
+													 arity=0}], all()))),
+	  ?_assertEqual([1, 5, 20], offsets(find_stream([?DEF, ?CALL], all()))),
+	  ?_test(begin
+				 erlide_search_server:update_module_refs(sb, []),
+				 erlide_search_server:update_module_refs(sc, [ref(?CALL, 7)]),
+				 ?assertEqual([sa, sb], ours()),
+				 ?assertEqual([1, 20], offsets(find([?DEF, ?CALL], all())))
+			 end),
+	  ?_test(begin
+				 erlide_search_server:remove_module(sa),
+				 ?assertEqual([sb], ours())
+			 end)]}.
+
+all() ->
+	[{sa, "/x/a.erl"}, {sb, "/x/b.erl"}].
+
+ours() ->
+	lists:sort([M || M <- erlide_search_server:modules(),
+					 lists:member(M, [sa, sb, sc])]).
+
+find(Pattern, Modules) ->
+	{ok, Refs} = erlide_search_server:find_refs(Pattern, Modules, "/no/state"),
+	Refs.
+
+find_stream(Pattern, Modules) ->
+	{stream, P} = erlide_search_server:find_refs_stream(Pattern, Modules,
+														"/no/state"),
+	pull(P, []).
+
+pull(P, Acc) ->
+	case P() of
+		done ->
+			Acc;
+		{Refs, Next} ->
+			pull(Next, Refs ++ Acc)
+	end.
+
+offsets(Refs) ->
+	lists:sort([O || {_M, _F, _A, _C, _S, O, _L, _D} <- Refs]).
+
+ref(Data, Offset) ->
+	#ref{data=Data, offset=Offset, length=1, function=f, arity=0,
+		 clause="f()", sub_clause=false}.
@@ -0,0 +1,76 @@
+-module(erlide_stream_tests).
+
+-include_lib("eunit/include/eunit.hrl").
+
+-export([counter/2]).
+
+chunks_test() ->
+	Ref = make_ref(),
+	Pid = erlide_stream:start(self(), Ref, lists, seq, [1, 10], 2),
+	?assertEqual([[1,2], [3,4], [5,6], [7,8], [9,10]],
+				 receive_all(Pid, Ref, [])).
+
+ok_list_test() ->
+	Ref = make_ref(),
+	Pid = erlide_stream:start(self(), Ref, erlang, list_to_tuple,
+							  [[ok, [a, b]]], 5),
+	?assertEqual([[a, b]], receive_all(Pid, Ref, [])).
+
+error_test() ->
+	Ref = make_ref(),
+	Pid = erlide_stream:start(self(), Ref, erlang, list_to_tuple, [[a, b]], 5),
+	?assertEqual({error, {a, b}}, receive_all(Pid, Ref, [])).
+
+window_test() ->
+	Ref = make_ref(),
+	Pid = erlide_stream:start(self(), Ref, lists, seq, [1, 100], 1),
+	timer:sleep(100),
+	?assertEqual(4, length(flush(Ref, []))),
+	Pid ! {Ref, cancel}.
+
+producer_test() ->
+	Ref = make_ref(),
+	Pid = erlide_stream:start(self(), Ref, ?MODULE, counter, [1, 3], 2),
+	?assertEqual([[1], [2], [3]], receive_all(Pid, Ref, [])).
+
+producer_window_test() ->
+	Ref = make_ref(),
+	Pid = erlide_stream:start(self(), Ref, ?MODULE, counter, [1, 100], 5),
+	timer:sleep(100),
+	?assertEqual([[4], [3], [2], [1]], flush(Ref, [])),
+	Pid ! {Ref, cancel}.
+
+producer_error_test() ->
+	Ref = make_ref(),
+	Pid = erlide_stream:start(self(), Ref, ?MODULE, counter, [1, x], 5),
+	?assertMatch({error, _}, receive_all(Pid, Ref, [])).
+
+%% a producer giving one number per step
+counter(N, Max) ->
+	{stream, fun() -> count(N, Max) end}.
+
+count(N, Max) when N > Max ->
+	done;
+count(N, Max) when is_integer(Max) ->
+	{[N], fun() -> count(N+1, Max) end}.
+
+receive_all(Pid, Ref, Acc) ->
+	receive
+		{Ref, chunk, Items} ->
+			Pid ! {Ref, more},
+			receive_all(Pid, Ref, [Items | Acc]);
+		{Ref, done, _Count} ->
+			lists:reverse(Acc);
+		{Ref, error, Reason} ->
+			{error, Reason}
+	after 1000 ->
+			timeout
+	end.
+
+flush(Ref, Acc) ->
+	receive
+		{Ref, chunk, Items} ->
+			flush(Ref, [Items | Acc])
+	after 0 ->
+			Acc
+	end.
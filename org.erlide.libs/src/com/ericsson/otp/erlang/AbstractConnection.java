@@ -21,7 +21,12 @@ package com.ericsson.otp.erlang;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.LinkedList;
 import java.util.Random;
 
 /**
@@ -83,10 +88,19 @@ public abstract class AbstractConnection extends Thread {
     protected static final int ChallengeAck = 'a';
     protected static final int ChallengeStatus = 's';
 
+    // encode buffers are reused; larger ones are left to the gc
+    protected static final int maxPooledBuffers = 4;
+    protected static final int maxPooledBufferSize = 64 * 1024;
+    // small messages are written in one go, copying the payload
+    protected static final int coalesceLimit = 8 * 1024;
+
+    private final LinkedList<OtpOutputStream> freeBuffers = new LinkedList<OtpOutputStream>();
+
     private volatile boolean done = false;
 
     protected boolean connected = false; // connection status
     protected Socket socket; // communication channel
+    private OtpNioTransport.Link nioLink = null; // set when using NIO
     protected OtpPeer peer; // who are we connected to
     protected OtpLocalNode self; // this nodes id
     String name; // local name of this connection
@@ -218,6 +232,36 @@ public abstract class AbstractConnection extends Thread {
      */
     public abstract void deliver(OtpMsg msg);
 
+    /**
+     * Get an empty encode buffer from this connection's pool. Return it with
+     * {@link #releaseBuffer(OtpOutputStream)} when its contents have been
+     * sent.
+     */
+    protected OtpOutputStream getBuffer() {
+	synchronized (freeBuffers) {
+	    if (!freeBuffers.isEmpty()) {
+		return freeBuffers.removeFirst();
+	    }
+	}
+	return new OtpOutputStream(headerLen);
+    }
+
+    /**
+     * Give back a buffer obtained with {@link #getBuffer()}. It must not be
+     * used afterwards.
+     */
+    protected void releaseBuffer(final OtpOutputStream buf) {
+	if (buf.length() > maxPooledBufferSize) {
+	    return;
+	}
+	buf.reset();
+	synchronized (freeBuffers) {
+	    if (freeBuffers.size() < maxPooledBuffers) {
+		freeBuffers.addFirst(buf);
+	    }
+	}
+    }
+
     /**
      * Send a pre-encoded message to a named process on a remote node.
      *
@@ -235,7 +279,7 @@ public abstract class AbstractConnection extends Thread {
 	if (!connected) {
 	    throw new IOException("Not connected");
 	}
-	final OtpOutputStream header = new OtpOutputStream(headerLen);
+	final OtpOutputStream header = getBuffer();
 
 	// preamble: 4 byte length + "passthrough" tag + version
 	header.write4BE(0); // reserve space for length
@@ -259,7 +303,11 @@ public abstract class AbstractConnection extends Thread {
 	// fix up length in preamble
 	header.poke4BE(0, header.size() + payload.size() - 4);
 
-	do_send(header, payload);
+	try {
+	    do_send(header, payload);
+	} finally {
+	    releaseBuffer(header);
+	}
     }
 
     /**
@@ -279,7 +327,7 @@ public abstract class AbstractConnection extends Thread {
 	if (!connected) {
 	    throw new IOException("Not connected");
 	}
-	final OtpOutputStream header = new OtpOutputStream(headerLen);
+	final OtpOutputStream header = getBuffer();
 
 	// preamble: 4 byte length + "passthrough" tag + version
 	header.write4BE(0); // reserve space for length
@@ -302,7 +350,11 @@ public abstract class AbstractConnection extends Thread {
 	// fix up length in preamble
 	header.poke4BE(0, header.size() + payload.size() - 4);
 
-	do_send(header, payload);
+	try {
+	    do_send(header, payload);
+	} finally {
+	    releaseBuffer(header);
+	}
     }
 
     /*
@@ -313,7 +365,7 @@ public abstract class AbstractConnection extends Thread {
     private void cookieError(final OtpLocalNode local,
 	    final OtpErlangAtom cookie) throws OtpAuthException {
 	try {
-	    final OtpOutputStream header = new OtpOutputStream(headerLen);
+	    final OtpOutputStream header = getBuffer();
 
 	    // preamble: 4 byte length + "passthrough" tag + version
 	    header.write4BE(0); // reserve space for length
@@ -357,7 +409,10 @@ public abstract class AbstractConnection extends Thread {
 	    try {
 		do_send(header, payload);
 	    } catch (final IOException e) {
-	    } // ignore
+		// ignore
+	    } finally {
+		releaseBuffer(header);
+	    }
 	} finally {
 	    close();
 	}
@@ -385,7 +440,7 @@ public abstract class AbstractConnection extends Thread {
 	if (!connected) {
 	    throw new IOException("Not connected");
 	}
-	final OtpOutputStream header = new OtpOutputStream(headerLen);
+	final OtpOutputStream header = getBuffer();
 
 	// preamble: 4 byte length + "passthrough" tag
 	header.write4BE(0); // reserve space for length
@@ -401,7 +456,11 @@ public abstract class AbstractConnection extends Thread {
 	// fix up length in preamble
 	header.poke4BE(0, header.size() - 4);
 
-	do_send(header);
+	try {
+	    do_send(header);
+	} finally {
+	    releaseBuffer(header);
+	}
     }
 
     /**
@@ -421,7 +480,7 @@ public abstract class AbstractConnection extends Thread {
 	if (!connected) {
 	    throw new IOException("Not connected");
 	}
-	final OtpOutputStream header = new OtpOutputStream(headerLen);
+	final OtpOutputStream header = getBuffer();
 
 	// preamble: 4 byte length + "passthrough" tag
 	header.write4BE(0); // reserve space for length
@@ -437,7 +496,11 @@ public abstract class AbstractConnection extends Thread {
 	// fix up length in preamble
 	header.poke4BE(0, header.size() - 4);
 
-	do_send(header);
+	try {
+	    do_send(header);
+	} finally {
+	    releaseBuffer(header);
+	}
     }
 
     /* used internally when "processes" terminate */
@@ -469,7 +532,7 @@ public abstract class AbstractConnection extends Thread {
 	if (!connected) {
 	    throw new IOException("Not connected");
 	}
-	final OtpOutputStream header = new OtpOutputStream(headerLen);
+	final OtpOutputStream header = getBuffer();
 
 	// preamble: 4 byte length + "passthrough" tag
 	header.write4BE(0); // reserve space for length
@@ -486,7 +549,11 @@ public abstract class AbstractConnection extends Thread {
 	// fix up length in preamble
 	header.poke4BE(0, header.size() - 4);
 
-	do_send(header);
+	try {
+	    do_send(header);
+	} finally {
+	    releaseBuffer(header);
+	}
     }
 
     @Override
@@ -498,12 +565,11 @@ public abstract class AbstractConnection extends Thread {
 
 	final byte[] lbuf = new byte[4];
 	OtpInputStream ibuf;
-	OtpErlangObject traceobj;
 	int len;
 	final byte[] tock = { 0, 0, 0, 0 };
 
 	try {
-	    receive_loop: while (!done) {
+	    while (!done) {
 		// don't return until we get a real message
 		// or a failure of some kind (e.g. EXIT)
 		// read length and read buffer must be atomic!
@@ -527,204 +593,220 @@ public abstract class AbstractConnection extends Thread {
 		final byte[] tmpbuf = new byte[len];
 		// i = socket.getInputStream().read(tmpbuf);
 		readSock(socket, tmpbuf);
-		ibuf = new OtpInputStream(tmpbuf, flags);
+		processFrame(new OtpInputStream(tmpbuf, flags));
+	    }
+	} catch (final OtpAuthException e) {
+	    deliverReceiveError(e);
+	} catch (final OtpErlangDecodeException e) {
+	    deliverReceiveError(e);
+	} catch (final IOException e) {
+	    deliverReceiveError(e);
+	} finally {
+	    close();
+	}
+    }
 
-		if (ibuf.read1() != passThrough) {
-		    break receive_loop;
-		}
+    /*
+     * Report a failure of the receiving side to the subclass. The caller closes
+     * the connection.
+     */
+    void deliverReceiveError(final Exception e) {
+	if (e instanceof OtpAuthException) {
+	    deliver(e);
+	} else if (e instanceof OtpErlangDecodeException) {
+	    deliver(new OtpErlangExit("Remote is sending garbage"));
+	} else {
+	    deliver(new OtpErlangExit("Remote has closed connection"));
+	}
+    }
 
-		// got a real message (really)
-		OtpErlangObject reason = null;
-		OtpErlangAtom cookie = null;
-		OtpErlangObject tmp = null;
-		OtpErlangTuple head = null;
-		OtpErlangAtom toName;
-		OtpErlangPid to;
-		OtpErlangPid from;
-		int tag;
-
-		// decode the header
-		tmp = ibuf.read_any();
-		if (!(tmp instanceof OtpErlangTuple)) {
-		    break receive_loop;
-		}
+    /*
+     * Decode and dispatch one frame received from the peer (without the length
+     * header). Used both by the connection thread and by the NIO transport.
+     */
+    void processFrame(final OtpInputStream ibuf) throws IOException,
+	    OtpErlangDecodeException, OtpAuthException {
+	OtpErlangObject traceobj;
 
-		head = (OtpErlangTuple) tmp;
-		if (!(head.elementAt(0) instanceof OtpErlangLong)) {
-		    break receive_loop;
-		}
+	if (ibuf.read1() != passThrough) {
+	    throw new OtpErlangDecodeException("Remote is sending garbage");
+	}
 
-		// lets see what kind of message this is
-		tag = (int) ((OtpErlangLong) head.elementAt(0)).longValue();
-
-		switch (tag) {
-		case sendTag: // { SEND, Cookie, ToPid }
-		case sendTTTag: // { SEND, Cookie, ToPid, TraceToken }
-		    if (!cookieOk) {
-			// we only check this once, he can send us bad cookies
-			// later if he likes
-			if (!(head.elementAt(1) instanceof OtpErlangAtom)) {
-			    break receive_loop;
-			}
-			cookie = (OtpErlangAtom) head.elementAt(1);
-			if (sendCookie) {
-			    if (!cookie.atomValue().equals(self.cookie())) {
-				cookieError(self, cookie);
-			    }
-			} else {
-			    if (!cookie.atomValue().equals("")) {
-				cookieError(self, cookie);
-			    }
-			}
-			cookieOk = true;
-		    }
+	// got a real message (really)
+	OtpErlangObject reason = null;
+	OtpErlangAtom cookie = null;
+	OtpErlangObject tmp = null;
+	OtpErlangTuple head = null;
+	OtpErlangAtom toName;
+	OtpErlangPid to;
+	OtpErlangPid from;
+	int tag;
+
+	// decode the header
+	tmp = ibuf.read_any();
+	if (!(tmp instanceof OtpErlangTuple)) {
+	    throw new OtpErlangDecodeException("Remote is sending garbage");
+	}
 
-		    if (traceLevel >= sendThreshold) {
-			System.out.println("<- " + headerType(head) + " "
-				+ head);
+	head = (OtpErlangTuple) tmp;
+	if (!(head.elementAt(0) instanceof OtpErlangLong)) {
+	    throw new OtpErlangDecodeException("Remote is sending garbage");
+	}
 
-			/* show received payload too */
-			ibuf.mark(0);
-			traceobj = ibuf.read_any();
+	// lets see what kind of message this is
+	tag = (int) ((OtpErlangLong) head.elementAt(0)).longValue();
 
-			if (traceobj != null) {
-			    System.out.println("   " + traceobj);
-			} else {
-			    System.out.println("   (null)");
-			}
-			ibuf.reset();
+	switch (tag) {
+	case sendTag: // { SEND, Cookie, ToPid }
+	case sendTTTag: // { SEND, Cookie, ToPid, TraceToken }
+	    if (!cookieOk) {
+		// we only check this once, he can send us bad cookies
+		// later if he likes
+		if (!(head.elementAt(1) instanceof OtpErlangAtom)) {
+		    throw new OtpErlangDecodeException("Remote is sending garbage");
+		}
+		cookie = (OtpErlangAtom) head.elementAt(1);
+		if (sendCookie) {
+		    if (!cookie.atomValue().equals(self.cookie())) {
+			cookieError(self, cookie);
+		    }
+		} else {
+		    if (!cookie.atomValue().equals("")) {
+			cookieError(self, cookie);
 		    }
+		}
+		cookieOk = true;
+	    }
 
-		    to = (OtpErlangPid) head.elementAt(2);
+	    if (traceLevel >= sendThreshold) {
+		System.out.println("<- " + headerType(head) + " "
+			+ head);
 
-		    deliver(new OtpMsg(to, ibuf));
-		    break;
+		/* show received payload too */
+		ibuf.mark(0);
+		traceobj = ibuf.read_any();
 
-		case regSendTag: // { REG_SEND, FromPid, Cookie, ToName }
-		case regSendTTTag: // { REG_SEND, FromPid, Cookie, ToName,
-		    // TraceToken }
-		    if (!cookieOk) {
-			// we only check this once, he can send us bad cookies
-			// later if he likes
-			if (!(head.elementAt(2) instanceof OtpErlangAtom)) {
-			    break receive_loop;
-			}
-			cookie = (OtpErlangAtom) head.elementAt(2);
-			if (sendCookie) {
-			    if (!cookie.atomValue().equals(self.cookie())) {
-				cookieError(self, cookie);
-			    }
-			} else {
-			    if (!cookie.atomValue().equals("")) {
-				cookieError(self, cookie);
-			    }
-			}
-			cookieOk = true;
-		    }
+		if (traceobj != null) {
+		    System.out.println("   " + traceobj);
+		} else {
+		    System.out.println("   (null)");
+		}
+		ibuf.reset();
+	    }
 
-		    if (traceLevel >= sendThreshold) {
-			System.out.println("<- " + headerType(head) + " "
-				+ head);
+	    to = (OtpErlangPid) head.elementAt(2);
 
-			/* show received payload too */
-			ibuf.mark(0);
-			traceobj = ibuf.read_any();
+	    deliver(new OtpMsg(to, ibuf));
+	    break;
 
-			if (traceobj != null) {
-			    System.out.println("   " + traceobj);
-			} else {
-			    System.out.println("   (null)");
-			}
-			ibuf.reset();
+	case regSendTag: // { REG_SEND, FromPid, Cookie, ToName }
+	case regSendTTTag: // { REG_SEND, FromPid, Cookie, ToName,
+	    // TraceToken }
+	    if (!cookieOk) {
+		// we only check this once, he can send us bad cookies
+		// later if he likes
+		if (!(head.elementAt(2) instanceof OtpErlangAtom)) {
+		    throw new OtpErlangDecodeException("Remote is sending garbage");
+		}
+		cookie = (OtpErlangAtom) head.elementAt(2);
+		if (sendCookie) {
+		    if (!cookie.atomValue().equals(self.cookie())) {
+			cookieError(self, cookie);
+		    }
+		} else {
+		    if (!cookie.atomValue().equals("")) {
+			cookieError(self, cookie);
 		    }
+		}
+		cookieOk = true;
+	    }
 
-		    from = (OtpErlangPid) head.elementAt(1);
-		    toName = (OtpErlangAtom) head.elementAt(3);
+	    if (traceLevel >= sendThreshold) {
+		System.out.println("<- " + headerType(head) + " "
+			+ head);
 
-		    deliver(new OtpMsg(from, toName.atomValue(), ibuf));
-		    break;
+		/* show received payload too */
+		ibuf.mark(0);
+		traceobj = ibuf.read_any();
 
-		case exitTag: // { EXIT, FromPid, ToPid, Reason }
-		case exit2Tag: // { EXIT2, FromPid, ToPid, Reason }
-		    if (head.elementAt(3) == null) {
-			break receive_loop;
-		    }
-		    if (traceLevel >= ctrlThreshold) {
-			System.out.println("<- " + headerType(head) + " "
-				+ head);
-		    }
+		if (traceobj != null) {
+		    System.out.println("   " + traceobj);
+		} else {
+		    System.out.println("   (null)");
+		}
+		ibuf.reset();
+	    }
 
-		    from = (OtpErlangPid) head.elementAt(1);
-		    to = (OtpErlangPid) head.elementAt(2);
-		    reason = head.elementAt(3);
+	    from = (OtpErlangPid) head.elementAt(1);
+	    toName = (OtpErlangAtom) head.elementAt(3);
 
-		    deliver(new OtpMsg(tag, from, to, reason));
-		    break;
+	    deliver(new OtpMsg(from, toName.atomValue(), ibuf));
+	    break;
 
-		case exitTTTag: // { EXIT, FromPid, ToPid, TraceToken, Reason }
-		case exit2TTTag: // { EXIT2, FromPid, ToPid, TraceToken,
-		    // Reason
-		    // }
-		    // as above, but bifferent element number
-		    if (head.elementAt(4) == null) {
-			break receive_loop;
-		    }
-		    if (traceLevel >= ctrlThreshold) {
-			System.out.println("<- " + headerType(head) + " "
-				+ head);
-		    }
+	case exitTag: // { EXIT, FromPid, ToPid, Reason }
+	case exit2Tag: // { EXIT2, FromPid, ToPid, Reason }
+	    if (head.elementAt(3) == null) {
+		throw new OtpErlangDecodeException("Remote is sending garbage");
+	    }
+	    if (traceLevel >= ctrlThreshold) {
+		System.out.println("<- " + headerType(head) + " "
+			+ head);
+	    }
 
-		    from = (OtpErlangPid) head.elementAt(1);
-		    to = (OtpErlangPid) head.elementAt(2);
-		    reason = head.elementAt(4);
+	    from = (OtpErlangPid) head.elementAt(1);
+	    to = (OtpErlangPid) head.elementAt(2);
+	    reason = head.elementAt(3);
 
-		    deliver(new OtpMsg(tag, from, to, reason));
-		    break;
+	    deliver(new OtpMsg(tag, from, to, reason));
+	    break;
 
-		case linkTag: // { LINK, FromPid, ToPid}
-		case unlinkTag: // { UNLINK, FromPid, ToPid}
-		    if (traceLevel >= ctrlThreshold) {
-			System.out.println("<- " + headerType(head) + " "
-				+ head);
-		    }
+	case exitTTTag: // { EXIT, FromPid, ToPid, TraceToken, Reason }
+	case exit2TTTag: // { EXIT2, FromPid, ToPid, TraceToken,
+	    // Reason
+	    // }
+	    // as above, but bifferent element number
+	    if (head.elementAt(4) == null) {
+		throw new OtpErlangDecodeException("Remote is sending garbage");
+	    }
+	    if (traceLevel >= ctrlThreshold) {
+		System.out.println("<- " + headerType(head) + " "
+			+ head);
+	    }
 
-		    from = (OtpErlangPid) head.elementAt(1);
-		    to = (OtpErlangPid) head.elementAt(2);
+	    from = (OtpErlangPid) head.elementAt(1);
+	    to = (OtpErlangPid) head.elementAt(2);
+	    reason = head.elementAt(4);
 
-		    deliver(new OtpMsg(tag, from, to));
-		    break;
+	    deliver(new OtpMsg(tag, from, to, reason));
+	    break;
 
-		// absolutely no idea what to do with these, so we ignore
-		// them...
-		case groupLeaderTag: // { GROUPLEADER, FromPid, ToPid}
-		case nodeLinkTag: // { NODELINK }
-		    // (just show trace)
-		    if (traceLevel >= ctrlThreshold) {
-			System.out.println("<- " + headerType(head) + " "
-				+ head);
-		    }
-		    break;
+	case linkTag: // { LINK, FromPid, ToPid}
+	case unlinkTag: // { UNLINK, FromPid, ToPid}
+	    if (traceLevel >= ctrlThreshold) {
+		System.out.println("<- " + headerType(head) + " "
+			+ head);
+	    }
 
-		default:
-		    // garbage?
-		    break receive_loop;
-		}
-	    } // end receive_loop
+	    from = (OtpErlangPid) head.elementAt(1);
+	    to = (OtpErlangPid) head.elementAt(2);
 
-	    // this section reachable only with break
-	    // we have received garbage from peer
-	    deliver(new OtpErlangExit("Remote is sending garbage"));
+	    deliver(new OtpMsg(tag, from, to));
+	    break;
 
-	} // try
+	// absolutely no idea what to do with these, so we ignore
+	// them...
+	case groupLeaderTag: // { GROUPLEADER, FromPid, ToPid}
+	case nodeLinkTag: // { NODELINK }
+	    // (just show trace)
+	    if (traceLevel >= ctrlThreshold) {
+		System.out.println("<- " + headerType(head) + " "
+			+ head);
+	    }
+	    break;
 
-	catch (final OtpAuthException e) {
-	    deliver(e);
-	} catch (final OtpErlangDecodeException e) {
-	    deliver(new OtpErlangExit("Remote is sending garbage"));
-	} catch (final IOException e) {
-	    deliver(new OtpErlangExit("Remote has closed connection"));
-	} finally {
-	    close();
+	default:
+	    // garbage?
+	    throw new OtpErlangDecodeException("Remote is sending garbage");
 	}
     }
 
@@ -790,6 +872,23 @@ public abstract class AbstractConnection extends Thread {
 		socket = null;
 	    }
 	}
+	if (nioLink != null) {
+	    nioLink.closed(new IOException("Connection closed"));
+	}
+    }
+
+    /*
+     * Start receiving from the peer after the handshake: with the node's NIO
+     * transport if it has one, otherwise with this connection's thread.
+     */
+    void startReceiving() throws IOException {
+	final OtpNioTransport transport = self.nioTransport();
+	final SocketChannel channel = socket.getChannel();
+	if (transport != null && channel != null) {
+	    nioLink = transport.register(this, channel);
+	} else {
+	    start();
+	}
     }
 
     @Override
@@ -830,14 +929,46 @@ public abstract class AbstractConnection extends Thread {
 		}
 	    }
 
-	    header.writeTo(socket.getOutputStream());
-	    payload.writeTo(socket.getOutputStream());
+	    writeFrame(header, payload);
 	} catch (final IOException e) {
 	    close();
 	    throw e;
 	}
     }
 
+    /*
+     * Write header and payload as one frame. Socket channels get a gathering
+     * write; on plain sockets small payloads are appended to the header so
+     * that the frame goes out in a single write.
+     */
+    private void writeFrame(final OtpOutputStream header,
+	    final OtpOutputStream payload) throws IOException {
+	if (nioLink != null) {
+	    nioLink.write(new ByteBuffer[] {
+		    ByteBuffer.wrap(header.getBuf(), 0, header.size()),
+		    ByteBuffer.wrap(payload.getBuf(), 0, payload.size()) });
+	    return;
+	}
+	final SocketChannel channel = socket.getChannel();
+	if (channel != null && channel.isBlocking()) {
+	    final ByteBuffer[] frame = new ByteBuffer[] {
+		    ByteBuffer.wrap(header.getBuf(), 0, header.size()),
+		    ByteBuffer.wrap(payload.getBuf(), 0, payload.size()) };
+	    while (frame[1].hasRemaining()) {
+		channel.write(frame);
+	    }
+	    return;
+	}
+	final OutputStream out = socket.getOutputStream();
+	if (payload.size() <= coalesceLimit) {
+	    header.write(payload.getBuf(), 0, payload.size());
+	    header.writeTo(out);
+	} else {
+	    header.writeTo(out);
+	    payload.writeTo(out);
+	}
+    }
+
     // used by the other message types
     protected synchronized void do_send(final OtpOutputStream header)
 	    throws IOException {
@@ -852,7 +983,12 @@ public abstract class AbstractConnection extends Thread {
 			    + e);
 		}
 	    }
-	    header.writeTo(socket.getOutputStream());
+	    if (nioLink != null) {
+		nioLink.write(new ByteBuffer[] { ByteBuffer.wrap(header
+			.getBuf(), 0, header.size()) });
+	    } else {
+		header.writeTo(socket.getOutputStream());
+	    }
 	} catch (final IOException e) {
 	    close();
 	    throw e;
@@ -974,7 +1110,14 @@ public abstract class AbstractConnection extends Thread {
     protected void doConnect(final int port) throws IOException,
 	    OtpAuthException {
 	try {
-	    socket = new Socket(peer.host(), port);
+	    if (self.nioTransport() != null) {
+		// handshake in blocking mode, the transport switches the
+		// channel to non-blocking when the connection is registered
+		socket = SocketChannel.open(
+			new InetSocketAddress(peer.host(), port)).socket();
+	    } else {
+		socket = new Socket(peer.host(), port);
+	    }
 	    socket.setTcpNoDelay(true);
 
 	    if (traceLevel >= handshakeThreshold) {
@@ -0,0 +1,287 @@
+/*
+ * %CopyrightBegin%
+ *
+ * Copyright Ericsson AB 2000-2009. All Rights Reserved.
+ *
+ * The contents of this file are subject to the Erlang Public License,
+ * Version 1.1, (the "License"); you may not use this file except in
+ * compliance with the License. You should have received a copy of the
+ * Erlang Public License along with this software. If not, it can be
+ * retrieved online at http://www.erlang.org/.
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * %CopyrightEnd%
+ */
+package com.ericsson.otp.erlang;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>
+ * An unbounded FIFO queue for many producers and one consumer, used as the
+ * message queue of {@link OtpMbox mailboxes}. Adding an item never takes a
+ * lock: producers only swap the tail of a linked list, so the threads
+ * delivering messages don't contend with each other or with the reader.
+ * </p>
+ *
+ * <p>
+ * A consumer waiting for an item parks until a producer wakes it up or the
+ * timeout expires. The queue is meant to be read by one thread at a time;
+ * concurrent readers are serialized by a lock that producers never touch.
+ * </p>
+ */
+public class MpscQueue {
+
+    private static final class Node {
+	volatile Object contents;
+	volatile Node next;
+
+	Node(final Object o) {
+	    contents = o;
+	}
+    }
+
+    // producers append here
+    private final AtomicReference<Node> tail;
+    // consumer side: head is a dummy node, the first item is head.next
+    private volatile Node head;
+    private final ReentrantLock consumerLock = new ReentrantLock();
+    private volatile Thread waiter = null;
+
+    /** Create an empty queue */
+    public MpscQueue() {
+	head = new Node(null);
+	tail = new AtomicReference<Node>(head);
+    }
+
+    /**
+     * Add an object to the tail of the queue.
+     *
+     * @param o
+     *                Object to insert in the queue
+     */
+    public void put(final Object o) {
+	final Node n = new Node(o);
+	final Node prev = tail.getAndSet(n);
+	prev.next = n;
+
+	final Thread w = waiter;
+	if (w != null) {
+	    LockSupport.unpark(w);
+	}
+    }
+
+    /**
+     * Retrieve an object from the head of the queue, or block until one
+     * arrives.
+     *
+     * @return The object at the head of the queue.
+     */
+    public Object get() {
+	consumerLock.lock();
+	boolean interrupted = false;
+	try {
+	    Object o;
+	    while ((o = poll()) == null) {
+		interrupted |= park(0);
+	    }
+	    return o;
+	} finally {
+	    consumerLock.unlock();
+	    if (interrupted) {
+		Thread.currentThread().interrupt();
+	    }
+	}
+    }
+
+    /**
+     * Retrieve an object from the head of the queue, blocking until one arrives
+     * or until timeout occurs.
+     *
+     * @param timeout
+     *                Maximum time to block on queue, in ms. Use 0 to poll the
+     *                queue.
+     *
+     * @exception InterruptedException
+     *                    if the operation times out.
+     *
+     * @return The object at the head of the queue.
+     */
+    public Object get(final long timeout) throws InterruptedException {
+	final long stopTime = System.nanoTime()
+		+ TimeUnit.MILLISECONDS.toNanos(timeout);
+	if (!lockConsumer(timeout)) {
+	    throw new InterruptedException("Get operation timed out");
+	}
+	boolean interrupted = false;
+	try {
+	    Object o;
+	    while ((o = poll()) == null) {
+		final long left = stopTime - System.nanoTime();
+		if (left <= 0) {
+		    throw new InterruptedException("Get operation timed out");
+		}
+		interrupted |= park(left);
+	    }
+	    return o;
+	} finally {
+	    consumerLock.unlock();
+	    if (interrupted) {
+		Thread.currentThread().interrupt();
+	    }
+	}
+    }
+
+    /**
+     * Retrieve an object from the head of the queue, if there is one.
+     *
+     * @return The object at the head of the queue, or null if it is empty.
+     */
+    public Object tryGet() {
+	consumerLock.lock();
+	try {
+	    return poll();
+	} finally {
+	    consumerLock.unlock();
+	}
+    }
+
+    /**
+     * Look at the object at the head of the queue without removing it.
+     *
+     * @return The object at the head of the queue, or null if it is empty.
+     */
+    public Object peek() {
+	consumerLock.lock();
+	try {
+	    final Node n = head.next;
+	    return n == null ? null : n.contents;
+	} finally {
+	    consumerLock.unlock();
+	}
+    }
+
+    /**
+     * Move up to <code>max</code> objects from the head of the queue to the
+     * collection, waiting at most <code>timeout</code> ms for the first one.
+     *
+     * @return the number of objects moved.
+     */
+    public int drainTo(final Collection<Object> c, final int max,
+	    final long timeout) {
+	final long stopTime = System.nanoTime()
+		+ TimeUnit.MILLISECONDS.toNanos(timeout);
+	try {
+	    if (!lockConsumer(timeout)) {
+		return 0;
+	    }
+	} catch (final InterruptedException e) {
+	    return 0;
+	}
+	boolean interrupted = false;
+	try {
+	    int n = 0;
+	    while (n < max) {
+		final Object o = poll();
+		if (o != null) {
+		    c.add(o);
+		    n++;
+		    continue;
+		}
+		final long left = stopTime - System.nanoTime();
+		if (n > 0 || left <= 0) {
+		    break;
+		}
+		interrupted |= park(left);
+	    }
+	    return n;
+	} finally {
+	    consumerLock.unlock();
+	    if (interrupted) {
+		Thread.currentThread().interrupt();
+	    }
+	}
+    }
+
+    /** Clear the queue */
+    public void flush() {
+	consumerLock.lock();
+	try {
+	    while (poll() != null) {
+		// discard
+	    }
+	} finally {
+	    consumerLock.unlock();
+	}
+    }
+
+    /**
+     * Count the items in the queue. This walks the queue, so it's meant for
+     * monitoring; use {@link #isEmpty()} to check for waiting items.
+     */
+    public int getCount() {
+	int n = 0;
+	for (Node x = head.next; x != null; x = x.next) {
+	    n++;
+	}
+	return n;
+    }
+
+    public boolean isEmpty() {
+	return head.next == null;
+    }
+
+    private boolean lockConsumer(final long timeout)
+	    throws InterruptedException {
+	if (consumerLock.tryLock()) {
+	    return true;
+	}
+	return consumerLock.tryLock(timeout, TimeUnit.MILLISECONDS);
+    }
+
+    // consumer only: take the first item, or null if there is none (yet)
+    private Object poll() {
+	final Node n = head.next;
+	if (n == null) {
+	    return null;
+	}
+	final Object o = n.contents;
+	n.contents = null;
+	head = n;
+	return o;
+    }
+
+    /*
+     * Consumer only: wait for a producer to add something. The waiter is
+     * published before looking at the queue again, so an item added in between
+     * either is seen here or unparks us.
+     *
+     * park() returns at once while the thread's interrupt flag is set, so the
+     * flag is cleared here and the caller keeps waiting, like Object.wait()
+     * did; the return value tells it to set the flag again when it's done.
+     */
+    private boolean park(final long nanos) {
+	waiter = Thread.currentThread();
+	try {
+	    if (head.next != null) {
+		return false;
+	    }
+	    if (nanos > 0) {
+		LockSupport.parkNanos(nanos);
+	    } else {
+		LockSupport.park();
+	    }
+	    return Thread.interrupted();
+	} finally {
+	    waiter = null;
+	}
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * %CopyrightBegin%
+ *
+ * Copyright Ericsson AB 2000-2009. All Rights Reserved.
+ *
+ * The contents of this file are subject to the Erlang Public License,
+ * Version 1.1, (the "License"); you may not use this file except in
+ * compliance with the License. You should have received a copy of the
+ * Erlang Public License along with this software. If not, it can be
+ * retrieved online at http://www.erlang.org/.
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * %CopyrightEnd%
+ */
+package com.ericsson.otp.erlang;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <p>
+ * A bounded table of canonical {@link OtpErlangAtom atoms}, shared by all
+ * decoders. An atom found in the table is decoded without allocating
+ * anything, and repeated atoms are the same instance, so most comparisons are
+ * identity checks.
+ * </p>
+ *
+ * <p>
+ * The table is direct-mapped on the hash of the atom name: a new atom replaces
+ * the one in its slot. There are no locks; two threads missing on the same
+ * atom at once may create two instances, which are still equal. The size is
+ * set with the <code>org.erlide.otp.atoms</code> system property (rounded up
+ * to a power of two, 0 turns the cache off).
+ * </p>
+ */
+public final class OtpAtomCache {
+
+    private static final int SIZE = tableSize(Integer.getInteger(
+	    "org.erlide.otp.atoms", 4096).intValue());
+
+    private static final AtomicReferenceArray<OtpErlangAtom> table = SIZE == 0 ? null
+	    : new AtomicReferenceArray<OtpErlangAtom>(SIZE);
+
+    private OtpAtomCache() {
+    }
+
+    /**
+     * Get the canonical atom with the given name.
+     *
+     * @exception java.lang.IllegalArgumentException
+     *                if the name is null or too long for an atom.
+     */
+    public static OtpErlangAtom atom(final String name) {
+	if (name == null) {
+	    throw new java.lang.IllegalArgumentException("null string value");
+	}
+	if (table == null || !isLatin1(name)) {
+	    return new OtpErlangAtom(name);
+	}
+	final int hash = name.hashCode();
+	final int slot = slot(hash);
+	final OtpErlangAtom cached = table.get(slot);
+	if (cached != null && cached.atomValue().equals(name)) {
+	    return cached;
+	}
+	final OtpErlangAtom atom = new OtpErlangAtom(name);
+	atom.hashCodeValue = hash;
+	table.set(slot, atom);
+	return atom;
+    }
+
+    /**
+     * Get the atom whose Latin-1 name is in buf[pos, pos+len). Returns null if
+     * the cache is off.
+     */
+    static OtpErlangAtom atom(final byte[] buf, final int pos, final int len) {
+	if (table == null) {
+	    return null;
+	}
+	// same as String.hashCode() for the decoded name
+	int hash = 0;
+	for (int i = pos; i < pos + len; i++) {
+	    hash = 31 * hash + (buf[i] & 0xff);
+	}
+	final int slot = slot(hash);
+	final OtpErlangAtom cached = table.get(slot);
+	if (cached != null && sameName(cached.atomValue(), buf, pos, len)) {
+	    return cached;
+	}
+	final char[] chars = new char[len];
+	for (int i = 0; i < len; i++) {
+	    chars[i] = (char) (buf[pos + i] & 0xff);
+	}
+	final OtpErlangAtom atom = new OtpErlangAtom(new String(chars));
+	atom.hashCodeValue = hash;
+	table.set(slot, atom);
+	return atom;
+    }
+
+    /**
+     * Drop all cached atoms.
+     */
+    public static void clear() {
+	if (table != null) {
+	    for (int i = 0; i < SIZE; i++) {
+		table.set(i, null);
+	    }
+	}
+    }
+
+    private static boolean sameName(final String name, final byte[] buf,
+	    final int pos, final int len) {
+	if (name.length() != len) {
+	    return false;
+	}
+	for (int i = 0; i < len; i++) {
+	    if (name.charAt(i) != (char) (buf[pos + i] & 0xff)) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    private static boolean isLatin1(final String name) {
+	final int len = name.length();
+	if (len > OtpErlangAtom.maxAtomLength) {
+	    return false;
+	}
+	for (int i = 0; i < len; i++) {
+	    if (name.charAt(i) > 0xff) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    private static int slot(final int hash) {
+	// spread the low bits, many atoms share prefixes and lengths
+	final int h = hash ^ hash >>> 16;
+	return h & SIZE - 1;
+    }
+
+    private static int tableSize(final int requested) {
+	if (requested <= 0) {
+	    return 0;
+	}
+	int size = 1;
+	while (size < requested && size < 1 << 20) {
+	    size <<= 1;
+	}
+	return size;
+    }
+}
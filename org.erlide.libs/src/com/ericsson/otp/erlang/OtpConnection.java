@@ -361,7 +361,13 @@ public class OtpConnection extends AbstractConnection {
     public void send(final OtpErlangPid dest, final OtpErlangObject msg)
 	    throws IOException {
 	// encode and send the message
-	super.sendBuf(self.pid(), dest, new OtpOutputStream(msg));
+	final OtpOutputStream payload = getBuffer();
+	payload.write_any(msg);
+	try {
+	    super.sendBuf(self.pid(), dest, payload);
+	} finally {
+	    releaseBuffer(payload);
+	}
     }
 
     /**
@@ -379,7 +385,13 @@ public class OtpConnection extends AbstractConnection {
     public void send(final String dest, final OtpErlangObject msg)
 	    throws IOException {
 	// encode and send the message
-	super.sendBuf(self.pid(), dest, new OtpOutputStream(msg));
+	final OtpOutputStream payload = getBuffer();
+	payload.write_any(msg);
+	try {
+	    super.sendBuf(self.pid(), dest, payload);
+	} finally {
+	    releaseBuffer(payload);
+	}
     }
 
     /**
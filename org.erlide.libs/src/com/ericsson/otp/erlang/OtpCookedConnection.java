@@ -83,7 +83,7 @@ public class OtpCookedConnection extends AbstractConnection {
 	super(self, s);
 	this.self = self;
 	links = new Links(25);
-	start();
+	startReceiving();
     }
 
     /*
@@ -101,7 +101,7 @@ public class OtpCookedConnection extends AbstractConnection {
 	super(self, other);
 	this.self = self;
 	links = new Links(25);
-	start();
+	startReceiving();
     }
 
     // pass the error to the node
@@ -152,17 +152,31 @@ public class OtpCookedConnection extends AbstractConnection {
     void send(final OtpErlangPid from, final OtpErlangPid dest,
 	    final OtpErlangObject msg) throws IOException {
 	// encode and send the message
-	sendBuf(from, dest, new OtpOutputStream(msg));
+	final OtpOutputStream payload = getBuffer();
+	payload.write_any(msg);
+	try {
+	    sendBuf(from, dest, payload);
+	} finally {
+	    releaseBuffer(payload);
+	}
     }
 
     /*
      * send to remote name dest is recipient's registered name, the nodename is
      * implied by the choice of connection.
      */
-    void send(final OtpErlangPid from, final String dest,
+    int send(final OtpErlangPid from, final String dest,
 	    final OtpErlangObject msg) throws IOException {
 	// encode and send the message
-	sendBuf(from, dest, new OtpOutputStream(msg));
+	final OtpOutputStream payload = getBuffer();
+	payload.write_any(msg);
+	try {
+	    final int size = payload.size();
+	    sendBuf(from, dest, payload);
+	    return size;
+	} finally {
+	    releaseBuffer(payload);
+	}
     }
 
     @Override
@@ -134,13 +134,19 @@ public class OtpErlangAtom extends OtpErlangObject implements Serializable,
      */
     @Override
     public boolean equals(final Object o) {
-
+	if (o == this) {
+	    return true;
+	}
 	if (!(o instanceof OtpErlangAtom)) {
 	    return false;
 	}
 
 	final OtpErlangAtom atom = (OtpErlangAtom) o;
-	return this.atom.compareTo(atom.atom) == 0;
+	if (hashCodeValue != 0 && atom.hashCodeValue != 0
+		&& hashCodeValue != atom.hashCodeValue) {
+	    return false;
+	}
+	return this.atom.equals(atom.atom);
     }
     
     @Override
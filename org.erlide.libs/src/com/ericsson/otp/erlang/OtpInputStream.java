@@ -21,6 +21,7 @@ package com.ericsson.otp.erlang;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
 
 /**
  * Provides a stream for decoding Erlang terms from external format.
@@ -64,6 +65,28 @@ public class OtpInputStream extends ByteArrayInputStream {
 	this.flags = flags;
     }
 
+    /**
+     * Create a stream reading the remaining bytes of a buffer, for example a
+     * frame read from a channel. Heap buffers are used in place, without
+     * copying; the contents of direct buffers have to be copied once. The
+     * buffer's position is not changed.
+     *
+     * @param flags
+     */
+    public OtpInputStream(final ByteBuffer buf, final int flags) {
+	this(array(buf), buf.hasArray() ? buf.arrayOffset() + buf.position()
+		: 0, buf.remaining(), flags);
+    }
+
+    private static byte[] array(final ByteBuffer buf) {
+	if (buf.hasArray()) {
+	    return buf.array();
+	}
+	final byte[] b = new byte[buf.remaining()];
+	buf.duplicate().get(b);
+	return b;
+    }
+
     /**
      * Get the current position in the stream.
      *
@@ -180,14 +203,10 @@ public class OtpInputStream extends ByteArrayInputStream {
      *                if the next byte cannot be read.
      */
     public int read1() throws OtpErlangDecodeException {
-	int i;
-	i = super.read();
-
-	if (i < 0) {
+	if (super.pos >= super.count) {
 	    throw new OtpErlangDecodeException("Cannot read from input stream");
 	}
-
-	return i;
+	return super.buf[super.pos++] & 0xff;
     }
 
     public int read1skip_version() throws OtpErlangDecodeException {
@@ -198,6 +217,19 @@ public class OtpInputStream extends ByteArrayInputStream {
 	return tag;
     }
 
+    /*
+     * Consume n bytes and return the position of the first one. The
+     * primitive reads below use this to decode straight from the buffer.
+     */
+    private int advance(final int n) throws OtpErlangDecodeException {
+	final int p = super.pos;
+	if (n < 0 || super.count - p < n) {
+	    throw new OtpErlangDecodeException("Cannot read from input stream");
+	}
+	super.pos = p + n;
+	return p;
+    }
+
     /**
      * Read a two byte big endian integer from the stream.
      *
@@ -207,14 +239,9 @@ public class OtpInputStream extends ByteArrayInputStream {
      *                if the next byte cannot be read.
      */
     public int read2BE() throws OtpErlangDecodeException {
-	final byte[] b = new byte[2];
-	try {
-	    super.read(b);
-	} catch (final IOException e) {
-	    throw new OtpErlangDecodeException("Cannot read from input stream");
-	}
-	;
-	return (b[0] << 8 & 0xff00) + (b[1] & 0xff);
+	final int p = advance(2);
+	final byte[] b = super.buf;
+	return (b[p] << 8 & 0xff00) + (b[p + 1] & 0xff);
     }
 
     /**
@@ -226,15 +253,10 @@ public class OtpInputStream extends ByteArrayInputStream {
      *                if the next byte cannot be read.
      */
     public int read4BE() throws OtpErlangDecodeException {
-	final byte[] b = new byte[4];
-	try {
-	    super.read(b);
-	} catch (final IOException e) {
-	    throw new OtpErlangDecodeException("Cannot read from input stream");
-	}
-	;
-	return (b[0] << 24 & 0xff000000) + (b[1] << 16 & 0xff0000)
-		+ (b[2] << 8 & 0xff00) + (b[3] & 0xff);
+	final int p = advance(4);
+	final byte[] b = super.buf;
+	return (b[p] << 24 & 0xff000000) + (b[p + 1] << 16 & 0xff0000)
+		+ (b[p + 2] << 8 & 0xff00) + (b[p + 3] & 0xff);
     }
 
     /**
@@ -246,14 +268,9 @@ public class OtpInputStream extends ByteArrayInputStream {
      *                if the next byte cannot be read.
      */
     public int read2LE() throws OtpErlangDecodeException {
-	final byte[] b = new byte[2];
-	try {
-	    super.read(b);
-	} catch (final IOException e) {
-	    throw new OtpErlangDecodeException("Cannot read from input stream");
-	}
-	;
-	return (b[1] << 8 & 0xff00) + (b[0] & 0xff);
+	final int p = advance(2);
+	final byte[] b = super.buf;
+	return (b[p + 1] << 8 & 0xff00) + (b[p] & 0xff);
     }
 
     /**
@@ -265,15 +282,10 @@ public class OtpInputStream extends ByteArrayInputStream {
      *                if the next byte cannot be read.
      */
     public int read4LE() throws OtpErlangDecodeException {
-	final byte[] b = new byte[4];
-	try {
-	    super.read(b);
-	} catch (final IOException e) {
-	    throw new OtpErlangDecodeException("Cannot read from input stream");
-	}
-	;
-	return (b[3] << 24 & 0xff000000) + (b[2] << 16 & 0xff0000)
-		+ (b[1] << 8 & 0xff00) + (b[0] & 0xff);
+	final int p = advance(4);
+	final byte[] b = super.buf;
+	return (b[p + 3] << 24 & 0xff000000) + (b[p + 2] << 16 & 0xff0000)
+		+ (b[p + 1] << 8 & 0xff00) + (b[p] & 0xff);
     }
 
     /**
@@ -288,16 +300,11 @@ public class OtpInputStream extends ByteArrayInputStream {
      *                if the next byte cannot be read.
      */
     public long readLE(int n) throws OtpErlangDecodeException {
-	final byte[] b = new byte[n];
-	try {
-	    super.read(b);
-	} catch (final IOException e) {
-	    throw new OtpErlangDecodeException("Cannot read from input stream");
-	}
-	;
+	final int p = advance(n);
+	final byte[] b = super.buf;
 	long v = 0;
 	while (n-- > 0) {
-	    v = v << 8 | (long) b[n] & 0xff;
+	    v = v << 8 | (long) b[p + n] & 0xff;
 	}
 	return v;
     }
@@ -314,16 +321,11 @@ public class OtpInputStream extends ByteArrayInputStream {
      *                if the next byte cannot be read.
      */
     public long readBE(final int n) throws OtpErlangDecodeException {
-	final byte[] b = new byte[n];
-	try {
-	    super.read(b);
-	} catch (final IOException e) {
-	    throw new OtpErlangDecodeException("Cannot read from input stream");
-	}
-	;
+	final int p = advance(n);
+	final byte[] b = super.buf;
 	long v = 0;
 	for (int i = 0; i < n; i++) {
-	    v = v << 8 | (long) b[i] & 0xff;
+	    v = v << 8 | (long) b[p + i] & 0xff;
 	}
 	return v;
     }
@@ -350,6 +352,19 @@ public class OtpInputStream extends ByteArrayInputStream {
      *                if the next term in the stream is not an atom.
      */
     public String read_atom() throws OtpErlangDecodeException {
+	return read_atom_term().atomValue();
+    }
+
+    /**
+     * Read an Erlang atom from the stream. Atoms that were seen before are
+     * usually returned as the same instance, see {@link OtpAtomCache}.
+     *
+     * @return the atom.
+     *
+     * @exception OtpErlangDecodeException
+     *                if the next term in the stream is not an atom.
+     */
+    public OtpErlangAtom read_atom_term() throws OtpErlangDecodeException {
 	int tag;
 	int len;
 	byte[] strbuf;
@@ -365,6 +380,15 @@ public class OtpInputStream extends ByteArrayInputStream {
 
 	len = read2BE();
 
+	if (len <= OtpExternal.maxAtomLength && len <= available()) {
+	    final OtpErlangAtom cached = OtpAtomCache.atom(super.buf,
+		    super.pos, len);
+	    if (cached != null) {
+		super.pos += len;
+		return cached;
+	    }
+	}
+
 	strbuf = new byte[len];
 	this.readN(strbuf);
 	atom = OtpErlangString.newString(strbuf);
@@ -373,7 +397,7 @@ public class OtpInputStream extends ByteArrayInputStream {
 	    atom = atom.substring(0, OtpExternal.maxAtomLength);
 	}
 
-	return atom;
+	return new OtpErlangAtom(atom);
     }
 
     /**
@@ -1114,7 +1138,15 @@ public class OtpInputStream extends ByteArrayInputStream {
 	final java.util.zip.InflaterInputStream is =
 	    new java.util.zip.InflaterInputStream(this);
 	try {
-	    final int dsize = is.read(buf, 0, size);
+	    // the inflater may return less than asked for, read until done
+	    int dsize = 0;
+	    while (dsize < size) {
+		final int n = is.read(buf, dsize, size - dsize);
+		if (n <= 0) {
+		    break;
+		}
+		dsize += n;
+	    }
 	    if (dsize != size) {
 		throw new OtpErlangDecodeException("Decompression gave "
 			+ dsize + " bytes, not " + size);
@@ -1148,7 +1180,7 @@ public class OtpInputStream extends ByteArrayInputStream {
 	    return new OtpErlangLong(this);
 
 	case OtpExternal.atomTag:
-	    return new OtpErlangAtom(this);
+	    return read_atom_term();
 
 	case OtpExternal.floatTag:
 	case OtpExternal.newFloatTag:
@@ -62,6 +62,14 @@ public class OtpLocalNode extends AbstractNode {
 	refId[2] = 0;
     }
 
+    /*
+     * The transport used for this node's connections, or null if each
+     * connection has its own receiving thread.
+     */
+    OtpNioTransport nioTransport() {
+	return null;
+    }
+
     /**
      * Get the port number used by this node.
      * 
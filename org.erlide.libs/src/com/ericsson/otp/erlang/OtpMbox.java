@@ -18,6 +18,8 @@
  */
 package com.ericsson.otp.erlang;
 
+import java.util.ArrayList;
+
 /**
  * <p>
  * Provides a simple mechanism for exchanging messages with Erlang processes or
@@ -79,9 +81,10 @@ package com.ericsson.otp.erlang;
 public class OtpMbox {
     OtpNode home;
     OtpErlangPid self;
-    GenericQueue queue;
+    MpscQueue queue;
     String name;
     Links links;
+    private volatile OtpMboxListener listener;
 
     // package constructor: called by OtpNode:createMbox(name)
     // to create a named mbox
@@ -89,7 +92,7 @@ public class OtpMbox {
 	this.self = self;
 	this.home = home;
 	this.name = name;
-	queue = new GenericQueue();
+	queue = new MpscQueue();
 	links = new Links(10);
     }
 
@@ -147,6 +150,48 @@ public class OtpMbox {
 	return name;
     }
 
+    /**
+     * <p>
+     * Register a listener to be notified when messages are delivered to this
+     * mailbox. If there are already messages waiting, the listener is notified
+     * immediately.
+     * </p>
+     * 
+     * <p>
+     * The listener is called from the thread delivering the message, so it
+     * should not block.
+     * </p>
+     * 
+     * @param listener
+     *                the listener, or null to remove the current one.
+     */
+    public void setListener(final OtpMboxListener listener) {
+	this.listener = listener;
+	if (listener != null && !queue.isEmpty()) {
+	    listener.messageDelivered(this);
+	}
+    }
+
+    /**
+     * Get the number of messages waiting in this mailbox.
+     * 
+     * @return the number of messages that have been delivered but not yet
+     *         retrieved.
+     */
+    public int getMsgCount() {
+	return queue.getCount();
+    }
+
+    /**
+     * Check if there are messages waiting in this mailbox, without counting
+     * them like {@link #getMsgCount()} does.
+     * 
+     * @return true if no message has been delivered but not yet retrieved.
+     */
+    public boolean isEmpty() {
+	return queue.isEmpty();
+    }
+
     /**
      * Block until a message arrives for this mailbox.
      * 
@@ -317,6 +362,70 @@ public class OtpMbox {
 	}
     }
 
+    /**
+     * Wait for messages to arrive for this mailbox and retrieve up to
+     * <code>max</code> of them at once.
+     * 
+     * @param max
+     *                the maximum number of messages to return.
+     * 
+     * @param timeout
+     *                the time, in milliseconds, to wait for the first message.
+     *                Use 0 to only take the messages already waiting.
+     * 
+     * @return the messages, in the order they arrived. The array is empty if
+     *         no message arrived in time.
+     * 
+     * @exception OtpErlangExit
+     *                    if the first waiting message is an exit signal. An
+     *                    exit signal queued behind other messages ends the
+     *                    batch and is raised by the next receive.
+     */
+    public OtpMsg[] receiveMsgs(final int max, final long timeout)
+	    throws OtpErlangExit {
+	OtpMsg m;
+	if (timeout == 0) {
+	    // don't pay for the timeout exception when polling
+	    m = (OtpMsg) queue.tryGet();
+	    if (m != null) {
+		checkExit(m);
+	    }
+	} else {
+	    try {
+		m = receiveMsg(timeout);
+	    } catch (final InterruptedException e) {
+		m = null;
+	    }
+	}
+	if (m == null) {
+	    return new OtpMsg[0];
+	}
+	final ArrayList<OtpMsg> msgs = new ArrayList<OtpMsg>();
+	msgs.add(m);
+	while (msgs.size() < max) {
+	    m = (OtpMsg) queue.peek();
+	    if (m == null || m.type() == OtpMsg.exitTag
+		    || m.type() == OtpMsg.exit2Tag) {
+		break;
+	    }
+	    msgs.add((OtpMsg) queue.tryGet());
+	}
+	return msgs.toArray(new OtpMsg[msgs.size()]);
+    }
+
+    private void checkExit(final OtpMsg m) throws OtpErlangExit {
+	switch (m.type()) {
+	case OtpMsg.exitTag:
+	case OtpMsg.exit2Tag:
+	    try {
+		final OtpErlangObject o = m.getMsg();
+		throw new OtpErlangExit(o, m.getSenderPid());
+	    } catch (final OtpErlangDecodeException e) {
+		throw new OtpErlangExit("unknown", m.getSenderPid());
+	    }
+	}
+    }
+
     /**
      * Send a message to a remote {@link OtpErlangPid pid}, representing either
      * another {@link OtpMbox mailbox} or an Erlang process.
@@ -376,6 +485,19 @@ public class OtpMbox {
      */
     public void send(final String name, final String node,
 	    final OtpErlangObject msg) {
+	sendCounted(name, node, msg);
+    }
+
+    /**
+     * Send a message to a named mailbox created from another node, like
+     * {@link #send(String, String, OtpErlangObject)}, and tell how big it was
+     * on the wire.
+     * 
+     * @return the size of the encoded message, or 0 if it was delivered
+     *         locally (without encoding) or couldn't be sent.
+     */
+    public int sendCounted(final String name, final String node,
+	    final OtpErlangObject msg) {
 	try {
 	    final String currentNode = home.node();
 	    if (node.equals(currentNode)) {
@@ -388,12 +510,13 @@ public class OtpMbox {
 		// other node
 		final OtpCookedConnection conn = home.getConnection(node);
 		if (conn == null) {
-		    return;
+		    return 0;
 		}
-		conn.send(self, name, msg);
+		return conn.send(self, name, msg);
 	    }
 	} catch (final Exception e) {
 	}
+	return 0;
     }
 
     /**
@@ -698,15 +821,24 @@ public class OtpMbox {
 	case OtpMsg.exitTag:
 	    links.removeLink(self, m.getSenderPid());
 	    queue.put(m);
+	    notifyListener();
 	    break;
 
 	case OtpMsg.exit2Tag:
 	default:
 	    queue.put(m);
+	    notifyListener();
 	    break;
 	}
     }
 
+    private void notifyListener() {
+	final OtpMboxListener l = listener;
+	if (l != null) {
+	    l.messageDelivered(this);
+	}
+    }
+
     // used to break all known links to this mbox
     void breakLinks(final OtpErlangObject reason) {
 	final Link[] l = links.clearLinks();
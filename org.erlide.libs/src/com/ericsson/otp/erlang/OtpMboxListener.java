@@ -0,0 +1,31 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Vlad Dumitrescu and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Vlad Dumitrescu
+ *******************************************************************************/
+package com.ericsson.otp.erlang;
+
+/**
+ * <p>
+ * Provides a callback for being told that a message has been delivered to a
+ * {@link OtpMbox mailbox}, so that the mailbox doesn't have to be polled.
+ * Register an instance with {@link OtpMbox#setListener(OtpMboxListener)}.
+ * </p>
+ */
+public interface OtpMboxListener {
+
+    /**
+     * Notify that a message (or an exit signal) has been queued in the
+     * mailbox. This is called from the thread that delivered the message and
+     * should return quickly.
+     * 
+     * @param mbox
+     *                the mailbox that received the message.
+     */
+    void messageDelivered(OtpMbox mbox);
+}
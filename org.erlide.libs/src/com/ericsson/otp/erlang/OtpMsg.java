@@ -62,6 +62,7 @@ public class OtpMsg {
     protected int tag; // what type of message is this (send, link, exit etc)
     protected OtpInputStream paybuf;
     protected OtpErlangObject payload;
+    protected int paylen; // encoded size, 0 for local messages
 
     protected OtpErlangPid from;
     protected OtpErlangPid to;
@@ -74,6 +75,7 @@ public class OtpMsg {
 	this.to = to;
 	toName = null;
 	this.paybuf = paybuf;
+	paylen = paybuf.available();
 	payload = null;
     }
 
@@ -95,6 +97,7 @@ public class OtpMsg {
 	this.toName = toName;
 	to = null;
 	this.paybuf = paybuf;
+	paylen = paybuf.available();
 	payload = null;
     }
 
@@ -151,6 +154,16 @@ public class OtpMsg {
 	return paybuf;
     }
 
+    /**
+     * Get the size of the serialized message, without deserializing it.
+     * 
+     * @return the number of bytes in the payload, or 0 if the message was
+     *         sent from this node and never encoded.
+     */
+    public int getPayloadSize() {
+	return paylen;
+    }
+
     /**
      * <p>
      * Get the type marker from this message. The type marker identifies the
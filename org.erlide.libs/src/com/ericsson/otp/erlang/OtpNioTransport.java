@@ -0,0 +1,361 @@
+/*
+ * %CopyrightBegin%
+ *
+ * Copyright Ericsson AB 2000-2009. All Rights Reserved.
+ *
+ * The contents of this file are subject to the Erlang Public License,
+ * Version 1.1, (the "License"); you may not use this file except in
+ * compliance with the License. You should have received a copy of the
+ * Erlang Public License along with this software. If not, it can be
+ * retrieved online at http://www.erlang.org/.
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * %CopyrightEnd%
+ */
+package com.ericsson.otp.erlang;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * <p>
+ * Non-blocking transport for the connections of an {@link OtpNode}. Instead of
+ * one receiving thread per connection, a single selector thread reads the
+ * frames of all connections and a small pool of worker threads decodes and
+ * delivers them. Frames from the same connection are always delivered in
+ * order, by one worker at a time.
+ * </p>
+ *
+ * <p>
+ * Sends are written directly to the channel by the sending thread; whatever
+ * does not fit in the socket buffer is queued and written by the selector
+ * thread when the channel becomes writable again. The handshake is still done
+ * in blocking mode, the channel is switched to non-blocking mode when the
+ * connection is registered.
+ * </p>
+ *
+ * <p>
+ * The transport is used when the System property <code>OtpNode.nio</code> is
+ * set to <code>true</code> when the node is created. The number of worker
+ * threads is taken from <code>OtpNode.nioThreads</code> (default 2).
+ * </p>
+ */
+final class OtpNioTransport implements Runnable {
+    // frames read from one connection before looking at the others
+    private static final int maxFramesPerRead = 16;
+
+    private final Selector selector;
+    private final ExecutorService workers;
+    private volatile boolean done = false;
+
+    // registrations and interest changes requested by other threads
+    private final LinkedList<Runnable> pending = new LinkedList<Runnable>();
+
+    OtpNioTransport(final String name, final int threads) throws IOException {
+	selector = Selector.open();
+	workers = Executors.newFixedThreadPool(Math.max(1, threads),
+		new ThreadFactory() {
+		    public Thread newThread(final Runnable r) {
+			final Thread t = new Thread(r, name + "-worker");
+			t.setDaemon(true);
+			return t;
+		    }
+		});
+	final Thread thread = new Thread(this, name);
+	thread.setDaemon(true);
+	thread.start();
+    }
+
+    /**
+     * Switch the channel of a connection that has completed its handshake to
+     * non-blocking mode and start receiving from it.
+     */
+    Link register(final AbstractConnection conn, final SocketChannel channel)
+	    throws IOException {
+	channel.configureBlocking(false);
+	final Link link = new Link(conn, channel);
+	schedule(new Runnable() {
+	    public void run() {
+		try {
+		    link.key = channel.register(selector, SelectionKey.OP_READ,
+			    link);
+		} catch (final ClosedChannelException e) {
+		    link.closed(e);
+		}
+	    }
+	});
+	return link;
+    }
+
+    /**
+     * Stop the selector thread. Frames already read are still delivered.
+     */
+    void close() {
+	done = true;
+	selector.wakeup();
+	workers.shutdown();
+    }
+
+    private void schedule(final Runnable r) {
+	synchronized (pending) {
+	    pending.addLast(r);
+	}
+	selector.wakeup();
+    }
+
+    private void runPending() {
+	for (;;) {
+	    final Runnable r;
+	    synchronized (pending) {
+		if (pending.isEmpty()) {
+		    return;
+		}
+		r = pending.removeFirst();
+	    }
+	    r.run();
+	}
+    }
+
+    public void run() {
+	try {
+	    while (!done) {
+		selector.select();
+		runPending();
+		final Iterator<SelectionKey> it = selector.selectedKeys()
+			.iterator();
+		while (it.hasNext()) {
+		    final SelectionKey key = it.next();
+		    it.remove();
+		    final Link link = (Link) key.attachment();
+		    try {
+			if (key.isWritable()) {
+			    link.flush();
+			}
+			if (key.isReadable()) {
+			    link.read();
+			}
+		    } catch (final CancelledKeyException e) {
+			link.closed(new IOException("Connection closed"));
+		    } catch (final IOException e) {
+			link.closed(e);
+		    }
+		}
+	    }
+	} catch (final IOException e) {
+	    // selector failed, nothing more we can do
+	} finally {
+	    for (final SelectionKey key : selector.keys()) {
+		((Link) key.attachment()).closed(new IOException(
+			"Transport closed"));
+	    }
+	    try {
+		selector.close();
+	    } catch (final IOException e) {
+	    }
+	}
+    }
+
+    /*
+     * The transport side of one connection.
+     */
+    final class Link implements Runnable {
+	private final AbstractConnection conn;
+	private final SocketChannel channel;
+	private volatile SelectionKey key;
+
+	private final ByteBuffer header = ByteBuffer.allocate(4);
+	private ByteBuffer frame = null;
+
+	// unsent data, written by the selector thread
+	private final LinkedList<ByteBuffer> out = new LinkedList<ByteBuffer>();
+
+	// work for the connection, run in order by one worker at a time
+	private final LinkedList<Runnable> tasks = new LinkedList<Runnable>();
+	private boolean scheduled = false;
+	private boolean closing = false;
+
+	Link(final AbstractConnection conn, final SocketChannel channel) {
+	    this.conn = conn;
+	    this.channel = channel;
+	}
+
+	/*
+	 * Write a frame. Returns when the data has either been written or
+	 * copied to the send queue, so the caller may reuse the buffers.
+	 */
+	void write(final ByteBuffer[] data) throws IOException {
+	    synchronized (out) {
+		if (out.isEmpty()) {
+		    channel.write(data);
+		    if (!data[data.length - 1].hasRemaining()) {
+			return;
+		    }
+		}
+		int n = 0;
+		for (final ByteBuffer b : data) {
+		    n += b.remaining();
+		}
+		final ByteBuffer rest = ByteBuffer.allocate(n);
+		for (final ByteBuffer b : data) {
+		    rest.put(b);
+		}
+		rest.flip();
+		out.addLast(rest);
+		if (out.size() == 1) {
+		    schedule(new Runnable() {
+			public void run() {
+			    if (key != null && key.isValid()) {
+				key.interestOps(SelectionKey.OP_READ
+					| SelectionKey.OP_WRITE);
+			    }
+			}
+		    });
+		}
+	    }
+	}
+
+	// called by the selector thread when the channel is writable
+	void flush() throws IOException {
+	    synchronized (out) {
+		while (!out.isEmpty()) {
+		    final ByteBuffer b = out.getFirst();
+		    channel.write(b);
+		    if (b.hasRemaining()) {
+			return;
+		    }
+		    out.removeFirst();
+		}
+		key.interestOps(SelectionKey.OP_READ);
+	    }
+	}
+
+	// called by the selector thread when the channel is readable
+	void read() throws IOException {
+	    int frames = 0;
+	    while (frames < maxFramesPerRead) {
+		final ByteBuffer buf = frame != null ? frame : header;
+		if (channel.read(buf) < 0) {
+		    throw new IOException("Remote has closed connection");
+		}
+		if (buf.hasRemaining()) {
+		    return;
+		}
+		if (frame == null) {
+		    header.flip();
+		    final int len = header.getInt();
+		    header.clear();
+		    if (len == 0) {
+			// received tick? send tock!
+			write(new ByteBuffer[] { ByteBuffer.allocate(4) });
+		    } else if (len < 0) {
+			throw new IOException("Bad frame length " + len);
+		    } else {
+			frame = ByteBuffer.allocate(len);
+		    }
+		} else {
+		    final ByteBuffer f = frame;
+		    frame = null;
+		    f.flip();
+		    received(f);
+		    frames++;
+		}
+	    }
+	}
+
+	private void received(final ByteBuffer f) {
+	    post(new Runnable() {
+		public void run() {
+		    if (!conn.isConnected()) {
+			return;
+		    }
+		    try {
+			conn.processFrame(new OtpInputStream(f, conn
+				.getFlags()));
+		    } catch (final Exception e) {
+			if (setClosing()) {
+			    conn.deliverReceiveError(e);
+			}
+			conn.close();
+		    }
+		}
+	    });
+	}
+
+	/*
+	 * The channel was closed or failed: report it to the connection once,
+	 * after the frames that were already received.
+	 */
+	void closed(final Exception e) {
+	    if (key != null) {
+		key.cancel();
+	    }
+	    if (!setClosing()) {
+		return;
+	    }
+	    post(new Runnable() {
+		public void run() {
+		    conn.deliverReceiveError(e);
+		    conn.close();
+		}
+	    });
+	}
+
+	private boolean setClosing() {
+	    synchronized (tasks) {
+		if (closing) {
+		    return false;
+		}
+		closing = true;
+		return true;
+	    }
+	}
+
+	private void post(final Runnable task) {
+	    synchronized (tasks) {
+		tasks.addLast(task);
+		if (scheduled) {
+		    return;
+		}
+		scheduled = true;
+	    }
+	    try {
+		workers.execute(this);
+	    } catch (final RejectedExecutionException e) {
+		// the node is closing
+		synchronized (tasks) {
+		    tasks.clear();
+		    scheduled = false;
+		}
+	    }
+	}
+
+	public void run() {
+	    for (;;) {
+		final Runnable task;
+		synchronized (tasks) {
+		    if (tasks.isEmpty()) {
+			scheduled = false;
+			return;
+		    }
+		    task = tasks.removeFirst();
+		}
+		task.run();
+	    }
+	}
+    }
+}
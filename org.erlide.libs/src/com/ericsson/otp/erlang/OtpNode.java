@@ -20,8 +20,10 @@ package com.ericsson.otp.erlang;
 
 import java.io.IOException;
 import java.lang.ref.WeakReference;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
 import java.util.Collection;
 import java.util.Enumeration;
 import java.util.Hashtable;
@@ -52,6 +54,13 @@ import java.util.Iterator;
  * </p>
  * 
  * <p>
+ * By default each connection has its own receiving thread. If the System
+ * property <code>OtpNode.nio</code> is <code>true</code> when the node is
+ * created, all connections share one selector thread and a small pool of
+ * worker threads (<code>OtpNode.nioThreads</code>, default 2) instead.
+ * </p>
+ * 
+ * <p>
  * Note that the use of this class requires that Epmd (Erlang Port Mapper
  * Daemon) is running on each cooperating host. This class does not start Epmd
  * automatically as Erlang does, you must start it manually or through some
@@ -64,6 +73,9 @@ public class OtpNode extends OtpLocalNode {
     // thread to manage incoming connections
     private Acceptor acceptor = null;
 
+    // shared selector for all connections, if enabled
+    private OtpNioTransport transport = null;
+
     // keep track of all connections
     Hashtable<String, OtpCookedConnection> connections = null;
 
@@ -148,6 +160,10 @@ public class OtpNode extends OtpLocalNode {
 	    connections = new Hashtable<String, OtpCookedConnection>(17,
 		    (float) 0.95);
 	    mboxes = new Mailboxes();
+	    if ("true".equals(System.getProperty("OtpNode.nio"))) {
+		transport = new OtpNioTransport("nio-" + node, Integer
+			.getInteger("OtpNode.nioThreads", 2).intValue());
+	    }
 	    acceptor = new Acceptor(port);
 	    initDone = true;
 	}
@@ -170,6 +186,10 @@ public class OtpNode extends OtpLocalNode {
 	    it.remove();
 	    conn.close();
 	}
+	if (transport != null) {
+	    transport.close();
+	    transport = null;
+	}
 	initDone = false;
     }
 
@@ -178,6 +198,11 @@ public class OtpNode extends OtpLocalNode {
 	close();
     }
 
+    @Override
+    OtpNioTransport nioTransport() {
+	return transport;
+    }
+
     /**
      * Create an unnamed {@link OtpMbox mailbox} that can be used to send and
      * receive messages with other, similar mailboxes and with Erlang processes.
@@ -688,7 +713,14 @@ public class OtpNode extends OtpLocalNode {
 	private volatile boolean done = false;
 
 	Acceptor(final int port) throws IOException {
-	    sock = new ServerSocket(port);
+	    if (transport != null) {
+		// accepted sockets get a channel for the transport
+		final ServerSocketChannel channel = ServerSocketChannel.open();
+		channel.socket().bind(new InetSocketAddress(port));
+		sock = channel.socket();
+	    } else {
+		sock = new ServerSocket(port);
+	    }
 	    this.port = sock.getLocalPort();
 	    OtpNode.this.port = this.port;
 
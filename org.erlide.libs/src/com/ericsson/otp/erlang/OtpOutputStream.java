@@ -37,7 +37,10 @@ public class OtpOutputStream extends ByteArrayOutputStream {
     /** The default initial size of the stream. * */
     public static final int defaultInitialSize = 2048;
 
-    /** The default increment used when growing the stream. * */
+    /**
+     * The minimum increment used when growing the stream. The stream at least
+     * doubles its size when it grows.
+     */
     public static final int defaultIncrement = 2048;
 
     // static formats, used to encode floats and doubles
@@ -92,6 +95,33 @@ public class OtpOutputStream extends ByteArrayOutputStream {
 	return super.count;
     }
 
+    /**
+     * Get the buffer holding the contents of the stream. Only the first
+     * {@link #size()} bytes are valid, and the buffer changes when the stream
+     * grows.
+     */
+    byte[] getBuf() {
+	return super.buf;
+    }
+
+    /**
+     * Make room for at least <code>n</code> more bytes. The buffer grows
+     * geometrically, so that encoding large terms takes linear time.
+     */
+    private void ensureCapacity(final int n) {
+	final int required = super.count + n;
+	if (required > super.buf.length) {
+	    int newLength = super.buf.length
+		    + Math.max(super.buf.length, defaultIncrement);
+	    if (newLength < required) {
+		newLength = required;
+	    }
+	    final byte[] tmp = new byte[newLength];
+	    System.arraycopy(super.buf, 0, tmp, 0, super.count);
+	    super.buf = tmp;
+	}
+    }
+
     /**
      * Write one byte to the stream.
      *
@@ -100,13 +130,7 @@ public class OtpOutputStream extends ByteArrayOutputStream {
      *
      */
     public void write(final byte b) {
-	if (super.count >= super.buf.length) {
-	    // System.err.println("Expanding buffer from " + this.buf.length
-	    // + " to " + (this.buf.length+defaultIncrement));
-	    final byte[] tmp = new byte[super.buf.length + defaultIncrement];
-	    System.arraycopy(super.buf, 0, tmp, 0, super.count);
-	    super.buf = tmp;
-	}
+	ensureCapacity(1);
 	super.buf[super.count++] = b;
     }
 
@@ -120,16 +144,24 @@ public class OtpOutputStream extends ByteArrayOutputStream {
 
     @Override
     public void write(final byte[] buf) {
-	if (super.count + buf.length > super.buf.length) {
-	    // System.err.println("Expanding buffer from " + super.buf.length
-	    // + " to " + (buf.length + super.buf.lengt + defaultIncrement));
-	    final byte[] tmp = new byte[super.buf.length + buf.length
-		    + defaultIncrement];
-	    System.arraycopy(super.buf, 0, tmp, 0, super.count);
-	    super.buf = tmp;
-	}
-	System.arraycopy(buf, 0, super.buf, super.count, buf.length);
-	super.count += buf.length;
+	write(buf, 0, buf.length);
+    }
+
+    /**
+     * Write part of an array of bytes to the stream.
+     *
+     * @param buf
+     *            the array of bytes to write.
+     * @param off
+     *            the index of the first byte to write.
+     * @param len
+     *            the number of bytes to write.
+     */
+    @Override
+    public void write(final byte[] buf, final int off, final int len) {
+	ensureCapacity(len);
+	System.arraycopy(buf, off, super.buf, super.count, len);
+	super.count += len;
     }
 
     /**
@@ -186,8 +218,9 @@ public class OtpOutputStream extends ByteArrayOutputStream {
      *            the value to use.
      */
     public void write2BE(final long n) {
-	write((byte) ((n & 0xff00) >> 8));
-	write((byte) (n & 0xff));
+	ensureCapacity(2);
+	super.buf[super.count++] = (byte) ((n & 0xff00) >> 8);
+	super.buf[super.count++] = (byte) (n & 0xff);
     }
 
     /**
@@ -197,10 +230,11 @@ public class OtpOutputStream extends ByteArrayOutputStream {
      *            the value to use.
      */
     public void write4BE(final long n) {
-	write((byte) ((n & 0xff000000) >> 24));
-	write((byte) ((n & 0xff0000) >> 16));
-	write((byte) ((n & 0xff00) >> 8));
-	write((byte) (n & 0xff));
+	ensureCapacity(4);
+	super.buf[super.count++] = (byte) ((n & 0xff000000) >> 24);
+	super.buf[super.count++] = (byte) ((n & 0xff0000) >> 16);
+	super.buf[super.count++] = (byte) ((n & 0xff00) >> 8);
+	super.buf[super.count++] = (byte) (n & 0xff);
     }
 
     /**
@@ -11,7 +11,10 @@
 package org.erlide.ui.editors.erl;
 
 import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.IRegion;
 import org.eclipse.jface.text.ITypedRegion;
+import org.eclipse.jface.text.Region;
 import org.eclipse.jface.text.TextAttribute;
 import org.eclipse.jface.text.TextPresentation;
 import org.eclipse.jface.text.rules.DefaultDamagerRepairer;
@@ -26,6 +29,40 @@ public class ErlDamagerRepairer extends DefaultDamagerRepairer {
 		super(scanner);
 	}
 
+	/*
+	 * Extend the damage to the following lines if the edit changed their
+	 * start state (e.g. a string quote was added or removed).
+	 */
+	@Override
+	public IRegion getDamageRegion(final ITypedRegion partition,
+			final DocumentEvent e, final boolean documentPartitioningChanged) {
+		final IRegion damage = super.getDamageRegion(partition, e,
+				documentPartitioningChanged);
+		if (!(fScanner instanceof ErlHighlightScanner)) {
+			return damage;
+		}
+		try {
+			final int damageEnd = damage.getOffset() + damage.getLength();
+			final int line = fDocument.getLineOfOffset(damageEnd);
+			final int lastLine = ((ErlHighlightScanner) fScanner)
+					.getLastAffectedLine(fDocument, line);
+			if (lastLine > line) {
+				final int partitionEnd = partition.getOffset()
+						+ partition.getLength();
+				final int end = Math.min(partitionEnd, fDocument
+						.getLineOffset(lastLine)
+						+ fDocument.getLineLength(lastLine));
+				if (end > damageEnd) {
+					return new Region(damage.getOffset(), end
+							- damage.getOffset());
+				}
+			}
+		} catch (final BadLocationException x) {
+			ErlLogger.warn(x);
+		}
+		return damage;
+	}
+
 	/*
 	 * @see IPresentationRepairer#createPresentation(TextPresentation,
 	 * ITypedRegion)
@@ -10,8 +10,6 @@
  *******************************************************************************/
 package org.erlide.ui.editors.erl;
 
-import java.util.List;
-
 import org.eclipse.core.runtime.preferences.IEclipsePreferences.IPreferenceChangeListener;
 import org.eclipse.core.runtime.preferences.IEclipsePreferences.PreferenceChangeEvent;
 import org.eclipse.core.runtime.preferences.InstanceScope;
@@ -25,8 +23,9 @@ import org.eclipse.jface.text.rules.Token;
 import org.eclipse.jface.text.source.ISourceViewer;
 import org.eclipse.swt.graphics.Color;
 import org.eclipse.swt.graphics.RGB;
+import org.erlide.core.erlang.ErlLightScanner;
 import org.erlide.core.erlang.ErlToken;
-import org.erlide.jinterface.backend.BackendException;
+import org.erlide.core.erlang.ErlTokenBuffer;
 import org.erlide.jinterface.util.ErlLogger;
 import org.erlide.ui.prefs.HighlightStyle;
 import org.erlide.ui.prefs.TokenHighlight;
@@ -34,8 +33,6 @@ import org.erlide.ui.prefs.plugin.ColoringPreferencePage;
 import org.erlide.ui.util.IColorManager;
 import org.osgi.service.prefs.Preferences;
 
-import erlang.ErlideScanner;
-
 /**
  * Erlang syntax scanner
  * 
@@ -57,13 +54,14 @@ public class ErlHighlightScanner implements ITokenScanner,
 	private Token t_comment;
 
 	protected final IColorManager fColorManager;
-	protected List<ErlToken> fTokens;
+	protected ErlTokenBuffer fTokens;
 	protected int fCrtToken;
 	private int rangeLength;
 	private int rangeOffset;
 	private final ISourceViewer fSourceViewer;
 	private boolean wholeLines = true;
 	private Color bg = null;
+	private LineTokenCache fLineCache;
 
 	/**
 	 * Constructs the rules that define syntax highlighting.
@@ -129,8 +127,11 @@ public class ErlHighlightScanner implements ITokenScanner,
 		if (tk == ErlToken.EOF) {
 			return Token.EOF;
 		}
+		return convert(tk.getKind());
+	}
 
-		switch (tk.getKind()) {
+	public IToken convert(final int kind) {
+		switch (kind) {
 		case ErlToken.KIND_STRING:
 			return t_string;
 		case ErlToken.KIND_ATOM:
@@ -210,47 +211,57 @@ public class ErlHighlightScanner implements ITokenScanner,
 			return;
 		}
 		try {
+			fCrtToken = -1;
 			if (wholeLines) {
 				final int line1 = document.getLineOfOffset(offset);
 				final int line2 = document.getLineOfOffset(offset + length);
 				rangeOffset = document.getLineOffset(line1);
 				rangeLength = document.getLineOffset(line2) - rangeOffset
 						+ document.getLineLength(line2);
+				fTokens = getLineCache(document).getTokens(line1, line2);
 			} else {
 				rangeOffset = offset;
 				rangeLength = length;
+				final String str = document.get(rangeOffset, rangeLength);
+				fTokens = ErlLightScanner.scanBuffer(str, rangeOffset);
 			}
 
 			// ErlLogger.debug("setRange %s %d:%d (%d:%d)", document,
 			// rangeOffset, rangeLength, offset, length);
 
-			final String str = document.get(rangeOffset, rangeLength);
-			setText(str);
 		} catch (final BadLocationException e) {
 			ErlLogger.warn(e);
 		}
 
 	}
 
-	private void setText(final String text) {
-		if (text == null) {
-			return;
+	/**
+	 * Return the last line whose highlighting may be changed by an edit ending
+	 * on the given line, e.g. when a string is opened or closed.
+	 */
+	public int getLastAffectedLine(final IDocument document, final int line)
+			throws BadLocationException {
+		if (!wholeLines) {
+			return line;
 		}
+		return getLineCache(document).getLastAffectedLine(line);
+	}
 
-		try {
-			fCrtToken = -1;
-
-			final String str = text;
-			fTokens = ErlideScanner.lightScanString(str, rangeOffset);
-
-		} catch (final BackendException e) {
-			// e.printStackTrace();
+	private LineTokenCache getLineCache(final IDocument document) {
+		if (fLineCache == null || fLineCache.getDocument() != document) {
+			if (fLineCache != null) {
+				fLineCache.dispose();
+			}
+			fLineCache = new LineTokenCache(document);
 		}
+		return fLineCache;
 	}
 
 	public IToken nextToken() {
-		final ErlToken nextErlToken = nextErlToken();
-		return convert(nextErlToken);
+		if (!advance()) {
+			return Token.EOF;
+		}
+		return convert(fTokens.getKind(fCrtToken));
 	}
 
 	public int getTokenOffset() {
@@ -262,8 +273,7 @@ public class ErlHighlightScanner implements ITokenScanner,
 			return 0;
 		}
 
-		final ErlToken tk = fTokens.get(fCrtToken);
-		return tk.getOffset();
+		return fTokens.getOffset(fCrtToken);
 	}
 
 	public int getTokenLength() {
@@ -275,25 +285,30 @@ public class ErlHighlightScanner implements ITokenScanner,
 			return 0;
 		}
 
-		final ErlToken tk = fTokens.get(fCrtToken);
-		return tk.getLength();
+		return fTokens.getLength(fCrtToken);
 	}
 
 	public ErlToken nextErlToken() {
-		if (fTokens == null) {
+		if (!advance()) {
 			return ErlToken.EOF;
 		}
+		return fTokens.get(fCrtToken);
+	}
+
+	/*
+	 * Move to the next token in the range, return false if there is none.
+	 */
+	private boolean advance() {
+		if (fTokens == null) {
+			return false;
+		}
 
 		fCrtToken++;
 		if (fCrtToken >= fTokens.size()) {
-			return ErlToken.EOF;
+			return false;
 		}
 
-		final ErlToken tk = fTokens.get(fCrtToken);
-		if (tk.getOffset() >= rangeOffset + rangeLength) {
-			return ErlToken.EOF;
-		}
-		return fTokens.get(fCrtToken);
+		return fTokens.getOffset(fCrtToken) < rangeOffset + rangeLength;
 	}
 
 	public void preferenceChange(final PreferenceChangeEvent event) {
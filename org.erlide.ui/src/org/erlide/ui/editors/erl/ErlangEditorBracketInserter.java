@@ -1,6 +1,5 @@
 package org.erlide.ui.editors.erl;
 
-import java.util.List;
 import java.util.Stack;
 
 import org.eclipse.jface.text.BadLocationException;
@@ -27,6 +26,7 @@ import org.eclipse.swt.graphics.Point;
 import org.eclipse.ui.texteditor.ITextEditorExtension3;
 import org.eclipse.ui.texteditor.link.EditorLinkedModeUI;
 import org.erlide.core.erlang.ErlToken;
+import org.erlide.core.erlang.ErlTokenBuffer;
 import org.erlide.jinterface.backend.BackendException;
 import org.erlide.jinterface.util.ErlLogger;
 
@@ -200,19 +200,19 @@ class ErlangEditorBracketInserter implements VerifyKeyListener,
 				final IRegion endLine = document
 						.getLineInformationOfOffset(offset + length);
 
-				List<ErlToken> tokens = null;
+				ErlTokenBuffer tokens = null;
 				final int getOffset = offset + length, getLength = endLine
 						.getOffset()
 						+ endLine.getLength() - getOffset;
 				final String str = document.get(getOffset, getLength);
 				try {
-					tokens = ErlideScanner.lightScanString(str, 0);
+					tokens = ErlideScanner.lightScanBuffer(str, 0);
 				} catch (final BackendException e) {
 				}
 
 				int kind = ErlToken.KIND_OTHER;
 				if (tokens != null && tokens.size() > 0) {
-					kind = tokens.get(0).getKind();
+					kind = tokens.getKind(0);
 				} else if (str.length() > 0) {
 					kind = str.charAt(0);
 				}
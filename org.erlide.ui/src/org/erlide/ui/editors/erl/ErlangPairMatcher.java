@@ -11,21 +11,25 @@
  *******************************************************************************/
 package org.erlide.ui.editors.erl;
 
-import java.util.HashSet;
-import java.util.Set;
-
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.jface.text.BadLocationException;
 import org.eclipse.jface.text.IDocument;
 import org.eclipse.jface.text.IDocumentExtension3;
+import org.eclipse.jface.text.IDocumentExtension4;
 import org.eclipse.jface.text.IRegion;
-import org.eclipse.jface.text.ITypedRegion;
 import org.eclipse.jface.text.Region;
 import org.eclipse.jface.text.TextUtilities;
 import org.eclipse.jface.text.source.ICharacterPairMatcher;
+import org.erlide.core.erlang.ErlLightScanner;
+import org.erlide.core.erlang.ErlToken;
+import org.erlide.core.erlang.ErlTokenBuffer;
 
 /*
  * taken from eclipse 3.3 DefaultCharacterPairMatcher (which isn't in 3.2, unfortunately)
+ *
+ * The search walks the tokens of the light scanner instead of the characters of
+ * the document, so brackets in strings, quoted atoms, characters and comments
+ * are skipped. The tokens are kept in a buffer until the document changes.
  */
 
 public class ErlangPairMatcher implements ICharacterPairMatcher {
@@ -34,6 +38,10 @@ public class ErlangPairMatcher implements ICharacterPairMatcher {
 	private final StringPairs fPairs;
 	private final String fPartitioning;
 
+	private IDocument fDocument;
+	private long fStamp;
+	private ErlTokenBuffer fTokens;
+
 	/**
 	 * Creates a new character pair matcher that matches the specified
 	 * characters within the specified partitioning. The specified list of
@@ -96,80 +104,87 @@ public class ErlangPairMatcher implements ICharacterPairMatcher {
 		if (offset <= 0) {
 			return null;
 		}
-		String prevString = doc.get(offset - 1, 1);
-		if (!fPairs.contains(prevString)) {
-			if (offset == 1) {
-				return null;
-			}
-			prevString = doc.get(offset - 2, 2);
-			if (!fPairs.contains(prevString)) {
-				return null;
-			}
+		if (!IDocument.DEFAULT_CONTENT_TYPE.equals(TextUtilities
+				.getContentType(doc, fPartitioning, offset - 1, false))) {
+			return null;
 		}
-		final boolean isForward = fPairs.isStartString(prevString);
+		final ErlTokenBuffer tokens = getTokens(doc);
+		final int anchor = tokens.indexAt(offset - 1);
+		if (anchor < 0 || tokens.getEnd(anchor) != offset) {
+			return null;
+		}
+		final int pair = fPairs.indexOf(doc, tokens, anchor);
+		if (pair < 0) {
+			return null;
+		}
+		final boolean isForward = fPairs.isStart(pair);
 		fAnchor = isForward ? ICharacterPairMatcher.LEFT
 				: ICharacterPairMatcher.RIGHT;
-		final int searchStartPosition = isForward ? offset : offset
-				- (prevString.length() + 1);
-		final int adjustedOffset = isForward ? offset - 1 : offset;
-		final String partition = TextUtilities.getContentType(doc,
-				fPartitioning, adjustedOffset, false);
-		final DocumentPartitionAccessor partDoc = new DocumentPartitionAccessor(
-				doc, fPartitioning, partition);
-		final int endOffset = findMatchingPeer(partDoc, prevString, fPairs
-				.getMatching(prevString), isForward, isForward ? doc
-				.getLength()
-				- prevString.length() + 1 : -1, searchStartPosition);
-		if (endOffset == -1) {
+		final int peer = findMatchingPeer(doc, tokens, anchor, pair, fPairs
+				.getMatching(pair), isForward);
+		if (peer == -1) {
 			return null;
 		}
-		final int adjustedEndOffset = isForward ? endOffset + 1 : endOffset;
-		if (adjustedEndOffset == adjustedOffset) {
-			return null;
+		if (isForward) {
+			return new Region(tokens.getOffset(anchor), tokens.getEnd(peer)
+					- tokens.getOffset(anchor));
 		}
-		return new Region(Math.min(adjustedOffset, adjustedEndOffset), Math
-				.abs(adjustedEndOffset - adjustedOffset));
+		return new Region(tokens.getOffset(peer), offset
+				- tokens.getOffset(peer));
 	}
 
 	/**
-	 * Searches <code>doc</code> for the specified end string, <code>end</code>.
+	 * Searches the tokens for the peer of the token at <code>anchor</code>.
 	 * 
 	 * @param doc
-	 *            the document to search
+	 *            the document the tokens come from
+	 * @param tokens
+	 *            the tokens of the whole document
+	 * @param anchor
+	 *            the index of the token to match
 	 * @param start
-	 *            the opening matching string
+	 *            the pair index of the opening string
 	 * @param end
-	 *            the end string to search for
+	 *            the pair index of the end string to search for
 	 * @param searchForward
 	 *            search forwards or backwards?
-	 * @param boundary
-	 *            a boundary at which the search should stop
-	 * @param startPos
-	 *            the start offset
-	 * @return the index of the end character if it was found, otherwise -1
+	 * @return the index of the end token if it was found, otherwise -1
 	 * @throws BadLocationException
 	 */
-	private int findMatchingPeer(final DocumentPartitionAccessor doc,
-			final String start, final String end, final boolean searchForward,
-			final int boundary, final int startPos) throws BadLocationException {
-		int pos = startPos;
-		final int length = start.length();
-		while (pos != boundary) {
-			final String s = doc.get(pos, length);
-			if (doc.isMatch(pos, end)) {
-				return pos;
-			} else if (s.equals(start) && doc.inPartition(pos)) {
-				pos = findMatchingPeer(doc, start, end, searchForward,
-						boundary, doc.getNextPosition(pos, searchForward));
-				if (pos == -1) {
-					return -1;
+	private int findMatchingPeer(final IDocument doc,
+			final ErlTokenBuffer tokens, final int anchor, final int start,
+			final int end, final boolean searchForward)
+			throws BadLocationException {
+		final int step = searchForward ? 1 : -1;
+		int depth = 0;
+		for (int i = anchor + step; i >= 0 && i < tokens.size(); i += step) {
+			final int pair = fPairs.indexOf(doc, tokens, i);
+			if (pair == end) {
+				if (depth == 0) {
+					return i;
 				}
+				depth--;
+			} else if (pair == start) {
+				depth++;
 			}
-			pos = doc.getNextPosition(pos, searchForward);
 		}
 		return -1;
 	}
 
+	private ErlTokenBuffer getTokens(final IDocument doc) {
+		final long stamp = doc instanceof IDocumentExtension4 ? ((IDocumentExtension4) doc)
+				.getModificationStamp()
+				: IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+		if (fTokens == null || doc != fDocument
+				|| stamp == IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP
+				|| stamp != fStamp) {
+			fTokens = ErlLightScanner.scanBuffer(doc.get(), 0);
+			fDocument = doc;
+			fStamp = stamp;
+		}
+		return fTokens;
+	}
+
 	/* @see ICharacterPairMatcher#getAnchor() */
 	public int getAnchor() {
 		return fAnchor;
@@ -177,154 +192,18 @@ public class ErlangPairMatcher implements ICharacterPairMatcher {
 
 	/* @see ICharacterPairMatcher#dispose() */
 	public void dispose() {
+		clear();
 	}
 
 	/* @see ICharacterPairMatcher#clear() */
 	public void clear() {
 		fAnchor = -1;
+		fDocument = null;
+		fTokens = null;
 	}
 
 	/**
-	 * Utility class that wraps a document and gives access to partitioning
-	 * information. A document is tied to a particular partition and, when
-	 * considering whether or not a position is a valid match, only considers
-	 * position within its partition.
-	 */
-	private static class DocumentPartitionAccessor {
-
-		private final IDocument fDocument;
-		private final String fPartitioning, fPartition;
-		private ITypedRegion fCachedPartition;
-
-		/**
-		 * Creates a new partitioned document for the specified document.
-		 * 
-		 * @param doc
-		 *            the document to wrap
-		 * @param partitioning
-		 *            the partitioning used
-		 * @param partition
-		 *            the partition managed by this document
-		 */
-		public DocumentPartitionAccessor(final IDocument doc,
-				final String partitioning, final String partition) {
-			fDocument = doc;
-			fPartitioning = partitioning;
-			fPartition = partition;
-		}
-
-		/**
-		 * Returns the character at the specified position in this document.
-		 * 
-		 * @param pos
-		 *            an offset within this document
-		 * @param length
-		 *            a length of string to get
-		 * @return the character at the offset
-		 * @throws BadLocationException
-		 */
-		public String get(final int pos, final int length)
-				throws BadLocationException {
-			return fDocument.get(pos, length);
-		}
-
-		/**
-		 * Returns true if the character at the specified position is a valid
-		 * match for the specified end character. To be a valid match, it must
-		 * be in the appropriate partition and equal to the end character.
-		 * 
-		 * @param pos
-		 *            an offset within this document
-		 * @param end
-		 *            the end character to match against
-		 * @return true exactly if the position represents a valid match
-		 * @throws BadLocationException
-		 */
-		public boolean isMatch(final int pos, final String end)
-				throws BadLocationException {
-			return get(pos, end.length()).equals(end) && inPartition(pos);
-		}
-
-		/**
-		 * Returns true if the specified offset is within the partition managed
-		 * by this document.
-		 * 
-		 * @param pos
-		 *            an offset within this document
-		 * @return true if the offset is within this document's partition
-		 */
-		public boolean inPartition(final int pos) {
-			final ITypedRegion partition = getPartition(pos);
-			return partition != null && partition.getType().equals(fPartition);
-		}
-
-		/**
-		 * Returns the next position to query in the search. The position is not
-		 * guaranteed to be in this document's partition.
-		 * 
-		 * @param pos
-		 *            an offset within the document
-		 * @param searchForward
-		 *            the direction of the search
-		 * @return the next position to query
-		 */
-		public int getNextPosition(final int pos, final boolean searchForward) {
-			final ITypedRegion partition = getPartition(pos);
-			if (partition == null) {
-				return simpleIncrement(pos, searchForward);
-			}
-			if (fPartition.equals(partition.getType())) {
-				return simpleIncrement(pos, searchForward);
-			}
-			if (searchForward) {
-				final int end = partition.getOffset() + partition.getLength();
-				if (pos < end) {
-					return end;
-				}
-			} else {
-				final int offset = partition.getOffset();
-				if (pos > offset) {
-					return offset - 1;
-				}
-			}
-			return simpleIncrement(pos, searchForward);
-		}
-
-		private int simpleIncrement(final int pos, final boolean searchForward) {
-			return pos + (searchForward ? 1 : -1);
-		}
-
-		/**
-		 * Returns partition information about the region containing the
-		 * specified position.
-		 * 
-		 * @param pos
-		 *            a position within this document.
-		 * @return positioning information about the region containing the
-		 *         position
-		 */
-		private ITypedRegion getPartition(final int pos) {
-			if (fCachedPartition == null || !contains(fCachedPartition, pos)) {
-				Assert.isTrue(pos >= 0 && pos <= fDocument.getLength());
-				try {
-					fCachedPartition = TextUtilities.getPartition(fDocument,
-							fPartitioning, pos, false);
-				} catch (final BadLocationException e) {
-					fCachedPartition = null;
-				}
-			}
-			return fCachedPartition;
-		}
-
-		private static boolean contains(final IRegion region, final int pos) {
-			final int offset = region.getOffset();
-			return offset <= pos && pos < offset + region.getLength();
-		}
-
-	}
-
-	/**
-	 * Utility class that encapsulates access to matching character pairs.
+	 * Utility class that encapsulates access to matching string pairs.
 	 */
 	private static class StringPairs {
 
@@ -335,91 +214,61 @@ public class ErlangPairMatcher implements ICharacterPairMatcher {
 		}
 
 		/**
-		 * Returns true if the specified character pair occurs in one of the
-		 * character pairs.
+		 * Returns the index of the pair string that is the text of a token.
 		 * 
-		 * @param c
-		 *            a character
-		 * @return true exactly if the character occurs in one of the pairs
-		 */
-		public boolean contains(final String s) {
-			return getAllCharacters().contains(s);
-		}
-
-		private Set<String> fStringsCache = null;
-
-		/**
-		 * @return A set containing all characters occurring in character pairs.
+		 * @param doc
+		 *            the document the tokens come from
+		 * @param tokens
+		 *            a token buffer
+		 * @param index
+		 *            the index of the token
+		 * @return the index of the string in the pairs, or -1
+		 * @throws BadLocationException
 		 */
-		private Set<String> getAllCharacters() {
-			if (fStringsCache == null) {
-				final Set<String> set = new HashSet<String>();
-				for (int i = 0; i < fPairs.length; i++) {
-					set.add(fPairs[i]);
+		public int indexOf(final IDocument doc, final ErlTokenBuffer tokens,
+				final int index) throws BadLocationException {
+			final int kind = tokens.getKind(index);
+			final int length = tokens.getLength(index);
+			for (int i = 0; i < fPairs.length; i++) {
+				final String s = fPairs[i];
+				if (s.length() != length) {
+					continue;
+				}
+				if (length == 1) {
+					// one-char punctuation has the char as kind
+					if (kind == s.charAt(0)) {
+						return i;
+					}
+				} else if (kind == ErlToken.KIND_OTHER
+						&& matches(doc, tokens.getOffset(index), s)) {
+					return i;
 				}
-				fStringsCache = set;
 			}
-			return fStringsCache;
+			return -1;
 		}
 
-		/**
-		 * Returns true if the specified character opens a character pair when
-		 * scanning in the specified direction.
-		 * 
-		 * @param c
-		 *            a character
-		 * @param searchForward
-		 *            the direction of the search
-		 * @return whether or not the character opens a character pair
-		 */
-		public boolean isOpeningString(final String s,
-				final boolean searchForward) {
-			for (int i = 0; i < fPairs.length; i += 2) {
-				if (searchForward && getStartString(i).equals(s)) {
-					return true;
-				} else if (!searchForward && getEndString(i).equals(s)) {
-					return true;
+		private static boolean matches(final IDocument doc, final int offset,
+				final String s) throws BadLocationException {
+			for (int i = 0; i < s.length(); i++) {
+				if (doc.getChar(offset + i) != s.charAt(i)) {
+					return false;
 				}
 			}
-			return false;
+			return true;
 		}
 
 		/**
-		 * Returns true of the specified string is a start string.
-		 * 
-		 * @param s
-		 *            a string
-		 * @return true exactly if the string is a start string
+		 * Returns true if the pair string at the given index is a start string.
 		 */
-		public boolean isStartString(final String s) {
-			return this.isOpeningString(s, true);
+		public boolean isStart(final int index) {
+			return index % 2 == 0;
 		}
 
 		/**
-		 * Returns the matching character for the specified character.
-		 * 
-		 * @param s
-		 *            a string occurring in a string pair
-		 * @return the matching string
+		 * Returns the index of the matching string.
 		 */
-		public String getMatching(final String s) {
-			for (int i = 0; i < fPairs.length; i += 2) {
-				if (getStartString(i).equals(s)) {
-					return getEndString(i);
-				} else if (getEndString(i).equals(s)) {
-					return getStartString(i);
-				}
-			}
-			Assert.isTrue(false);
-			return "";
-		}
-
-		private String getStartString(final int i) {
-			return fPairs[i];
-		}
-
-		private String getEndString(final int i) {
-			return fPairs[i + 1];
+		public int getMatching(final int index) {
+			return isStart(index) ? index + 1 : index - 1;
 		}
 
 	}
@@ -1,8 +1,12 @@
 package org.erlide.ui.editors.erl;
 
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.IDocument;
 import org.eclipse.jface.text.IRegion;
 import org.eclipse.jface.text.Region;
+import org.erlide.core.erlang.ErlLightScanner;
 import org.erlide.core.erlang.ErlToken;
+import org.erlide.core.erlang.ErlTokenBuffer;
 import org.erlide.core.erlang.IErlModule;
 
 public final class ErlangWordFinder {
@@ -12,6 +16,17 @@ public final class ErlangWordFinder {
 		if (module == null) {
 			return null;
 		}
+		final IDocument document = editor == null ? null : editor
+				.getDocument();
+		if (document != null) {
+			// scan the line locally instead of asking the backend scanner,
+			// which would have to be reconciled first
+			try {
+				return findWord(document, offset);
+			} catch (final BadLocationException e) {
+				return null;
+			}
+		}
 		if (editor != null) {
 			editor.reconcileNow();
 		}
@@ -22,4 +37,16 @@ public final class ErlangWordFinder {
 		return new Region(token.getOffset(), token.getLength());
 	}
 
+	public static IRegion findWord(final IDocument document, final int offset)
+			throws BadLocationException {
+		final IRegion line = document.getLineInformationOfOffset(offset);
+		final ErlTokenBuffer tokens = ErlLightScanner.scanBuffer(document.get(
+				line.getOffset(), line.getLength()), line.getOffset());
+		final int i = tokens.indexAt(offset);
+		if (i < 0 || tokens.getKind(i) == ErlToken.KIND_WHITESPACE) {
+			return null;
+		}
+		return new Region(tokens.getOffset(i), tokens.getLength(i));
+	}
+
 }
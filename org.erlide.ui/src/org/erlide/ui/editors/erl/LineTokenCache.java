@@ -0,0 +1,168 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Vlad Dumitrescu and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Vlad Dumitrescu
+ *******************************************************************************/
+package org.erlide.ui.editors.erl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentListener;
+import org.erlide.core.erlang.ErlLightScanner;
+import org.erlide.core.erlang.ErlTokenBuffer;
+import org.erlide.jinterface.util.ErlLogger;
+
+/**
+ * Keeps the highlighting tokens of a document, line by line. Only the lines
+ * touched by a document change are rescanned, plus the following lines whose
+ * start state changed (for example when a string quote is added).
+ */
+public class LineTokenCache implements IDocumentListener {
+
+	private static class LineInfo {
+		boolean dirty = true;
+		int startState;
+		int endState;
+		// offsets relative to the line start, line numbers relative to it
+		ErlTokenBuffer tokens;
+	}
+
+	private final IDocument document;
+	private final List<LineInfo> lines = new ArrayList<LineInfo>();
+	// lines [0, validLines) are scanned with the right start state
+	private int validLines;
+	private int changeFirstLine;
+	private int changeLastLine;
+
+	public LineTokenCache(final IDocument document) {
+		this.document = document;
+		reset();
+		document.addPrenotifiedDocumentListener(this);
+	}
+
+	public void dispose() {
+		document.removePrenotifiedDocumentListener(this);
+	}
+
+	public IDocument getDocument() {
+		return document;
+	}
+
+	private void reset() {
+		lines.clear();
+		final int n = document.getNumberOfLines();
+		for (int i = 0; i < n; i++) {
+			lines.add(new LineInfo());
+		}
+		validLines = 0;
+	}
+
+	public void documentAboutToBeChanged(final DocumentEvent event) {
+		try {
+			changeFirstLine = document.getLineOfOffset(event.getOffset());
+			changeLastLine = document.getLineOfOffset(event.getOffset()
+					+ event.getLength());
+		} catch (final BadLocationException e) {
+			changeFirstLine = -1;
+		}
+	}
+
+	public void documentChanged(final DocumentEvent event) {
+		if (changeFirstLine < 0 || changeLastLine >= lines.size()) {
+			reset();
+			return;
+		}
+		final String text = event.getText();
+		final int textLength = text == null ? 0 : text.length();
+		final int newLastLine;
+		try {
+			newLastLine = document.getLineOfOffset(event.getOffset()
+					+ textLength);
+		} catch (final BadLocationException e) {
+			reset();
+			return;
+		}
+		final List<LineInfo> tail = lines.subList(changeFirstLine,
+				changeLastLine + 1);
+		tail.clear();
+		for (int i = changeFirstLine; i <= newLastLine; i++) {
+			tail.add(new LineInfo());
+		}
+		if (lines.size() != document.getNumberOfLines()) {
+			ErlLogger.warn("LineTokenCache out of sync, rescanning");
+			reset();
+			return;
+		}
+		validLines = Math.min(validLines, changeFirstLine);
+	}
+
+	/**
+	 * Return the tokens of the given lines, with document offsets.
+	 */
+	public ErlTokenBuffer getTokens(final int firstLine, final int lastLine)
+			throws BadLocationException {
+		final ErlTokenBuffer result = new ErlTokenBuffer(
+				(lastLine - firstLine + 1) * 8);
+		for (int i = firstLine; i <= lastLine && i < lines.size(); i++) {
+			final LineInfo info = getLine(i);
+			result.addAll(info.tokens, document.getLineOffset(i), i);
+		}
+		return result;
+	}
+
+	/**
+	 * Return the last line whose tokens may have changed after an edit that
+	 * ended on the given line.
+	 */
+	public int getLastAffectedLine(final int line) throws BadLocationException {
+		if (line >= lines.size()) {
+			return line;
+		}
+		getLine(line);
+		int last = line;
+		while (last + 1 < lines.size()) {
+			final LineInfo next = lines.get(last + 1);
+			if (!next.dirty && next.startState == lines.get(last).endState) {
+				break;
+			}
+			getLine(last + 1);
+			last++;
+		}
+		return last;
+	}
+
+	private LineInfo getLine(final int index) throws BadLocationException {
+		while (validLines <= index) {
+			final LineInfo info = lines.get(validLines);
+			final int state = validLines == 0 ? ErlLightScanner.STATE_NORMAL
+					: lines.get(validLines - 1).endState;
+			if (info.dirty || info.startState != state) {
+				scanLine(info, validLines, state);
+			}
+			validLines++;
+		}
+		return lines.get(index);
+	}
+
+	private void scanLine(final LineInfo info, final int line, final int state)
+			throws BadLocationException {
+		final String text = document.get(document.getLineOffset(line), document
+				.getLineLength(line));
+		final ErlTokenBuffer tokens = new ErlTokenBuffer();
+		// line 0, so that the tokens stay valid when lines are inserted above
+		info.endState = ErlLightScanner.scanLine(text, state, 0, tokens);
+		info.startState = state;
+		info.tokens = tokens;
+		info.dirty = false;
+	}
+
+}
@@ -369,10 +369,18 @@ public class ErlContentAssistProcessor implements IContentAssistProcessor {
 		final String stateDir = ErlideUIPlugin.getDefault().getStateLocation()
 				.toString();
 		final List<ICompletionProposal> result = new ArrayList<ICompletionProposal>();
-		for (final IErlImport imp : module.getImports()) {
-			final OtpErlangObject res = ErlideDoc.getProposalsWithDoc(backend,
-					imp.getImportModule(), prefix, stateDir);
-			addFunctionProposalsWithDoc(offset, prefix, result, res, imp, false);
+		final Collection<IErlImport> imports = module.getImports();
+		final List<String> mods = new ArrayList<String>(imports.size());
+		for (final IErlImport imp : imports) {
+			mods.add(imp.getImportModule());
+		}
+		// one round trip for all the imported modules
+		final OtpErlangObject[] res = ErlideDoc.getProposalsWithDoc(backend,
+				mods, prefix, stateDir);
+		int i = 0;
+		for (final IErlImport imp : imports) {
+			addFunctionProposalsWithDoc(offset, prefix, result, res[i++], imp,
+					false);
 		}
 		return result;
 	}
@@ -19,6 +19,7 @@ import org.erlide.runtime.backend.ErlideBackend;
 
 import erlang.ErlangSearchPattern;
 import erlang.ErlideSearchServer;
+import erlang.ErlideSearchServer.SearchResultCollector;
 
 public class ErlSearchQuery implements ISearchQuery {
 	private final ErlangSearchPattern pattern;
@@ -59,19 +60,31 @@ public class ErlSearchQuery implements ISearchQuery {
 			throws OperationCanceledException {
 		final ErlideBackend backend = ErlangCore.getBackendManager()
 				.getIdeBackend();
-		fResult = ErlideSearchServer.findRefs(backend, pattern, scope,
-				getStateDir());
-		final List<Match> l = new ArrayList<Match>(fResult.size());
+		fResult = new ArrayList<ModuleLineFunctionArityRef>();
+		fSearchResult.setResult(new ArrayList<ErlangSearchElement>());
+		// matches are shown as the batches arrive
+		ErlideSearchServer.findRefs(backend, pattern, scope, getStateDir(),
+				monitor, new SearchResultCollector() {
+					public void addRefs(
+							final List<ModuleLineFunctionArityRef> refs) {
+						addMatches(refs);
+					}
+				});
+		return Status.OK_STATUS;
+	}
+
+	private void addMatches(final List<ModuleLineFunctionArityRef> refs) {
+		fResult.addAll(refs);
+		final List<Match> l = new ArrayList<Match>(refs.size());
 		final List<ErlangSearchElement> result = new ArrayList<ErlangSearchElement>(
-				fResult.size());
-		for (final ModuleLineFunctionArityRef ref : fResult) {
+				refs.size());
+		for (final ModuleLineFunctionArityRef ref : refs) {
 			final Match m = SearchUtil.createMatch(ref);
 			l.add(m);
 			result.add((ErlangSearchElement) m.getElement());
 		}
-		fSearchResult.setResult(result);
+		fSearchResult.addResult(result);
 		fSearchResult.addMatches(l.toArray(new Match[l.size()]));
-		return Status.OK_STATUS;
 	}
 
 	private String getStateDir() {
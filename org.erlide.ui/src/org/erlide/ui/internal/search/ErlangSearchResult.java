@@ -126,6 +126,10 @@ public class ErlangSearchResult extends AbstractTextSearchResult implements
 		this.result = result;
 	}
 
+	public synchronized void addResult(final List<ErlangSearchElement> elements) {
+		result.addAll(elements);
+	}
+
 	private static final Match[] NO_MATCHES = new Match[0];
 
 	public Match[] computeContainedMatches(
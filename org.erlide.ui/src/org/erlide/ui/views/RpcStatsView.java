@@ -0,0 +1,177 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Vlad Dumitrescu and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available
+ * at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Vlad Dumitrescu
+ *******************************************************************************/
+package org.erlide.ui.views;
+
+import org.eclipse.jface.action.Action;
+import org.eclipse.jface.action.IToolBarManager;
+import org.eclipse.jface.viewers.IStructuredContentProvider;
+import org.eclipse.jface.viewers.ITableLabelProvider;
+import org.eclipse.jface.viewers.LabelProvider;
+import org.eclipse.jface.viewers.TableViewer;
+import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Table;
+import org.eclipse.swt.widgets.TableColumn;
+import org.eclipse.ui.ISharedImages;
+import org.eclipse.ui.PlatformUI;
+import org.eclipse.ui.part.ViewPart;
+import org.erlide.jinterface.rpc.LatencyHistogram;
+import org.erlide.jinterface.rpc.RpcStats;
+
+/**
+ * Shows the RPC statistics collected by {@link RpcStats}, the functions that
+ * took the most time first. Refreshes itself every few seconds.
+ */
+public class RpcStatsView extends ViewPart {
+
+	private static final int REFRESH_INTERVAL = 3000;
+
+	private static final String[] COLUMNS = { "Function", "Calls", "Errors",
+			"Timeouts", "p50 (ms)", "p99 (ms)", "Max (ms)", "Total (ms)",
+			"Sent (kB)", "Received (kB)" };
+
+	TableViewer viewer;
+	private Action refreshAction;
+	private Action resetAction;
+
+	private final Runnable refresher = new Runnable() {
+		public void run() {
+			if (viewer == null || viewer.getControl().isDisposed()) {
+				return;
+			}
+			viewer.refresh();
+			Display.getCurrent().timerExec(REFRESH_INTERVAL, this);
+		}
+	};
+
+	static class ViewContentProvider implements IStructuredContentProvider {
+
+		public void inputChanged(final Viewer v, final Object oldInput,
+				final Object newInput) {
+		}
+
+		public void dispose() {
+		}
+
+		public Object[] getElements(final Object parent) {
+			return RpcStats.getAll().toArray();
+		}
+	}
+
+	static class ViewLabelProvider extends LabelProvider implements
+			ITableLabelProvider {
+
+		public String getColumnText(final Object obj, final int index) {
+			final RpcStats s = (RpcStats) obj;
+			final LatencyHistogram latency = s.getLatency();
+			switch (index) {
+			case 0:
+				return s.getName();
+			case 1:
+				return Long.toString(s.getCalls());
+			case 2:
+				return Long.toString(s.getErrors());
+			case 3:
+				return Long.toString(s.getTimeouts());
+			case 4:
+				return millis(latency.getPercentile(50));
+			case 5:
+				return millis(latency.getPercentile(99));
+			case 6:
+				return millis(latency.getMax());
+			case 7:
+				return millis(latency.getTotal());
+			case 8:
+				return Long.toString(s.getBytesSent() / 1024);
+			case 9:
+				return Long.toString(s.getBytesReceived() / 1024);
+			default:
+				return "";
+			}
+		}
+
+		public Image getColumnImage(final Object obj, final int index) {
+			return null;
+		}
+
+		private static String millis(final long micros) {
+			return String.format("%.1f", Double.valueOf(micros / 1000.0));
+		}
+	}
+
+	@Override
+	public void createPartControl(final Composite parent) {
+		viewer = new TableViewer(parent, SWT.SINGLE | SWT.V_SCROLL
+				| SWT.FULL_SELECTION);
+		final Table t = viewer.getTable();
+		for (int i = 0; i < COLUMNS.length; i++) {
+			final TableColumn col = new TableColumn(t, i == 0 ? SWT.LEAD
+					: SWT.RIGHT);
+			col.setText(COLUMNS[i]);
+			col.setWidth(i == 0 ? 300 : 80);
+		}
+		t.setLinesVisible(true);
+		t.setHeaderVisible(true);
+		viewer.setContentProvider(new ViewContentProvider());
+		viewer.setLabelProvider(new ViewLabelProvider());
+		viewer.setInput(getViewSite());
+
+		makeActions();
+		final IToolBarManager manager = getViewSite().getActionBars()
+				.getToolBarManager();
+		manager.add(refreshAction);
+		manager.add(resetAction);
+
+		Display.getCurrent().timerExec(REFRESH_INTERVAL, refresher);
+	}
+
+	private void makeActions() {
+		refreshAction = new Action() {
+			@Override
+			public void run() {
+				viewer.refresh();
+			}
+		};
+		refreshAction.setText("Refresh");
+		refreshAction.setToolTipText("Refresh RPC statistics");
+		refreshAction.setImageDescriptor(PlatformUI.getWorkbench()
+				.getSharedImages().getImageDescriptor(
+						ISharedImages.IMG_OBJS_INFO_TSK));
+
+		resetAction = new Action() {
+			@Override
+			public void run() {
+				RpcStats.resetAll();
+				viewer.refresh();
+			}
+		};
+		resetAction.setText("Reset");
+		resetAction.setToolTipText("Clear RPC statistics");
+		resetAction.setImageDescriptor(PlatformUI.getWorkbench()
+				.getSharedImages().getImageDescriptor(
+						ISharedImages.IMG_TOOL_DELETE));
+	}
+
+	@Override
+	public void setFocus() {
+		viewer.getControl().setFocus();
+	}
+
+	@Override
+	public void dispose() {
+		Display.getCurrent().timerExec(-1, refresher);
+		super.dispose();
+	}
+
+}
@@ -9,6 +9,9 @@
  *******************************************************************************/
 package org.erlide.ui.views.processlist;
 
+import java.util.Collection;
+import java.util.Collections;
+
 import org.eclipse.jface.action.Action;
 import org.eclipse.jface.action.IMenuListener;
 import org.eclipse.jface.action.IMenuManager;
@@ -45,6 +48,7 @@ import org.eclipse.ui.PlatformUI;
 import org.eclipse.ui.part.ViewPart;
 import org.erlide.core.erlang.ErlangCore;
 import org.erlide.jinterface.backend.events.EventHandler;
+import org.erlide.jinterface.backend.events.OverflowPolicy;
 import org.erlide.runtime.backend.ErlideBackend;
 import org.erlide.runtime.backend.ErlideBackendVisitor;
 import org.erlide.ui.views.BackendContentProvider;
@@ -117,6 +121,22 @@ public class ProcessListView extends ViewPart {
 
 		class ProcessEventHandler extends EventHandler {
 
+			@Override
+			public Collection<String> getEvents() {
+				return Collections.singleton("processlist");
+			}
+
+			// one pending refresh is enough
+			@Override
+			public int getQueueCapacity() {
+				return 1;
+			}
+
+			@Override
+			public OverflowPolicy getOverflowPolicy() {
+				return OverflowPolicy.DROP_NEWEST;
+			}
+
 			@Override
 			protected void doHandleMsg(final OtpErlangObject msg)
 					throws Exception {